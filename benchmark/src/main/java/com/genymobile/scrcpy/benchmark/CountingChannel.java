@@ -0,0 +1,44 @@
+package com.genymobile.scrcpy.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Channel counting the write calls to a file channel (each of them is one system call, the writes to /dev/null are never partial).
+ * <p>
+ * It does not support gathering writes (see {@link CountingGatheringChannel}).
+ */
+public class CountingChannel implements WritableByteChannel {
+
+    protected final FileChannel channel;
+    protected SyscallCounter counter;
+
+    public CountingChannel(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Set the counter to increment (the JMH counters are injected in each benchmark method).
+     */
+    public void setCounter(SyscallCounter counter) {
+        this.counter = counter;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        ++counter.syscalls;
+        return channel.write(src);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,27 @@
+package com.genymobile.scrcpy.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * {@link CountingChannel} supporting gathering writes (one {@code writev()} system call).
+ */
+public class CountingGatheringChannel extends CountingChannel implements GatheringByteChannel {
+
+    public CountingGatheringChannel(FileChannel channel) {
+        super(channel);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        ++counter.syscalls;
+        return channel.write(srcs, offset, length);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+}
@@ -0,0 +1,37 @@
+package com.genymobile.scrcpy.benchmark;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream counting the write calls to a file output stream (each of them is one system call).
+ * <p>
+ * Since it is not a {@link FileOutputStream} itself, {@code IO.writeFully(OutputStream, ByteBuffer)} writes the direct buffers to it
+ * through a temporary {@code byte[]}.
+ */
+public class CountingOutputStream extends OutputStream {
+
+    private final FileOutputStream out;
+    private SyscallCounter counter;
+
+    public CountingOutputStream(FileOutputStream out) {
+        this.out = out;
+    }
+
+    public void setCounter(SyscallCounter counter) {
+        this.counter = counter;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ++counter.syscalls;
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ++counter.syscalls;
+        out.write(b, off, len);
+    }
+}
@@ -0,0 +1,35 @@
+package com.genymobile.scrcpy.benchmark;
+
+import java.io.InputStream;
+
+/**
+ * Input stream repeating the same bytes forever, so that a reader never reaches the end of the stream during a benchmark.
+ */
+public final class CyclicInputStream extends InputStream {
+
+    private final byte[] data;
+    private int position;
+
+    public CyclicInputStream(byte[] data) {
+        if (data.length == 0) {
+            throw new IllegalArgumentException("Empty data");
+        }
+        this.data = data;
+    }
+
+    @Override
+    public int read() {
+        int b = data[position] & 0xFF;
+        position = (position + 1) % data.length;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        // Like a socket, return what is available without waiting for more (at most until the end of the repeated data)
+        int n = Math.min(len, data.length - position);
+        System.arraycopy(data, position, b, off, n);
+        position = (position + n) % data.length;
+        return n;
+    }
+}
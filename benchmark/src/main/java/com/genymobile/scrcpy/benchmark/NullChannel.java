@@ -0,0 +1,48 @@
+package com.genymobile.scrcpy.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * Channel consuming all the bytes, to measure the writing code without the cost of a system call.
+ */
+public final class NullChannel implements GatheringByteChannel {
+
+    private long written;
+
+    @Override
+    public int write(ByteBuffer src) {
+        int n = src.remaining();
+        src.position(src.limit());
+        written += n;
+        return n;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) {
+        long n = 0;
+        for (int i = offset; i < offset + length; ++i) {
+            n += write(srcs[i]);
+        }
+        return n;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) {
+        return write(srcs, 0, srcs.length);
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        // do nothing
+    }
+}
@@ -0,0 +1,25 @@
+package com.genymobile.scrcpy.benchmark;
+
+import java.io.OutputStream;
+
+/**
+ * Output stream discarding all the bytes, to measure the writing code without the cost of a system call.
+ */
+public final class NullOutputStream extends OutputStream {
+
+    private long written;
+
+    @Override
+    public void write(int b) {
+        ++written;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        written += len;
+    }
+
+    public long getWritten() {
+        return written;
+    }
+}
@@ -0,0 +1,24 @@
+package com.genymobile.scrcpy.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Number of write system calls, reported by JMH as a secondary result (normalized per second like the primary throughput).
+ * <p>
+ * The number of system calls per operation is the ratio of both results.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class SyscallCounter {
+
+    public long syscalls;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        syscalls = 0;
+    }
+}
@@ -0,0 +1,149 @@
+package com.genymobile.scrcpy.control;
+
+import com.genymobile.scrcpy.benchmark.CyclicInputStream;
+import com.genymobile.scrcpy.benchmark.NullOutputStream;
+import com.genymobile.scrcpy.util.StringUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Write a clipboard text (device to client, compressed by the writer) and read it (client to device, decompressed by the reader), for
+ * several corpora and compression thresholds (0 disables the compression).
+ * <p>
+ * The size of the text on the wire is printed for each case (the same encoding is used in both directions).
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ClipboardCompressionBenchmark {
+
+    // Within the clipboard text limits in both directions
+    private static final int LARGE_SIZE = 240 * 1024;
+    private static final int COMMENTS_SIZE = 32 * 1024;
+    private static final int JSON_SIZE = 2 * 1024;
+
+    @Param({"sources", "comments", "json", "base64"})
+    public String corpus;
+
+    @Param({"0", "1024", "4096"})
+    public int threshold;
+
+    private DeviceMessageWriter writer;
+    private DeviceMessage clipboard;
+
+    private ControlMessageReader reader;
+    private final ControlMessage msg = new ControlMessage();
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] raw = createCorpus(corpus);
+        clipboard = DeviceMessage.createClipboard(new String(raw, StandardCharsets.UTF_8));
+        writer = new DeviceMessageWriter(new NullOutputStream(), threshold);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new DeviceMessageWriter(bos, threshold).write(clipboard);
+        byte[] encoded = bos.toByteArray(); // type: 1 byte; clipboard text (length field included)
+
+        ByteArrayOutputStream setClipboard = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(setClipboard);
+        dos.writeByte(ControlMessage.TYPE_SET_CLIPBOARD);
+        dos.writeLong(1); // sequence
+        dos.writeByte(0); // paste
+        dos.write(encoded, 1, encoded.length - 1);
+        reader = new ControlMessageReader(new CyclicInputStream(setClipboard.toByteArray()));
+
+        int wireSize = encoded.length - 1;
+        System.out.println(corpus + " (threshold " + threshold + "): " + raw.length + " bytes, " + wireSize + " bytes on the wire ("
+                + (100 * wireSize / raw.length) + "%)");
+    }
+
+    private static byte[] createCorpus(String corpus) throws IOException {
+        switch (corpus) {
+            case "sources":
+                return truncate(readSources(), LARGE_SIZE);
+            case "comments":
+                return truncate(extractComments(readSources()), COMMENTS_SIZE);
+            case "json":
+                return createJson(JSON_SIZE);
+            case "base64":
+                // Random data, only compressible to its 6 bits per byte
+                byte[] data = new byte[LARGE_SIZE * 3 / 4];
+                new Random(42).nextBytes(data);
+                return Base64.getEncoder().encode(data);
+            default:
+                throw new IllegalArgumentException("Unknown corpus: " + corpus);
+        }
+    }
+
+    private static byte[] readSources() throws IOException {
+        // Generated by the "corpus" gradle task
+        try (InputStream in = ClipboardCompressionBenchmark.class.getResourceAsStream("/corpus/sources.txt")) {
+            if (in == null) {
+                throw new IOException("Corpus not found");
+            }
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int r;
+            while ((r = in.read(buffer)) != -1) {
+                bos.write(buffer, 0, r);
+            }
+            return bos.toByteArray();
+        }
+    }
+
+    private static byte[] extractComments(byte[] sources) {
+        // English prose
+        StringBuilder builder = new StringBuilder();
+        for (String line : new String(sources, StandardCharsets.UTF_8).split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("//") || trimmed.startsWith("*")) {
+                builder.append(trimmed).append('\n');
+            }
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] createJson(int size) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; builder.length() < size - 100; ++i) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"id\":").append(i).append(",\"name\":\"item ").append(i).append("\",\"enabled\":").append(i % 3 != 0)
+                    .append(",\"tags\":[\"clipboard\",\"test\"]}");
+        }
+        builder.append(']');
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] truncate(byte[] utf8, int maxLength) {
+        return Arrays.copyOf(utf8, StringUtils.getUtf8TruncationIndex(utf8, maxLength));
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        writer.write(clipboard);
+    }
+
+    @Benchmark
+    public String read() throws IOException {
+        return reader.read(msg).getText();
+    }
+}
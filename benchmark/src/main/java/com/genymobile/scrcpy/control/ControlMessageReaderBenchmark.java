@@ -0,0 +1,188 @@
+package com.genymobile.scrcpy.control;
+
+import com.genymobile.scrcpy.benchmark.CyclicInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parse each type of control message into a reused message (the fixed-size input events must not allocate), or into a new message.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ControlMessageReaderBenchmark {
+
+    private static final int ACTION_DOWN = 0;
+    private static final int ACTION_MOVE = 2;
+    private static final int KEYCODE_ENTER = 66;
+    private static final int BUTTON_PRIMARY = 1;
+
+    @Param({"keycode", "text", "touch", "scroll", "back_or_screen_on", "get_clipboard", "set_clipboard", "set_clipboard_chunk",
+            "set_display_power", "empty", "uhid_create", "uhid_input", "uhid_input_batch", "uhid_destroy", "start_app", "dump_replay",
+            "touch_batch"})
+    public String type;
+
+    private ControlMessageReader reader;
+    private final ControlMessage msg = new ControlMessage();
+
+    @Setup
+    public void setUp() throws IOException {
+        reader = new ControlMessageReader(new CyclicInputStream(serialize(type)));
+    }
+
+    private static byte[] serialize(String type) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        switch (type) {
+            case "keycode":
+                dos.writeByte(ControlMessage.TYPE_INJECT_KEYCODE);
+                dos.writeByte(ACTION_DOWN);
+                dos.writeInt(KEYCODE_ENTER);
+                dos.writeInt(0); // repeat
+                dos.writeInt(0); // meta state
+                break;
+            case "text":
+                byte[] text = "hello, world!".getBytes(StandardCharsets.UTF_8);
+                dos.writeByte(ControlMessage.TYPE_INJECT_TEXT);
+                dos.writeInt(text.length);
+                dos.write(text);
+                break;
+            case "touch":
+                dos.writeByte(ControlMessage.TYPE_INJECT_TOUCH_EVENT);
+                dos.writeByte(ACTION_MOVE);
+                dos.writeLong(-2); // pointer id (generic finger)
+                dos.writeInt(100);
+                dos.writeInt(200);
+                dos.writeShort(1080);
+                dos.writeShort(1920);
+                dos.writeShort(0xFFFF); // pressure
+                dos.writeInt(BUTTON_PRIMARY); // action button
+                dos.writeInt(BUTTON_PRIMARY); // buttons
+                break;
+            case "scroll":
+                dos.writeByte(ControlMessage.TYPE_INJECT_SCROLL_EVENT);
+                dos.writeInt(260);
+                dos.writeInt(1026);
+                dos.writeShort(1080);
+                dos.writeShort(1920);
+                dos.writeShort(0); // hscroll
+                dos.writeShort(0x8000); // vscroll
+                dos.writeInt(0); // buttons
+                break;
+            case "back_or_screen_on":
+                dos.writeByte(ControlMessage.TYPE_BACK_OR_SCREEN_ON);
+                dos.writeByte(ACTION_DOWN);
+                break;
+            case "get_clipboard":
+                dos.writeByte(ControlMessage.TYPE_GET_CLIPBOARD);
+                dos.writeByte(ControlMessage.COPY_KEY_COPY);
+                break;
+            case "set_clipboard":
+                byte[] clipboard = "a clipboard text".getBytes(StandardCharsets.UTF_8);
+                dos.writeByte(ControlMessage.TYPE_SET_CLIPBOARD);
+                dos.writeLong(1); // sequence
+                dos.writeByte(0); // paste
+                dos.writeInt(clipboard.length);
+                dos.write(clipboard);
+                break;
+            case "set_clipboard_chunk":
+                byte[] chunk = new byte[1024];
+                dos.writeByte(ControlMessage.TYPE_SET_CLIPBOARD_CHUNK);
+                dos.writeLong(1); // sequence
+                dos.writeByte(ControlMessage.CLIPBOARD_CHUNK_FLAG_FIRST);
+                dos.writeInt(chunk.length);
+                dos.write(chunk);
+                break;
+            case "set_display_power":
+                dos.writeByte(ControlMessage.TYPE_SET_DISPLAY_POWER);
+                dos.writeBoolean(true);
+                break;
+            case "empty":
+                dos.writeByte(ControlMessage.TYPE_EXPAND_NOTIFICATION_PANEL);
+                break;
+            case "uhid_create":
+                byte[] reportDesc = new byte[64];
+                dos.writeByte(ControlMessage.TYPE_UHID_CREATE);
+                dos.writeShort(1); // id
+                dos.writeShort(0x1234); // vendor id
+                dos.writeShort(0x5678); // product id
+                dos.writeByte(3); // name size
+                dos.write("ABC".getBytes(StandardCharsets.US_ASCII));
+                dos.writeShort(reportDesc.length);
+                dos.write(reportDesc);
+                break;
+            case "uhid_input":
+                dos.writeByte(ControlMessage.TYPE_UHID_INPUT);
+                dos.writeShort(1); // id
+                dos.writeShort(8); // size
+                dos.write(new byte[8]);
+                break;
+            case "uhid_input_batch":
+                dos.writeByte(ControlMessage.TYPE_UHID_INPUT_BATCH);
+                dos.writeShort(1); // id
+                dos.writeByte(4); // report count
+                for (int i = 0; i < 4; ++i) {
+                    dos.writeShort(8); // size
+                    dos.write(new byte[8]);
+                }
+                break;
+            case "uhid_destroy":
+                dos.writeByte(ControlMessage.TYPE_UHID_DESTROY);
+                dos.writeShort(1); // id
+                break;
+            case "start_app":
+                byte[] name = "org.example.app".getBytes(StandardCharsets.UTF_8);
+                dos.writeByte(ControlMessage.TYPE_START_APP);
+                dos.writeByte(name.length);
+                dos.write(name);
+                break;
+            case "dump_replay":
+                byte[] path = "/data/local/tmp/replay.bin".getBytes(StandardCharsets.UTF_8);
+                dos.writeByte(ControlMessage.TYPE_DUMP_REPLAY);
+                dos.writeShort(path.length);
+                dos.write(path);
+                break;
+            case "touch_batch":
+                int count = 5;
+                dos.writeByte(ControlMessage.TYPE_INJECT_TOUCH_BATCH);
+                dos.writeByte(ACTION_MOVE);
+                dos.writeByte(0); // action index
+                dos.writeShort(1080);
+                dos.writeShort(1920);
+                dos.writeByte(count);
+                for (int i = 0; i < count; ++i) {
+                    dos.writeLong(i); // pointer id
+                    dos.writeInt(100 + i * 50);
+                    dos.writeInt(200 + i * 50);
+                    dos.writeShort(0xFFFF); // pressure
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown message type: " + type);
+        }
+        return bos.toByteArray();
+    }
+
+    @Benchmark
+    public ControlMessage read() throws IOException {
+        return reader.read(msg);
+    }
+
+    @Benchmark
+    public ControlMessage readNewMessage() throws IOException {
+        return reader.read();
+    }
+}
@@ -0,0 +1,66 @@
+package com.genymobile.scrcpy.control;
+
+import com.genymobile.scrcpy.benchmark.NullOutputStream;
+import com.genymobile.scrcpy.util.LatencyHistogram;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+
+/**
+ * Serialize each type of device message (the output stream discards the bytes).
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DeviceMessageWriterBenchmark {
+
+    @Param({"clipboard", "ack_clipboard", "uhid_output", "clipboard_chunk", "video_stats", "input_stats", "replay_dumped"})
+    public String type;
+
+    private DeviceMessageWriter writer;
+    private DeviceMessage msg;
+
+    @Setup
+    public void setUp() {
+        writer = new DeviceMessageWriter(new NullOutputStream());
+        msg = createMessage(type);
+    }
+
+    private static DeviceMessage createMessage(String type) {
+        LatencyHistogram.Snapshot latency = new LatencyHistogram.Snapshot(120, 800, 2500, 6000, 15000);
+        switch (type) {
+            case "clipboard":
+                return DeviceMessage.createClipboard("a clipboard text with some non-ASCII characters: \u00e9\u00e8\u00e0");
+            case "ack_clipboard":
+                return DeviceMessage.createAckClipboard(42);
+            case "uhid_output":
+                return DeviceMessage.createUhidOutput(1, new byte[8]);
+            case "clipboard_chunk":
+                return DeviceMessage.createClipboardChunk(DeviceMessage.CLIPBOARD_CHUNK_FLAG_FIRST, new byte[1024]);
+            case "video_stats":
+                return DeviceMessage.createVideoStats(3, latency, latency, latency);
+            case "input_stats":
+                int[] messageTypes = {ControlMessage.TYPE_INJECT_KEYCODE, ControlMessage.TYPE_INJECT_TOUCH_EVENT,
+                        ControlMessage.TYPE_INJECT_SCROLL_EVENT};
+                return DeviceMessage.createInputStats(messageTypes, new LatencyHistogram.Snapshot[] {latency, latency, latency}, latency);
+            case "replay_dumped":
+                return DeviceMessage.createReplayDumped("/data/local/tmp/scrcpy-replay.bin");
+            default:
+                throw new IllegalArgumentException("Unknown message type: " + type);
+        }
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        writer.write(msg);
+    }
+}
@@ -0,0 +1,118 @@
+package com.genymobile.scrcpy.control;
+
+import com.genymobile.scrcpy.device.Point;
+
+import android.view.MotionEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The previous implementation of {@link PointersState} (a list of pointer objects, at most 10), kept as the baseline of
+ * {@link PointersStateBenchmark}.
+ */
+public class ListPointersState {
+
+    public static final int MAX_POINTERS = 10;
+
+    public static class Pointer {
+        private final long id;
+        private final int localId;
+
+        private Point point;
+        private float pressure;
+        private boolean up;
+
+        public Pointer(long id, int localId) {
+            this.id = id;
+            this.localId = localId;
+        }
+
+        public void setPoint(Point point) {
+            this.point = point;
+        }
+
+        public void setPressure(float pressure) {
+            this.pressure = pressure;
+        }
+
+        public void setUp(boolean up) {
+            this.up = up;
+        }
+    }
+
+    private final List<Pointer> pointers = new ArrayList<>();
+
+    private int indexOf(long id) {
+        for (int i = 0; i < pointers.size(); ++i) {
+            Pointer pointer = pointers.get(i);
+            if (pointer.id == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isLocalIdAvailable(int localId) {
+        for (int i = 0; i < pointers.size(); ++i) {
+            Pointer pointer = pointers.get(i);
+            if (pointer.localId == localId) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int nextUnusedLocalId() {
+        for (int localId = 0; localId < MAX_POINTERS; ++localId) {
+            if (isLocalIdAvailable(localId)) {
+                return localId;
+            }
+        }
+        return -1;
+    }
+
+    public Pointer get(int index) {
+        return pointers.get(index);
+    }
+
+    public int getPointerIndex(long id) {
+        int index = indexOf(id);
+        if (index != -1) {
+            return index;
+        }
+        if (pointers.size() >= MAX_POINTERS) {
+            return -1;
+        }
+        int localId = nextUnusedLocalId();
+        if (localId == -1) {
+            throw new AssertionError("pointers.size() < maxFingers implies that a local id is available");
+        }
+        Pointer pointer = new Pointer(id, localId);
+        pointers.add(pointer);
+        return pointers.size() - 1;
+    }
+
+    public int update(MotionEvent.PointerProperties[] props, MotionEvent.PointerCoords[] coords) {
+        int count = pointers.size();
+        for (int i = 0; i < count; ++i) {
+            Pointer pointer = pointers.get(i);
+            props[i].id = pointer.localId;
+            Point point = pointer.point;
+            coords[i].x = point.getX();
+            coords[i].y = point.getY();
+            coords[i].pressure = pointer.pressure;
+        }
+        cleanUp();
+        return count;
+    }
+
+    private void cleanUp() {
+        for (int i = pointers.size() - 1; i >= 0; --i) {
+            Pointer pointer = pointers.get(i);
+            if (pointer.up) {
+                pointers.remove(i);
+            }
+        }
+    }
+}
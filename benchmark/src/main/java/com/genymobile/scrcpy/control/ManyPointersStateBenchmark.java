@@ -0,0 +1,51 @@
+package com.genymobile.scrcpy.control;
+
+import android.view.MotionEvent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Move more pointers than the default maximum (like a stylus, a palm and several fingers on a test rig), with the maximum capacity.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ManyPointersStateBenchmark {
+
+    @Param({"12", "16"})
+    public int pointerCount;
+
+    private final PointersState pointersState = new PointersState(PointersState.MAX_SUPPORTED_POINTERS);
+    private final MotionEvent.PointerProperties[] props = new MotionEvent.PointerProperties[PointersState.MAX_SUPPORTED_POINTERS];
+    private final MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[PointersState.MAX_SUPPORTED_POINTERS];
+
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < PointersState.MAX_SUPPORTED_POINTERS; ++i) {
+            props[i] = new MotionEvent.PointerProperties();
+            coords[i] = new MotionEvent.PointerCoords();
+        }
+    }
+
+    @Benchmark
+    public int move() {
+        ++frame;
+        for (int i = 0; i < pointerCount; ++i) {
+            int index = pointersState.getPointerIndex(1000 + i);
+            pointersState.setPoint(index, 100 + i * 10 + frame % 100, 200 + i * 10);
+            pointersState.setPressure(index, 1f);
+            pointersState.setUp(index, false);
+        }
+        return pointersState.update(props, coords);
+    }
+}
@@ -0,0 +1,98 @@
+package com.genymobile.scrcpy.control;
+
+import com.genymobile.scrcpy.device.Point;
+
+import android.view.MotionEvent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Track the pointers of a multi-touch gesture: each operation moves all the pointers, then fills the motion event parameters.
+ * <p>
+ * A "gesture" operation also puts down and releases the last pointer, to measure the local id allocation and the clean-up.
+ * <p>
+ * The "list" operations run the same steps on the previous implementation ({@link ListPointersState}), where each move created a new
+ * point, as the controller did.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PointersStateBenchmark {
+
+    @Param({"1", "2", "5", "10"})
+    public int pointerCount;
+
+    private final PointersState pointersState = new PointersState();
+    private final ListPointersState listPointersState = new ListPointersState();
+    private final MotionEvent.PointerProperties[] props = new MotionEvent.PointerProperties[PointersState.MAX_POINTERS];
+    private final MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[PointersState.MAX_POINTERS];
+
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < PointersState.MAX_POINTERS; ++i) {
+            props[i] = new MotionEvent.PointerProperties();
+            coords[i] = new MotionEvent.PointerCoords();
+        }
+    }
+
+    private void moveAll(int count) {
+        ++frame;
+        for (int i = 0; i < count; ++i) {
+            // Arbitrary ids, like those sent by the client
+            int index = pointersState.getPointerIndex(1000 + i);
+            pointersState.setPoint(index, 100 + i * 50 + frame % 100, 200 + i * 50);
+            pointersState.setPressure(index, 1f);
+            pointersState.setUp(index, false);
+        }
+    }
+
+    @Benchmark
+    public int move() {
+        moveAll(pointerCount);
+        return pointersState.update(props, coords);
+    }
+
+    @Benchmark
+    public int gesture() {
+        moveAll(pointerCount - 1);
+        int index = pointersState.getPointerIndex(1000 + pointerCount - 1);
+        pointersState.setPoint(index, 500, 500);
+        pointersState.setUp(index, true);
+        return pointersState.update(props, coords);
+    }
+
+    private void moveAllList(int count) {
+        ++frame;
+        for (int i = 0; i < count; ++i) {
+            ListPointersState.Pointer pointer = listPointersState.get(listPointersState.getPointerIndex(1000 + i));
+            pointer.setPoint(new Point(100 + i * 50 + frame % 100, 200 + i * 50));
+            pointer.setPressure(1f);
+            pointer.setUp(false);
+        }
+    }
+
+    @Benchmark
+    public int moveList() {
+        moveAllList(pointerCount);
+        return listPointersState.update(props, coords);
+    }
+
+    @Benchmark
+    public int gestureList() {
+        moveAllList(pointerCount - 1);
+        ListPointersState.Pointer pointer = listPointersState.get(listPointersState.getPointerIndex(1000 + pointerCount - 1));
+        pointer.setPoint(new Point(500, 500));
+        pointer.setUp(true);
+        return listPointersState.update(props, coords);
+    }
+}
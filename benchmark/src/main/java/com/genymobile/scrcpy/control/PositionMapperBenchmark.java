@@ -0,0 +1,53 @@
+package com.genymobile.scrcpy.control;
+
+import com.genymobile.scrcpy.device.Point;
+import com.genymobile.scrcpy.device.Position;
+import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.util.AffineMatrix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Map the client positions to device positions, with a scaled video (and optionally a filter transform, like a crop or a rotation).
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PositionMapperBenchmark {
+
+    @Param({"false", "true"})
+    public boolean filter;
+
+    private final Size videoSize = new Size(720, 1280);
+    private PositionMapper mapper;
+
+    private final Position position = new Position(360, 640, 720, 1280);
+    private final int[] out = new int[2];
+
+    @Setup
+    public void setUp() {
+        AffineMatrix filterTransform = filter ? AffineMatrix.rotateOrtho(1).multiply(AffineMatrix.reframe(0.1, 0.1, 0.8, 0.8)) : null;
+        mapper = PositionMapper.create(videoSize, filterTransform, new Size(1080, 1920));
+    }
+
+    @Benchmark
+    public Point map() {
+        return mapper.map(position);
+    }
+
+    @Benchmark
+    public int[] mapNoAlloc() {
+        if (mapper.accepts(720, 1280)) {
+            mapper.map(360, 640, out);
+        }
+        return out;
+    }
+}
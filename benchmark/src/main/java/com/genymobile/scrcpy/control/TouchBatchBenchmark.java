@@ -0,0 +1,143 @@
+package com.genymobile.scrcpy.control;
+
+import com.genymobile.scrcpy.benchmark.CyclicInputStream;
+import com.genymobile.scrcpy.device.Point;
+import com.genymobile.scrcpy.device.Size;
+
+import android.view.MotionEvent;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Handle one input frame of a multi-touch gesture (all the pointers move), like the Controller does, up to the injection (replaced by a
+ * counter, the fake injector):
+ * <ul>
+ *     <li>{@code touchEvents}: one touch event message per pointer, each one injected as a separate motion event;</li>
+ *     <li>{@code touchBatch}: one touch batch message for all the pointers, injected as a single motion event.</li>
+ * </ul>
+ * The injections per frame are the ratio of the "injections" secondary result and the throughput.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TouchBatchBenchmark {
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Injector {
+        public long injections;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            injections = 0;
+        }
+
+        void inject(int pointerCount) {
+            assert pointerCount > 0;
+            ++injections;
+        }
+    }
+
+    private static final int VIDEO_WIDTH = 720;
+    private static final int VIDEO_HEIGHT = 1280;
+
+    @Param({"2", "5"})
+    public int pointerCount;
+
+    private final PositionMapper positionMapper = PositionMapper.create(new Size(VIDEO_WIDTH, VIDEO_HEIGHT), null, new Size(1080, 1920));
+    private final PointersState pointersState = new PointersState();
+    private final MotionEvent.PointerProperties[] pointerProperties = new MotionEvent.PointerProperties[PointersState.MAX_POINTERS];
+    private final MotionEvent.PointerCoords[] pointerCoords = new MotionEvent.PointerCoords[PointersState.MAX_POINTERS];
+    private final int[] batchPoint = new int[2];
+
+    private ControlMessageReader touchEventReader;
+    private ControlMessageReader touchBatchReader;
+    private final ControlMessage msg = new ControlMessage();
+
+    @Setup
+    public void setUp() throws IOException {
+        for (int i = 0; i < PointersState.MAX_POINTERS; ++i) {
+            pointerProperties[i] = new MotionEvent.PointerProperties();
+            pointerCoords[i] = new MotionEvent.PointerCoords();
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        for (int i = 0; i < pointerCount; ++i) {
+            dos.writeByte(ControlMessage.TYPE_INJECT_TOUCH_EVENT);
+            dos.writeByte(MotionEvent.ACTION_MOVE);
+            dos.writeLong(i); // pointer id
+            dos.writeInt(100 + i * 50);
+            dos.writeInt(200 + i * 50);
+            dos.writeShort(VIDEO_WIDTH);
+            dos.writeShort(VIDEO_HEIGHT);
+            dos.writeShort(0xFFFF); // pressure
+            dos.writeInt(0); // action button
+            dos.writeInt(0); // buttons
+        }
+        touchEventReader = new ControlMessageReader(new CyclicInputStream(bos.toByteArray()));
+
+        bos.reset();
+        dos.writeByte(ControlMessage.TYPE_INJECT_TOUCH_BATCH);
+        dos.writeByte(MotionEvent.ACTION_MOVE);
+        dos.writeByte(0); // action index
+        dos.writeShort(VIDEO_WIDTH);
+        dos.writeShort(VIDEO_HEIGHT);
+        dos.writeByte(pointerCount);
+        for (int i = 0; i < pointerCount; ++i) {
+            dos.writeLong(i); // pointer id
+            dos.writeInt(100 + i * 50);
+            dos.writeInt(200 + i * 50);
+            dos.writeShort(0xFFFF); // pressure
+        }
+        touchBatchReader = new ControlMessageReader(new CyclicInputStream(bos.toByteArray()));
+    }
+
+    @Benchmark
+    public void touchEvents(Injector injector) throws IOException {
+        for (int i = 0; i < pointerCount; ++i) {
+            touchEventReader.read(msg);
+            // As in Controller.injectTouch()
+            Point point = positionMapper.map(msg.getPosition());
+            int pointerIndex = pointersState.getPointerIndex(msg.getPointerId());
+            pointersState.setPoint(pointerIndex, point.getX(), point.getY());
+            pointersState.setPressure(pointerIndex, msg.getPressure());
+            pointerProperties[pointerIndex].toolType = MotionEvent.TOOL_TYPE_FINGER;
+            pointersState.setUp(pointerIndex, msg.getAction() == MotionEvent.ACTION_UP);
+            injector.inject(pointersState.update(pointerProperties, pointerCoords));
+        }
+    }
+
+    @Benchmark
+    public void touchBatch(Injector injector) throws IOException {
+        touchBatchReader.read(msg);
+        // As in Controller.injectTouchBatch()
+        if (!positionMapper.accepts(msg.getScreenWidth(), msg.getScreenHeight())) {
+            throw new AssertionError();
+        }
+        int count = msg.getBatchPointerCount();
+        for (int i = 0; i < count; ++i) {
+            int pointerIndex = pointersState.getPointerIndex(msg.getBatchPointerId(i));
+            positionMapper.map(msg.getBatchX(i), msg.getBatchY(i), batchPoint);
+            pointersState.setPoint(pointerIndex, batchPoint[0], batchPoint[1]);
+            pointersState.setPressure(pointerIndex, msg.getBatchPressure(i));
+            pointersState.setUp(pointerIndex, msg.getAction() == MotionEvent.ACTION_UP);
+            pointerProperties[pointerIndex].toolType = MotionEvent.TOOL_TYPE_FINGER;
+        }
+        injector.inject(pointersState.update(pointerProperties, pointerCoords));
+    }
+}
@@ -0,0 +1,76 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.benchmark.CountingChannel;
+import com.genymobile.scrcpy.benchmark.CountingGatheringChannel;
+import com.genymobile.scrcpy.benchmark.SyscallCounter;
+import com.genymobile.scrcpy.video.VideoCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Write packets with their frame meta header to /dev/null, with a single gathering write ({@code gathering}) or with a write for the header
+ * and another one for the payload ({@code separate}, the fallback for the channels not supporting gathering writes).
+ * <p>
+ * The system calls per packet are the ratio of the "syscalls" secondary result and the throughput. At a given packet rate (100, 1000 or
+ * 10000 packets per second), the CPU time and the system calls per second are the per-packet costs multiplied by the rate.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PacketFramingBenchmark {
+
+    // An Opus frame (20 ms at 64 kbps), a P-frame of a static screen, a P-frame of a moving screen
+    @Param({"160", "1024", "16384"})
+    public int packetSize;
+
+    private FileOutputStream out;
+    private CountingGatheringChannel gatheringChannel;
+    private CountingChannel channel;
+    private Streamer gatheringStreamer;
+    private Streamer streamer;
+    private ByteBuffer packet;
+    private long pts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        out = new FileOutputStream("/dev/null");
+        gatheringChannel = new CountingGatheringChannel(out.getChannel());
+        channel = new CountingChannel(out.getChannel());
+        gatheringStreamer = new Streamer(gatheringChannel, VideoCodec.H264, true, true);
+        streamer = new Streamer(channel, VideoCodec.H264, true, true);
+        packet = ByteBuffer.allocateDirect(packetSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        out.close();
+    }
+
+    @Benchmark
+    public void gathering(SyscallCounter counter) throws IOException {
+        gatheringChannel.setCounter(counter);
+        packet.clear();
+        gatheringStreamer.writePacket(packet, ++pts, false, false);
+    }
+
+    @Benchmark
+    public void separate(SyscallCounter counter) throws IOException {
+        channel.setCounter(counter);
+        packet.clear();
+        streamer.writePacket(packet, ++pts, false, false);
+    }
+}
@@ -0,0 +1,105 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.audio.AudioCodec;
+import com.genymobile.scrcpy.benchmark.NullChannel;
+import com.genymobile.scrcpy.video.VideoCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Write media packets (in direct buffers, like the MediaCodec output buffers), with and without the frame meta header, and fix up the
+ * Opus and FLAC config packets.
+ * <p>
+ * The channel discards the bytes, so that only the cost of the streamer is measured.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StreamerBenchmark {
+
+    @Param({"true", "false"})
+    public boolean frameMeta;
+
+    /**
+     * The media packet, in its own state so that its size is not a parameter of the config packet benchmarks.
+     */
+    @State(Scope.Thread)
+    public static class MediaPacket {
+        @Param({"256", "65536"})
+        public int packetSize;
+
+        private ByteBuffer buffer;
+        private long pts;
+
+        @Setup
+        public void setUp() {
+            buffer = ByteBuffer.allocateDirect(packetSize);
+        }
+    }
+
+    private Streamer videoStreamer;
+    private Streamer opusStreamer;
+    private Streamer flacStreamer;
+
+    private ByteBuffer opusConfig;
+    private ByteBuffer flacConfig;
+    private int opusConfigSize;
+    private int flacConfigSize;
+
+    @Setup
+    public void setUp() {
+        NullChannel channel = new NullChannel();
+        videoStreamer = new Streamer(channel, VideoCodec.H264, true, frameMeta);
+        opusStreamer = new Streamer(channel, AudioCodec.OPUS, true, frameMeta);
+        flacStreamer = new Streamer(channel, AudioCodec.FLAC, true, frameMeta);
+
+        // See the examples in Streamer.fixOpusConfigPacket() and Streamer.fixFlacConfigPacket()
+        opusConfig = ByteBuffer.allocateDirect(64).order(ByteOrder.nativeOrder()); // the size is in native byte order
+        opusConfig.put("AOPUSHDR".getBytes(StandardCharsets.US_ASCII));
+        opusConfig.putLong(19);
+        opusConfig.put("OpusHead".getBytes(StandardCharsets.US_ASCII));
+        opusConfig.put(new byte[11]);
+        opusConfig.flip();
+        opusConfigSize = opusConfig.limit();
+
+        flacConfig = ByteBuffer.allocateDirect(64);
+        flacConfig.put("fLaC".getBytes(StandardCharsets.US_ASCII));
+        flacConfig.putInt(34);
+        flacConfig.put(new byte[34]);
+        flacConfig.flip();
+        flacConfigSize = flacConfig.limit();
+    }
+
+    @Benchmark
+    public void writePacket(MediaPacket packet) throws IOException {
+        packet.buffer.clear();
+        videoStreamer.writePacket(packet.buffer, ++packet.pts, false, false);
+    }
+
+    @Benchmark
+    public void writeOpusConfigPacket() throws IOException {
+        // The streamer consumes the buffer, and the fix-up changes its limit (and the FLAC one its byte order)
+        opusConfig.position(0).limit(opusConfigSize);
+        opusConfig.order(ByteOrder.nativeOrder());
+        opusStreamer.writePacket(opusConfig, 0, true, false);
+    }
+
+    @Benchmark
+    public void writeFlacConfigPacket() throws IOException {
+        flacConfig.position(0).limit(flacConfigSize);
+        flacStreamer.writePacket(flacConfig, 0, true, false);
+    }
+}
@@ -0,0 +1,50 @@
+package com.genymobile.scrcpy.util;
+
+import com.genymobile.scrcpy.device.Point;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compose, invert and apply the kind of matrices built for the video filters and the position mapping.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AffineMatrixBenchmark {
+
+    private final AffineMatrix rotation = AffineMatrix.rotate(30);
+    private final AffineMatrix reframe = AffineMatrix.reframe(0.1, 0.1, 0.8, 0.8);
+    private final AffineMatrix videoToDevice = AffineMatrix.scale(1080.0 / 720, 1920.0 / 1280).multiply(AffineMatrix.hflip());
+
+    private final Point point = new Point(360, 640);
+    private final int[] out = new int[2];
+    private int x;
+
+    @Benchmark
+    public AffineMatrix multiply() {
+        return rotation.multiply(reframe);
+    }
+
+    @Benchmark
+    public AffineMatrix invert() {
+        return rotation.invert();
+    }
+
+    @Benchmark
+    public Point applyPoint() {
+        return videoToDevice.apply(point);
+    }
+
+    @Benchmark
+    public int[] applyNoAlloc() {
+        x = (x + 1) & 0x1FF;
+        videoToDevice.apply(x, 640, out);
+        return out;
+    }
+}
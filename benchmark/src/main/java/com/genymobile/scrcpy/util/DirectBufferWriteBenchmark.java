@@ -0,0 +1,73 @@
+package com.genymobile.scrcpy.util;
+
+import com.genymobile.scrcpy.benchmark.CountingChannel;
+import com.genymobile.scrcpy.benchmark.CountingOutputStream;
+import com.genymobile.scrcpy.benchmark.SyscallCounter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Write a video frame in a direct buffer (like a MediaCodec output buffer) to /dev/null:
+ * <ul>
+ *     <li>{@code outputStream}: through an {@link java.io.OutputStream} which is not a {@link FileOutputStream}, so the buffer is copied
+ *     through a temporary {@code byte[]} in 4 KiB chunks (the path of every codec buffer before the streams were replaced by channels);</li>
+ *     <li>{@code channel}: through a channel, which writes the direct buffer without copy.</li>
+ * </ul>
+ * The bytes per second are the throughput multiplied by the frame size, and the system calls per frame are the ratio of the "syscalls"
+ * secondary result and the throughput.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DirectBufferWriteBenchmark {
+
+    // A P-frame, and a key frame at a high bitrate
+    @Param({"16384", "262144"})
+    public int frameSize;
+
+    private FileOutputStream out;
+    private CountingOutputStream countingStream;
+    private CountingChannel countingChannel;
+    private ByteBuffer frame;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        out = new FileOutputStream("/dev/null");
+        countingStream = new CountingOutputStream(out);
+        countingChannel = new CountingChannel(out.getChannel());
+        frame = ByteBuffer.allocateDirect(frameSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        out.close();
+    }
+
+    @Benchmark
+    public void outputStream(SyscallCounter counter) throws IOException {
+        countingStream.setCounter(counter);
+        frame.clear();
+        IO.writeFully(countingStream, frame);
+    }
+
+    @Benchmark
+    public void channel(SyscallCounter counter) throws IOException {
+        countingChannel.setCounter(counter);
+        frame.clear();
+        IO.writeFully(countingChannel, frame);
+    }
+}
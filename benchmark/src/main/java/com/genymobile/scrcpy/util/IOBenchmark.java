@@ -0,0 +1,64 @@
+package com.genymobile.scrcpy.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Write heap and direct buffers fully to /dev/null, through a channel and through a file descriptor.
+ * <p>
+ * On a desktop JVM, the file descriptor path goes through the {@code android.system.Os} stub (itself backed by a {@link FileChannel}), so
+ * only the relative cost of the heap and direct buffers is meaningful for this path.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IOBenchmark {
+
+    @Param({"heap", "direct"})
+    public String bufferType;
+
+    @Param({"256", "65536"})
+    public int size;
+
+    private FileOutputStream out;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        out = new FileOutputStream("/dev/null");
+        channel = out.getChannel();
+        buffer = "direct".equals(bufferType) ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        out.close();
+    }
+
+    @Benchmark
+    public void writeFullyChannel() throws IOException {
+        buffer.clear();
+        IO.writeFully(channel, buffer);
+    }
+
+    @Benchmark
+    public void writeFullyFd() throws IOException {
+        buffer.clear();
+        IO.writeFully(out.getFD(), buffer);
+    }
+}
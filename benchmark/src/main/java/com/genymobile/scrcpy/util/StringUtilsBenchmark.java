@@ -0,0 +1,45 @@
+package com.genymobile.scrcpy.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Find the truncation index of a UTF-8 text (like a clipboard text), in the worst case: the limit falls in a multi-byte character.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StringUtilsBenchmark {
+
+    @Param({"ascii", "multibyte"})
+    public String text;
+
+    private byte[] utf8;
+    private int maxLength;
+
+    @Setup
+    public void setUp() {
+        String unit = "ascii".equals(text) ? "abcd" : "\u20ac\ud83d\ude00"; // euro sign (3 bytes), emoji (4 bytes)
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            builder.append(unit);
+        }
+        utf8 = builder.toString().getBytes(StandardCharsets.UTF_8);
+        // In the middle of the last character before the limit
+        maxLength = utf8.length / 2 + 2;
+    }
+
+    @Benchmark
+    public int getUtf8TruncationIndex() {
+        return StringUtils.getUtf8TruncationIndex(utf8, maxLength);
+    }
+}
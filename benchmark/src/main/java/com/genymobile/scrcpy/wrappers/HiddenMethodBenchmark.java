@@ -0,0 +1,82 @@
+package com.genymobile.scrcpy.wrappers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * Call a method with the signature of {@code InputManager.injectInputEvent(InputEvent, int)} on a stub:
+ * <ul>
+ *     <li>{@code methodInvoke}: {@link Method#invoke(Object, Object...)} with a new varargs array (the previous wrappers);</li>
+ *     <li>{@code hiddenMethod}: {@link HiddenMethod#invoke(Object, Object[])} with the reused arguments array;</li>
+ *     <li>{@code methodHandle}: {@link MethodHandle#invokeExact(Object...)}, for reference only (rejected by d8 below API 26).</li>
+ * </ul>
+ * The injection modes are small integers, so their boxing does not allocate (they come from the {@link Integer} cache).
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HiddenMethodBenchmark {
+
+    public static class InputEvent {
+        // empty
+    }
+
+    public static class StubInputManager {
+        private int injected;
+
+        public boolean injectInputEvent(InputEvent event, int mode) {
+            injected += mode;
+            return event != null;
+        }
+    }
+
+    private final StubInputManager manager = new StubInputManager();
+    private final InputEvent event = new InputEvent();
+    private int mode;
+
+    private Method method;
+    private final HiddenMethod hiddenMethod = new HiddenMethod(StubInputManager.class, "injectInputEvent", InputEvent.class, int.class);
+    private MethodHandle methodHandle;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        method = StubInputManager.class.getMethod("injectInputEvent", InputEvent.class, int.class);
+        hiddenMethod.resolve();
+        methodHandle = MethodHandles.publicLookup().findVirtual(StubInputManager.class, "injectInputEvent",
+                MethodType.methodType(boolean.class, InputEvent.class, int.class));
+    }
+
+    private int nextMode() {
+        mode = (mode + 1) % 3;
+        return mode;
+    }
+
+    @Benchmark
+    public boolean methodInvoke() throws ReflectiveOperationException {
+        return (boolean) method.invoke(manager, event, nextMode());
+    }
+
+    @Benchmark
+    public boolean hiddenMethod() throws ReflectiveOperationException {
+        Object[] args = hiddenMethod.args();
+        args[0] = event;
+        args[1] = nextMode();
+        return (boolean) hiddenMethod.invoke(manager, args);
+    }
+
+    @Benchmark
+    public boolean methodHandle() throws Throwable {
+        return (boolean) methodHandle.invokeExact(manager, event, nextMode());
+    }
+}
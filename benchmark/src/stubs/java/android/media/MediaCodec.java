@@ -0,0 +1,33 @@
+package android.media;
+
+/**
+ * Stub of the Android class, for the benchmarks on a desktop JVM.
+ */
+public final class MediaCodec {
+
+    public static final int BUFFER_FLAG_KEY_FRAME = 1;
+    public static final int BUFFER_FLAG_CODEC_CONFIG = 2;
+    public static final int BUFFER_FLAG_END_OF_STREAM = 4;
+
+    private MediaCodec() {
+        // not instantiable
+    }
+
+    public MediaCodecInfo getCodecInfo() {
+        throw new UnsupportedOperationException("No codec on a desktop JVM");
+    }
+
+    public static final class BufferInfo {
+        public int offset;
+        public int size;
+        public long presentationTimeUs;
+        public int flags;
+
+        public void set(int newOffset, int newSize, long newTimeUs, int newFlags) {
+            offset = newOffset;
+            size = newSize;
+            presentationTimeUs = newTimeUs;
+            flags = newFlags;
+        }
+    }
+}
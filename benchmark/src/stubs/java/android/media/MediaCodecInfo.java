@@ -0,0 +1,15 @@
+package android.media;
+
+/**
+ * Stub of the Android class, for the benchmarks on a desktop JVM.
+ */
+public final class MediaCodecInfo {
+
+    private MediaCodecInfo() {
+        // not instantiable
+    }
+
+    public String[] getSupportedTypes() {
+        return new String[0];
+    }
+}
@@ -0,0 +1,19 @@
+package android.media;
+
+/**
+ * Stub of the Android class, for the benchmarks on a desktop JVM.
+ */
+public final class MediaFormat {
+
+    public static final String MIMETYPE_VIDEO_AVC = "video/avc";
+    public static final String MIMETYPE_VIDEO_HEVC = "video/hevc";
+    public static final String MIMETYPE_VIDEO_AV1 = "video/av01";
+    public static final String MIMETYPE_AUDIO_OPUS = "audio/opus";
+    public static final String MIMETYPE_AUDIO_AAC = "audio/mp4a-latm";
+    public static final String MIMETYPE_AUDIO_FLAC = "audio/flac";
+    public static final String MIMETYPE_AUDIO_RAW = "audio/raw";
+
+    private MediaFormat() {
+        // not instantiable
+    }
+}
@@ -0,0 +1,47 @@
+package android.os;
+
+/**
+ * Stub of the Android class, for the benchmarks on a desktop JVM.
+ */
+public final class Build {
+
+    public static final String MANUFACTURER = "benchmark";
+    public static final String BRAND = "benchmark";
+    public static final String MODEL = "jvm";
+
+    private Build() {
+        // not instantiable
+    }
+
+    public static final class VERSION {
+        // Behave like a recent device
+        public static final int SDK_INT = VERSION_CODES.VANILLA_ICE_CREAM;
+        public static final String RELEASE = "15";
+
+        private VERSION() {
+            // not instantiable
+        }
+    }
+
+    public static final class VERSION_CODES {
+        public static final int LOLLIPOP = 21;
+        public static final int LOLLIPOP_MR1 = 22;
+        public static final int M = 23;
+        public static final int N = 24;
+        public static final int N_MR1 = 25;
+        public static final int O = 26;
+        public static final int O_MR1 = 27;
+        public static final int P = 28;
+        public static final int Q = 29;
+        public static final int R = 30;
+        public static final int S = 31;
+        public static final int S_V2 = 32;
+        public static final int TIRAMISU = 33;
+        public static final int UPSIDE_DOWN_CAKE = 34;
+        public static final int VANILLA_ICE_CREAM = 35;
+
+        private VERSION_CODES() {
+            // not instantiable
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package android.system;
+
+/**
+ * Stub of the Android class, for the benchmarks on a desktop JVM.
+ */
+public final class ErrnoException extends Exception {
+
+    public final int errno;
+
+    public ErrnoException(String functionName, int errno) {
+        super(functionName + " failed: errno " + errno);
+        this.errno = errno;
+    }
+
+    public ErrnoException(String functionName, int errno, Throwable cause) {
+        super(functionName + " failed: errno " + errno, cause);
+        this.errno = errno;
+    }
+}
@@ -0,0 +1,75 @@
+package android.system;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Stub of the Android class, for the benchmarks on a desktop JVM.
+ * <p>
+ * The writes go through a {@link FileChannel} created once per file descriptor, so that the stub does not allocate on the measured paths
+ * (except for wrapping the {@code byte[]} elements passed to {@link #writev(FileDescriptor, Object[], int[], int[])}).
+ */
+public final class Os {
+
+    private static final Map<FileDescriptor, FileChannel> CHANNELS = new IdentityHashMap<>();
+
+    private Os() {
+        // not instantiable
+    }
+
+    private static synchronized FileChannel getChannel(FileDescriptor fd) {
+        FileChannel channel = CHANNELS.get(fd);
+        if (channel == null) {
+            // Never closed: the file descriptor is owned by the caller
+            channel = new FileOutputStream(fd).getChannel();
+            CHANNELS.put(fd, channel);
+        }
+        return channel;
+    }
+
+    public static int write(FileDescriptor fd, ByteBuffer buffer) throws ErrnoException {
+        try {
+            return getChannel(fd).write(buffer);
+        } catch (IOException e) {
+            throw new ErrnoException("write", OsConstants.EIO, e);
+        }
+    }
+
+    public static int write(FileDescriptor fd, byte[] bytes, int byteOffset, int byteCount) throws ErrnoException {
+        return write(fd, ByteBuffer.wrap(bytes, byteOffset, byteCount));
+    }
+
+    /**
+     * Like the Android implementation, the buffer positions are ignored (the offsets are passed explicitly) and not updated.
+     */
+    public static int writev(FileDescriptor fd, Object[] buffers, int[] offsets, int[] byteCounts) throws ErrnoException {
+        FileChannel channel = getChannel(fd);
+        int total = 0;
+        try {
+            for (int i = 0; i < buffers.length; ++i) {
+                Object buffer = buffers[i];
+                if (buffer instanceof ByteBuffer) {
+                    ByteBuffer byteBuffer = (ByteBuffer) buffer;
+                    int position = byteBuffer.position();
+                    int limit = byteBuffer.limit();
+                    byteBuffer.limit(offsets[i] + byteCounts[i]).position(offsets[i]);
+                    try {
+                        total += channel.write(byteBuffer);
+                    } finally {
+                        byteBuffer.limit(limit).position(position);
+                    }
+                } else {
+                    total += channel.write(ByteBuffer.wrap((byte[]) buffer, offsets[i], byteCounts[i]));
+                }
+            }
+        } catch (IOException e) {
+            throw new ErrnoException("writev", OsConstants.EIO, e);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,17 @@
+package android.system;
+
+/**
+ * Stub of the Android class, for the benchmarks on a desktop JVM (Linux values).
+ */
+public final class OsConstants {
+
+    public static final int EINTR = 4;
+    public static final int EIO = 5;
+    public static final int EAGAIN = 11;
+    public static final int EPIPE = 32;
+    public static final int ECONNRESET = 104;
+
+    private OsConstants() {
+        // not instantiable
+    }
+}
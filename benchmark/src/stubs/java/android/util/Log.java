@@ -0,0 +1,31 @@
+package android.util;
+
+/**
+ * Stub of the Android class, for the benchmarks on a desktop JVM (the logs are discarded).
+ */
+public final class Log {
+
+    private Log() {
+        // not instantiable
+    }
+
+    public static int v(String tag, String msg) {
+        return 0;
+    }
+
+    public static int d(String tag, String msg) {
+        return 0;
+    }
+
+    public static int i(String tag, String msg) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+}
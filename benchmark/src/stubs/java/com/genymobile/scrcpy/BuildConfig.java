@@ -0,0 +1,13 @@
+package com.genymobile.scrcpy;
+
+/**
+ * Replacement of the class generated by the Android build, for the benchmarks on a desktop JVM.
+ */
+public final class BuildConfig {
+    public static final boolean DEBUG = false;
+    public static final String VERSION_NAME = "benchmark";
+
+    private BuildConfig() {
+        // not instantiable
+    }
+}
@@ -19,6 +19,9 @@ import java.io.OutputStream;
  * Handle the cleanup of scrcpy, even if the main process is killed.
  * <p>
  * This is useful to restore some state when scrcpy is closed, even on device disconnection (which kills the scrcpy process).
+ * <p>
+ * In daemon mode, the server process survives the session, so the state is restored as soon as the clean up is interrupted (the server
+ * file is also kept, it is needed to start the clean up process of the next sessions).
  */
 public final class CleanUp {
 
@@ -27,16 +30,26 @@ public final class CleanUp {
     private int pendingChanges;
     private boolean pendingRestoreDisplayPower;
 
+    private final boolean daemon;
+
     private Thread thread;
     private boolean interrupted;
 
-    private CleanUp(Options options) {
+    private CleanUp(Options options, boolean daemon) {
+        this.daemon = daemon;
         thread = new Thread(() -> runCleanUp(options), "cleanup");
         thread.start();
     }
 
     public static CleanUp start(Options options) {
-        return new CleanUp(options);
+        return start(options, false);
+    }
+
+    /**
+     * @param daemon if {@code true}, restore the state when the clean up is interrupted rather than when the server process dies
+     */
+    public static CleanUp start(Options options, boolean daemon) {
+        return new CleanUp(options, daemon);
     }
 
     public synchronized void interrupt() {
@@ -134,6 +147,7 @@ public final class CleanUp {
                 String.valueOf(powerOffScreen),
                 String.valueOf(restoreScreenOffTimeout),
                 String.valueOf(restoreDisplayImePolicy),
+                String.valueOf(!daemon), // unlink the server
         };
 
         ProcessBuilder builder = new ProcessBuilder(cmd);
@@ -164,6 +178,17 @@ public final class CleanUp {
                 out.flush();
             }
         }
+
+        if (daemon) {
+            // The server process does not die at the end of the session, signal the clean up process explicitly
+            out.close();
+            try {
+                // The next session must not start before the state is restored
+                process.waitFor();
+            } catch (InterruptedException e) {
+                throw new AssertionError("Clean up thread MUST NOT be interrupted");
+            }
+        }
     }
 
     public synchronized void setRestoreDisplayPower(boolean restoreDisplayPower) {
@@ -192,7 +217,10 @@ public final class CleanUp {
         } catch (ErrnoException e) {
             Ln.e("setsid() failed", e);
         }
-        unlinkSelf();
+        boolean unlinkServer = Boolean.parseBoolean(args[6]);
+        if (unlinkServer) {
+            unlinkSelf();
+        }
 
         // Needed for workarounds
         prepareMainLooper();
@@ -2,9 +2,12 @@ package com.genymobile.scrcpy;
 
 import com.genymobile.scrcpy.audio.AudioCodec;
 import com.genymobile.scrcpy.audio.AudioSource;
+import com.genymobile.scrcpy.control.ControlMessageReader;
+import com.genymobile.scrcpy.control.PointersState;
 import com.genymobile.scrcpy.device.Device;
 import com.genymobile.scrcpy.device.NewDisplay;
 import com.genymobile.scrcpy.device.Orientation;
+import com.genymobile.scrcpy.device.RtpSender;
 import com.genymobile.scrcpy.device.Size;
 import com.genymobile.scrcpy.util.CodecOption;
 import com.genymobile.scrcpy.util.Ln;
@@ -48,6 +51,26 @@ public class Options {
     private boolean cameraHighSpeed;
     private String forwardH264CameraAddr;
     private int forwardH264CameraPort;
+    private boolean forwardH264CameraDup; // if set, the forwarded stream is sent in addition to the scrcpy client stream
+    private boolean forwardH264CameraListen; // if set, listen on the forward address and port instead of connecting
+    private int videoSocketSendBuffer; // SO_SNDBUF of the forward sockets, 0 for the system default
+    private String videoRtpAddr; // if set, also send the video stream over RTP/UDP
+    private int videoRtpPort;
+    private int videoRtpPacketSize = 1400; // max RTP packet size, including the RTP header
+    private int videoSendQueue; // in packets, 0 to write packets from the encoding thread
+    private int videoGopCacheSize = 4 * 1024 * 1024; // in bytes, replayed to late video subscribers
+    private int statsPeriod; // in milliseconds, 0 to disable stats
+    private int replayBufferSize; // in bytes, 0 to disable the replay buffer
+    private int maxPointers = PointersState.MAX_POINTERS; // max simultaneous touch pointers
+    private int textPasteThreshold; // in chars, longer injected texts are pasted via the clipboard, 0 to always inject key events
+    private int inputStatsSampleInterval; // in events, inject one event every N synchronously to measure the round-trip, 0 to disable
+    private int clipboardChunkSize; // in bytes, the device clipboard is sent in chunks of this size, 0 to send it in a single message
+    private int clipboardMaxSize = 16 * 1024 * 1024; // in bytes, the maximum size of a clipboard received in chunks
+    private int clipboardCompressionThreshold; // in bytes, longer device clipboard texts are sent compressed, 0 to disable
+    private String controlRecord; // if set, the raw control stream is recorded to this file
+    private String controlReplay; // if set, the control stream is read from this file (recorded with control_record) instead of the client
+    private float controlReplaySpeed = 1; // 0 to replay as fast as possible
+    private boolean daemon; // if set, the server stays resident and serves a new session for each client connection
     private boolean showTouches;
     private boolean stayAwake;
     private int screenOffTimeout = -1;
@@ -186,6 +209,86 @@ public class Options {
         return forwardH264CameraPort;
     }
 
+    public boolean getForwardH264CameraDup() {
+        return forwardH264CameraDup;
+    }
+
+    public boolean getForwardH264CameraListen() {
+        return forwardH264CameraListen;
+    }
+
+    public int getVideoSocketSendBuffer() {
+        return videoSocketSendBuffer;
+    }
+
+    public String getVideoRtpAddr() {
+        return videoRtpAddr;
+    }
+
+    public int getVideoRtpPort() {
+        return videoRtpPort;
+    }
+
+    public int getVideoRtpPacketSize() {
+        return videoRtpPacketSize;
+    }
+
+    public int getVideoSendQueue() {
+        return videoSendQueue;
+    }
+
+    public int getVideoGopCacheSize() {
+        return videoGopCacheSize;
+    }
+
+    public int getReplayBufferSize() {
+        return replayBufferSize;
+    }
+
+    public int getStatsPeriod() {
+        return statsPeriod;
+    }
+
+    public int getMaxPointers() {
+        return maxPointers;
+    }
+
+    public int getTextPasteThreshold() {
+        return textPasteThreshold;
+    }
+
+    public int getInputStatsSampleInterval() {
+        return inputStatsSampleInterval;
+    }
+
+    public int getClipboardChunkSize() {
+        return clipboardChunkSize;
+    }
+
+    public int getClipboardMaxSize() {
+        return clipboardMaxSize;
+    }
+
+    public int getClipboardCompressionThreshold() {
+        return clipboardCompressionThreshold;
+    }
+
+    public String getControlRecord() {
+        return controlRecord;
+    }
+
+    public String getControlReplay() {
+        return controlReplay;
+    }
+
+    public float getControlReplaySpeed() {
+        return controlReplaySpeed;
+    }
+
+    public boolean getDaemon() {
+        return daemon;
+    }
+
     public boolean getShowTouches() {
         return showTouches;
     }
@@ -482,6 +585,120 @@ public class Options {
                 case "forward_h264_camera_port":
                     options.forwardH264CameraPort = Integer.parseInt(value);
                     break;
+                case "forward_h264_camera_dup":
+                    options.forwardH264CameraDup = Boolean.parseBoolean(value);
+                    break;
+                case "forward_h264_camera_listen":
+                    options.forwardH264CameraListen = Boolean.parseBoolean(value);
+                    break;
+                case "video_socket_send_buffer":
+                    int videoSocketSendBuffer = Integer.parseInt(value);
+                    if (videoSocketSendBuffer < 0) {
+                        throw new IllegalArgumentException("Invalid video socket send buffer size: " + videoSocketSendBuffer);
+                    }
+                    options.videoSocketSendBuffer = videoSocketSendBuffer;
+                    break;
+                case "video_rtp_addr":
+                    if (!value.isEmpty()) {
+                        options.videoRtpAddr = value;
+                    }
+                    break;
+                case "video_rtp_port":
+                    options.videoRtpPort = Integer.parseInt(value);
+                    break;
+                case "video_rtp_packet_size":
+                    options.videoRtpPacketSize = Integer.parseInt(value);
+                    break;
+                case "video_send_queue":
+                    int videoSendQueue = Integer.parseInt(value);
+                    if (videoSendQueue != 0 && videoSendQueue < 2) {
+                        throw new IllegalArgumentException("Invalid video send queue size: " + videoSendQueue);
+                    }
+                    options.videoSendQueue = videoSendQueue;
+                    break;
+                case "video_gop_cache_size":
+                    int videoGopCacheSize = Integer.parseInt(value);
+                    if (videoGopCacheSize < 0) {
+                        throw new IllegalArgumentException("Invalid video GOP cache size: " + videoGopCacheSize);
+                    }
+                    options.videoGopCacheSize = videoGopCacheSize;
+                    break;
+                case "replay_buffer_size":
+                    int replayBufferSize = Integer.parseInt(value);
+                    if (replayBufferSize < 0) {
+                        throw new IllegalArgumentException("Invalid replay buffer size: " + replayBufferSize);
+                    }
+                    options.replayBufferSize = replayBufferSize;
+                    break;
+                case "stats_period":
+                    int statsPeriod = Integer.parseInt(value);
+                    if (statsPeriod < 0) {
+                        throw new IllegalArgumentException("Invalid stats period: " + statsPeriod);
+                    }
+                    options.statsPeriod = statsPeriod;
+                    break;
+                case "max_pointers":
+                    int maxPointers = Integer.parseInt(value);
+                    if (maxPointers < 1 || maxPointers > PointersState.MAX_SUPPORTED_POINTERS) {
+                        throw new IllegalArgumentException("Invalid max pointers: " + maxPointers);
+                    }
+                    options.maxPointers = maxPointers;
+                    break;
+                case "text_paste_threshold":
+                    int textPasteThreshold = Integer.parseInt(value);
+                    if (textPasteThreshold < 0) {
+                        throw new IllegalArgumentException("Invalid text paste threshold: " + textPasteThreshold);
+                    }
+                    options.textPasteThreshold = textPasteThreshold;
+                    break;
+                case "input_stats_sample_interval":
+                    int inputStatsSampleInterval = Integer.parseInt(value);
+                    if (inputStatsSampleInterval < 0) {
+                        throw new IllegalArgumentException("Invalid input stats sample interval: " + inputStatsSampleInterval);
+                    }
+                    options.inputStatsSampleInterval = inputStatsSampleInterval;
+                    break;
+                case "clipboard_chunk_size":
+                    int clipboardChunkSize = Integer.parseInt(value);
+                    if (clipboardChunkSize != 0 && (clipboardChunkSize < 4 || clipboardChunkSize > ControlMessageReader.CLIPBOARD_CHUNK_MAX_SIZE)) {
+                        throw new IllegalArgumentException("Invalid clipboard chunk size: " + clipboardChunkSize);
+                    }
+                    options.clipboardChunkSize = clipboardChunkSize;
+                    break;
+                case "clipboard_max_size":
+                    int clipboardMaxSize = Integer.parseInt(value);
+                    if (clipboardMaxSize <= 0) {
+                        throw new IllegalArgumentException("Invalid clipboard max size: " + clipboardMaxSize);
+                    }
+                    options.clipboardMaxSize = clipboardMaxSize;
+                    break;
+                case "clipboard_compression_threshold":
+                    int clipboardCompressionThreshold = Integer.parseInt(value);
+                    if (clipboardCompressionThreshold < 0) {
+                        throw new IllegalArgumentException("Invalid clipboard compression threshold: " + clipboardCompressionThreshold);
+                    }
+                    options.clipboardCompressionThreshold = clipboardCompressionThreshold;
+                    break;
+                case "control_record":
+                    if (!value.isEmpty()) {
+                        options.controlRecord = value;
+                    }
+                    break;
+                case "control_replay":
+                    if (!value.isEmpty()) {
+                        options.controlReplay = value;
+                    }
+                    break;
+                case "control_replay_speed":
+                    float controlReplaySpeed = parseFloat("control_replay_speed", value);
+                    if (controlReplaySpeed < 0) {
+                        throw new IllegalArgumentException("Invalid control replay speed: " + controlReplaySpeed);
+                    }
+                    options.controlReplaySpeed = controlReplaySpeed;
+                    break;
+                case "daemon":
+                    options.daemon = Boolean.parseBoolean(value);
+                    break;
                 case "new_display":
                     options.newDisplay = parseNewDisplay(value);
                     break;
@@ -531,6 +748,28 @@ public class Options {
             options.displayId = Device.DISPLAY_ID_NONE;
         }
 
+        if (options.videoRtpAddr != null) {
+            // Reject invalid values before the session starts
+            if (options.videoRtpPort <= 0 || options.videoRtpPort > 0xFFFF) {
+                throw new IllegalArgumentException("Invalid video RTP port: " + options.videoRtpPort);
+            }
+            if (options.videoRtpPacketSize < RtpSender.MIN_PACKET_SIZE || options.videoRtpPacketSize > RtpSender.MAX_PACKET_SIZE) {
+                throw new IllegalArgumentException("Invalid video RTP packet size: " + options.videoRtpPacketSize + " (expected "
+                        + RtpSender.MIN_PACKET_SIZE + ".." + RtpSender.MAX_PACKET_SIZE + ")");
+            }
+        }
+
+        if (options.daemon) {
+            // The daemon accepts the sessions on its local server socket
+            if (!options.tunnelForward) {
+                throw new IllegalArgumentException("Daemon mode requires tunnel_forward=true");
+            }
+            boolean forward = options.forwardH264CameraAddr != null && options.forwardH264CameraPort != 0;
+            if (forward && !options.forwardH264CameraDup) {
+                throw new IllegalArgumentException("Daemon mode requires a scrcpy client connection");
+            }
+        }
+
         return options;
     }
 
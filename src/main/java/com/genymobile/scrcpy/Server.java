@@ -8,39 +8,76 @@ import com.genymobile.scrcpy.audio.AudioPlaybackCapture;
 import com.genymobile.scrcpy.audio.AudioRawRecorder;
 import com.genymobile.scrcpy.audio.AudioSource;
 import com.genymobile.scrcpy.control.ControlChannel;
+import com.genymobile.scrcpy.control.ControlStreamRecorder;
+import com.genymobile.scrcpy.control.ControlStreamReplayer;
 import com.genymobile.scrcpy.control.Controller;
+import com.genymobile.scrcpy.control.CountingInputEventInjector;
+import com.genymobile.scrcpy.control.InputEventInjector;
 import com.genymobile.scrcpy.device.ConfigurationException;
 import com.genymobile.scrcpy.device.DesktopConnection;
 import com.genymobile.scrcpy.device.Device;
+import com.genymobile.scrcpy.device.DisplayInfoCache;
 import com.genymobile.scrcpy.device.NewDisplay;
+import com.genymobile.scrcpy.device.ReplayBuffer;
+import com.genymobile.scrcpy.device.RtpSender;
+import com.genymobile.scrcpy.device.StreamServer;
+import com.genymobile.scrcpy.device.StreamStats;
 import com.genymobile.scrcpy.device.Streamer;
 import com.genymobile.scrcpy.opengl.OpenGLRunner;
+import com.genymobile.scrcpy.util.FdChannel;
 import com.genymobile.scrcpy.util.Ln;
 import com.genymobile.scrcpy.util.LogUtils;
+import com.genymobile.scrcpy.util.StartupTimeline;
+import com.genymobile.scrcpy.util.StartupWarmUp;
 import com.genymobile.scrcpy.video.CameraCapture;
 import com.genymobile.scrcpy.video.NewDisplayCapture;
 import com.genymobile.scrcpy.video.ScreenCapture;
 import com.genymobile.scrcpy.video.SurfaceCapture;
 import com.genymobile.scrcpy.video.SurfaceEncoder;
+import com.genymobile.scrcpy.video.VideoCodec;
 import com.genymobile.scrcpy.video.VideoSource;
+import com.genymobile.scrcpy.wrappers.DisplayManager;
+import com.genymobile.scrcpy.wrappers.InputManager;
+import com.genymobile.scrcpy.wrappers.ServiceManager;
 
 import android.annotation.SuppressLint;
+import android.media.MediaCodec;
+import android.net.LocalServerSocket;
 import android.os.Build;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.system.Os;
+import android.system.OsConstants;
+import android.view.KeyCharacterMap;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 public final class Server {
 
     public static final String SERVER_PATH;
 
+    // Default queue capacity (in packets) for additional video subscribers
+    private static final int SUBSCRIBER_QUEUE_CAPACITY = 64;
+
+    private static final String REPLAY_BUFFER_PATH_PREFIX = "/data/local/tmp/scrcpy-replay";
+
+    // In daemon mode, stop after this number of consecutive sessions which failed to start
+    private static final int MAX_CONSECUTIVE_DAEMON_ERRORS = 3;
+
     static {
         String[] classPaths = System.getProperty("java.class.path").split(File.pathSeparator);
         // By convention, scrcpy is always executed with the absolute path of scrcpy-server.jar as the first item in the classpath
@@ -50,9 +87,18 @@ public final class Server {
     private static class Completion {
         private int running;
         private boolean fatalError;
+        private final boolean quitMainLooper;
 
-        Completion(int running) {
+        /**
+         * @param quitMainLooper if {@code true}, quit the main looper on completion, otherwise wake up {@link #await()}
+         */
+        Completion(int running, boolean quitMainLooper) {
             this.running = running;
+            this.quitMainLooper = quitMainLooper;
+        }
+
+        private boolean isCompleted() {
+            return running == 0 || fatalError;
         }
 
         synchronized void addCompleted(boolean fatalError) {
@@ -60,8 +106,18 @@ public final class Server {
             if (fatalError) {
                 this.fatalError = true;
             }
-            if (running == 0 || this.fatalError) {
-                Looper.getMainLooper().quitSafely();
+            if (isCompleted()) {
+                if (quitMainLooper) {
+                    Looper.getMainLooper().quitSafely();
+                } else {
+                    notify();
+                }
+            }
+        }
+
+        synchronized void await() throws InterruptedException {
+            while (!isCompleted()) {
+                wait();
             }
         }
     }
@@ -70,7 +126,23 @@ public final class Server {
         // not instantiable
     }
 
-    private static void scrcpy(Options options) throws IOException, ConfigurationException {
+    private static File getReplayBufferFile(int scid) {
+        if (scid == -1) {
+            // Like the socket name, so that several servers may run concurrently
+            return new File(REPLAY_BUFFER_PATH_PREFIX + ".buf");
+        }
+        return new File(REPLAY_BUFFER_PATH_PREFIX + String.format("_%08x", scid) + ".buf");
+    }
+
+    /**
+     * Run a session.
+     *
+     * @param daemonSocket the server socket of the daemon, or {@code null} if the server is not a daemon
+     */
+    private static void scrcpy(Options options, StartupTimeline timeline, LocalServerSocket daemonSocket) throws IOException,
+            ConfigurationException {
+        boolean daemon = daemonSocket != null;
+
         if (Build.VERSION.SDK_INT < AndroidVersions.API_31_ANDROID_12 && options.getVideoSource() == VideoSource.CAMERA) {
             Ln.e("Camera mirroring is not supported before Android 12");
             throw new ConfigurationException("Camera mirroring is not supported");
@@ -87,39 +159,101 @@ public final class Server {
             }
         }
 
+        if (options.getVideoRtpAddr() != null && options.getVideoCodec() == VideoCodec.AV1) {
+            Ln.e("RTP output is only supported for H.264 and H.265");
+            throw new ConfigurationException("RTP output is not supported for AV1");
+        }
+
         CleanUp cleanUp = null;
 
         if (options.getCleanup()) {
-            cleanUp = CleanUp.start(options);
+            StartupTimeline.Phase phase = timeline.begin("cleanup");
+            cleanUp = CleanUp.start(options, daemon);
+            phase.end();
         }
 
-        int scid = options.getScid();
-        boolean tunnelForward = options.isTunnelForward();
         boolean control = options.getControl();
         boolean video = options.getVideo();
         boolean audio = options.getAudio();
-        boolean sendDummyByte = options.getSendDummyByte();
         String forwardH264CameraAddr = options.getForwardH264CameraAddr();
         int forwardH264CameraPort = options.getForwardH264CameraPort();
+        boolean forward = forwardH264CameraAddr != null && forwardH264CameraPort != 0;
+        // If dup is enabled, the forwarded stream is sent in addition to the scrcpy client stream
+        boolean forwardOnly = forward && !options.getForwardH264CameraDup();
+        boolean forwardListen = forward && options.getForwardH264CameraListen();
+
+        if (!daemon) {
+            // A daemon applies them once for all the sessions
+            StartupTimeline.Phase workaroundsPhase = timeline.begin("workarounds");
+            Workarounds.apply();
+            workaroundsPhase.end();
+        }
 
-        Workarounds.apply();
+        // While the client connects, create the encoder and look up the services, which do not depend on the connection
+        StartupWarmUp warmUp = new StartupWarmUp(timeline);
+        StartupWarmUp.Task<MediaCodec> mediaCodecTask = null;
+        if (video && !daemon) {
+            mediaCodecTask = startEncoderWarmUp(warmUp, options);
+        }
+        StartupWarmUp.Task<KeyCharacterMap> servicesTask = warmUp.start("warm-up-services", () -> warmUpServices(options), null);
 
         List<AsyncProcessor> asyncProcessors = new ArrayList<>();
+        ReplayBuffer replayBuffer = null;
+        DatagramChannel rtpChannel = null;
+        ControlStreamRecorder controlRecorder = null;
+        CountingInputEventInjector replayInjector = null;
 
-        DesktopConnection connection = DesktopConnection.open(scid, tunnelForward, video, audio, control, sendDummyByte,
-                forwardH264CameraAddr, forwardH264CameraPort);
+        DesktopConnection connection;
+        StartupTimeline.Phase connectionPhase = timeline.begin("connection");
         try {
-            if (options.getSendDeviceMeta() &&
-            !(forwardH264CameraAddr != null && forwardH264CameraPort != 0)) {
+            connection = DesktopConnection.open(options, daemonSocket);
+        } catch (IOException | RuntimeException e) {
+            warmUp.releaseUnclaimed();
+            throw e;
+        } finally {
+            connectionPhase.end();
+        }
+        if (video && daemon) {
+            // A daemon may wait for a client indefinitely: it must not hold a (possibly unique) hardware encoder meanwhile, so the encoder is
+            // only created once connected (still in parallel with the rest of the session setup)
+            mediaCodecTask = startEncoderWarmUp(warmUp, options);
+        }
+        try {
+            // The services are not thread-safe, wait for their initialization before using them from this thread
+            KeyCharacterMap charMap = warmUp.claim(servicesTask);
+            timeline.mark("services ready");
+
+            if (options.getSendDeviceMeta() && !forwardOnly) {
                 connection.sendDeviceMeta(Device.getDeviceName());
             }
 
             Controller controller = null;
 
             if (control) {
-                ControlChannel controlChannel = connection.getControlChannel();
+                ControlChannel controlChannel;
+                InputEventInjector injector = InputEventInjector.DEVICE;
+                String controlReplay = options.getControlReplay();
+                if (controlReplay != null) {
+                    // Inject a recorded control stream instead of the client messages (the device messages are discarded)
+                    ControlStreamReplayer replayer = new ControlStreamReplayer(new FileInputStream(controlReplay), options.getControlReplaySpeed());
+                    controlChannel = new ControlChannel(replayer, new OutputStream() {
+                        @Override
+                        public void write(int b) {
+                            // discard
+                        }
+                    });
+                    replayInjector = new CountingInputEventInjector(injector);
+                    injector = replayInjector;
+                } else {
+                    controlChannel = connection.getControlChannel();
+                }
                 if (controlChannel != null) {
-                    controller = new Controller(controlChannel, cleanUp, options);
+                    String controlRecord = options.getControlRecord();
+                    if (controlRecord != null) {
+                        controlRecorder = new ControlStreamRecorder(new FileOutputStream(controlRecord));
+                        controlChannel.setRecorder(controlRecorder);
+                    }
+                    controller = new Controller(controlChannel, cleanUp, options, injector, charMap);
                     asyncProcessors.add(controller);
                 } else {
                     Ln.w("Control is enabled, but no control channel available.");
@@ -138,9 +272,9 @@ public final class Server {
                         audioCapture = new AudioPlaybackCapture(options.getAudioDup());
                     }
 
-                    // Convert FileDescriptor to OutputStream
-                    OutputStream audioOutputStream = new FileOutputStream(audioFd);
-                    Streamer audioStreamer = new Streamer(audioOutputStream, audioCodec, options.getSendCodecMeta(), options.getSendFrameMeta());
+                    // Write to the socket with Os.write(), so that codec buffers are not copied
+                    WritableByteChannel audioChannel = new FdChannel(audioFd);
+                    Streamer audioStreamer = new Streamer(audioChannel, audioCodec, options.getSendCodecMeta(), options.getSendFrameMeta());
                     AsyncProcessor audioRecorder;
                     if (audioCodec == AudioCodec.RAW) {
                         audioRecorder = new AudioRawRecorder(audioCapture, audioStreamer);
@@ -155,14 +289,30 @@ public final class Server {
 
             if (video) {
                 Streamer videoStreamer;
-                if (forwardH264CameraAddr != null && forwardH264CameraPort != 0) {
-                    videoStreamer = new Streamer(connection.getVideoOutputStream(), options.getVideoCodec(), options.getSendCodecMeta(),
+                if (forwardOnly && !forwardListen) {
+                    videoStreamer = new Streamer(connection.getVideoChannel(), options.getVideoCodec(), options.getSendCodecMeta(),
                             options.getSendFrameMeta());
                 } else {
-                    // Convert FileDescriptor to OutputStream
-                    OutputStream videoOutputStream = new FileOutputStream(connection.getVideoFd());
-                    videoStreamer = new Streamer(videoOutputStream, options.getVideoCodec(), options.getSendCodecMeta(),
-                            options.getSendFrameMeta());
+                    WritableByteChannel videoChannel = null; // if null, the stream is only sent to the subscribers
+                    if (!forwardOnly) {
+                        // Write to the socket with Os.write(), so that codec buffers are not copied
+                        videoChannel = new FdChannel(connection.getVideoFd());
+                    }
+                    videoStreamer = new Streamer(videoChannel, options.getVideoCodec(), options.getSendCodecMeta(), options.getSendFrameMeta());
+                    if (forward) {
+                        // Send the same stream to the forward consumers, without stalling the scrcpy client
+                        videoStreamer.enableSubscribers(options.getVideoGopCacheSize());
+                        int queueCapacity = options.getVideoSendQueue() > 0 ? options.getVideoSendQueue() : SUBSCRIBER_QUEUE_CAPACITY;
+                        if (forwardListen) {
+                            InetSocketAddress address = new InetSocketAddress(forwardH264CameraAddr, forwardH264CameraPort);
+                            StreamServer streamServer = new StreamServer(videoStreamer, address, options.getVideoSocketSendBuffer(), queueCapacity);
+                            Ln.i("Listening for video consumers on " + streamServer.getLocalAddress());
+                            asyncProcessors.add(streamServer);
+                        } else {
+                            // The channel is owned by the connection, which shuts it down and closes it on exit
+                            videoStreamer.addSubscriber(connection.getVideoChannel(), queueCapacity, false);
+                        }
+                    }
                 }
                 SurfaceCapture surfaceCapture;
                 if (options.getVideoSource() == VideoSource.DISPLAY) {
@@ -176,23 +326,59 @@ public final class Server {
                 } else {
                     surfaceCapture = new CameraCapture(options);
                 }
+                if (options.getReplayBufferSize() > 0) {
+                    // Keep the last video packets, to be dumped on request
+                    replayBuffer = ReplayBuffer.create(getReplayBufferFile(options.getScid()), options.getReplayBufferSize());
+                    videoStreamer.setReplayBuffer(replayBuffer);
+                }
+
+                if (options.getVideoRtpAddr() != null) {
+                    rtpChannel = DatagramChannel.open();
+                    rtpChannel.connect(new InetSocketAddress(options.getVideoRtpAddr(), options.getVideoRtpPort()));
+                    videoStreamer.setRtpSender(new RtpSender(rtpChannel, options.getVideoCodec(), options.getVideoRtpPacketSize()));
+                }
+
                 SurfaceEncoder surfaceEncoder = new SurfaceEncoder(surfaceCapture, videoStreamer, options);
+                surfaceEncoder.setMediaCodec(warmUp.claim(mediaCodecTask));
+                surfaceEncoder.setStartupTimeline(timeline);
                 asyncProcessors.add(surfaceEncoder);
 
                 if (controller != null) {
                     controller.setSurfaceCapture(surfaceCapture);
+                    controller.setReplayBuffer(replayBuffer);
+                    if (options.getStatsPeriod() > 0) {
+                        // The stats are sent to the client over the control channel
+                        StreamStats streamStats = new StreamStats();
+                        surfaceEncoder.setStreamStats(streamStats);
+                        controller.setStreamStats(streamStats);
+                    }
                 }
             }
 
-            Completion completion = new Completion(asyncProcessors.size());
+            Completion completion = new Completion(asyncProcessors.size(), !daemon);
             for (AsyncProcessor asyncProcessor : asyncProcessors) {
                 asyncProcessor.start((fatalError) -> {
                     completion.addCompleted(fatalError);
                 });
             }
+            timeline.mark("processors started");
+            if (!video) {
+                // Otherwise, the timeline is logged on the first video packet
+                Ln.d(timeline.format());
+            }
 
-            Looper.loop(); // interrupted by the Completion implementation
+            if (daemon) {
+                // The main looper runs for the whole daemon lifetime
+                try {
+                    completion.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                Looper.loop(); // interrupted by the Completion implementation
+            }
         } finally {
+            warmUp.releaseUnclaimed();
             if (cleanUp != null) {
                 cleanUp.interrupt();
             }
@@ -200,23 +386,168 @@ public final class Server {
                 asyncProcessor.stop();
             }
 
-            OpenGLRunner.quit(); // quit the OpenGL thread, if any
-
-            connection.shutdown();
+            if (!daemon) {
+                // The OpenGL thread cannot be restarted, a daemon keeps it for the next sessions
+                OpenGLRunner.quit(); // quit the OpenGL thread, if any
+            }
 
             try {
-                if (cleanUp != null) {
-                    cleanUp.join();
+                connection.shutdown();
+
+                try {
+                    if (cleanUp != null) {
+                        cleanUp.join();
+                    }
+                    for (AsyncProcessor asyncProcessor : asyncProcessors) {
+                        asyncProcessor.join();
+                    }
+                    if (!daemon) {
+                        OpenGLRunner.join();
+                    }
+                } catch (InterruptedException e) {
+                    // ignore
                 }
-                for (AsyncProcessor asyncProcessor : asyncProcessors) {
-                    asyncProcessor.join();
+
+                connection.close();
+            } finally {
+                // Delete the backing file even if the connection could not be closed cleanly
+                if (replayBuffer != null) {
+                    replayBuffer.close();
                 }
-                OpenGLRunner.join();
-            } catch (InterruptedException e) {
-                // ignore
             }
 
-            connection.close();
+            if (rtpChannel != null) {
+                rtpChannel.close();
+            }
+            if (controlRecorder != null) {
+                controlRecorder.close();
+                Ln.i("Control stream recorded: " + controlRecorder.getRecordCount() + " messages");
+            }
+            if (replayInjector != null) {
+                Ln.i("Control stream replayed: " + replayInjector.getSummary());
+            }
+
+            DisplayInfoCache displayInfoCache = DisplayInfoCache.getDefault();
+            Ln.d("Display info cache: " + displayInfoCache.getHitCount() + " hits, " + displayInfoCache.getMissCount() + " misses");
+        }
+    }
+
+    /**
+     * Serve the sessions one at a time, each one on its own connection, until a fatal error.
+     * <p>
+     * The process state (workarounds, services, loaded classes, OpenGL thread…) is kept between the sessions, while the session state
+     * (controller, encoders, clean up…) is created and released by each session. The sessions run on a separate thread, because the main
+     * looper must run for the whole daemon lifetime (the clipboard changes are notified on the main looper).
+     *
+     * @param timeline the startup timeline of the first session
+     */
+    private static void daemon(Options options, StartupTimeline timeline) throws Exception {
+        Workarounds.apply();
+        if (options.getControl()) {
+            // The clipboard manager must be created from the main thread, then it is reused by all the sessions
+            ServiceManager.getClipboardManager();
+        }
+
+        LocalServerSocket daemonSocket = DesktopConnection.listen(options.getScid());
+        Ln.i("Daemon started");
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                StartupTimeline sessionTimeline = timeline;
+                int consecutiveErrors = 0;
+                for (int session = 1; consecutiveErrors < MAX_CONSECUTIVE_DAEMON_ERRORS; ++session) {
+                    if (sessionTimeline == null) {
+                        sessionTimeline = new StartupTimeline();
+                    }
+                    try {
+                        scrcpy(options, sessionTimeline, daemonSocket);
+                        Ln.i("Session " + session + " terminated");
+                        consecutiveErrors = 0;
+                    } catch (IOException e) {
+                        // The next client may connect successfully
+                        Ln.e("Session " + session + " failed: " + e.getMessage());
+                        ++consecutiveErrors;
+                    } catch (RuntimeException e) {
+                        // The session state has been released, the next session may succeed (only a configuration error is fatal)
+                        Ln.e("Session " + session + " failed", e);
+                        ++consecutiveErrors;
+                    }
+                    sessionTimeline = null;
+                }
+                Ln.e("Too many consecutive session failures, stopping the daemon");
+            } catch (ConfigurationException e) {
+                // Do not print stack trace, a user-friendly error-message has already been logged (all the sessions would fail the same way)
+            } catch (Throwable t) {
+                error.set(t);
+            } finally {
+                Looper.getMainLooper().quitSafely();
+            }
+        }, "daemon");
+        thread.start();
+
+        Looper.loop(); // interrupted when the daemon thread terminates
+
+        daemonSocket.close();
+        OpenGLRunner.quit();
+        OpenGLRunner.join();
+
+        Throwable t = error.get();
+        if (t instanceof Exception) {
+            throw (Exception) t;
+        }
+        if (t != null) {
+            throw (Error) t;
+        }
+    }
+
+    private static StartupWarmUp.Task<MediaCodec> startEncoderWarmUp(StartupWarmUp warmUp, Options options) {
+        return warmUp.start("warm-up-encoder", () -> {
+            // Create the MediaCodec from a thread with a Looper, like the video thread would
+            Looper.prepare();
+            return SurfaceEncoder.createMediaCodec(options.getVideoCodec(), options.getVideoEncoder());
+        }, MediaCodec::release);
+    }
+
+    /**
+     * Create the services and look up the hidden methods used at startup or on the first input events.
+     *
+     * @return the virtual keyboard character map if control is enabled, {@code null} otherwise
+     */
+    private static KeyCharacterMap warmUpServices(Options options) {
+        // The clipboard manager must be created from the main thread, it is not initialized here
+        ServiceManager.getWindowManager();
+        DisplayManager displayManager = ServiceManager.getDisplayManager();
+        int displayId = options.getDisplayId();
+        if (options.getVideoSource() == VideoSource.DISPLAY && options.getNewDisplay() == null && displayId != Device.DISPLAY_ID_NONE) {
+            displayManager.getDisplayInfo(displayId);
+        }
+
+        if (!options.getControl()) {
+            return null;
+        }
+        ServiceManager.getInputManager();
+        InputManager.resolveMethods();
+        ServiceManager.getPowerManager();
+        return KeyCharacterMap.load(KeyCharacterMap.VIRTUAL_KEYBOARD);
+    }
+
+    /**
+     * Return the time elapsed since the process has been launched, or -1 if unknown.
+     */
+    private static long getProcessAgeMs() {
+        // Process.getStartElapsedRealtime() is not initialized in a process started by app_process, read the start time from procfs
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/stat"))) {
+            String stat = reader.readLine();
+            // The process name (2nd field) may contain spaces, the fields after its closing parenthesis start at field 3
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            long startTicks = Long.parseLong(fields[22 - 3]);
+            long ticksPerSecond = Os.sysconf(OsConstants._SC_CLK_TCK);
+            long age = SystemClock.elapsedRealtime() - startTicks * 1000 / ticksPerSecond;
+            return age >= 0 ? age : -1;
+        } catch (IOException | RuntimeException e) {
+            Ln.w("Could not read the process start time: " + e.getMessage());
+            return -1;
         }
     }
 
@@ -251,6 +582,12 @@ public final class Server {
     }
 
     private static void internalMain(String... args) throws Exception {
+        StartupTimeline timeline = new StartupTimeline();
+        long launchDelay = getProcessAgeMs();
+        if (launchDelay != -1) {
+            timeline.setLaunchDelay(launchDelay);
+        }
+
         Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
         Thread.setDefaultUncaughtExceptionHandler((t, e) -> {
             Ln.e("Exception on thread " + t, e);
@@ -293,8 +630,13 @@ public final class Server {
             return;
         }
 
+        if (options.getDaemon()) {
+            daemon(options, timeline);
+            return;
+        }
+
         try {
-            scrcpy(options);
+            scrcpy(options, timeline, null);
         } catch (ConfigurationException e) {
             // Do not print stack trace, a user-friendly error-message has already been logged
         }
@@ -0,0 +1,102 @@
+package com.genymobile.scrcpy.control;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reassemble a clipboard text from {@link ControlMessage#TYPE_SET_CLIPBOARD_CHUNK} messages, decoding UTF-8 incrementally.
+ * <p>
+ * A UTF-8 sequence may be split across chunks. If the total size exceeds the limit, the transfer is discarded.
+ */
+public final class ClipboardAssembler {
+
+    private static final int MAX_SEQUENCE_LENGTH = 4; // UTF-8
+
+    private final int maxSize;
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    // Undecoded bytes (an incomplete UTF-8 sequence at the end of the previous chunk) followed by the current chunk
+    private final ByteBuffer input = ByteBuffer.allocate(MAX_SEQUENCE_LENGTH + ControlMessageReader.CLIPBOARD_CHUNK_MAX_SIZE);
+    // Each byte is decoded to at most one char
+    private final CharBuffer output = CharBuffer.allocate(input.capacity());
+
+    private StringBuilder text; // null if no transfer is in progress
+    private long size;
+    private boolean overflow;
+
+    /**
+     * @param maxSize the maximum size of a clipboard text, in bytes
+     */
+    public ClipboardAssembler(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Append a chunk.
+     *
+     * @param flags the chunk flags ({@code ControlMessage.CLIPBOARD_CHUNK_FLAG_*})
+     * @param data  the chunk data (at most {@link ControlMessageReader#CLIPBOARD_CHUNK_MAX_SIZE} bytes)
+     * @return the text if this is the last chunk of a valid transfer, {@code null} otherwise
+     */
+    public String append(int flags, byte[] data) {
+        assert data.length <= ControlMessageReader.CLIPBOARD_CHUNK_MAX_SIZE;
+        if ((flags & ControlMessage.CLIPBOARD_CHUNK_FLAG_FIRST) != 0) {
+            // Start a new transfer (a previous incomplete transfer is discarded)
+            text = new StringBuilder();
+            size = 0;
+            overflow = false;
+            decoder.reset();
+            input.clear();
+        } else if (text == null && !overflow) {
+            // The beginning of the transfer has not been received
+            return null;
+        }
+
+        boolean last = (flags & ControlMessage.CLIPBOARD_CHUNK_FLAG_LAST) != 0;
+
+        if (!overflow) {
+            size += data.length;
+            if (size > maxSize) {
+                // Release the memory immediately, ignore the next chunks
+                overflow = true;
+                text = null;
+            } else {
+                decode(data, last);
+            }
+        }
+
+        if (!last) {
+            return null;
+        }
+
+        String result = text != null ? text.toString() : null;
+        text = null;
+        return result;
+    }
+
+    private void decode(byte[] data, boolean last) {
+        input.put(data);
+        input.flip();
+        output.clear();
+        decoder.decode(input, output, last);
+        if (last) {
+            decoder.flush(output);
+        }
+        output.flip();
+        text.append(output);
+        // Keep the bytes of an incomplete UTF-8 sequence for the next chunk
+        input.compact();
+    }
+
+    /**
+     * Indicate whether the last transfer has been discarded because it exceeded the size limit.
+     */
+    public boolean hasOverflowed() {
+        return overflow;
+    }
+}
@@ -0,0 +1,67 @@
+package com.genymobile.scrcpy.control;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Split a clipboard text into {@link DeviceMessage#TYPE_CLIPBOARD_CHUNK} messages, encoding it to UTF-8 incrementally.
+ * <p>
+ * A chunk never splits a UTF-8 sequence, and never exceeds the chunk size. The whole text is never encoded at once.
+ */
+public final class ClipboardChunker {
+
+    private final CharBuffer input;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer output;
+
+    private boolean first = true;
+    private boolean done;
+
+    public ClipboardChunker(String text, int chunkSize) {
+        // A chunk must be able to hold any UTF-8 sequence (at most 4 bytes)
+        if (chunkSize < 4) {
+            throw new IllegalArgumentException("Invalid clipboard chunk size: " + chunkSize);
+        }
+        input = CharBuffer.wrap(text);
+        output = ByteBuffer.allocate(chunkSize);
+    }
+
+    public boolean hasNext() {
+        return !done;
+    }
+
+    public DeviceMessage next() {
+        if (done) {
+            throw new IllegalStateException("No more chunks");
+        }
+
+        output.clear();
+        CoderResult result = encoder.encode(input, output, true);
+        boolean last = false;
+        if (result.isUnderflow()) {
+            // All the input has been consumed
+            last = encoder.flush(output).isUnderflow();
+        }
+        output.flip();
+
+        byte[] data = new byte[output.remaining()];
+        output.get(data);
+
+        int flags = 0;
+        if (first) {
+            flags |= DeviceMessage.CLIPBOARD_CHUNK_FLAG_FIRST;
+            first = false;
+        }
+        if (last) {
+            flags |= DeviceMessage.CLIPBOARD_CHUNK_FLAG_LAST;
+            done = true;
+        }
+        return DeviceMessage.createClipboardChunk(flags, data);
+    }
+}
@@ -3,22 +3,61 @@ package com.genymobile.scrcpy.control;
 import android.net.LocalSocket;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 public final class ControlChannel {
 
     private final ControlMessageReader reader;
     private final DeviceMessageWriter writer;
 
-    public ControlChannel(LocalSocket controlSocket) throws IOException {
-        reader = new ControlMessageReader(controlSocket.getInputStream());
-        writer = new DeviceMessageWriter(controlSocket.getOutputStream());
+    public ControlChannel(LocalSocket controlSocket, int clipboardCompressionThreshold) throws IOException {
+        this(controlSocket.getInputStream(), controlSocket.getOutputStream(), clipboardCompressionThreshold);
+    }
+
+    public ControlChannel(InputStream input, OutputStream output) {
+        this(input, output, 0);
+    }
+
+    /**
+     * @param clipboardCompressionThreshold the device clipboard texts longer than this value (in bytes) are sent compressed, 0 to disable
+     *                                      compression (compressed texts from the client are always accepted)
+     */
+    public ControlChannel(InputStream input, OutputStream output, int clipboardCompressionThreshold) {
+        reader = new ControlMessageReader(input);
+        writer = new DeviceMessageWriter(output, clipboardCompressionThreshold);
+    }
+
+    /**
+     * Record the raw messages received from now on (see {@link ControlMessageReader#setRecorder(ControlStreamRecorder)}).
+     */
+    public void setRecorder(ControlStreamRecorder recorder) {
+        reader.setRecorder(recorder);
     }
 
     public ControlMessage recv() throws IOException {
         return reader.read();
     }
 
+    /**
+     * Receive the next message into {@code msg}, to avoid an allocation per message.
+     */
+    public ControlMessage recv(ControlMessage msg) throws IOException {
+        return reader.read(msg);
+    }
+
     public void send(DeviceMessage msg) throws IOException {
         writer.write(msg);
     }
+
+    /**
+     * Write the message without flushing, {@link #flush()} must be called afterwards.
+     */
+    public void append(DeviceMessage msg) throws IOException {
+        writer.append(msg);
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
 }
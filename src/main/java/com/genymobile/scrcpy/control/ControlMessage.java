@@ -1,9 +1,16 @@
 package com.genymobile.scrcpy.control;
 
+import com.genymobile.scrcpy.device.Point;
 import com.genymobile.scrcpy.device.Position;
+import com.genymobile.scrcpy.device.Size;
+
+import java.util.Arrays;
 
 /**
  * Union of all supported event types, identified by their {@code type}.
+ * <p>
+ * A message may be reused: {@link ControlMessageReader#read(ControlMessage)} overwrites the fields relevant for the message type (the other
+ * fields are meaningless).
  */
 public final class ControlMessage {
 
@@ -25,6 +32,11 @@ public final class ControlMessage {
     public static final int TYPE_OPEN_HARD_KEYBOARD_SETTINGS = 15;
     public static final int TYPE_START_APP = 16;
     public static final int TYPE_RESET_VIDEO = 17;
+    public static final int TYPE_DUMP_REPLAY = 18;
+    public static final int TYPE_INJECT_TOUCH_BATCH = 19;
+    public static final int TYPE_GET_INPUT_STATS = 20;
+    public static final int TYPE_SET_CLIPBOARD_CHUNK = 21;
+    public static final int TYPE_UHID_INPUT_BATCH = 22;
 
     public static final long SEQUENCE_INVALID = 0;
 
@@ -32,6 +44,10 @@ public final class ControlMessage {
     public static final int COPY_KEY_COPY = 1;
     public static final int COPY_KEY_CUT = 2;
 
+    public static final int CLIPBOARD_CHUNK_FLAG_FIRST = 1;
+    public static final int CLIPBOARD_CHUNK_FLAG_LAST = 1 << 1;
+    public static final int CLIPBOARD_CHUNK_FLAG_PASTE = 1 << 2;
+
     private int type;
     private String text;
     private int metaState; // KeyEvent.META_*
@@ -41,135 +57,331 @@ public final class ControlMessage {
     private int buttons; // MotionEvent.BUTTON_*
     private long pointerId;
     private float pressure;
-    private Position position;
+    // The position is stored as primitive fields, so that a reused message does not allocate
+    private int x;
+    private int y;
+    private int screenWidth;
+    private int screenHeight;
     private float hScroll;
     private float vScroll;
     private int copyKey;
     private boolean paste;
     private int repeat;
     private long sequence;
+    private int chunkFlags;
     private int id;
     private byte[] data;
     private boolean on;
     private int vendorId;
     private int productId;
-
-    private ControlMessage() {
+    // Set by the receiver when the message has been fully read (in microseconds, see InputStats#now())
+    private long receiveTime;
+    // Touch batch: state of all the active pointers, only reallocated if a reused message receives a bigger batch
+    private int actionIndex;
+    private int batchPointerCount;
+    private long[] batchPointerIds;
+    private int[] batchXs;
+    private int[] batchYs;
+    private float[] batchPressures;
+    // UHID input batch: the reports are stored contiguously, only reallocated if a reused message receives a bigger batch
+    private int uhidReportCount;
+    private byte[] uhidReports;
+    private int[] uhidReportOffsets;
+    private int[] uhidReportSizes;
+
+    ControlMessage() {
+        // fields initialized by the setters
     }
 
     public static ControlMessage createInjectKeycode(int action, int keycode, int repeat, int metaState) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_INJECT_KEYCODE;
-        msg.action = action;
-        msg.keycode = keycode;
-        msg.repeat = repeat;
-        msg.metaState = metaState;
+        msg.setInjectKeycode(action, keycode, repeat, metaState);
         return msg;
     }
 
+    void setInjectKeycode(int action, int keycode, int repeat, int metaState) {
+        type = TYPE_INJECT_KEYCODE;
+        this.action = action;
+        this.keycode = keycode;
+        this.repeat = repeat;
+        this.metaState = metaState;
+    }
+
     public static ControlMessage createInjectText(String text) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_INJECT_TEXT;
-        msg.text = text;
+        msg.setInjectText(text);
         return msg;
     }
 
+    void setInjectText(String text) {
+        type = TYPE_INJECT_TEXT;
+        this.text = text;
+    }
+
     public static ControlMessage createInjectTouchEvent(int action, long pointerId, Position position, float pressure, int actionButton,
             int buttons) {
+        Point point = position.getPoint();
+        Size screenSize = position.getScreenSize();
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_INJECT_TOUCH_EVENT;
-        msg.action = action;
-        msg.pointerId = pointerId;
-        msg.pressure = pressure;
-        msg.position = position;
-        msg.actionButton = actionButton;
-        msg.buttons = buttons;
+        msg.setInjectTouchEvent(action, pointerId, point.getX(), point.getY(), screenSize.getWidth(), screenSize.getHeight(), pressure, actionButton,
+                buttons);
         return msg;
     }
 
+    void setInjectTouchEvent(int action, long pointerId, int x, int y, int screenWidth, int screenHeight, float pressure,
+            int actionButton, int buttons) {
+        type = TYPE_INJECT_TOUCH_EVENT;
+        this.action = action;
+        this.pointerId = pointerId;
+        this.pressure = pressure;
+        this.x = x;
+        this.y = y;
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        this.actionButton = actionButton;
+        this.buttons = buttons;
+    }
+
     public static ControlMessage createInjectScrollEvent(Position position, float hScroll, float vScroll, int buttons) {
+        Point point = position.getPoint();
+        Size screenSize = position.getScreenSize();
+        ControlMessage msg = new ControlMessage();
+        msg.setInjectScrollEvent(point.getX(), point.getY(), screenSize.getWidth(), screenSize.getHeight(), hScroll, vScroll, buttons);
+        return msg;
+    }
+
+    void setInjectScrollEvent(int x, int y, int screenWidth, int screenHeight, float hScroll, float vScroll, int buttons) {
+        type = TYPE_INJECT_SCROLL_EVENT;
+        this.x = x;
+        this.y = y;
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        this.hScroll = hScroll;
+        this.vScroll = vScroll;
+        this.buttons = buttons;
+    }
+
+    public static ControlMessage createInjectTouchBatch(int action, int actionIndex, int screenWidth, int screenHeight, long[] pointerIds, int[] xs,
+            int[] ys, float[] pressures) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_INJECT_SCROLL_EVENT;
-        msg.position = position;
-        msg.hScroll = hScroll;
-        msg.vScroll = vScroll;
-        msg.buttons = buttons;
+        msg.setInjectTouchBatch(action, actionIndex, screenWidth, screenHeight, pointerIds.length);
+        for (int i = 0; i < pointerIds.length; ++i) {
+            msg.setBatchPointer(i, pointerIds[i], xs[i], ys[i], pressures[i]);
+        }
         return msg;
     }
 
+    /**
+     * Initialize a touch batch of {@code pointerCount} pointers, to be filled by {@link #setBatchPointer(int, long, int, int, float)}.
+     */
+    void setInjectTouchBatch(int action, int actionIndex, int screenWidth, int screenHeight, int pointerCount) {
+        assert pointerCount <= PointersState.MAX_SUPPORTED_POINTERS;
+        type = TYPE_INJECT_TOUCH_BATCH;
+        this.action = action;
+        this.actionIndex = actionIndex;
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        this.batchPointerCount = pointerCount;
+        if (batchPointerIds == null || batchPointerIds.length < pointerCount) {
+            batchPointerIds = new long[pointerCount];
+            batchXs = new int[pointerCount];
+            batchYs = new int[pointerCount];
+            batchPressures = new float[pointerCount];
+        }
+    }
+
+    void setBatchPointer(int index, long pointerId, int x, int y, float pressure) {
+        batchPointerIds[index] = pointerId;
+        batchXs[index] = x;
+        batchYs[index] = y;
+        batchPressures[index] = pressure;
+    }
+
+    /**
+     * Add the scroll deltas of a previous scroll event, which will not be injected.
+     */
+    void mergeScroll(ControlMessage previous) {
+        assert type == TYPE_INJECT_SCROLL_EVENT && previous.type == TYPE_INJECT_SCROLL_EVENT;
+        hScroll += previous.hScroll;
+        vScroll += previous.vScroll;
+    }
+
     public static ControlMessage createBackOrScreenOn(int action) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_BACK_OR_SCREEN_ON;
-        msg.action = action;
+        msg.setBackOrScreenOn(action);
         return msg;
     }
 
+    void setBackOrScreenOn(int action) {
+        type = TYPE_BACK_OR_SCREEN_ON;
+        this.action = action;
+    }
+
     public static ControlMessage createGetClipboard(int copyKey) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_GET_CLIPBOARD;
-        msg.copyKey = copyKey;
+        msg.setGetClipboard(copyKey);
         return msg;
     }
 
+    void setGetClipboard(int copyKey) {
+        type = TYPE_GET_CLIPBOARD;
+        this.copyKey = copyKey;
+    }
+
     public static ControlMessage createSetClipboard(long sequence, String text, boolean paste) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_SET_CLIPBOARD;
-        msg.sequence = sequence;
-        msg.text = text;
-        msg.paste = paste;
+        msg.setSetClipboard(sequence, text, paste);
+        return msg;
+    }
+
+    void setSetClipboard(long sequence, String text, boolean paste) {
+        type = TYPE_SET_CLIPBOARD;
+        this.sequence = sequence;
+        this.text = text;
+        this.paste = paste;
+    }
+
+    public static ControlMessage createSetClipboardChunk(long sequence, int chunkFlags, byte[] data) {
+        ControlMessage msg = new ControlMessage();
+        msg.setSetClipboardChunk(sequence, chunkFlags, data);
         return msg;
     }
 
+    void setSetClipboardChunk(long sequence, int chunkFlags, byte[] data) {
+        type = TYPE_SET_CLIPBOARD_CHUNK;
+        this.sequence = sequence;
+        this.chunkFlags = chunkFlags;
+        this.data = data;
+    }
+
     public static ControlMessage createSetDisplayPower(boolean on) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_SET_DISPLAY_POWER;
-        msg.on = on;
+        msg.setSetDisplayPower(on);
         return msg;
     }
 
+    void setSetDisplayPower(boolean on) {
+        type = TYPE_SET_DISPLAY_POWER;
+        this.on = on;
+    }
+
     public static ControlMessage createEmpty(int type) {
         ControlMessage msg = new ControlMessage();
-        msg.type = type;
+        msg.setEmpty(type);
         return msg;
     }
 
+    void setEmpty(int type) {
+        this.type = type;
+    }
+
     public static ControlMessage createUhidCreate(int id, int vendorId, int productId, String name, byte[] reportDesc) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_UHID_CREATE;
-        msg.id = id;
-        msg.vendorId = vendorId;
-        msg.productId = productId;
-        msg.text = name;
-        msg.data = reportDesc;
+        msg.setUhidCreate(id, vendorId, productId, name, reportDesc);
         return msg;
     }
 
+    void setUhidCreate(int id, int vendorId, int productId, String name, byte[] reportDesc) {
+        type = TYPE_UHID_CREATE;
+        this.id = id;
+        this.vendorId = vendorId;
+        this.productId = productId;
+        this.text = name;
+        this.data = reportDesc;
+    }
+
     public static ControlMessage createUhidInput(int id, byte[] data) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_UHID_INPUT;
-        msg.id = id;
-        msg.data = data;
+        msg.setUhidInput(id, data);
         return msg;
     }
 
+    void setUhidInput(int id, byte[] data) {
+        type = TYPE_UHID_INPUT;
+        this.id = id;
+        this.data = data;
+    }
+
+    public static ControlMessage createUhidInputBatch(int id, byte[]... reports) {
+        ControlMessage msg = new ControlMessage();
+        msg.setUhidInputBatch(id, reports.length);
+        for (int i = 0; i < reports.length; ++i) {
+            msg.setUhidReport(i, reports[i], 0, reports[i].length);
+        }
+        return msg;
+    }
+
+    void setUhidInputBatch(int id, int reportCount) {
+        type = TYPE_UHID_INPUT_BATCH;
+        this.id = id;
+        this.uhidReportCount = reportCount;
+        if (uhidReportOffsets == null || uhidReportOffsets.length < reportCount) {
+            uhidReportOffsets = new int[reportCount];
+            uhidReportSizes = new int[reportCount];
+        }
+        if (uhidReports == null) {
+            uhidReports = new byte[64];
+        }
+    }
+
+    /**
+     * Set the report {@code index} of a UHID input batch (the reports must be set in order).
+     */
+    void setUhidReport(int index, byte[] src, int srcOffset, int size) {
+        int offset = index == 0 ? 0 : uhidReportOffsets[index - 1] + uhidReportSizes[index - 1];
+        if (offset + size > uhidReports.length) {
+            uhidReports = Arrays.copyOf(uhidReports, Math.max(offset + size, 2 * uhidReports.length));
+        }
+        System.arraycopy(src, srcOffset, uhidReports, offset, size);
+        uhidReportOffsets[index] = offset;
+        uhidReportSizes[index] = size;
+    }
+
     public static ControlMessage createUhidDestroy(int id) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_UHID_DESTROY;
-        msg.id = id;
+        msg.setUhidDestroy(id);
         return msg;
     }
 
+    void setUhidDestroy(int id) {
+        type = TYPE_UHID_DESTROY;
+        this.id = id;
+    }
+
     public static ControlMessage createStartApp(String name) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_START_APP;
-        msg.text = name;
+        msg.setStartApp(name);
         return msg;
     }
 
+    void setStartApp(String name) {
+        type = TYPE_START_APP;
+        this.text = name;
+    }
+
+    public static ControlMessage createDumpReplay(String path) {
+        ControlMessage msg = new ControlMessage();
+        msg.setDumpReplay(path);
+        return msg;
+    }
+
+    void setDumpReplay(String path) {
+        type = TYPE_DUMP_REPLAY;
+        this.text = path;
+    }
+
     public int getType() {
         return type;
     }
 
+    long getReceiveTime() {
+        return receiveTime;
+    }
+
+    void setReceiveTime(long receiveTime) {
+        this.receiveTime = receiveTime;
+    }
+
     public String getText() {
         return text;
     }
@@ -202,8 +414,76 @@ public final class ControlMessage {
         return pressure;
     }
 
+    /**
+     * Return the position of a touch or scroll event.
+     * <p>
+     * A new instance is created on every call, use the primitive getters to avoid allocations.
+     */
     public Position getPosition() {
-        return position;
+        return new Position(x, y, screenWidth, screenHeight);
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getScreenWidth() {
+        return screenWidth;
+    }
+
+    public int getScreenHeight() {
+        return screenHeight;
+    }
+
+    /**
+     * Return the index, in the touch batch, of the pointer which went down or up (only meaningful for {@code ACTION_DOWN} and
+     * {@code ACTION_UP}).
+     */
+    public int getActionIndex() {
+        return actionIndex;
+    }
+
+    public int getBatchPointerCount() {
+        return batchPointerCount;
+    }
+
+    public long getBatchPointerId(int index) {
+        return batchPointerIds[index];
+    }
+
+    public int getBatchX(int index) {
+        return batchXs[index];
+    }
+
+    public int getBatchY(int index) {
+        return batchYs[index];
+    }
+
+    public float getBatchPressure(int index) {
+        return batchPressures[index];
+    }
+
+    public int getUhidReportCount() {
+        return uhidReportCount;
+    }
+
+    /**
+     * Return the data of all the reports of a UHID input batch (see {@link #getUhidReportOffsets()} and {@link #getUhidReportSizes()}).
+     */
+    public byte[] getUhidReports() {
+        return uhidReports;
+    }
+
+    public int[] getUhidReportOffsets() {
+        return uhidReportOffsets;
+    }
+
+    public int[] getUhidReportSizes() {
+        return uhidReportSizes;
     }
 
     public float getHScroll() {
@@ -230,6 +510,10 @@ public final class ControlMessage {
         return sequence;
     }
 
+    public int getChunkFlags() {
+        return chunkFlags;
+    }
+
     public int getId() {
         return id;
     }
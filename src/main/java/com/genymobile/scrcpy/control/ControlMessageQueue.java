@@ -0,0 +1,213 @@
+package com.genymobile.scrcpy.control;
+
+import android.view.MotionEvent;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free single-producer single-consumer queue of preallocated control messages, between the thread reading the socket and the thread
+ * injecting the events.
+ * <p>
+ * The producer {@link #claim() claims} a slot, fills it and {@link #publish() publishes} it. The consumer {@link #take() takes} the next message,
+ * handles it, then {@link #release() releases} it.
+ * <p>
+ * When several messages are queued (because the injection is slower than the client), consecutive moves of the same pointer are coalesced
+ * (only the last one is returned), and consecutive scroll events are merged (their deltas are summed). All the other messages (down, up, keys,
+ * clipboard…) are returned in order.
+ */
+public final class ControlMessageQueue {
+
+    private final ControlMessage[] ring;
+
+    // Only written by the consumer
+    private volatile long head;
+    // Only written by the producer
+    private volatile long tail;
+
+    private volatile boolean closed;
+
+    private volatile Thread waitingProducer;
+    private volatile Thread waitingConsumer;
+
+    private volatile long coalescedCount;
+    private volatile int maxQueueDepth;
+
+    public ControlMessageQueue(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Control message queue capacity must be at least 2: " + capacity);
+        }
+        ring = new ControlMessage[capacity];
+        for (int i = 0; i < capacity; ++i) {
+            ring[i] = new ControlMessage();
+        }
+    }
+
+    /**
+     * Return the next slot to fill, waiting while the queue is full.
+     * <p>
+     * Must only be called from the producer thread.
+     *
+     * @return the slot, or {@code null} if the queue is closed
+     */
+    public ControlMessage claim() throws InterruptedException {
+        long t = tail;
+        while (t - head == ring.length) {
+            if (closed) {
+                return null;
+            }
+            waitingProducer = Thread.currentThread();
+            if (t - head == ring.length && !closed) {
+                LockSupport.park(this);
+            }
+            waitingProducer = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return closed ? null : ring[(int) (t % ring.length)];
+    }
+
+    /**
+     * Make the slot returned by the last {@link #claim()} available to the consumer.
+     */
+    public void publish() {
+        long t = tail + 1;
+        tail = t;
+        int depth = (int) (t - head);
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Return the next message to handle, waiting while the queue is empty.
+     * <p>
+     * Must only be called from the consumer thread, and followed by {@link #release()} once the message has been handled.
+     *
+     * @return the message, or {@code null} if the queue is closed and all the messages have been consumed
+     */
+    public ControlMessage take() throws InterruptedException {
+        long h = head;
+        while (tail == h) {
+            if (closed) {
+                return null;
+            }
+            waitingConsumer = Thread.currentThread();
+            if (tail == h && !closed) {
+                LockSupport.park(this);
+            }
+            waitingConsumer = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        ControlMessage msg = ring[(int) (h % ring.length)];
+        // Only the published slots (between head and tail) may be read
+        while (h + 1 != tail) {
+            ControlMessage next = ring[(int) ((h + 1) % ring.length)];
+            if (!coalesce(msg, next)) {
+                break;
+            }
+            ++coalescedCount;
+            ++h;
+            // The previous slot may be reused by the producer
+            release(h);
+            msg = next;
+        }
+        return msg;
+    }
+
+    /**
+     * Release the message returned by the last {@link #take()}.
+     */
+    public void release() {
+        release(head + 1);
+    }
+
+    private void release(long newHead) {
+        head = newHead;
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    /**
+     * Close the queue: the producer may not publish anymore, and the consumer receives the remaining messages then {@code null}.
+     */
+    public void close() {
+        closed = true;
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Coalesce {@code msg} into {@code next} if {@code msg} may be skipped.
+     *
+     * @return {@code true} if {@code msg} must be skipped
+     */
+    private static boolean coalesce(ControlMessage msg, ControlMessage next) {
+        int type = msg.getType();
+        if (type != next.getType()) {
+            return false;
+        }
+        switch (type) {
+            case ControlMessage.TYPE_INJECT_TOUCH_EVENT:
+                return isMove(msg.getAction()) && msg.getAction() == next.getAction() && msg.getPointerId() == next.getPointerId()
+                        && msg.getButtons() == next.getButtons() && msg.getActionButton() == next.getActionButton();
+            case ControlMessage.TYPE_INJECT_TOUCH_BATCH:
+                return msg.getAction() == MotionEvent.ACTION_MOVE && next.getAction() == MotionEvent.ACTION_MOVE && hasSamePointers(msg, next);
+            case ControlMessage.TYPE_INJECT_SCROLL_EVENT:
+                if (msg.getButtons() != next.getButtons()) {
+                    return false;
+                }
+                next.mergeScroll(msg);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isMove(int action) {
+        return action == MotionEvent.ACTION_MOVE || action == MotionEvent.ACTION_HOVER_MOVE;
+    }
+
+    private static boolean hasSamePointers(ControlMessage msg, ControlMessage next) {
+        int count = msg.getBatchPointerCount();
+        if (count != next.getBatchPointerCount()) {
+            return false;
+        }
+        for (int i = 0; i < count; ++i) {
+            if (msg.getBatchPointerId(i) != next.getBatchPointerId(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the number of messages skipped or merged into a following message.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    public int getQueueDepth() {
+        return (int) (tail - head);
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+}
@@ -1,87 +1,204 @@
 package com.genymobile.scrcpy.control;
 
-import com.genymobile.scrcpy.device.Position;
 import com.genymobile.scrcpy.util.Binary;
+import com.genymobile.scrcpy.util.Ln;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
+/**
+ * Parse control messages from an input stream.
+ * <p>
+ * The bytes are read in bulk into a reusable buffer, and parsed from there. When a message is provided to {@link #read(ControlMessage)}, the
+ * parsing of fixed-size messages (keycodes, touch, touch batch and scroll events) does not allocate.
+ */
 public class ControlMessageReader {
 
     private static final int MESSAGE_MAX_SIZE = 1 << 18; // 256k
 
     public static final int CLIPBOARD_TEXT_MAX_LENGTH = MESSAGE_MAX_SIZE - 14; // type: 1 byte; sequence: 8 bytes; paste flag: 1 byte; length: 4 bytes
     public static final int INJECT_TEXT_MAX_LENGTH = 300;
+    public static final int CLIPBOARD_CHUNK_MAX_SIZE = 1 << 16; // 64k
+    // Set in the clipboard length field if the text is compressed
+    public static final int CLIPBOARD_COMPRESSED_FLAG = 1 << 31;
 
-    private final DataInputStream dis;
+    private final InputStream input;
+    // Always in "read mode": the bytes between position and limit have been received but not parsed yet
+    private final ByteBuffer buffer = ByteBuffer.allocate(MESSAGE_MAX_SIZE);
 
-    public ControlMessageReader(InputStream rawInputStream) {
-        dis = new DataInputStream(new BufferedInputStream(rawInputStream));
+    // If set, every message read is recorded
+    private ControlStreamRecorder recorder;
+    // Position of the current message in the buffer (adjusted on compaction), to record its raw bytes
+    private int messageStart;
+
+    // Lazily initialized, reused for every compressed clipboard
+    private Inflater inflater;
+    private byte[] inflated;
+
+    public ControlMessageReader(InputStream input) {
+        this.input = input;
+        buffer.limit(0);
+    }
+
+    /**
+     * Record all the messages read from now on.
+     * <p>
+     * Must be called from the thread which reads the messages (or before it is started).
+     */
+    public void setRecorder(ControlStreamRecorder recorder) {
+        this.recorder = recorder;
     }
 
     public ControlMessage read() throws IOException {
-        int type = dis.readUnsignedByte();
+        return read(new ControlMessage());
+    }
+
+    /**
+     * Read the next message into {@code msg}, which is overwritten.
+     *
+     * @param msg the message to fill
+     * @return {@code msg}
+     */
+    public ControlMessage read(ControlMessage msg) throws IOException {
+        messageStart = buffer.position();
+        require(1);
+        int type = buffer.get() & 0xFF;
         switch (type) {
             case ControlMessage.TYPE_INJECT_KEYCODE:
-                return parseInjectKeycode();
+                parseInjectKeycode(msg);
+                break;
             case ControlMessage.TYPE_INJECT_TEXT:
-                return parseInjectText();
+                parseInjectText(msg);
+                break;
             case ControlMessage.TYPE_INJECT_TOUCH_EVENT:
-                return parseInjectTouchEvent();
+                parseInjectTouchEvent(msg);
+                break;
             case ControlMessage.TYPE_INJECT_SCROLL_EVENT:
-                return parseInjectScrollEvent();
+                parseInjectScrollEvent(msg);
+                break;
             case ControlMessage.TYPE_BACK_OR_SCREEN_ON:
-                return parseBackOrScreenOnEvent();
+                parseBackOrScreenOnEvent(msg);
+                break;
             case ControlMessage.TYPE_GET_CLIPBOARD:
-                return parseGetClipboard();
+                parseGetClipboard(msg);
+                break;
             case ControlMessage.TYPE_SET_CLIPBOARD:
-                return parseSetClipboard();
+                parseSetClipboard(msg);
+                break;
+            case ControlMessage.TYPE_SET_CLIPBOARD_CHUNK:
+                parseSetClipboardChunk(msg);
+                break;
             case ControlMessage.TYPE_SET_DISPLAY_POWER:
-                return parseSetDisplayPower();
+                parseSetDisplayPower(msg);
+                break;
             case ControlMessage.TYPE_EXPAND_NOTIFICATION_PANEL:
             case ControlMessage.TYPE_EXPAND_SETTINGS_PANEL:
             case ControlMessage.TYPE_COLLAPSE_PANELS:
             case ControlMessage.TYPE_ROTATE_DEVICE:
             case ControlMessage.TYPE_OPEN_HARD_KEYBOARD_SETTINGS:
             case ControlMessage.TYPE_RESET_VIDEO:
-                return ControlMessage.createEmpty(type);
+            case ControlMessage.TYPE_GET_INPUT_STATS:
+                msg.setEmpty(type);
+                break;
             case ControlMessage.TYPE_UHID_CREATE:
-                return parseUhidCreate();
+                parseUhidCreate(msg);
+                break;
             case ControlMessage.TYPE_UHID_INPUT:
-                return parseUhidInput();
+                parseUhidInput(msg);
+                break;
+            case ControlMessage.TYPE_UHID_INPUT_BATCH:
+                parseUhidInputBatch(msg);
+                break;
             case ControlMessage.TYPE_UHID_DESTROY:
-                return parseUhidDestroy();
+                parseUhidDestroy(msg);
+                break;
             case ControlMessage.TYPE_START_APP:
-                return parseStartApp();
+                parseStartApp(msg);
+                break;
+            case ControlMessage.TYPE_DUMP_REPLAY:
+                parseDumpReplay(msg);
+                break;
+            case ControlMessage.TYPE_INJECT_TOUCH_BATCH:
+                parseInjectTouchBatch(msg);
+                break;
             default:
                 throw new ControlProtocolException("Unknown event type: " + type);
         }
+
+        if (recorder != null) {
+            record();
+        }
+        return msg;
     }
 
-    private ControlMessage parseInjectKeycode() throws IOException {
-        int action = dis.readUnsignedByte();
-        int keycode = dis.readInt();
-        int repeat = dis.readInt();
-        int metaState = dis.readInt();
-        return ControlMessage.createInjectKeycode(action, keycode, repeat, metaState);
+    private void record() {
+        try {
+            recorder.record(InputStats.now(), buffer.array(), messageStart, buffer.position() - messageStart);
+        } catch (IOException e) {
+            Ln.e("Could not record control message, recording stopped", e);
+            recorder = null;
+        }
+    }
+
+    /**
+     * Make sure that at least {@code size} unparsed bytes are available in the buffer, reading from the input stream if necessary.
+     */
+    private void require(int size) throws IOException {
+        if (buffer.remaining() >= size) {
+            return;
+        }
+        // When recording, the bytes of the current message already parsed must be kept
+        int kept = recorder != null ? buffer.position() - messageStart : 0;
+        if (kept + size > buffer.capacity()) {
+            throw new ControlProtocolException("Control message too big: " + (kept + size));
+        }
+        buffer.position(buffer.position() - kept);
+        buffer.compact();
+        messageStart = 0;
+        try {
+            while (buffer.position() < kept + size) {
+                int r = input.read(buffer.array(), buffer.position(), buffer.remaining());
+                if (r == -1) {
+                    throw new EOFException();
+                }
+                buffer.position(buffer.position() + r);
+            }
+        } finally {
+            buffer.flip();
+            buffer.position(kept);
+        }
+    }
+
+    private void parseInjectKeycode(ControlMessage msg) throws IOException {
+        require(13);
+        int action = buffer.get() & 0xFF;
+        int keycode = buffer.getInt();
+        int repeat = buffer.getInt();
+        int metaState = buffer.getInt();
+        msg.setInjectKeycode(action, keycode, repeat, metaState);
     }
 
     private int parseBufferLength(int sizeBytes) throws IOException {
         assert sizeBytes > 0 && sizeBytes <= 4;
+        require(sizeBytes);
         int value = 0;
         for (int i = 0; i < sizeBytes; ++i) {
-            value = (value << 8) | dis.readUnsignedByte();
+            value = (value << 8) | (buffer.get() & 0xFF);
         }
         return value;
     }
 
     private String parseString(int sizeBytes) throws IOException {
-        assert sizeBytes > 0 && sizeBytes <= 4;
-        byte[] data = parseByteArray(sizeBytes);
-        return new String(data, StandardCharsets.UTF_8);
+        int len = parseBufferLength(sizeBytes);
+        require(len);
+        String s = new String(buffer.array(), buffer.position(), len, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + len);
+        return s;
     }
 
     private String parseString() throws IOException {
@@ -90,87 +207,203 @@ public class ControlMessageReader {
 
     private byte[] parseByteArray(int sizeBytes) throws IOException {
         int len = parseBufferLength(sizeBytes);
+        require(len);
         byte[] data = new byte[len];
-        dis.readFully(data);
+        buffer.get(data);
         return data;
     }
 
-    private ControlMessage parseInjectText() throws IOException {
+    private void parseInjectText(ControlMessage msg) throws IOException {
         String text = parseString();
-        return ControlMessage.createInjectText(text);
+        msg.setInjectText(text);
     }
 
-    private ControlMessage parseInjectTouchEvent() throws IOException {
-        int action = dis.readUnsignedByte();
-        long pointerId = dis.readLong();
-        Position position = parsePosition();
-        float pressure = Binary.u16FixedPointToFloat(dis.readShort());
-        int actionButton = dis.readInt();
-        int buttons = dis.readInt();
-        return ControlMessage.createInjectTouchEvent(action, pointerId, position, pressure, actionButton, buttons);
+    private void parseInjectTouchEvent(ControlMessage msg) throws IOException {
+        require(31);
+        int action = buffer.get() & 0xFF;
+        long pointerId = buffer.getLong();
+        int x = buffer.getInt();
+        int y = buffer.getInt();
+        int screenWidth = buffer.getShort() & 0xFFFF;
+        int screenHeight = buffer.getShort() & 0xFFFF;
+        float pressure = Binary.u16FixedPointToFloat(buffer.getShort());
+        int actionButton = buffer.getInt();
+        int buttons = buffer.getInt();
+        msg.setInjectTouchEvent(action, pointerId, x, y, screenWidth, screenHeight, pressure, actionButton, buttons);
     }
 
-    private ControlMessage parseInjectScrollEvent() throws IOException {
-        Position position = parsePosition();
+    private void parseInjectScrollEvent(ControlMessage msg) throws IOException {
+        require(20);
+        int x = buffer.getInt();
+        int y = buffer.getInt();
+        int screenWidth = buffer.getShort() & 0xFFFF;
+        int screenHeight = buffer.getShort() & 0xFFFF;
         // Binary.i16FixedPointToFloat() decodes values assuming the full range is [-1, 1], but the actual range is [-16, 16].
-        float hScroll = Binary.i16FixedPointToFloat(dis.readShort()) * 16;
-        float vScroll = Binary.i16FixedPointToFloat(dis.readShort()) * 16;
-        int buttons = dis.readInt();
-        return ControlMessage.createInjectScrollEvent(position, hScroll, vScroll, buttons);
+        float hScroll = Binary.i16FixedPointToFloat(buffer.getShort()) * 16;
+        float vScroll = Binary.i16FixedPointToFloat(buffer.getShort()) * 16;
+        int buttons = buffer.getInt();
+        msg.setInjectScrollEvent(x, y, screenWidth, screenHeight, hScroll, vScroll, buttons);
     }
 
-    private ControlMessage parseBackOrScreenOnEvent() throws IOException {
-        int action = dis.readUnsignedByte();
-        return ControlMessage.createBackOrScreenOn(action);
+    private void parseInjectTouchBatch(ControlMessage msg) throws IOException {
+        require(7);
+        int action = buffer.get() & 0xFF;
+        int actionIndex = buffer.get() & 0xFF;
+        int screenWidth = buffer.getShort() & 0xFFFF;
+        int screenHeight = buffer.getShort() & 0xFFFF;
+        int pointerCount = buffer.get() & 0xFF;
+        if (pointerCount == 0 || pointerCount > PointersState.MAX_SUPPORTED_POINTERS) {
+            throw new ControlProtocolException("Invalid touch batch pointer count: " + pointerCount);
+        }
+        if (actionIndex >= pointerCount) {
+            throw new ControlProtocolException("Invalid touch batch action index: " + actionIndex);
+        }
+        msg.setInjectTouchBatch(action, actionIndex, screenWidth, screenHeight, pointerCount);
+
+        require(pointerCount * 18); // pointerId: 8 bytes; x: 4 bytes; y: 4 bytes; pressure: 2 bytes
+        for (int i = 0; i < pointerCount; ++i) {
+            long pointerId = buffer.getLong();
+            int x = buffer.getInt();
+            int y = buffer.getInt();
+            float pressure = Binary.u16FixedPointToFloat(buffer.getShort());
+            msg.setBatchPointer(i, pointerId, x, y, pressure);
+        }
     }
 
-    private ControlMessage parseGetClipboard() throws IOException {
-        int copyKey = dis.readUnsignedByte();
-        return ControlMessage.createGetClipboard(copyKey);
+    private void parseBackOrScreenOnEvent(ControlMessage msg) throws IOException {
+        require(1);
+        int action = buffer.get() & 0xFF;
+        msg.setBackOrScreenOn(action);
     }
 
-    private ControlMessage parseSetClipboard() throws IOException {
-        long sequence = dis.readLong();
-        boolean paste = dis.readByte() != 0;
-        String text = parseString();
-        return ControlMessage.createSetClipboard(sequence, text, paste);
+    private void parseGetClipboard(ControlMessage msg) throws IOException {
+        require(1);
+        int copyKey = buffer.get() & 0xFF;
+        msg.setGetClipboard(copyKey);
+    }
+
+    private void parseSetClipboard(ControlMessage msg) throws IOException {
+        require(9);
+        long sequence = buffer.getLong();
+        boolean paste = buffer.get() != 0;
+        String text = parseClipboardText();
+        msg.setSetClipboard(sequence, text, paste);
+    }
+
+    private String parseClipboardText() throws IOException {
+        int len = parseBufferLength(4);
+        if ((len & CLIPBOARD_COMPRESSED_FLAG) == 0) {
+            require(len);
+            String s = new String(buffer.array(), buffer.position(), len, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + len);
+            return s;
+        }
+
+        // Compressed: length (with the flag), uncompressed length, zlib stream
+        len &= ~CLIPBOARD_COMPRESSED_FLAG;
+        if (len < 4) {
+            throw new ControlProtocolException("Invalid compressed clipboard size: " + len);
+        }
+        require(len);
+        int rawLen = buffer.getInt();
+        if (rawLen < 0 || rawLen > CLIPBOARD_TEXT_MAX_LENGTH) {
+            throw new ControlProtocolException("Invalid uncompressed clipboard size: " + rawLen);
+        }
+        int compressedLen = len - 4;
+
+        if (inflater == null) {
+            inflater = new Inflater();
+            inflated = new byte[CLIPBOARD_TEXT_MAX_LENGTH];
+        }
+        inflater.reset();
+        inflater.setInput(buffer.array(), buffer.position(), compressedLen);
+        buffer.position(buffer.position() + compressedLen);
+        try {
+            int n = 0;
+            while (!inflater.finished()) {
+                int r = inflater.inflate(inflated, n, inflated.length - n);
+                if (r == 0 && (inflater.needsInput() || inflater.needsDictionary() || n == inflated.length)) {
+                    break;
+                }
+                n += r;
+            }
+            if (n != rawLen || !inflater.finished()) {
+                throw new ControlProtocolException("Invalid compressed clipboard");
+            }
+        } catch (DataFormatException e) {
+            throw new ControlProtocolException("Invalid compressed clipboard: " + e.getMessage());
+        }
+        return new String(inflated, 0, rawLen, StandardCharsets.UTF_8);
+    }
+
+    private void parseSetClipboardChunk(ControlMessage msg) throws IOException {
+        require(9);
+        long sequence = buffer.getLong();
+        int flags = buffer.get() & 0xFF;
+        require(4);
+        int len = buffer.getInt();
+        if (len < 0 || len > CLIPBOARD_CHUNK_MAX_SIZE) {
+            throw new ControlProtocolException("Invalid clipboard chunk size: " + len);
+        }
+        require(len);
+        byte[] data = new byte[len];
+        buffer.get(data);
+        msg.setSetClipboardChunk(sequence, flags, data);
     }
 
-    private ControlMessage parseSetDisplayPower() throws IOException {
-        boolean on = dis.readBoolean();
-        return ControlMessage.createSetDisplayPower(on);
+    private void parseSetDisplayPower(ControlMessage msg) throws IOException {
+        require(1);
+        boolean on = buffer.get() != 0;
+        msg.setSetDisplayPower(on);
     }
 
-    private ControlMessage parseUhidCreate() throws IOException {
-        int id = dis.readUnsignedShort();
-        int vendorId = dis.readUnsignedShort();
-        int productId = dis.readUnsignedShort();
+    private void parseUhidCreate(ControlMessage msg) throws IOException {
+        require(6);
+        int id = buffer.getShort() & 0xFFFF;
+        int vendorId = buffer.getShort() & 0xFFFF;
+        int productId = buffer.getShort() & 0xFFFF;
         String name = parseString(1);
         byte[] data = parseByteArray(2);
-        return ControlMessage.createUhidCreate(id, vendorId, productId, name, data);
+        msg.setUhidCreate(id, vendorId, productId, name, data);
     }
 
-    private ControlMessage parseUhidInput() throws IOException {
-        int id = dis.readUnsignedShort();
+    private void parseUhidInput(ControlMessage msg) throws IOException {
+        require(2);
+        int id = buffer.getShort() & 0xFFFF;
         byte[] data = parseByteArray(2);
-        return ControlMessage.createUhidInput(id, data);
+        msg.setUhidInput(id, data);
+    }
+
+    private void parseUhidInputBatch(ControlMessage msg) throws IOException {
+        require(3);
+        int id = buffer.getShort() & 0xFFFF;
+        int count = buffer.get() & 0xFF;
+        msg.setUhidInputBatch(id, count);
+        for (int i = 0; i < count; ++i) {
+            require(2);
+            int size = buffer.getShort() & 0xFFFF;
+            if (size > UhidInputBuffer.UHID_DATA_MAX) {
+                throw new ControlProtocolException("Invalid HID report size: " + size);
+            }
+            require(size);
+            msg.setUhidReport(i, buffer.array(), buffer.position(), size);
+            buffer.position(buffer.position() + size);
+        }
     }
 
-    private ControlMessage parseUhidDestroy() throws IOException {
-        int id = dis.readUnsignedShort();
-        return ControlMessage.createUhidDestroy(id);
+    private void parseUhidDestroy(ControlMessage msg) throws IOException {
+        require(2);
+        int id = buffer.getShort() & 0xFFFF;
+        msg.setUhidDestroy(id);
     }
 
-    private ControlMessage parseStartApp() throws IOException {
+    private void parseStartApp(ControlMessage msg) throws IOException {
         String name = parseString(1);
-        return ControlMessage.createStartApp(name);
+        msg.setStartApp(name);
     }
 
-    private Position parsePosition() throws IOException {
-        int x = dis.readInt();
-        int y = dis.readInt();
-        int screenWidth = dis.readUnsignedShort();
-        int screenHeight = dis.readUnsignedShort();
-        return new Position(x, y, screenWidth, screenHeight);
+    private void parseDumpReplay(ControlMessage msg) throws IOException {
+        String path = parseString(2);
+        msg.setDumpReplay(path);
     }
 }
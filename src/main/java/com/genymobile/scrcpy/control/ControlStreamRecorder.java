@@ -0,0 +1,68 @@
+package com.genymobile.scrcpy.control;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Record the raw control stream, message by message, with monotonic timestamps.
+ * <p>
+ * Log format:
+ * <pre>
+ *     header: "SCCL" (4 bytes), version (u8)
+ *     then for each message:
+ *         delay since the previous message, in microseconds (unsigned LEB128, 0 for the first message)
+ *         message length (unsigned LEB128)
+ *         raw message bytes, as received from the client
+ * </pre>
+ * The log can be replayed by {@link ControlStreamReplayer}.
+ */
+public final class ControlStreamRecorder implements Closeable {
+
+    static final byte[] MAGIC = {'S', 'C', 'C', 'L'};
+    static final int VERSION = 1;
+
+    private final OutputStream output;
+
+    private long lastTimestamp = -1;
+    private long recordCount;
+
+    public ControlStreamRecorder(OutputStream output) throws IOException {
+        this.output = new BufferedOutputStream(output);
+        this.output.write(MAGIC);
+        this.output.write(VERSION);
+    }
+
+    /**
+     * Record a message.
+     *
+     * @param timestamp the monotonic time at which the message has been received, in microseconds
+     */
+    public void record(long timestamp, byte[] data, int offset, int length) throws IOException {
+        long delay = lastTimestamp == -1 ? 0 : Math.max(0, timestamp - lastTimestamp);
+        lastTimestamp = timestamp;
+        writeVarint(delay);
+        writeVarint(length);
+        output.write(data, offset, length);
+        ++recordCount;
+    }
+
+    private void writeVarint(long value) throws IOException {
+        assert value >= 0;
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
@@ -0,0 +1,154 @@
+package com.genymobile.scrcpy.control;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+
+/**
+ * Replay a control stream recorded by {@link ControlStreamRecorder}, as an input stream of raw control messages.
+ * <p>
+ * It can be read by a {@link ControlMessageReader} (possibly through a {@link ControlChannel} given to the {@link Controller}), exactly like
+ * the stream received from the client.
+ * <p>
+ * Each message becomes readable at its recorded time (relative to the first read) divided by the speed factor. A speed of 0 replays the
+ * messages as fast as possible.
+ */
+public final class ControlStreamReplayer extends InputStream {
+
+    private final DataInputStream input;
+    private final float speed;
+
+    private byte[] record = new byte[256];
+    private int recordLength;
+    private int recordPosition;
+
+    private long startTime = -1; // in nanoseconds
+    private long recordTime; // in microseconds, relative to the first record
+    private long recordCount;
+
+    private final byte[] singleByte = new byte[1];
+
+    /**
+     * @param log   the recorded control stream
+     * @param speed the speed factor (1 for real time), or 0 to replay as fast as possible
+     */
+    public ControlStreamReplayer(InputStream log, float speed) throws IOException {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Invalid replay speed: " + speed);
+        }
+        this.input = new DataInputStream(new BufferedInputStream(log));
+        this.speed = speed;
+
+        byte[] magic = new byte[ControlStreamRecorder.MAGIC.length];
+        input.readFully(magic);
+        if (!Arrays.equals(magic, ControlStreamRecorder.MAGIC)) {
+            throw new IOException("Not a control stream log");
+        }
+        int version = input.readUnsignedByte();
+        if (version != ControlStreamRecorder.VERSION) {
+            throw new IOException("Unsupported control stream log version: " + version);
+        }
+    }
+
+    /**
+     * Read the next record, and wait until it is due.
+     *
+     * @return {@code false} at the end of the log
+     */
+    private boolean nextRecord() throws IOException {
+        int first = input.read();
+        if (first == -1) {
+            return false;
+        }
+        long delay = readVarint(first);
+        long length = readVarint(input.readUnsignedByte());
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Invalid control stream record length: " + length);
+        }
+
+        recordLength = (int) length;
+        if (record.length < recordLength) {
+            record = new byte[Math.max(recordLength, 2 * record.length)];
+        }
+        input.readFully(record, 0, recordLength);
+        recordPosition = 0;
+
+        recordTime += delay;
+        ++recordCount;
+        waitUntilDue();
+        return true;
+    }
+
+    private long readVarint(int first) throws IOException {
+        long value = first & 0x7F;
+        int b = first;
+        int shift = 7;
+        while ((b & 0x80) != 0) {
+            if (shift > 63) {
+                throw new IOException("Invalid varint in control stream log");
+            }
+            b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        return value;
+    }
+
+    private void waitUntilDue() throws InterruptedIOException {
+        long now = System.nanoTime();
+        if (startTime == -1) {
+            startTime = now;
+        }
+        if (speed == 0) {
+            return;
+        }
+
+        long dueTime = startTime + (long) (recordTime * 1000 / speed);
+        long remaining = dueTime - now;
+        if (remaining > 0) {
+            try {
+                Thread.sleep(remaining / 1_000_000, (int) (remaining % 1_000_000));
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        // Never return bytes of the next message before it is due
+        while (recordPosition == recordLength) {
+            if (!nextRecord()) {
+                return -1;
+            }
+        }
+        int r = Math.min(len, recordLength - recordPosition);
+        System.arraycopy(record, recordPosition, b, off, r);
+        recordPosition += r;
+        return r;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int r = read(singleByte, 0, 1);
+        return r == -1 ? -1 : singleByte[0] & 0xFF;
+    }
+
+    /**
+     * Return the number of messages replayed so far.
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
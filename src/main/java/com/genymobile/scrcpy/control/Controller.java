@@ -7,9 +7,12 @@ import com.genymobile.scrcpy.Options;
 import com.genymobile.scrcpy.device.Device;
 import com.genymobile.scrcpy.device.DeviceApp;
 import com.genymobile.scrcpy.device.DisplayInfo;
+import com.genymobile.scrcpy.device.DisplayInfoCache;
 import com.genymobile.scrcpy.device.Point;
 import com.genymobile.scrcpy.device.Position;
+import com.genymobile.scrcpy.device.ReplayBuffer;
 import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.device.StreamStats;
 import com.genymobile.scrcpy.util.Ln;
 import com.genymobile.scrcpy.util.LogUtils;
 import com.genymobile.scrcpy.video.SurfaceCapture;
@@ -27,10 +30,12 @@ import android.view.KeyCharacterMap;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -68,10 +73,17 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
     // control_msg.h values of the pointerId field in inject_touch_event message
     private static final int POINTER_ID_MOUSE = -1;
 
-    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+    private static final int MESSAGE_QUEUE_CAPACITY = 64;
+
+    private static final String REPLAY_DUMP_PATH_PREFIX = "/data/local/tmp/scrcpy-replay-";
+
+    // Per session, so that the pending tasks (stats, display power off) are cancelled when the session stops
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
     private ExecutorService startAppExecutor;
+    private ExecutorService dumpReplayExecutor;
 
     private Thread thread;
+    private Thread injectThread;
 
     private UhidManager uhidManager;
 
@@ -80,34 +92,76 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
     private final ControlChannel controlChannel;
     private final CleanUp cleanUp;
     private final DeviceMessageSender sender;
+    private final InputEventInjector injector;
     private final boolean clipboardAutosync;
     private final boolean powerOn;
+    private final int statsPeriod;
+
+    private final TextInjector<KeyEvent> textInjector;
+    private final int textPasteThreshold;
 
-    private final KeyCharacterMap charMap = KeyCharacterMap.load(KeyCharacterMap.VIRTUAL_KEYBOARD);
+    // Reported on GET_INPUT_STATS message, and periodically (if enabled)
+    private final InputStats inputStats;
 
     private final AtomicBoolean isSettingClipboard = new AtomicBoolean();
+    // Removed on stop, the server process may outlive the session (in daemon mode)
+    private android.content.ClipboardManager.OnPrimaryClipChangedListener clipChangedListener;
+    // Reassemble the clipboard received in chunks (only accessed from the inject thread)
+    private final ClipboardAssembler clipboardAssembler;
 
     private final AtomicReference<DisplayData> displayData = new AtomicReference<>();
     private final Object displayDataAvailable = new Object(); // condition variable
 
     private long lastTouchDown;
-    private final PointersState pointersState = new PointersState();
-    private final MotionEvent.PointerProperties[] pointerProperties = new MotionEvent.PointerProperties[PointersState.MAX_POINTERS];
-    private final MotionEvent.PointerCoords[] pointerCoords = new MotionEvent.PointerCoords[PointersState.MAX_POINTERS];
+    private final PointersState pointersState;
+    private final MotionEvent.PointerProperties[] pointerProperties;
+    private final MotionEvent.PointerCoords[] pointerCoords;
+    // Device coordinates of the current pointer of a touch batch (reused to avoid allocations)
+    private final int[] batchPoint = new int[2];
+
+    // Received messages, consumed by the inject thread, so that a slow injection does not block the socket
+    private final ControlMessageQueue messageQueue = new ControlMessageQueue(MESSAGE_QUEUE_CAPACITY);
 
     private boolean keepDisplayPowerOff;
 
     // Used for resetting video encoding on RESET_VIDEO message
     private SurfaceCapture surfaceCapture;
 
+    // Reported periodically to the client (if enabled)
+    private StreamStats streamStats;
+
+    // Dumped on DUMP_REPLAY message (if enabled)
+    private ReplayBuffer replayBuffer;
+
     public Controller(ControlChannel controlChannel, CleanUp cleanUp, Options options) {
+        this(controlChannel, cleanUp, options, InputEventInjector.DEVICE);
+    }
+
+    public Controller(ControlChannel controlChannel, CleanUp cleanUp, Options options, InputEventInjector injector) {
+        this(controlChannel, cleanUp, options, injector, KeyCharacterMap.load(KeyCharacterMap.VIRTUAL_KEYBOARD));
+    }
+
+    /**
+     * @param charMap the virtual keyboard character map (loading it requires a binder call, so it may be loaded in advance)
+     */
+    public Controller(ControlChannel controlChannel, CleanUp cleanUp, Options options, InputEventInjector injector, KeyCharacterMap charMap) {
         this.displayId = options.getDisplayId();
+        this.injector = injector;
+        textInjector = new TextInjector<>(charMap::getEvents, TextInjector.DEFAULT_CACHE_SIZE);
         this.controlChannel = controlChannel;
         this.cleanUp = cleanUp;
         this.clipboardAutosync = options.getClipboardAutosync();
         this.powerOn = options.getPowerOn();
+        this.statsPeriod = options.getStatsPeriod();
+        this.textPasteThreshold = options.getTextPasteThreshold();
+        this.inputStats = new InputStats(options.getInputStatsSampleInterval());
+        int maxPointers = options.getMaxPointers();
+        pointersState = new PointersState(maxPointers);
+        pointerProperties = new MotionEvent.PointerProperties[maxPointers];
+        pointerCoords = new MotionEvent.PointerCoords[maxPointers];
         initPointers();
-        sender = new DeviceMessageSender(controlChannel);
+        sender = new DeviceMessageSender(controlChannel, options.getClipboardChunkSize());
+        clipboardAssembler = new ClipboardAssembler(options.getClipboardMaxSize());
 
         supportsInputEvents = Device.supportsInputEvents(displayId);
         if (!supportsInputEvents) {
@@ -119,7 +173,7 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         if (clipboardAutosync) {
             // If control and autosync are enabled, synchronize Android clipboard to the computer automatically
             if (clipboardManager != null) {
-                clipboardManager.addPrimaryClipChangedListener(() -> {
+                clipChangedListener = () -> {
                     if (isSettingClipboard.get()) {
                         // This is a notification for the change we are currently applying, ignore it
                         return;
@@ -129,7 +183,8 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
                         DeviceMessage msg = DeviceMessage.createClipboard(text);
                         sender.send(msg);
                     }
-                });
+                };
+                clipboardManager.addPrimaryClipChangedListener(clipChangedListener);
             } else {
                 Ln.w("No clipboard manager, copy-paste between device and computer will not work");
             }
@@ -152,6 +207,14 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         this.surfaceCapture = surfaceCapture;
     }
 
+    public void setStreamStats(StreamStats streamStats) {
+        this.streamStats = streamStats;
+    }
+
+    public void setReplayBuffer(ReplayBuffer replayBuffer) {
+        this.replayBuffer = replayBuffer;
+    }
+
     private UhidManager getUhidManager() {
         if (uhidManager == null) {
             int uhidDisplayId = displayId;
@@ -174,7 +237,7 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
             String displayUniqueId = null;
             if (uhidDisplayId > 0) {
                 // Ignore Device.DISPLAY_ID_NONE and 0 (main display)
-                DisplayInfo displayInfo = ServiceManager.getDisplayManager().getDisplayInfo(uhidDisplayId);
+                DisplayInfo displayInfo = DisplayInfoCache.getDefault().get(uhidDisplayId);
                 if (displayInfo != null) {
                     displayUniqueId = displayInfo.getUniqueId();
                 }
@@ -186,7 +249,7 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
     }
 
     private void initPointers() {
-        for (int i = 0; i < PointersState.MAX_POINTERS; ++i) {
+        for (int i = 0; i < pointerProperties.length; ++i) {
             MotionEvent.PointerProperties props = new MotionEvent.PointerProperties();
             props.toolType = MotionEvent.TOOL_TYPE_FINGER;
 
@@ -199,10 +262,33 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         }
     }
 
-    private void control() throws IOException {
+    private void receive() throws InterruptedException {
+        try {
+            while (true) {
+                ControlMessage msg = messageQueue.claim();
+                if (msg == null) {
+                    // closed
+                    return;
+                }
+                try {
+                    controlChannel.recv(msg);
+                } catch (IOException e) {
+                    // this is expected on close
+                    return;
+                }
+                msg.setReceiveTime(InputStats.now());
+                messageQueue.publish();
+            }
+        } finally {
+            // Let the inject thread handle the remaining messages, then terminate
+            messageQueue.close();
+        }
+    }
+
+    private void control() throws IOException, InterruptedException {
         // on start, power on the device
         if (powerOn && displayId == 0 && !Device.isScreenOn(displayId)) {
-            Device.pressReleaseKeycode(KeyEvent.KEYCODE_POWER, displayId, Device.INJECT_MODE_ASYNC);
+            Device.pressReleaseKeycode(injector, KeyEvent.KEYCODE_POWER, displayId, Device.INJECT_MODE_ASYNC);
 
             // dirty hack
             // After POWER is injected, the device is powered on asynchronously.
@@ -214,29 +300,52 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
             SystemClock.sleep(500);
         }
 
-        boolean alive = true;
-        while (!Thread.currentThread().isInterrupted() && alive) {
-            alive = handleEvent();
+        while (true) {
+            ControlMessage msg = messageQueue.take();
+            if (msg == null) {
+                // closed and drained
+                return;
+            }
+            try {
+                handleMessageWithStats(msg);
+            } finally {
+                messageQueue.release();
+            }
         }
     }
 
     @Override
     public void start(TerminationListener listener) {
         thread = new Thread(() -> {
+            try {
+                receive();
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }, "control-recv");
+        injectThread = new Thread(() -> {
             try {
                 control();
             } catch (IOException e) {
                 Ln.e("Controller error", e);
+            } catch (InterruptedException e) {
+                // stopped
             } finally {
-                Ln.d("Controller stopped");
+                Ln.d("Controller stopped (coalesced messages: " + messageQueue.getCoalescedCount() + ", max queue depth: "
+                        + messageQueue.getMaxQueueDepth() + ")");
                 if (uhidManager != null) {
                     uhidManager.closeAll();
                 }
                 listener.onTerminated(true);
             }
-        }, "control-recv");
+        }, "control-inject");
         thread.start();
+        injectThread.start();
         sender.start();
+
+        if (statsPeriod > 0) {
+            executor.scheduleAtFixedRate(this::sendStats, statsPeriod, statsPeriod, TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
@@ -244,6 +353,13 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         if (thread != null) {
             thread.interrupt();
         }
+        if (injectThread != null) {
+            injectThread.interrupt();
+        }
+        executor.shutdownNow();
+        if (clipChangedListener != null) {
+            ServiceManager.getClipboardManager().removePrimaryClipChangedListener(clipChangedListener);
+        }
         sender.stop();
     }
 
@@ -252,22 +368,41 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         if (thread != null) {
             thread.join();
         }
+        if (injectThread != null) {
+            injectThread.join();
+        }
+        // The control threads are terminated, no new task may be submitted
+        if (startAppExecutor != null) {
+            startAppExecutor.shutdownNow();
+        }
+        if (dumpReplayExecutor != null) {
+            // The replay buffer is closed by the caller once joined, let the current dump complete
+            dumpReplayExecutor.shutdown();
+            dumpReplayExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
         sender.join();
     }
 
-    private boolean handleEvent() throws IOException {
-        ControlMessage msg;
-        try {
-            msg = controlChannel.recv();
-        } catch (IOException e) {
-            // this is expected on close
-            return false;
+    private void handleMessageWithStats(ControlMessage msg) throws IOException {
+        int type = msg.getType();
+        boolean sampled = inputStats.sampleRoundTrip(type);
+        int injectMode = sampled ? Device.INJECT_MODE_WAIT_FOR_RESULT : Device.INJECT_MODE_ASYNC;
+
+        long start = InputStats.now();
+        handleMessage(msg, injectMode);
+        long end = InputStats.now();
+
+        if (sampled) {
+            inputStats.recordRoundTrip(end - start);
         }
+        inputStats.recordInjection(type, end - msg.getReceiveTime());
+    }
 
+    private void handleMessage(ControlMessage msg, int injectMode) throws IOException {
         switch (msg.getType()) {
             case ControlMessage.TYPE_INJECT_KEYCODE:
                 if (supportsInputEvents) {
-                    injectKeycode(msg.getAction(), msg.getKeycode(), msg.getRepeat(), msg.getMetaState());
+                    injectKeycode(msg.getAction(), msg.getKeycode(), msg.getRepeat(), msg.getMetaState(), injectMode);
                 }
                 break;
             case ControlMessage.TYPE_INJECT_TEXT:
@@ -277,12 +412,18 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
                 break;
             case ControlMessage.TYPE_INJECT_TOUCH_EVENT:
                 if (supportsInputEvents) {
-                    injectTouch(msg.getAction(), msg.getPointerId(), msg.getPosition(), msg.getPressure(), msg.getActionButton(), msg.getButtons());
+                    injectTouch(msg.getAction(), msg.getPointerId(), msg.getPosition(), msg.getPressure(), msg.getActionButton(), msg.getButtons(),
+                            injectMode);
+                }
+                break;
+            case ControlMessage.TYPE_INJECT_TOUCH_BATCH:
+                if (supportsInputEvents) {
+                    injectTouchBatch(msg, injectMode);
                 }
                 break;
             case ControlMessage.TYPE_INJECT_SCROLL_EVENT:
                 if (supportsInputEvents) {
-                    injectScroll(msg.getPosition(), msg.getHScroll(), msg.getVScroll(), msg.getButtons());
+                    injectScroll(msg.getPosition(), msg.getHScroll(), msg.getVScroll(), msg.getButtons(), injectMode);
                 }
                 break;
             case ControlMessage.TYPE_BACK_OR_SCREEN_ON:
@@ -305,6 +446,9 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
             case ControlMessage.TYPE_SET_CLIPBOARD:
                 setClipboard(msg.getText(), msg.getPaste(), msg.getSequence());
                 break;
+            case ControlMessage.TYPE_SET_CLIPBOARD_CHUNK:
+                setClipboardChunk(msg.getChunkFlags(), msg.getData(), msg.getSequence());
+                break;
             case ControlMessage.TYPE_SET_DISPLAY_POWER:
                 if (supportsInputEvents) {
                     setDisplayPower(msg.getOn());
@@ -319,6 +463,10 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
             case ControlMessage.TYPE_UHID_INPUT:
                 getUhidManager().writeInput(msg.getId(), msg.getData());
                 break;
+            case ControlMessage.TYPE_UHID_INPUT_BATCH:
+                getUhidManager().writeInputBatch(msg.getId(), msg.getUhidReports(), msg.getUhidReportOffsets(), msg.getUhidReportSizes(),
+                        msg.getUhidReportCount());
+                break;
             case ControlMessage.TYPE_UHID_DESTROY:
                 getUhidManager().close(msg.getId());
                 break;
@@ -331,46 +479,43 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
             case ControlMessage.TYPE_RESET_VIDEO:
                 resetVideo();
                 break;
+            case ControlMessage.TYPE_GET_INPUT_STATS:
+                sender.send(inputStats.createMessageAndReset());
+                break;
+            case ControlMessage.TYPE_DUMP_REPLAY:
+                dumpReplayAsync(msg.getText());
+                break;
             default:
                 // do nothing
         }
-
-        return true;
     }
 
-    private boolean injectKeycode(int action, int keycode, int repeat, int metaState) {
+    private boolean injectKeycode(int action, int keycode, int repeat, int metaState, int injectMode) {
         if (keepDisplayPowerOff && action == KeyEvent.ACTION_UP && (keycode == KeyEvent.KEYCODE_POWER || keycode == KeyEvent.KEYCODE_WAKEUP)) {
             assert displayId != Device.DISPLAY_ID_NONE;
             scheduleDisplayPowerOff(displayId);
         }
-        return injectKeyEvent(action, keycode, repeat, metaState, Device.INJECT_MODE_ASYNC);
+        return injectKeyEvent(action, keycode, repeat, metaState, injectMode);
     }
 
-    private boolean injectChar(char c) {
-        String decomposed = KeyComposition.decompose(c);
-        char[] chars = decomposed != null ? decomposed.toCharArray() : new char[]{c};
-        KeyEvent[] events = charMap.getEvents(chars);
-        if (events == null) {
-            return false;
+    private int injectText(String text) {
+        if (textPasteThreshold > 0 && text.length() > textPasteThreshold && Build.VERSION.SDK_INT >= AndroidVersions.API_24_ANDROID_7_0) {
+            // Injecting one key event per character is slow for long texts, paste them instead
+            return setClipboard(text, true, ControlMessage.SEQUENCE_INVALID) ? text.length() : 0;
         }
 
         int actionDisplayId = getActionDisplayId();
-        for (KeyEvent event : events) {
-            if (!Device.injectEvent(event, actionDisplayId, Device.INJECT_MODE_ASYNC)) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-    private int injectText(String text) {
-        int successCount = 0;
-        for (char c : text.toCharArray()) {
-            if (!injectChar(c)) {
-                Ln.w("Could not inject char u+" + String.format("%04x", (int) c));
-                continue;
-            }
-            successCount++;
+        int successCount = textInjector.inject(text, event -> {
+            // The cached events are templates, re-time them
+            long now = SystemClock.uptimeMillis();
+            KeyEvent timedEvent = new KeyEvent(now, now, event.getAction(), event.getKeyCode(), event.getRepeatCount(), event.getMetaState(),
+                    event.getDeviceId(), event.getScanCode(), event.getFlags(), event.getSource());
+            return injector.injectEvent(timedEvent, actionDisplayId, Device.INJECT_MODE_ASYNC);
+        });
+
+        CharSequence unmappedChars = textInjector.getUnmappedChars();
+        for (int i = 0; i < unmappedChars.length(); ++i) {
+            Ln.w("Could not inject char u+" + String.format("%04x", (int) unmappedChars.charAt(i)));
         }
         return successCount;
     }
@@ -405,7 +550,7 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         return Pair.create(point, targetDisplayId);
     }
 
-    private boolean injectTouch(int action, long pointerId, Position position, float pressure, int actionButton, int buttons) {
+    private boolean injectTouch(int action, long pointerId, Position position, float pressure, int actionButton, int buttons, int injectMode) {
         long now = SystemClock.uptimeMillis();
 
         Pair<Point, Integer> pair = getEventPointAndDisplayId(position);
@@ -421,9 +566,8 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
             Ln.w("Too many pointers for touch event");
             return false;
         }
-        Pointer pointer = pointersState.get(pointerIndex);
-        pointer.setPoint(point);
-        pointer.setPressure(pressure);
+        pointersState.setPoint(pointerIndex, point.getX(), point.getY());
+        pointersState.setPressure(pointerIndex, pressure);
 
         int source;
         boolean activeSecondaryButtons = ((actionButton | buttons) & ~MotionEvent.BUTTON_PRIMARY) != 0;
@@ -431,14 +575,14 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
             // real mouse event, or event incompatible with a finger
             pointerProperties[pointerIndex].toolType = MotionEvent.TOOL_TYPE_MOUSE;
             source = InputDevice.SOURCE_MOUSE;
-            pointer.setUp(buttons == 0);
+            pointersState.setUp(pointerIndex, buttons == 0);
         } else {
             // POINTER_ID_GENERIC_FINGER, POINTER_ID_VIRTUAL_FINGER or real touch from device
             pointerProperties[pointerIndex].toolType = MotionEvent.TOOL_TYPE_FINGER;
             source = InputDevice.SOURCE_TOUCHSCREEN;
             // Buttons must not be set for touch events
             buttons = 0;
-            pointer.setUp(action == MotionEvent.ACTION_UP);
+            pointersState.setUp(pointerIndex, action == MotionEvent.ACTION_UP);
         }
 
         int pointerCount = pointersState.update(pointerProperties, pointerCoords);
@@ -469,7 +613,7 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
                     // First button pressed: ACTION_DOWN
                     MotionEvent downEvent = MotionEvent.obtain(lastTouchDown, now, MotionEvent.ACTION_DOWN, pointerCount, pointerProperties,
                             pointerCoords, 0, buttons, 1f, 1f, DEFAULT_DEVICE_ID, 0, source, 0);
-                    if (!Device.injectEvent(downEvent, targetDisplayId, Device.INJECT_MODE_ASYNC)) {
+                    if (!injector.injectEvent(downEvent, targetDisplayId, injectMode)) {
                         return false;
                     }
                 }
@@ -480,7 +624,7 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
                 if (!InputManager.setActionButton(pressEvent, actionButton)) {
                     return false;
                 }
-                if (!Device.injectEvent(pressEvent, targetDisplayId, Device.INJECT_MODE_ASYNC)) {
+                if (!injector.injectEvent(pressEvent, targetDisplayId, injectMode)) {
                     return false;
                 }
 
@@ -494,7 +638,7 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
                 if (!InputManager.setActionButton(releaseEvent, actionButton)) {
                     return false;
                 }
-                if (!Device.injectEvent(releaseEvent, targetDisplayId, Device.INJECT_MODE_ASYNC)) {
+                if (!injector.injectEvent(releaseEvent, targetDisplayId, injectMode)) {
                     return false;
                 }
 
@@ -502,7 +646,7 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
                     // Last button released: ACTION_UP
                     MotionEvent upEvent = MotionEvent.obtain(lastTouchDown, now, MotionEvent.ACTION_UP, pointerCount, pointerProperties,
                             pointerCoords, 0, buttons, 1f, 1f, DEFAULT_DEVICE_ID, 0, source, 0);
-                    if (!Device.injectEvent(upEvent, targetDisplayId, Device.INJECT_MODE_ASYNC)) {
+                    if (!injector.injectEvent(upEvent, targetDisplayId, injectMode)) {
                         return false;
                     }
                 }
@@ -513,10 +657,94 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
 
         MotionEvent event = MotionEvent.obtain(lastTouchDown, now, action, pointerCount, pointerProperties, pointerCoords, 0, buttons, 1f, 1f,
                 DEFAULT_DEVICE_ID, 0, source, 0);
-        return Device.injectEvent(event, targetDisplayId, Device.INJECT_MODE_ASYNC);
+        return injector.injectEvent(event, targetDisplayId, injectMode);
     }
 
-    private boolean injectScroll(Position position, float hScroll, float vScroll, int buttons) {
+    /**
+     * Inject the state of all the active pointers for one input frame as a single {@link MotionEvent}.
+     * <p>
+     * At most one pointer (at {@code actionIndex} in the batch) may go down or up; the others are moved.
+     */
+    private boolean injectTouchBatch(ControlMessage msg, int injectMode) {
+        long now = SystemClock.uptimeMillis();
+
+        int action = msg.getAction();
+        int count = msg.getBatchPointerCount();
+
+        // Validate the whole batch before changing the pointers state, so that a rejected batch leaves it unchanged
+        // it hides the field on purpose, to read it with atomic access
+        @SuppressWarnings("checkstyle:HiddenField")
+        DisplayData displayData = this.displayData.get();
+        assert displayData != null || displayId != Device.DISPLAY_ID_NONE : "Cannot receive a positional event without a display";
+
+        PositionMapper positionMapper = null;
+        int targetDisplayId;
+        if (displayData != null) {
+            positionMapper = displayData.positionMapper;
+            // All the pointers share the same screen size, so either all or none of them are ignored
+            if (!positionMapper.accepts(msg.getScreenWidth(), msg.getScreenHeight())) {
+                if (Ln.isEnabled(Ln.Level.VERBOSE)) {
+                    Ln.v("Ignore touch batch generated for size " + msg.getScreenWidth() + "x" + msg.getScreenHeight() + " (current size is "
+                            + positionMapper.getVideoSize() + ")");
+                }
+                return false;
+            }
+            targetDisplayId = displayData.virtualDisplayId;
+        } else {
+            // No display, use the raw coordinates
+            targetDisplayId = displayId;
+        }
+
+        int newPointers = 0;
+        for (int i = 0; i < count; ++i) {
+            if (!pointersState.contains(msg.getBatchPointerId(i))) {
+                ++newPointers;
+            }
+        }
+        if (pointersState.getCount() + newPointers > pointersState.getMaxPointers()) {
+            Ln.w("Too many pointers for touch event");
+            return false;
+        }
+
+        int actionPointerIndex = -1;
+        for (int i = 0; i < count; ++i) {
+            int pointerIndex = pointersState.getPointerIndex(msg.getBatchPointerId(i));
+            assert pointerIndex != -1 : "The number of pointers has been checked";
+            if (positionMapper != null) {
+                positionMapper.map(msg.getBatchX(i), msg.getBatchY(i), batchPoint);
+                pointersState.setPoint(pointerIndex, batchPoint[0], batchPoint[1]);
+            } else {
+                pointersState.setPoint(pointerIndex, msg.getBatchX(i), msg.getBatchY(i));
+            }
+            pointersState.setPressure(pointerIndex, msg.getBatchPressure(i));
+            boolean isActionPointer = i == msg.getActionIndex();
+            pointersState.setUp(pointerIndex, action == MotionEvent.ACTION_CANCEL || (isActionPointer && action == MotionEvent.ACTION_UP));
+            pointerProperties[pointerIndex].toolType = MotionEvent.TOOL_TYPE_FINGER;
+            if (isActionPointer) {
+                actionPointerIndex = pointerIndex;
+            }
+        }
+
+        int pointerCount = pointersState.update(pointerProperties, pointerCoords);
+        if (pointerCount == 1) {
+            if (action == MotionEvent.ACTION_DOWN) {
+                lastTouchDown = now;
+            }
+        } else {
+            // secondary pointers must use ACTION_POINTER_* ORed with the pointerIndex
+            if (action == MotionEvent.ACTION_UP) {
+                action = MotionEvent.ACTION_POINTER_UP | (actionPointerIndex << MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+            } else if (action == MotionEvent.ACTION_DOWN) {
+                action = MotionEvent.ACTION_POINTER_DOWN | (actionPointerIndex << MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+            }
+        }
+
+        MotionEvent event = MotionEvent.obtain(lastTouchDown, now, action, pointerCount, pointerProperties, pointerCoords, 0, 0, 1f, 1f,
+                DEFAULT_DEVICE_ID, 0, InputDevice.SOURCE_TOUCHSCREEN, 0);
+        return injector.injectEvent(event, targetDisplayId, injectMode);
+    }
+
+    private boolean injectScroll(Position position, float hScroll, float vScroll, int buttons, int injectMode) {
         long now = SystemClock.uptimeMillis();
 
         Pair<Point, Integer> pair = getEventPointAndDisplayId(position);
@@ -538,17 +766,21 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
 
         MotionEvent event = MotionEvent.obtain(lastTouchDown, now, MotionEvent.ACTION_SCROLL, 1, pointerProperties, pointerCoords, 0, buttons, 1f, 1f,
                 DEFAULT_DEVICE_ID, 0, InputDevice.SOURCE_MOUSE, 0);
-        return Device.injectEvent(event, targetDisplayId, Device.INJECT_MODE_ASYNC);
+        return injector.injectEvent(event, targetDisplayId, injectMode);
     }
 
     /**
      * Schedule a call to set display power to off after a small delay.
      */
-    private static void scheduleDisplayPowerOff(int displayId) {
-        EXECUTOR.schedule(() -> {
-            Ln.i("Forcing display off");
-            Device.setDisplayPower(displayId, false);
-        }, 200, TimeUnit.MILLISECONDS);
+    private void scheduleDisplayPowerOff(int displayId) {
+        try {
+            executor.schedule(() -> {
+                Ln.i("Forcing display off");
+                Device.setDisplayPower(displayId, false);
+            }, 200, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The session is stopping
+        }
     }
 
     private boolean pressBackOrTurnScreenOn(int action) {
@@ -590,6 +822,17 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         }
     }
 
+    private void setClipboardChunk(int flags, byte[] data, long sequence) {
+        String text = clipboardAssembler.append(flags, data);
+        if (text != null) {
+            boolean paste = (flags & ControlMessage.CLIPBOARD_CHUNK_FLAG_PASTE) != 0;
+            setClipboard(text, paste, sequence);
+        } else if ((flags & ControlMessage.CLIPBOARD_CHUNK_FLAG_LAST) != 0 && clipboardAssembler.hasOverflowed()) {
+            // Not acknowledged, the client must not assume that the device clipboard has been set
+            Ln.w("Clipboard too large, ignored");
+        }
+    }
+
     private boolean setClipboard(String text, boolean paste, long sequence) {
         isSettingClipboard.set(true);
         boolean ok = Device.setClipboardText(text);
@@ -618,11 +861,11 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
     }
 
     private boolean injectKeyEvent(int action, int keyCode, int repeat, int metaState, int injectMode) {
-        return Device.injectKeyEvent(action, keyCode, repeat, metaState, getActionDisplayId(), injectMode);
+        return Device.injectKeyEvent(injector, action, keyCode, repeat, metaState, getActionDisplayId(), injectMode);
     }
 
     private boolean pressReleaseKeycode(int keyCode, int injectMode) {
-        return Device.pressReleaseKeycode(keyCode, getActionDisplayId(), injectMode);
+        return Device.pressReleaseKeycode(injector, keyCode, getActionDisplayId(), injectMode);
     }
 
     private int getActionDisplayId() {
@@ -748,6 +991,46 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         }
     }
 
+    private void sendStats() {
+        // The latencies are reported for the last period only
+        if (streamStats != null) {
+            DeviceMessage msg = DeviceMessage.createVideoStats(streamStats.getDroppedPackets(), streamStats.getEncodeLatency().snapshotAndReset(),
+                    streamStats.getQueueLatency().snapshotAndReset(), streamStats.getWriteLatency().snapshotAndReset());
+            sender.send(msg);
+        }
+        sender.send(inputStats.createMessageAndReset());
+    }
+
+    private void dumpReplayAsync(String path) {
+        if (replayBuffer == null) {
+            Ln.w("Replay buffer is disabled");
+            sender.send(DeviceMessage.createReplayDumped(""));
+            return;
+        }
+
+        if (dumpReplayExecutor == null) {
+            dumpReplayExecutor = Executors.newSingleThreadExecutor();
+        }
+
+        // Writing the file may take some time
+        dumpReplayExecutor.submit(() -> dumpReplay(path));
+    }
+
+    private void dumpReplay(String path) {
+        if (path.isEmpty()) {
+            path = REPLAY_DUMP_PATH_PREFIX + System.currentTimeMillis() + ".bin";
+        }
+
+        try {
+            int packets = replayBuffer.dump(new File(path));
+            Ln.i("Replay dumped to " + path + " (" + packets + " packets)");
+        } catch (IOException e) {
+            Ln.e("Could not dump replay to " + path, e);
+            path = "";
+        }
+        sender.send(DeviceMessage.createReplayDumped(path));
+    }
+
     private void resetVideo() {
         if (surfaceCapture != null) {
             Ln.i("Video capture reset");
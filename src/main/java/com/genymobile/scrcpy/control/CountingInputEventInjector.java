@@ -0,0 +1,77 @@
+package com.genymobile.scrcpy.control;
+
+import android.view.InputEvent;
+
+/**
+ * Count the events injected through another injector, and check their ordering.
+ * <p>
+ * Must be used from a single thread (the values may be read from another thread once the injection is terminated).
+ */
+public final class CountingInputEventInjector implements InputEventInjector {
+
+    private final InputEventInjector delegate;
+
+    private long injectedCount;
+    private long failedCount;
+    // Events whose event time is before the event time of the previous event
+    private long outOfOrderCount;
+    private long lastEventTime = Long.MIN_VALUE;
+
+    private long firstInjectionTime = -1; // in nanoseconds
+    private long lastInjectionTime;
+
+    public CountingInputEventInjector(InputEventInjector delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean injectEvent(InputEvent event, int displayId, int injectMode) {
+        long eventTime = event.getEventTime();
+        if (eventTime < lastEventTime) {
+            ++outOfOrderCount;
+        }
+        lastEventTime = eventTime;
+
+        boolean ok = delegate.injectEvent(event, displayId, injectMode);
+        if (ok) {
+            ++injectedCount;
+        } else {
+            ++failedCount;
+        }
+
+        long now = System.nanoTime();
+        if (firstInjectionTime == -1) {
+            firstInjectionTime = now;
+        }
+        lastInjectionTime = now;
+        return ok;
+    }
+
+    public long getInjectedCount() {
+        return injectedCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public long getOutOfOrderCount() {
+        return outOfOrderCount;
+    }
+
+    /**
+     * Return the number of events (injected or failed) per second, between the first and the last injection.
+     */
+    public double getThroughput() {
+        long count = injectedCount + failedCount;
+        if (count < 2) {
+            return 0;
+        }
+        return (count - 1) * 1e9 / (lastInjectionTime - firstInjectionTime);
+    }
+
+    public String getSummary() {
+        return String.format("%d injected, %d failed, %d out of order, %.1f events/s", injectedCount, failedCount, outOfOrderCount,
+                getThroughput());
+    }
+}
@@ -1,16 +1,30 @@
 package com.genymobile.scrcpy.control;
 
+import com.genymobile.scrcpy.util.LatencyHistogram;
+
 public final class DeviceMessage {
 
     public static final int TYPE_CLIPBOARD = 0;
     public static final int TYPE_ACK_CLIPBOARD = 1;
     public static final int TYPE_UHID_OUTPUT = 2;
+    public static final int TYPE_VIDEO_STATS = 3;
+    public static final int TYPE_REPLAY_DUMPED = 4;
+    public static final int TYPE_INPUT_STATS = 5;
+    public static final int TYPE_CLIPBOARD_CHUNK = 6;
+
+    public static final int CLIPBOARD_CHUNK_FLAG_FIRST = 1;
+    public static final int CLIPBOARD_CHUNK_FLAG_LAST = 1 << 1;
 
     private int type;
     private String text;
     private long sequence;
     private int id;
+    private int flags;
     private byte[] data;
+    private long droppedPackets;
+    private LatencyHistogram.Snapshot[] latencies;
+    private int[] messageTypes;
+    private LatencyHistogram.Snapshot roundTripLatency;
 
     private DeviceMessage() {
     }
@@ -37,6 +51,67 @@ public final class DeviceMessage {
         return event;
     }
 
+    /**
+     * Create a message containing a part of the device clipboard.
+     *
+     * @param flags a combination of {@link #CLIPBOARD_CHUNK_FLAG_FIRST} and {@link #CLIPBOARD_CHUNK_FLAG_LAST}
+     * @param data  the UTF-8 bytes of this part (a character may be split across chunks)
+     */
+    public static DeviceMessage createClipboardChunk(int flags, byte[] data) {
+        DeviceMessage event = new DeviceMessage();
+        event.type = TYPE_CLIPBOARD_CHUNK;
+        event.flags = flags;
+        event.data = data;
+        return event;
+    }
+
+    /**
+     * Create a video stats message.
+     *
+     * @param droppedPackets the total number of video packets dropped since the start
+     * @param encodeLatency  the encoding latency since the previous stats message
+     * @param queueLatency   the queueing latency since the previous stats message
+     * @param writeLatency   the socket write latency since the previous stats message
+     */
+    public static DeviceMessage createVideoStats(long droppedPackets, LatencyHistogram.Snapshot encodeLatency,
+            LatencyHistogram.Snapshot queueLatency, LatencyHistogram.Snapshot writeLatency) {
+        DeviceMessage event = new DeviceMessage();
+        event.type = TYPE_VIDEO_STATS;
+        event.droppedPackets = droppedPackets;
+        event.latencies = new LatencyHistogram.Snapshot[] {encodeLatency, queueLatency, writeLatency};
+        return event;
+    }
+
+    /**
+     * Create a message notifying that the replay buffer has been dumped.
+     *
+     * @param path the path of the dump file on the device (empty on error)
+     */
+    public static DeviceMessage createReplayDumped(String path) {
+        DeviceMessage event = new DeviceMessage();
+        event.type = TYPE_REPLAY_DUMPED;
+        event.text = path;
+        return event;
+    }
+
+    /**
+     * Create an input stats message.
+     *
+     * @param messageTypes     the control message types for which an injection latency is reported
+     * @param injectLatencies  the injection latency for each message type since the previous input stats message
+     * @param roundTripLatency the round-trip latency of the sampled synchronous injections since the previous input stats message
+     */
+    public static DeviceMessage createInputStats(int[] messageTypes, LatencyHistogram.Snapshot[] injectLatencies,
+            LatencyHistogram.Snapshot roundTripLatency) {
+        assert messageTypes.length == injectLatencies.length;
+        DeviceMessage event = new DeviceMessage();
+        event.type = TYPE_INPUT_STATS;
+        event.messageTypes = messageTypes;
+        event.latencies = injectLatencies;
+        event.roundTripLatency = roundTripLatency;
+        return event;
+    }
+
     public int getType() {
         return type;
     }
@@ -53,7 +128,27 @@ public final class DeviceMessage {
         return id;
     }
 
+    public int getFlags() {
+        return flags;
+    }
+
     public byte[] getData() {
         return data;
     }
+
+    public long getDroppedPackets() {
+        return droppedPackets;
+    }
+
+    public LatencyHistogram.Snapshot[] getLatencies() {
+        return latencies;
+    }
+
+    public int[] getMessageTypes() {
+        return messageTypes;
+    }
+
+    public LatencyHistogram.Snapshot getRoundTripLatency() {
+        return roundTripLatency;
+    }
 }
@@ -3,30 +3,147 @@ package com.genymobile.scrcpy.control;
 import com.genymobile.scrcpy.util.Ln;
 
 import java.io.IOException;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Send device messages from a separate thread.
+ * <p>
+ * The messages are queued in lanes, sent by decreasing priority:
+ * <ol>
+ *     <li>clipboard acknowledgements (the client may be waiting for them);</li>
+ *     <li>UHID output reports (keyboard LEDs, rumble…);</li>
+ *     <li>clipboard changes (only the latest one is kept, it replaces the previous pending one);</li>
+ *     <li>all the other messages (stats, notifications…).</li>
+ * </ol>
+ * All the messages ready when the sender thread wakes up are written at once, then flushed once.
+ * <p>
+ * If a clipboard chunk size is set, a clipboard change is sent as a sequence of {@link DeviceMessage#TYPE_CLIPBOARD_CHUNK} messages
+ * instead of a single {@link DeviceMessage#TYPE_CLIPBOARD} message. A single chunk is sent per batch, so that a large clipboard transfer
+ * never delays the other messages by more than one chunk.
+ */
 public final class DeviceMessageSender {
 
+    private static final int LANE_CAPACITY = 16;
+
     private final ControlChannel controlChannel;
+    private final int clipboardChunkSize;
 
     private Thread thread;
-    private final BlockingQueue<DeviceMessage> queue = new ArrayBlockingQueue<>(16);
+
+    private final ArrayDeque<DeviceMessage> ackLane = new ArrayDeque<>(LANE_CAPACITY);
+    private final ArrayDeque<DeviceMessage> uhidOutputLane = new ArrayDeque<>(LANE_CAPACITY);
+    private DeviceMessage pendingClipboard;
+    private ClipboardChunker clipboardChunker; // only if clipboardChunkSize != 0
+    private final ArrayDeque<DeviceMessage> otherLane = new ArrayDeque<>(LANE_CAPACITY);
+
+    // Indexed by message type (a u8 on the wire)
+    private final long[] droppedCounts = new long[256];
 
     public DeviceMessageSender(ControlChannel controlChannel) {
+        this(controlChannel, 0);
+    }
+
+    /**
+     * @param clipboardChunkSize the maximum size of a clipboard chunk, or 0 to send the clipboard in a single message
+     */
+    public DeviceMessageSender(ControlChannel controlChannel, int clipboardChunkSize) {
         this.controlChannel = controlChannel;
+        this.clipboardChunkSize = clipboardChunkSize;
     }
 
     public void send(DeviceMessage msg) {
-        if (!queue.offer(msg)) {
-            Ln.w("Device message dropped: " + msg.getType());
+        int type = msg.getType();
+        boolean dropped;
+        synchronized (this) {
+            switch (type) {
+                case DeviceMessage.TYPE_ACK_CLIPBOARD:
+                    dropped = !offer(ackLane, msg);
+                    break;
+                case DeviceMessage.TYPE_UHID_OUTPUT:
+                    dropped = !offer(uhidOutputLane, msg);
+                    break;
+                case DeviceMessage.TYPE_CLIPBOARD:
+                    if (clipboardChunker != null) {
+                        // Abort the transfer in progress, the client discards an incomplete transfer on the next first chunk
+                        clipboardChunker = null;
+                        ++droppedCounts[type];
+                    }
+                    if (pendingClipboard != null) {
+                        // Replaced by a more recent clipboard content, this is not worth a warning
+                        ++droppedCounts[type];
+                    }
+                    pendingClipboard = msg;
+                    dropped = false;
+                    break;
+                default:
+                    dropped = !offer(otherLane, msg);
+                    break;
+            }
+
+            if (dropped) {
+                ++droppedCounts[type];
+            } else {
+                notify();
+            }
+        }
+
+        if (dropped) {
+            Ln.w("Device message dropped: " + type);
+        }
+    }
+
+    private static boolean offer(ArrayDeque<DeviceMessage> lane, DeviceMessage msg) {
+        if (lane.size() >= LANE_CAPACITY) {
+            return false;
         }
+        lane.addLast(msg);
+        return true;
+    }
+
+    private boolean isEmpty() {
+        return ackLane.isEmpty() && uhidOutputLane.isEmpty() && pendingClipboard == null && clipboardChunker == null && otherLane.isEmpty();
+    }
+
+    private void drainTo(List<DeviceMessage> batch) {
+        batch.addAll(ackLane);
+        ackLane.clear();
+        batch.addAll(uhidOutputLane);
+        uhidOutputLane.clear();
+        if (pendingClipboard != null) {
+            if (clipboardChunkSize != 0) {
+                clipboardChunker = new ClipboardChunker(pendingClipboard.getText(), clipboardChunkSize);
+            } else {
+                batch.add(pendingClipboard);
+            }
+            pendingClipboard = null;
+        }
+        if (clipboardChunker != null) {
+            batch.add(clipboardChunker.next());
+            if (!clipboardChunker.hasNext()) {
+                clipboardChunker = null;
+            }
+        }
+        batch.addAll(otherLane);
+        otherLane.clear();
     }
 
     private void loop() throws IOException, InterruptedException {
+        List<DeviceMessage> batch = new ArrayList<>();
         while (!Thread.currentThread().isInterrupted()) {
-            DeviceMessage msg = queue.take();
-            controlChannel.send(msg);
+            synchronized (this) {
+                while (isEmpty()) {
+                    wait();
+                }
+                drainTo(batch);
+            }
+
+            for (DeviceMessage msg : batch) {
+                controlChannel.append(msg);
+            }
+            controlChannel.flush();
+            batch.clear();
         }
     }
 
@@ -54,4 +171,11 @@ public final class DeviceMessageSender {
             thread.join();
         }
     }
+
+    /**
+     * Return the number of messages of the given type dropped (because their lane was full) or replaced (for clipboard messages).
+     */
+    public synchronized long getDroppedCount(int type) {
+        return droppedCounts[type];
+    }
 }
@@ -1,5 +1,6 @@
 package com.genymobile.scrcpy.control;
 
+import com.genymobile.scrcpy.util.LatencyHistogram;
 import com.genymobile.scrcpy.util.StringUtils;
 
 import java.io.BufferedOutputStream;
@@ -7,19 +8,43 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
 
 public class DeviceMessageWriter {
 
     private static final int MESSAGE_MAX_SIZE = 1 << 18; // 256k
     public static final int CLIPBOARD_TEXT_MAX_LENGTH = MESSAGE_MAX_SIZE - 5; // type: 1 byte; length: 4 bytes
+    // Set in the clipboard length field if the text is compressed
+    public static final int CLIPBOARD_COMPRESSED_FLAG = 1 << 31;
 
     private final DataOutputStream dos;
 
+    private final int compressionThreshold;
+    // Lazily initialized, reused for every compressed clipboard
+    private Deflater deflater;
+    private byte[] compressed;
+
     public DeviceMessageWriter(OutputStream rawOutputStream) {
+        this(rawOutputStream, 0);
+    }
+
+    /**
+     * @param compressionThreshold the clipboard texts longer than this value (in bytes) are compressed, 0 to disable compression
+     */
+    public DeviceMessageWriter(OutputStream rawOutputStream, int compressionThreshold) {
         dos = new DataOutputStream(new BufferedOutputStream(rawOutputStream));
+        this.compressionThreshold = compressionThreshold;
     }
 
     public void write(DeviceMessage msg) throws IOException {
+        append(msg);
+        flush();
+    }
+
+    /**
+     * Write the message to the buffer, without flushing it (to flush several messages at once).
+     */
+    public void append(DeviceMessage msg) throws IOException {
         int type = msg.getType();
         dos.writeByte(type);
         switch (type) {
@@ -27,8 +52,7 @@ public class DeviceMessageWriter {
                 String text = msg.getText();
                 byte[] raw = text.getBytes(StandardCharsets.UTF_8);
                 int len = StringUtils.getUtf8TruncationIndex(raw, CLIPBOARD_TEXT_MAX_LENGTH);
-                dos.writeInt(len);
-                dos.write(raw, 0, len);
+                writeClipboardText(raw, len);
                 break;
             case DeviceMessage.TYPE_ACK_CLIPBOARD:
                 dos.writeLong(msg.getSequence());
@@ -39,9 +63,94 @@ public class DeviceMessageWriter {
                 dos.writeShort(data.length);
                 dos.write(data);
                 break;
+            case DeviceMessage.TYPE_CLIPBOARD_CHUNK:
+                dos.writeByte(msg.getFlags());
+                byte[] chunk = msg.getData();
+                dos.writeInt(chunk.length);
+                dos.write(chunk);
+                break;
+            case DeviceMessage.TYPE_VIDEO_STATS:
+                dos.writeLong(msg.getDroppedPackets());
+                LatencyHistogram.Snapshot[] latencies = msg.getLatencies();
+                dos.writeByte(latencies.length);
+                for (LatencyHistogram.Snapshot latency : latencies) {
+                    writeLatency(latency);
+                }
+                break;
+            case DeviceMessage.TYPE_INPUT_STATS:
+                int[] messageTypes = msg.getMessageTypes();
+                LatencyHistogram.Snapshot[] injectLatencies = msg.getLatencies();
+                dos.writeByte(messageTypes.length);
+                for (int i = 0; i < messageTypes.length; ++i) {
+                    dos.writeByte(messageTypes[i]);
+                    writeLatency(injectLatencies[i]);
+                }
+                writeLatency(msg.getRoundTripLatency());
+                break;
+            case DeviceMessage.TYPE_REPLAY_DUMPED:
+                byte[] path = msg.getText().getBytes(StandardCharsets.UTF_8);
+                dos.writeShort(path.length);
+                dos.write(path);
+                break;
             default:
                 throw new ControlProtocolException("Unknown event type: " + type);
         }
+    }
+
+    public void flush() throws IOException {
         dos.flush();
     }
+
+    private void writeClipboardText(byte[] raw, int len) throws IOException {
+        if (compressionThreshold > 0 && len > compressionThreshold) {
+            int compressedLen = compress(raw, len);
+            if (compressedLen != -1) {
+                // Compressed: length (with the flag), uncompressed length, zlib stream
+                dos.writeInt(CLIPBOARD_COMPRESSED_FLAG | (4 + compressedLen));
+                dos.writeInt(len);
+                dos.write(compressed, 0, compressedLen);
+                return;
+            }
+        }
+
+        dos.writeInt(len);
+        dos.write(raw, 0, len);
+    }
+
+    /**
+     * Compress the {@code len} first bytes of {@code raw} into {@link #compressed}.
+     *
+     * @return the compressed length, or -1 if the compression does not reduce the size
+     */
+    private int compress(byte[] raw, int len) {
+        if (deflater == null) {
+            // Favor speed: the clipboard is compressed on the sender thread, shared with the other device messages
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            compressed = new byte[CLIPBOARD_TEXT_MAX_LENGTH];
+        }
+        deflater.reset();
+        deflater.setInput(raw, 0, len);
+        deflater.finish();
+
+        // Not worth it if it does not save at least the uncompressed length field
+        int maxLen = len - 4;
+        int compressedLen = 0;
+        while (!deflater.finished() && compressedLen < maxLen) {
+            compressedLen += deflater.deflate(compressed, compressedLen, maxLen - compressedLen);
+        }
+        return deflater.finished() ? compressedLen : -1;
+    }
+
+    private void writeLatency(LatencyHistogram.Snapshot latency) throws IOException {
+        // All values are written as unsigned 32-bit integers (saturated), in microseconds for durations
+        writeU32(latency.getCount());
+        writeU32(latency.getP50());
+        writeU32(latency.getP95());
+        writeU32(latency.getP99());
+        writeU32(latency.getMax());
+    }
+
+    private void writeU32(long value) throws IOException {
+        dos.writeInt((int) Math.min(value, 0xFFFF_FFFFL));
+    }
 }
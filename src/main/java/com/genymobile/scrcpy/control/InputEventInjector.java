@@ -0,0 +1,21 @@
+package com.genymobile.scrcpy.control;
+
+import com.genymobile.scrcpy.device.Device;
+
+import android.view.InputEvent;
+
+/**
+ * Inject input events.
+ * <p>
+ * The {@link Controller} injects all the events generated from the control messages through this interface, so that another implementation
+ * may be plugged (for example to count or inspect the events during a replay).
+ */
+public interface InputEventInjector {
+
+    /**
+     * Inject the events into the system, through the input manager.
+     */
+    InputEventInjector DEVICE = Device::injectEvent;
+
+    boolean injectEvent(InputEvent event, int displayId, int injectMode);
+}
@@ -0,0 +1,131 @@
+package com.genymobile.scrcpy.control;
+
+import com.genymobile.scrcpy.util.LatencyHistogram;
+
+/**
+ * Device-side latency of the input events.
+ * <p>
+ * For each injection message type, the latency is measured from the moment the message has been fully read from the socket to the moment
+ * the injection returns (including the time spent in the message queue).
+ * <p>
+ * In addition, one positional or key event every {@code sampleInterval} may be injected synchronously (waiting for the result), to measure
+ * the round-trip of the injection through the input system.
+ * <p>
+ * All values are in microseconds.
+ */
+public final class InputStats {
+
+    private static final int[] TRACKED_TYPES = {
+            ControlMessage.TYPE_INJECT_KEYCODE,
+            ControlMessage.TYPE_INJECT_TEXT,
+            ControlMessage.TYPE_INJECT_TOUCH_EVENT,
+            ControlMessage.TYPE_INJECT_SCROLL_EVENT,
+            ControlMessage.TYPE_BACK_OR_SCREEN_ON,
+            ControlMessage.TYPE_INJECT_TOUCH_BATCH,
+    };
+
+    private final LatencyHistogram[] injectLatencies = new LatencyHistogram[TRACKED_TYPES.length];
+    private final LatencyHistogram roundTripLatency = new LatencyHistogram();
+
+    private final int sampleInterval;
+    private int eventsUntilSample; // only accessed from the inject thread
+
+    /**
+     * @param sampleInterval inject one sampleable event every {@code sampleInterval} synchronously, 0 to disable
+     */
+    public InputStats(int sampleInterval) {
+        this.sampleInterval = sampleInterval;
+        eventsUntilSample = sampleInterval;
+        for (int i = 0; i < injectLatencies.length; ++i) {
+            injectLatencies[i] = new LatencyHistogram();
+        }
+    }
+
+    public static long now() {
+        return System.nanoTime() / 1000;
+    }
+
+    private static int indexOf(int type) {
+        for (int i = 0; i < TRACKED_TYPES.length; ++i) {
+            if (TRACKED_TYPES[i] == type) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static boolean isTracked(int type) {
+        return indexOf(type) != -1;
+    }
+
+    private static boolean isSampleable(int type) {
+        // The text and back messages may inject several events, their round-trip would not be meaningful
+        return type == ControlMessage.TYPE_INJECT_KEYCODE || type == ControlMessage.TYPE_INJECT_TOUCH_EVENT
+                || type == ControlMessage.TYPE_INJECT_SCROLL_EVENT || type == ControlMessage.TYPE_INJECT_TOUCH_BATCH;
+    }
+
+    /**
+     * Indicate whether the event of the given message type must be injected synchronously to measure the round-trip.
+     * <p>
+     * Must be called once per handled message, always from the same thread.
+     */
+    public boolean sampleRoundTrip(int type) {
+        if (sampleInterval == 0 || !isSampleable(type)) {
+            return false;
+        }
+        if (--eventsUntilSample > 0) {
+            return false;
+        }
+        eventsUntilSample = sampleInterval;
+        return true;
+    }
+
+    public void recordInjection(int type, long latency) {
+        int index = indexOf(type);
+        if (index != -1) {
+            injectLatencies[index].record(latency);
+        }
+    }
+
+    public void recordRoundTrip(long latency) {
+        roundTripLatency.record(latency);
+    }
+
+    public LatencyHistogram getInjectLatency(int type) {
+        int index = indexOf(type);
+        return index != -1 ? injectLatencies[index] : null;
+    }
+
+    public LatencyHistogram getRoundTripLatency() {
+        return roundTripLatency;
+    }
+
+    /**
+     * Create a stats message with the latencies since the previous call, then reset them.
+     * <p>
+     * Only the message types which have been injected are reported.
+     */
+    public DeviceMessage createMessageAndReset() {
+        LatencyHistogram.Snapshot[] snapshots = new LatencyHistogram.Snapshot[TRACKED_TYPES.length];
+        int count = 0;
+        for (int i = 0; i < TRACKED_TYPES.length; ++i) {
+            snapshots[i] = injectLatencies[i].snapshotAndReset();
+            if (snapshots[i].getCount() > 0) {
+                ++count;
+            }
+        }
+
+        int[] types = new int[count];
+        LatencyHistogram.Snapshot[] latencies = new LatencyHistogram.Snapshot[count];
+        int j = 0;
+        for (int i = 0; i < TRACKED_TYPES.length; ++i) {
+            if (snapshots[i].getCount() > 0) {
+                types[j] = TRACKED_TYPES[i];
+                latencies[j] = snapshots[i];
+                ++j;
+            }
+        }
+
+        return DeviceMessage.createInputStats(types, latencies, roundTripLatency.snapshotAndReset());
+    }
+}
@@ -1,70 +1,148 @@
 package com.genymobile.scrcpy.control;
 
-import com.genymobile.scrcpy.device.Point;
-
 import android.view.MotionEvent;
 
-import java.util.ArrayList;
-import java.util.List;
-
+/**
+ * State of the active pointers, stored in fixed-capacity parallel arrays.
+ * <p>
+ * The pointers are kept in insertion order (their index is the pointer index in the {@link MotionEvent}). No allocation is performed after
+ * construction.
+ */
 public class PointersState {
 
     public static final int MAX_POINTERS = 10;
+    // The InputDispatcher rejects motion events with more than 16 pointers (MAX_POINTERS in frameworks/native/include/input/Input.h)
+    public static final int MAX_SUPPORTED_POINTERS = 16;
+    // The InputDispatcher also rejects pointer ids above 31 (MAX_POINTER_ID); local ids are always lower than MAX_SUPPORTED_POINTERS
+    private static final int MAX_POINTER_ID = 31;
 
-    private final List<Pointer> pointers = new ArrayList<>();
+    private final int maxPointers;
 
-    private int indexOf(long id) {
-        for (int i = 0; i < pointers.size(); ++i) {
-            Pointer pointer = pointers.get(i);
-            if (pointer.getId() == id) {
-                return i;
-            }
-        }
-        return -1;
+    /**
+     * Pointer ids as received from the client.
+     */
+    private final long[] ids;
+
+    /**
+     * Local pointer ids, using the lowest possible values to fill the {@link MotionEvent.PointerProperties PointerProperties}.
+     */
+    private final int[] localIds;
+
+    private final int[] xs;
+    private final int[] ys;
+    private final float[] pressures;
+    private final boolean[] ups;
+
+    private int count;
+
+    // Bit i is set if the local id i is available
+    private int freeLocalIds;
+
+    public PointersState() {
+        this(MAX_POINTERS);
     }
 
-    private boolean isLocalIdAvailable(int localId) {
-        for (int i = 0; i < pointers.size(); ++i) {
-            Pointer pointer = pointers.get(i);
-            if (pointer.getLocalId() == localId) {
-                return false;
-            }
+    public PointersState(int maxPointers) {
+        if (maxPointers < 1 || maxPointers > MAX_SUPPORTED_POINTERS) {
+            throw new IllegalArgumentException("Invalid max pointers: " + maxPointers);
         }
-        return true;
+        this.maxPointers = maxPointers;
+        ids = new long[maxPointers];
+        localIds = new int[maxPointers];
+        xs = new int[maxPointers];
+        ys = new int[maxPointers];
+        pressures = new float[maxPointers];
+        ups = new boolean[maxPointers];
+        freeLocalIds = (1 << maxPointers) - 1;
     }
 
-    private int nextUnusedLocalId() {
-        for (int localId = 0; localId < MAX_POINTERS; ++localId) {
-            if (isLocalIdAvailable(localId)) {
-                return localId;
+    public int getMaxPointers() {
+        return maxPointers;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    private int indexOf(long id) {
+        // At most 16 entries in a contiguous primitive array, a linear scan is faster than hashing
+        for (int i = 0; i < count; ++i) {
+            if (ids[i] == id) {
+                return i;
             }
         }
         return -1;
     }
 
-    public Pointer get(int index) {
-        return pointers.get(index);
+    public boolean contains(long id) {
+        return indexOf(id) != -1;
     }
 
+    /**
+     * Return the index of the pointer {@code id}, adding it if it does not exist.
+     *
+     * @return the pointer index, or -1 if the pointer does not exist and the maximum number of pointers is reached
+     */
     public int getPointerIndex(long id) {
         int index = indexOf(id);
         if (index != -1) {
             // already exists, return it
             return index;
         }
-        if (pointers.size() >= MAX_POINTERS) {
+        if (count >= maxPointers) {
             // it's full
             return -1;
         }
-        // id 0 is reserved for mouse events
-        int localId = nextUnusedLocalId();
-        if (localId == -1) {
-            throw new AssertionError("pointers.size() < maxFingers implies that a local id is available");
-        }
-        Pointer pointer = new Pointer(id, localId);
-        pointers.add(pointer);
-        // return the index of the pointer
-        return pointers.size() - 1;
+        assert freeLocalIds != 0 : "count < maxPointers implies that a local id is available";
+        int localId = Integer.numberOfTrailingZeros(freeLocalIds);
+        assert localId <= MAX_POINTER_ID;
+        freeLocalIds &= ~(1 << localId);
+
+        index = count++;
+        ids[index] = id;
+        localIds[index] = localId;
+        xs[index] = 0;
+        ys[index] = 0;
+        pressures[index] = 0;
+        ups[index] = false;
+        return index;
+    }
+
+    public long getId(int index) {
+        return ids[index];
+    }
+
+    public int getLocalId(int index) {
+        return localIds[index];
+    }
+
+    public void setPoint(int index, int x, int y) {
+        xs[index] = x;
+        ys[index] = y;
+    }
+
+    public int getX(int index) {
+        return xs[index];
+    }
+
+    public int getY(int index) {
+        return ys[index];
+    }
+
+    public void setPressure(int index, float pressure) {
+        pressures[index] = pressure;
+    }
+
+    public float getPressure(int index) {
+        return pressures[index];
+    }
+
+    public void setUp(int index, boolean up) {
+        ups[index] = up;
+    }
+
+    public boolean isUp(int index) {
+        return ups[index];
     }
 
     /**
@@ -75,31 +153,37 @@ public class PointersState {
      * @return The number of items initialized (the number of pointers).
      */
     public int update(MotionEvent.PointerProperties[] props, MotionEvent.PointerCoords[] coords) {
-        int count = pointers.size();
-        for (int i = 0; i < count; ++i) {
-            Pointer pointer = pointers.get(i);
-
-            // id 0 is reserved for mouse events
-            props[i].id = pointer.getLocalId();
-
-            Point point = pointer.getPoint();
-            coords[i].x = point.getX();
-            coords[i].y = point.getY();
-            coords[i].pressure = pointer.getPressure();
+        int n = count;
+        for (int i = 0; i < n; ++i) {
+            props[i].id = localIds[i];
+            coords[i].x = xs[i];
+            coords[i].y = ys[i];
+            coords[i].pressure = pressures[i];
         }
         cleanUp();
-        return count;
+        return n;
     }
 
     /**
-     * Remove all pointers which are UP.
+     * Remove all pointers which are UP, preserving the order of the others.
      */
     private void cleanUp() {
-        for (int i = pointers.size() - 1; i >= 0; --i) {
-            Pointer pointer = pointers.get(i);
-            if (pointer.isUp()) {
-                pointers.remove(i);
+        int j = 0;
+        for (int i = 0; i < count; ++i) {
+            if (ups[i]) {
+                freeLocalIds |= 1 << localIds[i];
+            } else {
+                if (i != j) {
+                    ids[j] = ids[i];
+                    localIds[j] = localIds[i];
+                    xs[j] = xs[i];
+                    ys[j] = ys[i];
+                    pressures[j] = pressures[i];
+                    ups[j] = false;
+                }
+                ++j;
             }
         }
+        count = j;
     }
 }
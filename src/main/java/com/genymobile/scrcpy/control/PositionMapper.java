@@ -31,6 +31,27 @@ public final class PositionMapper {
         return videoSize;
     }
 
+    /**
+     * Indicate whether a position generated for the given client video size can be mapped.
+     */
+    public boolean accepts(int screenWidth, int screenHeight) {
+        return videoSize.getWidth() == screenWidth && videoSize.getHeight() == screenHeight;
+    }
+
+    /**
+     * Map the point (x, y) of a position accepted by {@link #accepts(int, int)}, without allocation.
+     *
+     * @param out an array of 2 elements receiving the device coordinates
+     */
+    public void map(int x, int y, int[] out) {
+        if (videoToDeviceMatrix != null) {
+            videoToDeviceMatrix.apply(x, y, out);
+        } else {
+            out[0] = x;
+            out[1] = y;
+        }
+    }
+
     public Point map(Position position) {
         Size clientVideoSize = position.getScreenSize();
         if (!videoSize.equals(clientVideoSize)) {
@@ -0,0 +1,152 @@
+package com.genymobile.scrcpy.control;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inject text as key events.
+ * <p>
+ * The events generated for each character are cached in a bounded LRU cache, and used as templates (the injector is expected to re-time
+ * them). The whole event sequence is built before the injection starts.
+ * <p>
+ * The injection is paced: a failed injection (typically because the input queue is saturated) is retried after a delay, which doubles on
+ * every failure and halves on every success.
+ *
+ * @param <E> the event type ({@link android.view.KeyEvent} on the device, any type in tests)
+ */
+public final class TextInjector<E> {
+
+    public interface KeyMap<E> {
+        /**
+         * Return the events to generate the given characters, or {@code null} if they cannot be generated.
+         */
+        E[] getEvents(char[] chars);
+    }
+
+    public interface EventInjector<E> {
+        boolean inject(E event);
+    }
+
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long MAX_PACING_DELAY_MS = 16;
+
+    // Cached for characters which cannot be generated
+    private static final Object[] UNMAPPED = new Object[0];
+
+    private final KeyMap<E> keyMap;
+    private final Map<Character, E[]> cache;
+
+    // Reused for every text
+    private final List<E[]> sequence = new ArrayList<>();
+    private final StringBuilder unmappedChars = new StringBuilder();
+
+    private long pacingDelayMs;
+    private long retries;
+
+    public TextInjector(KeyMap<E> keyMap, int cacheSize) {
+        this.keyMap = keyMap;
+        cache = new LinkedHashMap<Character, E[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Character, E[]> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private E[] getEvents(char c) {
+        E[] events = cache.get(c);
+        if (events == null) {
+            String decomposed = KeyComposition.decompose(c);
+            char[] chars = decomposed != null ? decomposed.toCharArray() : new char[] {c};
+            events = keyMap.getEvents(chars);
+            if (events == null) {
+                events = (E[]) UNMAPPED;
+            }
+            cache.put(c, events);
+        }
+        return events == UNMAPPED ? null : events;
+    }
+
+    /**
+     * Inject the text.
+     * <p>
+     * The characters which could not be generated are available from {@link #getUnmappedChars()} afterwards.
+     *
+     * @return the number of characters successfully injected
+     */
+    public int inject(String text, EventInjector<E> injector) {
+        sequence.clear();
+        unmappedChars.setLength(0);
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            E[] events = getEvents(c);
+            if (events == null) {
+                unmappedChars.append(c);
+            } else {
+                sequence.add(events);
+            }
+        }
+
+        int successCount = 0;
+        for (E[] events : sequence) {
+            if (injectAll(events, injector)) {
+                ++successCount;
+            }
+        }
+        sequence.clear();
+        return successCount;
+    }
+
+    private boolean injectAll(E[] events, EventInjector<E> injector) {
+        for (E event : events) {
+            if (!injectPaced(event, injector)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean injectPaced(E event, EventInjector<E> injector) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; ++attempt) {
+            if (pacingDelayMs > 0) {
+                try {
+                    Thread.sleep(pacingDelayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            if (injector.inject(event)) {
+                pacingDelayMs /= 2;
+                return true;
+            }
+            ++retries;
+            pacingDelayMs = Math.min(Math.max(1, pacingDelayMs * 2), MAX_PACING_DELAY_MS);
+        }
+        return false;
+    }
+
+    /**
+     * Return the characters which could not be generated by the last {@link #inject(String, EventInjector)}.
+     */
+    public CharSequence getUnmappedChars() {
+        return unmappedChars;
+    }
+
+    public long getPacingDelayMs() {
+        return pacingDelayMs;
+    }
+
+    public long getRetries() {
+        return retries;
+    }
+
+    public int getCacheSize() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,95 @@
+package com.genymobile.scrcpy.control;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Build UHID_INPUT2 requests for one UHID device into a preallocated direct buffer.
+ * <p>
+ * The kernel handles a single UHID event per {@code write()}, but {@code /dev/uhid} does not implement {@code write_iter}, so a
+ * {@code writev()} is split into one {@code write()} per iovec: several reports can be written with a single syscall, one iovec per
+ * report.
+ */
+public final class UhidInputBuffer {
+
+    public interface Output {
+        /**
+         * Write the {@code count} requests (one iovec each) stored in {@code buffer}, in a single vectored write if possible.
+         */
+        void writev(ByteBuffer buffer, int[] offsets, int[] byteCounts, int count) throws IOException;
+    }
+
+    // Linux: include/uapi/linux/uhid.h
+    static final int UHID_INPUT2 = 12;
+    public static final int UHID_DATA_MAX = 4096;
+
+    private static final int HEADER_SIZE = 6; // type: 4 bytes; size: 2 bytes
+
+    public static final int CAPACITY = 16 * 1024;
+    // Far below IOV_MAX (1024)
+    public static final int MAX_REPORTS = 64;
+
+    private final Output output;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(CAPACITY).order(ByteOrder.nativeOrder());
+    private final int[] offsets = new int[MAX_REPORTS];
+    private final int[] byteCounts = new int[MAX_REPORTS];
+    private int count;
+
+    public UhidInputBuffer(Output output) {
+        this.output = output;
+    }
+
+    /**
+     * Append a UHID_INPUT2 request, flushing the pending requests first if there is not enough space.
+     */
+    public void add(byte[] data, int offset, int length) throws IOException {
+        if (length > UHID_DATA_MAX) {
+            throw new IOException("HID report too big: " + length);
+        }
+        if (count == MAX_REPORTS || buffer.remaining() < HEADER_SIZE + length) {
+            flush();
+        }
+
+        /*
+         * struct uhid_event {
+         *     uint32_t type;
+         *     union {
+         *         // ...
+         *         struct uhid_input2_req {
+         *             uint16_t size;
+         *             uint8_t data[UHID_DATA_MAX];
+         *         };
+         *     };
+         * } __attribute__((__packed__));
+         */
+
+        offsets[count] = buffer.position();
+        byteCounts[count] = HEADER_SIZE + length;
+        ++count;
+        buffer.putInt(UHID_INPUT2);
+        buffer.putShort((short) length);
+        buffer.put(data, offset, length);
+    }
+
+    /**
+     * Write all the pending requests.
+     */
+    public void flush() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        try {
+            output.writev(buffer, offsets, byteCounts, count);
+        } finally {
+            // On error, the pending reports are dropped, like a failed single write
+            count = 0;
+            buffer.clear();
+        }
+    }
+
+    public int getPendingCount() {
+        return count;
+    }
+}
@@ -19,13 +19,13 @@ import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public final class UhidManager {
 
     // Linux: include/uapi/linux/uhid.h
     private static final int UHID_OUTPUT = 6;
     private static final int UHID_CREATE2 = 11;
-    private static final int UHID_INPUT2 = 12;
 
     // Linux: include/uapi/linux/input.h
     private static final short BUS_VIRTUAL = 0x06;
@@ -38,6 +38,7 @@ public final class UhidManager {
     private final String displayUniqueId;
 
     private final ArrayMap<Integer, FileDescriptor> fds = new ArrayMap<>();
+    private final ArrayMap<Integer, UhidInputBuffer> inputBuffers = new ArrayMap<>();
     private final ByteBuffer buffer = ByteBuffer.allocate(SIZE_OF_UHID_EVENT).order(ByteOrder.nativeOrder());
 
     private final DeviceMessageSender sender;
@@ -75,6 +76,7 @@ public final class UhidManager {
                 if (firstDevice) {
                     addUniqueIdAssociation();
                 }
+                inputBuffers.put(id, new UhidInputBuffer(new FdOutput(fd)));
                 registerUhidListener(id, fd);
             } catch (Exception e) {
                 close(fd);
@@ -148,18 +150,32 @@ public final class UhidManager {
     }
 
     public void writeInput(int id, byte[] data) throws IOException {
-        FileDescriptor fd = fds.get(id);
-        if (fd == null) {
+        UhidInputBuffer inputBuffer = inputBuffers.get(id);
+        if (inputBuffer == null) {
             Ln.w("Unknown UHID id: " + id);
             return;
         }
 
-        try {
-            byte[] req = buildUhidInput2Req(data);
-            Os.write(fd, req, 0, req.length);
-        } catch (ErrnoException e) {
-            throw new IOException(e);
+        inputBuffer.add(data, 0, data.length);
+        inputBuffer.flush();
+    }
+
+    /**
+     * Write several input reports for the same UHID device, with as few syscalls as possible.
+     *
+     * @param reports the reports data, report {@code i} being at {@code offsets[i]} with size {@code sizes[i]}
+     */
+    public void writeInputBatch(int id, byte[] reports, int[] offsets, int[] sizes, int count) throws IOException {
+        UhidInputBuffer inputBuffer = inputBuffers.get(id);
+        if (inputBuffer == null) {
+            Ln.w("Unknown UHID id: " + id);
+            return;
+        }
+
+        for (int i = 0; i < count; ++i) {
+            inputBuffer.add(reports, offsets[i], sizes[i]);
         }
+        inputBuffer.flush();
     }
 
     private static byte[] buildUhidCreate2Req(int vendorId, int productId, String name, byte[] reportDesc, String phys) {
@@ -211,31 +227,11 @@ public final class UhidManager {
         return buf.array();
     }
 
-    private static byte[] buildUhidInput2Req(byte[] data) {
-        /*
-         * struct uhid_event {
-         *     uint32_t type;
-         *     union {
-         *         // ...
-         *         struct uhid_input2_req {
-         *             uint16_t size;
-         *             uint8_t data[UHID_DATA_MAX];
-         *         };
-         *     };
-         * } __attribute__((__packed__));
-         */
-
-        ByteBuffer buf = ByteBuffer.allocate(6 + data.length).order(ByteOrder.nativeOrder());
-        buf.putInt(UHID_INPUT2);
-        buf.putShort((short) data.length);
-        buf.put(data);
-        return buf.array();
-    }
-
     public void close(int id) {
         // Linux: Documentation/hid/uhid.rst
         // If you close() the fd, the device is automatically unregistered and destroyed internally.
         FileDescriptor fd = fds.remove(id);
+        inputBuffers.remove(id);
         if (fd != null) {
             unregisterUhidListener(fd);
             close(fd);
@@ -261,6 +257,53 @@ public final class UhidManager {
         removeUniqueIdAssociation();
     }
 
+    /**
+     * Write the UHID requests to the device file descriptor, with a single {@code writev()}.
+     */
+    private static final class FdOutput implements UhidInputBuffer.Output {
+        private final FileDescriptor fd;
+
+        // Os.writev() takes the number of iovecs from the arrays length, so keep arrays for each count (allocated once)
+        private final Object[][] buffersByCount = new Object[UhidInputBuffer.MAX_REPORTS + 1][];
+        private final int[][] offsetsByCount = new int[UhidInputBuffer.MAX_REPORTS + 1][];
+        private final int[][] byteCountsByCount = new int[UhidInputBuffer.MAX_REPORTS + 1][];
+
+        FdOutput(FileDescriptor fd) {
+            this.fd = fd;
+        }
+
+        @Override
+        public void writev(ByteBuffer buffer, int[] offsets, int[] byteCounts, int count) throws IOException {
+            Object[] iovBuffers = buffersByCount[count];
+            if (iovBuffers == null) {
+                iovBuffers = new Object[count];
+                buffersByCount[count] = iovBuffers;
+                offsetsByCount[count] = new int[count];
+                byteCountsByCount[count] = new int[count];
+            }
+            // Always the same buffer for a given UhidInputBuffer
+            Arrays.fill(iovBuffers, buffer);
+            int[] iovOffsets = offsetsByCount[count];
+            int[] iovByteCounts = byteCountsByCount[count];
+            System.arraycopy(offsets, 0, iovOffsets, 0, count);
+            System.arraycopy(byteCounts, 0, iovByteCounts, 0, count);
+
+            int expected = 0;
+            for (int i = 0; i < count; ++i) {
+                expected += byteCounts[i];
+            }
+
+            try {
+                int w = Os.writev(fd, iovBuffers, iovOffsets, iovByteCounts);
+                if (w != expected) {
+                    throw new IOException("Incomplete UHID write: " + w + "/" + expected);
+                }
+            } catch (ErrnoException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
     private static void close(FileDescriptor fd) {
         try {
             Os.close(fd);
@@ -1,5 +1,6 @@
 package com.genymobile.scrcpy.device;
 
+import com.genymobile.scrcpy.Options;
 import com.genymobile.scrcpy.control.ControlChannel;
 import com.genymobile.scrcpy.util.IO;
 import com.genymobile.scrcpy.util.StringUtils;
@@ -11,8 +12,8 @@ import android.net.LocalSocketAddress;
 import java.io.Closeable;
 import java.io.FileDescriptor;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 
 public final class DesktopConnection implements Closeable {
@@ -23,7 +24,7 @@ public final class DesktopConnection implements Closeable {
 
     private final LocalSocket videoSocket;
     private final FileDescriptor videoFd;
-    private final OutputStream videoOutputStream;
+    private final SocketChannel videoChannel;
 
     private final LocalSocket audioSocket;
     private final FileDescriptor audioFd;
@@ -31,15 +32,16 @@ public final class DesktopConnection implements Closeable {
     private final LocalSocket controlSocket;
     private final ControlChannel controlChannel;
 
-    private DesktopConnection(LocalSocket videoSocket, OutputStream videoOutputStream, LocalSocket audioSocket, LocalSocket controlSocket) throws IOException {
+    DesktopConnection(LocalSocket videoSocket, SocketChannel videoChannel, LocalSocket audioSocket, LocalSocket controlSocket,
+            int clipboardCompressionThreshold) throws IOException {
         this.videoSocket = videoSocket;
-        this.videoOutputStream = videoOutputStream;
+        this.videoChannel = videoChannel;
         this.audioSocket = audioSocket;
         this.controlSocket = controlSocket;
 
         videoFd = videoSocket != null ? videoSocket.getFileDescriptor() : null;
         audioFd = audioSocket != null ? audioSocket.getFileDescriptor() : null;
-        controlChannel = controlSocket != null ? new ControlChannel(controlSocket) : null;
+        controlChannel = controlSocket != null ? new ControlChannel(controlSocket, clipboardCompressionThreshold) : null;
     }
 
     private static LocalSocket connect(String abstractName) throws IOException {
@@ -57,26 +59,48 @@ public final class DesktopConnection implements Closeable {
         return SOCKET_NAME_PREFIX + String.format("_%08x", scid);
     }
 
-    public static DesktopConnection open(int scid, boolean tunnelForward, boolean video, boolean audio, boolean control, boolean sendDummyByte,
-            String forwardH264CameraAddr, int forwardH264CameraPort)
-            throws IOException {
-        String socketName = getSocketName(scid);
+    /**
+     * Create the local server socket on which a daemon accepts the connections of all its sessions.
+     */
+    public static LocalServerSocket listen(int scid) throws IOException {
+        return new LocalServerSocket(getSocketName(scid));
+    }
+
+    /**
+     * Open the connections requested by the options.
+     *
+     * @param daemonSocket in forward tunnel mode, the server socket (created by {@link #listen(int)}) to accept the connections from, or
+     *                     {@code null} to create one for this connection only
+     */
+    public static DesktopConnection open(Options options, LocalServerSocket daemonSocket) throws IOException {
+        boolean video = options.getVideo();
+        boolean audio = options.getAudio();
+        boolean control = options.getControl();
+        boolean sendDummyByte = options.getSendDummyByte();
+        String forwardH264CameraAddr = options.getForwardH264CameraAddr();
+        int forwardH264CameraPort = options.getForwardH264CameraPort();
+
+        String socketName = getSocketName(options.getScid());
 
         LocalSocket videoSocket = null;
-        OutputStream videoOutputStream = null;
+        SocketChannel videoChannel = null;
         LocalSocket audioSocket = null;
         LocalSocket controlSocket = null;
         try {
-            if (forwardH264CameraAddr != null && forwardH264CameraPort != 0) {
-                // Forward H264 camera stream to a specific address and port
-                if (video) {
-                    Socket socket = new Socket(forwardH264CameraAddr, forwardH264CameraPort);
-                    videoOutputStream = socket.getOutputStream();
-                }
+            boolean forward = forwardH264CameraAddr != null && forwardH264CameraPort != 0;
+            if (forward && video && !options.getForwardH264CameraListen()) {
+                // Forward H264 camera stream to a specific address and port (in listen mode, consumers are accepted by a StreamServer)
+                // Use a (blocking) channel, so that packets are written directly from the codec buffers
+                videoChannel = SocketChannel.open(new InetSocketAddress(forwardH264CameraAddr, forwardH264CameraPort));
+                StreamServer.configureSocket(videoChannel.socket(), options.getVideoSocketSendBuffer());
+            }
+
+            if (forward && !options.getForwardH264CameraDup()) {
                 // In this mode, we don't establish LocalSocket connections for video, audio, or control
                 // So videoSocket, audioSocket, controlSocket remain null
-            } else if (tunnelForward) {
-                try (LocalServerSocket localServerSocket = new LocalServerSocket(socketName)) {
+            } else if (options.isTunnelForward()) {
+                LocalServerSocket localServerSocket = daemonSocket != null ? daemonSocket : new LocalServerSocket(socketName);
+                try {
                     if (video) {
                         videoSocket = localServerSocket.accept();
                         if (sendDummyByte) {
@@ -101,6 +125,10 @@ public final class DesktopConnection implements Closeable {
                             sendDummyByte = false;
                         }
                     }
+                } finally {
+                    if (localServerSocket != daemonSocket) {
+                        localServerSocket.close();
+                    }
                 }
             } else {
                 if (video) {
@@ -114,6 +142,9 @@ public final class DesktopConnection implements Closeable {
                 }
             }
         } catch (IOException | RuntimeException e) {
+            if (videoChannel != null) {
+                videoChannel.close();
+            }
             if (videoSocket != null) {
                 videoSocket.close();
             }
@@ -126,7 +157,7 @@ public final class DesktopConnection implements Closeable {
             throw e;
         }
 
-        return new DesktopConnection(videoSocket, videoOutputStream, audioSocket, controlSocket);
+        return new DesktopConnection(videoSocket, videoChannel, audioSocket, controlSocket, options.getClipboardCompressionThreshold());
     }
 
     private LocalSocket getFirstSocket() {
@@ -140,6 +171,10 @@ public final class DesktopConnection implements Closeable {
     }
 
     public void shutdown() throws IOException {
+        if (videoChannel != null) {
+            videoChannel.socket().shutdownInput();
+            videoChannel.socket().shutdownOutput();
+        }
         if (videoSocket != null) {
             videoSocket.shutdownInput();
             videoSocket.shutdownOutput();
@@ -155,6 +190,9 @@ public final class DesktopConnection implements Closeable {
     }
 
     public void close() throws IOException {
+        if (videoChannel != null) {
+            videoChannel.close();
+        }
         if (videoSocket != null) {
             videoSocket.close();
         }
@@ -182,8 +220,8 @@ public final class DesktopConnection implements Closeable {
         return videoFd;
     }
 
-    public OutputStream getVideoOutputStream() {
-        return videoOutputStream;
+    public SocketChannel getVideoChannel() {
+        return videoChannel;
     }
 
     public FileDescriptor getAudioFd() {
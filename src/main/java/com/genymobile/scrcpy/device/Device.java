@@ -2,6 +2,7 @@ package com.genymobile.scrcpy.device;
 
 import com.genymobile.scrcpy.AndroidVersions;
 import com.genymobile.scrcpy.FakeContext;
+import com.genymobile.scrcpy.control.InputEventInjector;
 import com.genymobile.scrcpy.util.Ln;
 import com.genymobile.scrcpy.wrappers.ActivityManager;
 import com.genymobile.scrcpy.wrappers.ClipboardManager;
@@ -69,16 +70,19 @@ public final class Device {
         return ServiceManager.getInputManager().injectInputEvent(inputEvent, injectMode);
     }
 
-    public static boolean injectKeyEvent(int action, int keyCode, int repeat, int metaState, int displayId, int injectMode) {
+    public static KeyEvent createKeyEvent(int action, int keyCode, int repeat, int metaState) {
         long now = SystemClock.uptimeMillis();
-        KeyEvent event = new KeyEvent(now, now, action, keyCode, repeat, metaState, KeyCharacterMap.VIRTUAL_KEYBOARD, 0, 0,
-                InputDevice.SOURCE_KEYBOARD);
-        return injectEvent(event, displayId, injectMode);
+        return new KeyEvent(now, now, action, keyCode, repeat, metaState, KeyCharacterMap.VIRTUAL_KEYBOARD, 0, 0, InputDevice.SOURCE_KEYBOARD);
     }
 
-    public static boolean pressReleaseKeycode(int keyCode, int displayId, int injectMode) {
-        return injectKeyEvent(KeyEvent.ACTION_DOWN, keyCode, 0, 0, displayId, injectMode)
-                && injectKeyEvent(KeyEvent.ACTION_UP, keyCode, 0, 0, displayId, injectMode);
+    public static boolean injectKeyEvent(InputEventInjector injector, int action, int keyCode, int repeat, int metaState, int displayId,
+            int injectMode) {
+        return injector.injectEvent(createKeyEvent(action, keyCode, repeat, metaState), displayId, injectMode);
+    }
+
+    public static boolean pressReleaseKeycode(InputEventInjector injector, int keyCode, int displayId, int injectMode) {
+        return injectKeyEvent(injector, KeyEvent.ACTION_DOWN, keyCode, 0, 0, displayId, injectMode)
+                && injectKeyEvent(injector, KeyEvent.ACTION_UP, keyCode, 0, 0, displayId, injectMode);
     }
 
     public static boolean isScreenOn(int displayId) {
@@ -184,7 +188,7 @@ public final class Device {
         if (!isScreenOn(displayId)) {
             return true;
         }
-        return pressReleaseKeycode(KeyEvent.KEYCODE_POWER, displayId, Device.INJECT_MODE_ASYNC);
+        return pressReleaseKeycode(InputEventInjector.DEVICE, KeyEvent.KEYCODE_POWER, displayId, Device.INJECT_MODE_ASYNC);
     }
 
     /**
@@ -217,7 +221,7 @@ public final class Device {
             return ServiceManager.getWindowManager().getRotation();
         }
 
-        DisplayInfo displayInfo = ServiceManager.getDisplayManager().getDisplayInfo(displayId);
+        DisplayInfo displayInfo = DisplayInfoCache.getDefault().get(displayId);
         return displayInfo.getRotation();
     }
 
@@ -0,0 +1,105 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.wrappers.ServiceManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the {@link DisplayInfo} by display id, to avoid a binder call each time the display info is needed.
+ * <p>
+ * Only the tracked displays are cached: a display must be tracked only while something (typically a
+ * {@link com.genymobile.scrcpy.video.DisplaySizeMonitor DisplaySizeMonitor}) calls {@link #invalidate(int)} whenever it changes. The display
+ * info of the other displays is always retrieved from the system.
+ * <p>
+ * {@link DisplayInfo} is immutable, so the readers get a consistent snapshot without locking.
+ */
+public final class DisplayInfoCache {
+
+    public interface Loader {
+        DisplayInfo load(int displayId);
+    }
+
+    private static final DisplayInfoCache INSTANCE = new DisplayInfoCache(displayId -> ServiceManager.getDisplayManager().getDisplayInfo(displayId));
+
+    private final Loader loader;
+
+    private final ConcurrentHashMap<Integer, DisplayInfo> entries = new ConcurrentHashMap<>();
+    // Number of trackers for each tracked display id
+    private final ConcurrentHashMap<Integer, Integer> trackers = new ConcurrentHashMap<>();
+    // Incremented on every invalidation, so that a value loaded concurrently with an invalidation is not cached
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public DisplayInfoCache(Loader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Return the cache of the display info retrieved from the display manager.
+     */
+    public static DisplayInfoCache getDefault() {
+        return INSTANCE;
+    }
+
+    /**
+     * Return the display info, from the cache if possible.
+     *
+     * @return the display info, or {@code null} if the display does not exist
+     */
+    public DisplayInfo get(int displayId) {
+        DisplayInfo displayInfo = entries.get(displayId);
+        if (displayInfo != null) {
+            hitCount.incrementAndGet();
+            return displayInfo;
+        }
+
+        missCount.incrementAndGet();
+        int gen = generation.get();
+        displayInfo = loader.load(displayId);
+        if (displayInfo != null && trackers.containsKey(displayId)) {
+            entries.put(displayId, displayInfo);
+            if (generation.get() != gen) {
+                // Invalidated while loading, the value may be stale
+                entries.remove(displayId, displayInfo);
+            }
+        }
+        return displayInfo;
+    }
+
+    /**
+     * Start caching the display info of {@code displayId}.
+     * <p>
+     * The caller must call {@link #invalidate(int)} whenever the display changes, then {@link #untrack(int)}.
+     */
+    public synchronized void track(int displayId) {
+        trackers.merge(displayId, 1, Integer::sum);
+    }
+
+    public synchronized void untrack(int displayId) {
+        Integer count = trackers.get(displayId);
+        assert count != null : "Display " + displayId + " not tracked";
+        if (count == null || count == 1) {
+            trackers.remove(displayId);
+            invalidate(displayId);
+        } else {
+            trackers.put(displayId, count - 1);
+        }
+    }
+
+    public void invalidate(int displayId) {
+        generation.incrementAndGet();
+        entries.remove(displayId);
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+}
@@ -0,0 +1,158 @@
+package com.genymobile.scrcpy.device;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Cache of the last config packet and of all the packets since the last key frame (the current group of pictures).
+ * <p>
+ * A new consumer may decode the stream immediately by replaying the cache, instead of waiting for the next key frame.
+ * <p>
+ * The packets are stored in a preallocated off-heap buffer. If the current GOP does not fit, it is invalidated until the next key frame.
+ */
+final class GopCache {
+
+    private static final int INITIAL_PACKET_COUNT = 64; // grown on demand
+
+    /**
+     * Immutable copy of the cache content, to be written by another thread.
+     */
+    static final class Snapshot {
+        private final ByteBuffer config; // null if none
+        private final ByteBuffer data; // null if the GOP is not available
+        private final int[] offsets;
+        private final long[] pts;
+        private final int packetCount;
+
+        private Snapshot(ByteBuffer config, ByteBuffer data, int[] offsets, long[] pts, int packetCount) {
+            this.config = config;
+            this.data = data;
+            this.offsets = offsets;
+            this.pts = pts;
+            this.packetCount = packetCount;
+        }
+
+        boolean hasKeyFrame() {
+            return packetCount > 0;
+        }
+
+        void writeTo(Streamer streamer) throws IOException {
+            if (config != null) {
+                streamer.writePacket(config.duplicate(), 0, true, false);
+            }
+            for (int i = 0; i < packetCount; ++i) {
+                ByteBuffer packet = data.duplicate();
+                packet.limit(offsets[i + 1]);
+                packet.position(offsets[i]);
+                // The first packet is the key frame
+                streamer.writePacket(packet, pts[i], false, i == 0);
+            }
+        }
+    }
+
+    private final ByteBuffer data;
+    private ByteBuffer config; // copy of the last config packet, null if none
+
+    // offsets[i] is the start of packet i in data, offsets[packetCount] is the end
+    private int[] offsets = new int[INITIAL_PACKET_COUNT + 1];
+    private long[] pts = new long[INITIAL_PACKET_COUNT];
+    private int packetCount;
+    private boolean valid; // false until the first key frame, and on overflow
+
+    private long overflows;
+    private long replays;
+
+    GopCache(int capacity) {
+        data = ByteBuffer.allocateDirect(capacity);
+    }
+
+    void add(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) {
+        if (config) {
+            int size = buffer.remaining();
+            if (this.config == null || this.config.capacity() < size) {
+                this.config = ByteBuffer.allocateDirect(size);
+            }
+            this.config.clear();
+            this.config.put(buffer.duplicate());
+            this.config.flip();
+            return;
+        }
+
+        if (keyFrame) {
+            // Start a new GOP (if the capacity is 0, only the config packet is cached)
+            data.clear();
+            packetCount = 0;
+            valid = data.capacity() > 0;
+        }
+
+        if (!valid) {
+            return;
+        }
+
+        int size = buffer.remaining();
+        if (data.remaining() < size) {
+            // The GOP is too big, it cannot be replayed until the next key frame
+            ++overflows;
+            data.clear();
+            packetCount = 0;
+            valid = false;
+            return;
+        }
+
+        if (packetCount == this.pts.length) {
+            this.pts = Arrays.copyOf(this.pts, packetCount * 2);
+            offsets = Arrays.copyOf(offsets, packetCount * 2 + 1);
+        }
+        offsets[packetCount] = data.position();
+        this.pts[packetCount] = pts;
+        data.put(buffer.duplicate());
+        ++packetCount;
+        offsets[packetCount] = data.position();
+    }
+
+    /**
+     * Copy the cache content, to be replayed to a new consumer.
+     */
+    Snapshot snapshot() {
+        ++replays;
+
+        ByteBuffer configCopy = null;
+        if (config != null) {
+            configCopy = ByteBuffer.allocateDirect(config.remaining());
+            configCopy.put(config.duplicate());
+            configCopy.flip();
+        }
+
+        if (!valid || packetCount == 0) {
+            return new Snapshot(configCopy, null, null, null, 0);
+        }
+
+        ByteBuffer source = data.duplicate();
+        source.flip();
+        ByteBuffer dataCopy = ByteBuffer.allocateDirect(source.remaining());
+        dataCopy.put(source);
+        dataCopy.flip();
+        return new Snapshot(configCopy, dataCopy, Arrays.copyOf(offsets, packetCount + 1), Arrays.copyOf(pts, packetCount), packetCount);
+    }
+
+    int getCapacity() {
+        return data.capacity();
+    }
+
+    int getSize() {
+        return valid ? data.position() : 0;
+    }
+
+    int getPacketCount() {
+        return valid ? packetCount : 0;
+    }
+
+    long getOverflows() {
+        return overflows;
+    }
+
+    long getReplays() {
+        return replays;
+    }
+}
@@ -0,0 +1,149 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.util.Ln;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Dispatch the packets of a single encoded stream to several subscribers.
+ * <p>
+ * Each subscriber has its own {@link PacketSender} (with its own bounded queue and drop policy), so that a slow subscriber never stalls the
+ * encoder or the other subscribers. Nothing is written to the subscriber channels while holding the fanout lock.
+ * <p>
+ * The video header and a {@link GopCache} are kept, so that a subscriber joining late can decode the stream immediately: the header and the
+ * cached packets are written from the subscriber thread, before the live packets.
+ */
+final class PacketFanout {
+
+    private static final class Subscriber {
+        private final WritableByteChannel channel;
+        private final PacketSender sender;
+        private final boolean ownChannel;
+
+        Subscriber(WritableByteChannel channel, PacketSender sender, boolean ownChannel) {
+            this.channel = channel;
+            this.sender = sender;
+            this.ownChannel = ownChannel;
+        }
+    }
+
+    private final PacketSender.SyncFrameRequester syncFrameRequester;
+
+    private final List<Subscriber> subscribers = new ArrayList<>();
+
+    private Size videoSize; // null until the video header is written
+    private final GopCache gopCache;
+    private boolean keyFrameReceived;
+    private boolean stopped;
+
+    PacketFanout(PacketSender.SyncFrameRequester syncFrameRequester, int gopCacheSize) {
+        this.syncFrameRequester = syncFrameRequester;
+        gopCache = new GopCache(gopCacheSize);
+    }
+
+    /**
+     * Add a subscriber.
+     * <p>
+     * If {@code ownChannel} is set, the channel is closed when the subscriber is removed. Otherwise, it is left to its owner (a channel must
+     * have a single owner, closing it twice would make the owner fail on shutdown).
+     */
+    void add(WritableByteChannel channel, Streamer streamer, int queueCapacity, boolean ownChannel) throws IOException {
+        PacketSender sender = new PacketSender(streamer, queueCapacity, syncFrameRequester, null);
+        boolean mustRequestSyncFrame;
+        synchronized (this) {
+            if (stopped) {
+                throw new IOException("Video stream stopped");
+            }
+
+            GopCache.Snapshot replay = gopCache.snapshot();
+            // If the GOP is not available, the following frames could not be decoded until the next key frame
+            mustRequestSyncFrame = keyFrameReceived && !replay.hasKeyFrame();
+            if (mustRequestSyncFrame) {
+                sender.dropUntilKeyFrame();
+            }
+
+            sender.setReplay(videoSize, replay);
+            sender.start();
+
+            subscribers.add(new Subscriber(channel, sender, ownChannel));
+        }
+
+        if (mustRequestSyncFrame && syncFrameRequester != null) {
+            syncFrameRequester.requestSyncFrame();
+        }
+    }
+
+    synchronized int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    synchronized void writeVideoHeader(Size size) {
+        videoSize = size;
+        Iterator<Subscriber> it = subscribers.iterator();
+        while (it.hasNext()) {
+            Subscriber subscriber = it.next();
+            try {
+                // Written from the subscriber thread, this never blocks
+                subscriber.sender.offerVideoHeader(size);
+            } catch (IOException e) {
+                it.remove();
+                close(subscriber, e);
+            }
+        }
+    }
+
+    synchronized void dispatch(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) {
+        gopCache.add(buffer, pts, config, keyFrame);
+        if (keyFrame) {
+            keyFrameReceived = true;
+        }
+
+        Iterator<Subscriber> it = subscribers.iterator();
+        while (it.hasNext()) {
+            Subscriber subscriber = it.next();
+            try {
+                // The packet is copied to the subscriber queue (or dropped), so it never blocks
+                subscriber.sender.offer(buffer.duplicate(), pts, config, keyFrame);
+            } catch (IOException e) {
+                it.remove();
+                close(subscriber, e);
+            }
+        }
+    }
+
+    void stop() {
+        List<Subscriber> list;
+        synchronized (this) {
+            list = new ArrayList<>(subscribers);
+            subscribers.clear();
+            stopped = true;
+        }
+        for (Subscriber subscriber : list) {
+            close(subscriber, null);
+        }
+
+        synchronized (this) {
+            Ln.d("GOP cache: " + gopCache.getReplays() + " replays, " + gopCache.getOverflows() + " overflows (capacity: "
+                    + gopCache.getCapacity() + " bytes)");
+        }
+    }
+
+    private static void close(Subscriber subscriber, IOException error) {
+        if (error != null) {
+            Ln.d("Video subscriber removed: " + error.getMessage());
+        }
+        subscriber.sender.stop();
+        if (subscriber.ownChannel) {
+            try {
+                subscriber.channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
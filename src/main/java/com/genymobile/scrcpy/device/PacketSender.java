@@ -0,0 +1,373 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.util.Ln;
+
+import android.media.MediaCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Send packets to a {@link Streamer} from a separate thread, through a bounded queue.
+ * <p>
+ * The packet data is copied to a preallocated slot, so that the codec buffer may be released immediately. If the queue grows over its
+ * high-water mark (because the consumer is slower than the encoder), the following packets are dropped until the next key frame, and a sync
+ * frame is requested to the encoder.
+ * <p>
+ * The producer never blocks. Config packets and video headers are never dropped: if the queue is full, the last ones are kept aside and
+ * queued just before the next key frame.
+ */
+public final class PacketSender {
+
+    public interface SyncFrameRequester {
+        void requestSyncFrame();
+    }
+
+    private static final int INITIAL_PACKET_CAPACITY = 1 << 16; // 64k, grown on demand
+
+    private static final class Packet {
+        private ByteBuffer data;
+        private long pts;
+        private long dequeueTime;
+        private boolean config;
+        private boolean keyFrame;
+        private Size videoSize; // non-null for a video header
+    }
+
+    private final Streamer streamer;
+    private final SyncFrameRequester syncFrameRequester;
+    private final StreamStats stats; // may be null
+
+    private final Packet[] ring;
+    private final int highWaterMark;
+    private int head; // index of the next packet to send
+    private int count; // number of queued packets (including the one being sent)
+
+    // If set, drop all packets (except config packets) until the next key frame
+    private boolean dropping;
+    // Kept while the queue is full, queued before the next key frame (a new video header discards the previous config packet)
+    private Size pendingVideoSize;
+    private ByteBuffer pendingConfig;
+    private long pendingConfigPts;
+    private boolean hasPendingConfig;
+    private boolean stopped;
+    private IOException error;
+
+    private long droppedPackets;
+    private long syncFrameRequests;
+    private int maxQueueDepth;
+
+    private Size videoHeader; // written before the replay, may be null
+    private GopCache.Snapshot replay; // written before the queued packets, may be null
+
+    private Thread thread;
+
+    public PacketSender(Streamer streamer, int capacity, SyncFrameRequester syncFrameRequester, StreamStats stats) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Packet queue capacity must be at least 2: " + capacity);
+        }
+        this.streamer = streamer;
+        this.syncFrameRequester = syncFrameRequester;
+        this.stats = stats;
+        ring = new Packet[capacity];
+        for (int i = 0; i < capacity; ++i) {
+            Packet packet = new Packet();
+            packet.data = ByteBuffer.allocateDirect(INITIAL_PACKET_CAPACITY);
+            ring[i] = packet;
+        }
+        highWaterMark = capacity - capacity / 4;
+    }
+
+    public void offer(ByteBuffer codecBuffer, MediaCodec.BufferInfo bufferInfo) throws IOException {
+        long pts = bufferInfo.presentationTimeUs;
+        boolean config = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+        boolean keyFrame = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+        offer(codecBuffer, pts, config, keyFrame);
+    }
+
+    /**
+     * Copy the packet to the queue, or drop it.
+     * <p>
+     * This method never blocks. If the queue is full, a config packet is kept aside (replacing the previous one) until the next key frame.
+     *
+     * @return {@code true} if the packet has been queued (or kept aside), {@code false} if it has been dropped
+     * @throws IOException if a previous packet could not be sent
+     */
+    public boolean offer(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) throws IOException {
+        long dequeueTime = StreamStats.now();
+        boolean queued;
+        boolean kept = false;
+        boolean mustRequestSyncFrame = false;
+        synchronized (this) {
+            if (error != null) {
+                throw error;
+            }
+
+            int pending = getPendingCount();
+            if (config) {
+                // Config packets must never be dropped, the stream could not be decoded without them
+                if (count < ring.length && pending == 0) {
+                    queued = !stopped;
+                } else {
+                    // Never block the producer, keep it for the next key frame
+                    keepConfig(buffer, pts);
+                    mustRequestSyncFrame = startDropping();
+                    queued = false;
+                    kept = !stopped;
+                }
+            } else if (count + pending >= ring.length || (!keyFrame && (dropping || count >= highWaterMark))) {
+                if (!dropping) {
+                    mustRequestSyncFrame = startDropping();
+                } else if (keyFrame) {
+                    // The requested key frame is dropped, request another one
+                    mustRequestSyncFrame = true;
+                }
+                ++droppedPackets;
+                if (stats != null) {
+                    stats.recordDroppedPacket();
+                }
+                queued = false;
+            } else {
+                if (keyFrame) {
+                    dropping = false;
+                }
+                queued = !stopped;
+                if (queued) {
+                    // There is room for the pending packets and the key frame
+                    pushPending(dequeueTime);
+                }
+            }
+
+            if (queued) {
+                push(buffer, pts, dequeueTime, config, keyFrame);
+            }
+
+            if (mustRequestSyncFrame) {
+                ++syncFrameRequests;
+            }
+        }
+
+        if (mustRequestSyncFrame && syncFrameRequester != null) {
+            syncFrameRequester.requestSyncFrame();
+        }
+
+        return queued || kept;
+    }
+
+    /**
+     * Queue a video header, written before the following packets.
+     * <p>
+     * This method never blocks. If the queue is full, the header is kept aside until the next key frame.
+     *
+     * @throws IOException if a previous packet could not be sent
+     */
+    public void offerVideoHeader(Size videoSize) throws IOException {
+        boolean mustRequestSyncFrame = false;
+        synchronized (this) {
+            if (error != null) {
+                throw error;
+            }
+            if (stopped) {
+                return;
+            }
+
+            if (count < ring.length && getPendingCount() == 0) {
+                pushVideoHeader(videoSize, StreamStats.now());
+            } else {
+                pendingVideoSize = videoSize;
+                // The previous config packet belongs to the previous session
+                hasPendingConfig = false;
+                mustRequestSyncFrame = startDropping();
+            }
+        }
+
+        if (mustRequestSyncFrame && syncFrameRequester != null) {
+            syncFrameRequester.requestSyncFrame();
+        }
+    }
+
+    private int getPendingCount() {
+        return (pendingVideoSize != null ? 1 : 0) + (hasPendingConfig ? 1 : 0);
+    }
+
+    /**
+     * Drop the following packets until the next key frame.
+     *
+     * @return {@code true} if a sync frame must be requested
+     */
+    private boolean startDropping() {
+        if (dropping) {
+            return false;
+        }
+        Ln.d("Video congestion, dropping packets until the next key frame");
+        dropping = true;
+        return true;
+    }
+
+    private void keepConfig(ByteBuffer buffer, long pts) {
+        int size = buffer.remaining();
+        if (pendingConfig == null || pendingConfig.capacity() < size) {
+            pendingConfig = ByteBuffer.allocateDirect(size);
+        }
+        pendingConfig.clear();
+        pendingConfig.put(buffer);
+        pendingConfig.flip();
+        pendingConfigPts = pts;
+        hasPendingConfig = true;
+    }
+
+    private void pushPending(long dequeueTime) {
+        if (pendingVideoSize != null) {
+            pushVideoHeader(pendingVideoSize, dequeueTime);
+            pendingVideoSize = null;
+        }
+        if (hasPendingConfig) {
+            push(pendingConfig, pendingConfigPts, dequeueTime, true, false);
+            hasPendingConfig = false;
+        }
+    }
+
+    private void pushVideoHeader(Size videoSize, long dequeueTime) {
+        Packet packet = ring[(head + count) % ring.length];
+        packet.dequeueTime = dequeueTime;
+        packet.config = false;
+        packet.keyFrame = false;
+        packet.videoSize = videoSize;
+        enqueued();
+    }
+
+    private void push(ByteBuffer buffer, long pts, long dequeueTime, boolean config, boolean keyFrame) {
+        Packet packet = ring[(head + count) % ring.length];
+        int size = buffer.remaining();
+        if (packet.data.capacity() < size) {
+            // Only allocate when a packet is bigger than all the previous ones
+            packet.data = ByteBuffer.allocateDirect(Math.max(size, packet.data.capacity() * 2));
+        }
+        packet.data.clear();
+        packet.data.put(buffer);
+        packet.data.flip();
+        packet.pts = pts;
+        packet.dequeueTime = dequeueTime;
+        packet.config = config;
+        packet.keyFrame = keyFrame;
+        packet.videoSize = null;
+        enqueued();
+    }
+
+    private void enqueued() {
+        ++count;
+        if (count > maxQueueDepth) {
+            maxQueueDepth = count;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Set the video header and the packets to write before the queued packets.
+     * <p>
+     * This must be called before {@link #start()}.
+     *
+     * @param videoHeader the video size to write in the header, or {@code null}
+     * @param replay      the packets to replay, or {@code null}
+     */
+    void setReplay(Size videoHeader, GopCache.Snapshot replay) {
+        this.videoHeader = videoHeader;
+        this.replay = replay;
+    }
+
+    private void loop() throws IOException, InterruptedException {
+        if (videoHeader != null) {
+            streamer.writeVideoHeader(videoHeader);
+        }
+        if (replay != null) {
+            replay.writeTo(streamer);
+            // Do not retain the copy
+            replay = null;
+        }
+
+        while (true) {
+            Packet packet;
+            synchronized (this) {
+                while (count == 0 && !stopped) {
+                    wait();
+                }
+                if (stopped) {
+                    return;
+                }
+                // The slot is not reused by the producer until count is decremented
+                packet = ring[head];
+            }
+
+            if (packet.videoSize != null) {
+                streamer.writeVideoHeader(packet.videoSize);
+            } else {
+                long writeStartTime = StreamStats.now();
+                streamer.writePacket(packet.data, packet.pts, packet.config, packet.keyFrame);
+                if (stats != null && !packet.config) {
+                    stats.recordPacket(packet.pts, packet.dequeueTime, writeStartTime, StreamStats.now());
+                }
+            }
+
+            synchronized (this) {
+                head = (head + 1) % ring.length;
+                --count;
+                notifyAll();
+            }
+        }
+    }
+
+    public void start() {
+        thread = new Thread(() -> {
+            try {
+                loop();
+            } catch (IOException e) {
+                synchronized (this) {
+                    // Reported (and logged) by the producer on the next offer()
+                    error = e;
+                    notifyAll();
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            } finally {
+                Ln.d("Packet sender stopped");
+            }
+        }, "video-send");
+        thread.start();
+    }
+
+    /**
+     * Drop the following packets (except config packets) until the next key frame.
+     * <p>
+     * This is used when the previous packets have not been queued, so that the decoder never receives frames referencing missing frames.
+     */
+    synchronized void dropUntilKeyFrame() {
+        dropping = true;
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+        notifyAll();
+    }
+
+    public void join() throws InterruptedException {
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    public synchronized int getQueueDepth() {
+        return count;
+    }
+
+    public synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public synchronized long getDroppedPackets() {
+        return droppedPackets;
+    }
+
+    public synchronized long getSyncFrameRequests() {
+        return syncFrameRequests;
+    }
+}
@@ -0,0 +1,266 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.util.Codec;
+import com.genymobile.scrcpy.util.IO;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Ring buffer of the last video packets, backed by a memory-mapped file, so that the last seconds of video can be dumped on demand.
+ * <p>
+ * The packets are stored framed (12-byte header + payload, like on the video socket). The positions of the key frames are kept in an index,
+ * so that a dump always starts on a key frame.
+ * <p>
+ * The packets are written by a single thread (the encoder), without allocation or locking. A dump may be requested from any other thread: it
+ * reads the buffer concurrently, and stops if the writer overwrites the data being read.
+ */
+public final class ReplayBuffer implements Closeable {
+
+    private static final long PACKET_FLAG_CONFIG = 1L << 63;
+    private static final long PACKET_FLAG_KEY_FRAME = 1L << 62;
+
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final int SIZE_WRAP = -1; // marks the unused end of the buffer, the next record is at offset 0
+    private static final int KEY_FRAME_INDEX_CAPACITY = 1024;
+
+    private final File file;
+    private final FileChannel fileChannel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    // Absolute positions (the physical offset is position % capacity)
+    private final long[] keyFramePositions = new long[KEY_FRAME_INDEX_CAPACITY];
+    private volatile long keyFrameCount;
+    private volatile long writeEnd; // end of the last complete record
+    private volatile long writeLimit; // end of the record being written (the data before writeLimit - capacity is overwritten)
+
+    // Replaced (not modified) on change, read by the dumping thread
+    private volatile ByteBuffer videoHeader;
+    private volatile ByteBuffer config;
+
+    private ReplayBuffer(File file, FileChannel fileChannel, MappedByteBuffer buffer) {
+        this.file = file;
+        this.fileChannel = fileChannel;
+        this.buffer = buffer;
+        this.capacity = buffer.capacity();
+    }
+
+    /**
+     * Create a replay buffer backed by the given file (truncated, and deleted on close).
+     *
+     * @param file the backing file
+     * @param capacity the size in bytes
+     */
+    public static ReplayBuffer create(File file, int capacity) throws IOException {
+        if (capacity < RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Replay buffer too small: " + capacity);
+        }
+        // Closing the channel closes the RandomAccessFile
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(capacity);
+            FileChannel fileChannel = raf.getChannel();
+            MappedByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            return new ReplayBuffer(file, fileChannel, buffer);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            // Do not leave the file behind
+            file.delete();
+            throw e;
+        }
+    }
+
+    public void setVideoHeader(Codec codec, Size videoSize) {
+        ByteBuffer header = ByteBuffer.allocate(12);
+        header.putInt(codec.getId());
+        header.putInt(videoSize.getWidth());
+        header.putInt(videoSize.getHeight());
+        header.flip();
+        videoHeader = header;
+    }
+
+    /**
+     * Write a packet to the ring buffer.
+     * <p>
+     * This must always be called from the same thread. The buffer position is not changed.
+     */
+    public void write(ByteBuffer packet, long pts, boolean config, boolean keyFrame) {
+        if (config) {
+            // Config packets are rare, keep a separate copy, so that a dump always starts with the last one
+            ByteBuffer copy = ByteBuffer.allocate(packet.remaining());
+            copy.put(packet.duplicate());
+            copy.flip();
+            this.config = copy;
+            return;
+        }
+
+        int size = packet.remaining();
+        int recordSize = RECORD_HEADER_SIZE + size;
+        if (recordSize > capacity) {
+            // Cannot be stored
+            return;
+        }
+
+        long position = writeEnd;
+        int offset = (int) (position % capacity);
+        int available = capacity - offset;
+        if (available < recordSize) {
+            writeLimit = position + available + recordSize;
+            if (available >= RECORD_HEADER_SIZE) {
+                buffer.putLong(offset, 0);
+                buffer.putInt(offset + 8, SIZE_WRAP);
+            }
+            position += available;
+            offset = 0;
+        }
+
+        // Announce the region to be overwritten before writing it
+        writeLimit = position + recordSize;
+
+        long ptsAndFlags = keyFrame ? pts | PACKET_FLAG_KEY_FRAME : pts;
+        buffer.putLong(offset, ptsAndFlags);
+        buffer.putInt(offset + 8, size);
+
+        int packetPosition = packet.position();
+        buffer.position(offset + RECORD_HEADER_SIZE);
+        buffer.put(packet);
+        packet.position(packetPosition);
+
+        // Publish the record before the index entry, so that an indexed key frame is always complete
+        writeEnd = position + recordSize;
+
+        if (keyFrame) {
+            long count = keyFrameCount;
+            keyFramePositions[(int) (count % KEY_FRAME_INDEX_CAPACITY)] = position;
+            keyFrameCount = count + 1;
+        }
+    }
+
+    private boolean isAvailable(long position) {
+        return position >= writeLimit - capacity;
+    }
+
+    private long findOldestKeyFrame() {
+        long count = keyFrameCount;
+        for (long i = Math.max(0, count - KEY_FRAME_INDEX_CAPACITY); i < count; ++i) {
+            long position = keyFramePositions[(int) (i % KEY_FRAME_INDEX_CAPACITY)];
+            if (keyFrameCount - i > KEY_FRAME_INDEX_CAPACITY) {
+                // The index entry has been overwritten meanwhile
+                continue;
+            }
+            if (isAvailable(position)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write the content of the buffer, from the oldest available key frame, to the given channel.
+     * <p>
+     * The output has the same format as the video socket with codec and frame meta: the video header, the last config packet, then the
+     * packets.
+     *
+     * @return the number of packets written (excluding the config packet)
+     */
+    public int dump(WritableByteChannel channel) throws IOException {
+        // Snapshot of the range to dump (the writer may continue meanwhile)
+        long start = findOldestKeyFrame();
+        long end = writeEnd;
+
+        ByteBuffer header = videoHeader;
+        if (header != null) {
+            IO.writeFully(channel, header.duplicate());
+        }
+
+        ByteBuffer configPacket = config;
+        if (configPacket != null) {
+            ByteBuffer meta = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            meta.putLong(PACKET_FLAG_CONFIG);
+            meta.putInt(configPacket.remaining());
+            meta.flip();
+            IO.writeFully(channel, meta);
+            IO.writeFully(channel, configPacket.duplicate());
+        }
+
+        if (start == -1) {
+            // No key frame available
+            return 0;
+        }
+
+        ByteBuffer reader = buffer.duplicate();
+        ByteBuffer record = ByteBuffer.allocate(0);
+        int packets = 0;
+        long position = start;
+        while (position < end) {
+            int offset = (int) (position % capacity);
+            int available = capacity - offset;
+            if (available < RECORD_HEADER_SIZE) {
+                position += available;
+                continue;
+            }
+
+            int size = reader.getInt(offset + 8);
+            if (!isAvailable(position)) {
+                // Overwritten by the writer, the dump is too slow
+                break;
+            }
+            if (size == SIZE_WRAP) {
+                position += available;
+                continue;
+            }
+            if (size < 0 || size > available - RECORD_HEADER_SIZE) {
+                throw new IOException("Corrupted replay buffer at position " + position);
+            }
+
+            int recordSize = RECORD_HEADER_SIZE + size;
+            if (record.capacity() < recordSize) {
+                record = ByteBuffer.allocate(Math.max(recordSize, record.capacity() * 2));
+            }
+            record.clear();
+            reader.limit(offset + recordSize);
+            reader.position(offset);
+            record.put(reader);
+            reader.limit(capacity);
+            record.flip();
+
+            // The copy is valid only if the writer did not overwrite the record meanwhile
+            if (!isAvailable(position)) {
+                break;
+            }
+
+            IO.writeFully(channel, record);
+            ++packets;
+            position += recordSize;
+        }
+
+        return packets;
+    }
+
+    /**
+     * Dump the buffer to a standalone file.
+     *
+     * @return the number of packets written (excluding the config packet)
+     */
+    public int dump(File target) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+            raf.setLength(0);
+            return dump(raf.getChannel());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+        if (!file.delete()) {
+            throw new IOException("Could not delete " + file);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.util.Codec;
+import com.genymobile.scrcpy.util.Ln;
+import com.genymobile.scrcpy.video.VideoCodec;
+
+import java.io.IOException;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+
+/**
+ * Send a H.264 or H.265 stream over RTP.
+ * <p>
+ * The Annex-B NAL units from the encoder are packetized as single NAL unit packets or, if they do not fit in a packet, as fragmentation units
+ * (FU-A for H.264, RFC 6184; FU for H.265, RFC 7798). The parameter sets are resent before every key frame, so that a receiver may join at any
+ * time.
+ * <p>
+ * Each {@link WritableByteChannel#write(ByteBuffer)} call on the channel must send one datagram (like a connected {@code DatagramChannel}).
+ * <p>
+ * The RTP output is secondary: on a send error, a warning is logged and the sender is disabled, without affecting the main stream.
+ */
+public final class RtpSender {
+
+    private static final int RTP_HEADER_SIZE = 12;
+
+    public static final int MIN_PACKET_SIZE = RTP_HEADER_SIZE + 4;
+    public static final int MAX_PACKET_SIZE = 65507; // max UDP payload over IPv4
+    private static final int RTP_VERSION = 2;
+    private static final int PAYLOAD_TYPE = 96; // dynamic
+    private static final int CLOCK_RATE = 90000;
+
+    private static final int H264_NAL_TYPE_FU_A = 28;
+    private static final int H265_NAL_TYPE_FU = 49;
+
+    private final WritableByteChannel channel;
+    private final boolean hevc;
+    private final int maxPacketSize;
+    private final int ssrc;
+
+    private final ByteBuffer packet;
+    private int sequence;
+
+    private ByteBuffer parameterSets; // copy of the last config packet (Annex-B), null if none
+
+    private boolean disabled; // on send error
+
+    /**
+     * Create a RTP sender.
+     *
+     * @param channel the channel to send datagrams
+     * @param codec the video codec (H.264 or H.265)
+     * @param maxPacketSize the maximum size of a RTP packet, including the RTP header (the MTU minus the IP and UDP headers)
+     */
+    public RtpSender(WritableByteChannel channel, Codec codec, int maxPacketSize) {
+        if (codec != VideoCodec.H264 && codec != VideoCodec.H265) {
+            throw new IllegalArgumentException("Codec not supported over RTP: " + codec.getName());
+        }
+        if (maxPacketSize < MIN_PACKET_SIZE || maxPacketSize > MAX_PACKET_SIZE) {
+            throw new IllegalArgumentException("Invalid RTP packet size: " + maxPacketSize);
+        }
+        this.channel = channel;
+        this.hevc = codec == VideoCodec.H265;
+        this.maxPacketSize = maxPacketSize;
+        Random random = new Random();
+        this.ssrc = random.nextInt();
+        this.sequence = random.nextInt(0x10000);
+        packet = ByteBuffer.allocateDirect(maxPacketSize);
+    }
+
+    /**
+     * Send a packet from the encoder.
+     * <p>
+     * The buffer position is not changed. This method never throws on network errors: the sender is disabled instead.
+     */
+    public void send(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) {
+        if (disabled) {
+            return;
+        }
+
+        if (config) {
+            int size = buffer.remaining();
+            if (parameterSets == null || parameterSets.capacity() < size) {
+                parameterSets = ByteBuffer.allocateDirect(size);
+            }
+            parameterSets.clear();
+            parameterSets.put(buffer.duplicate());
+            parameterSets.flip();
+            return;
+        }
+
+        // The RTP timestamp wraps around
+        int timestamp = (int) (pts * CLOCK_RATE / 1_000_000);
+
+        try {
+            if (keyFrame && parameterSets != null) {
+                sendNalUnits(parameterSets.duplicate(), timestamp, false);
+            }
+            // The last packet of the access unit has the marker bit set
+            sendNalUnits(buffer.duplicate(), timestamp, true);
+        } catch (IOException e) {
+            // Warn only once
+            Ln.w("RTP output disabled: " + e.getMessage());
+            disabled = true;
+            // Do not retain the copy
+            parameterSets = null;
+        }
+    }
+
+    public boolean isDisabled() {
+        return disabled;
+    }
+
+    private static int findStartCode(ByteBuffer data, int from) {
+        int limit = data.limit();
+        for (int i = from; i + 2 < limit; ++i) {
+            if ((data.get(i + 2) & 0xFF) > 1) {
+                // Fast path: the start code cannot begin at i, i + 1 or i + 2
+                i += 2;
+            } else if (data.get(i) == 0 && data.get(i + 1) == 0 && data.get(i + 2) == 1) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void sendNalUnits(ByteBuffer data, int timestamp, boolean marker) throws IOException {
+        int startCode = findStartCode(data, data.position());
+        while (startCode != -1) {
+            int start = startCode + 3;
+            int nextStartCode = findStartCode(data, start);
+            int end = nextStartCode != -1 ? nextStartCode : data.limit();
+            // Remove the trailing zero bytes (a 4-byte start code, or a cabac_zero_word)
+            while (end > start && data.get(end - 1) == 0) {
+                --end;
+            }
+            if (end > start) {
+                sendNalUnit(data, start, end, timestamp, marker && nextStartCode == -1);
+            }
+            startCode = nextStartCode;
+        }
+    }
+
+    private void sendNalUnit(ByteBuffer data, int start, int end, int timestamp, boolean marker) throws IOException {
+        int maxPayloadSize = maxPacketSize - RTP_HEADER_SIZE;
+        int size = end - start;
+        if (size <= maxPayloadSize) {
+            // Single NAL unit packet
+            writeRtpHeader(timestamp, marker);
+            writePayload(data, start, end);
+            flush();
+            return;
+        }
+
+        int nalHeaderSize = hevc ? 2 : 1;
+        int fuHeadersSize = nalHeaderSize + 1;
+        byte nalHeader0 = data.get(start);
+        byte nalHeader1 = hevc ? data.get(start + 1) : 0;
+
+        // The NAL unit header is not sent, it is reconstructed from the FU headers
+        int offset = start + nalHeaderSize;
+        boolean first = true;
+        while (offset < end) {
+            int chunkSize = Math.min(end - offset, maxPayloadSize - fuHeadersSize);
+            boolean last = offset + chunkSize == end;
+
+            writeRtpHeader(timestamp, marker && last);
+            int fuHeader = (first ? 0x80 : 0) | (last ? 0x40 : 0);
+            if (hevc) {
+                // Payload header: same F and LayerId/TID as the NAL unit, with type FU
+                packet.put((byte) ((nalHeader0 & 0x81) | (H265_NAL_TYPE_FU << 1)));
+                packet.put(nalHeader1);
+                packet.put((byte) (fuHeader | ((nalHeader0 >> 1) & 0x3F)));
+            } else {
+                // FU indicator: same F and NRI as the NAL unit, with type FU-A
+                packet.put((byte) ((nalHeader0 & 0xE0) | H264_NAL_TYPE_FU_A));
+                packet.put((byte) (fuHeader | (nalHeader0 & 0x1F)));
+            }
+            writePayload(data, offset, offset + chunkSize);
+            flush();
+
+            offset += chunkSize;
+            first = false;
+        }
+    }
+
+    private void writeRtpHeader(int timestamp, boolean marker) {
+        packet.clear();
+        packet.put((byte) (RTP_VERSION << 6));
+        packet.put((byte) ((marker ? 0x80 : 0) | PAYLOAD_TYPE));
+        packet.putShort((short) sequence);
+        packet.putInt(timestamp);
+        packet.putInt(ssrc);
+        sequence = (sequence + 1) & 0xFFFF;
+    }
+
+    private void writePayload(ByteBuffer data, int start, int end) {
+        int limit = data.limit();
+        data.limit(end);
+        data.position(start);
+        packet.put(data);
+        data.limit(limit);
+    }
+
+    private void flush() throws IOException {
+        packet.flip();
+        try {
+            channel.write(packet);
+        } catch (PortUnreachableException e) {
+            // No receiver yet (ICMP port unreachable on a connected socket), the packets are just lost
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.AsyncProcessor;
+import com.genymobile.scrcpy.util.Ln;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Accept video consumers on a TCP port, while the encoder is running.
+ * <p>
+ * Each accepted connection is added as a subscriber of the {@link Streamer}: it receives the video header and the cached GOP, then the live
+ * packets. A consumer may disconnect at any time without stopping the stream.
+ */
+public final class StreamServer implements AsyncProcessor {
+
+    private final Streamer streamer;
+    private final ServerSocketChannel serverChannel;
+    private final int sendBufferSize;
+    private final int queueCapacity;
+
+    private Thread thread;
+
+    /**
+     * Create a server listening on the given address.
+     *
+     * @param streamer the streamer, with subscribers enabled
+     * @param address the local address to bind
+     * @param sendBufferSize the socket send buffer size (SO_SNDBUF) of the consumer connections, 0 for the system default
+     * @param queueCapacity the capacity of the packet queue of each consumer
+     */
+    public StreamServer(Streamer streamer, InetSocketAddress address, int sendBufferSize, int queueCapacity) throws IOException {
+        this.streamer = streamer;
+        this.sendBufferSize = sendBufferSize;
+        this.queueCapacity = queueCapacity;
+        // Bind immediately, so that a configuration error is reported on start
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(address);
+        } catch (IOException e) {
+            serverChannel.close();
+            throw e;
+        }
+    }
+
+    public SocketAddress getLocalAddress() {
+        return serverChannel.socket().getLocalSocketAddress();
+    }
+
+    static void configureSocket(Socket socket, int sendBufferSize) throws IOException {
+        // Packets must be sent as soon as they are written
+        socket.setTcpNoDelay(true);
+        if (sendBufferSize > 0) {
+            socket.setSendBufferSize(sendBufferSize);
+        }
+    }
+
+    private void acceptLoop() throws IOException {
+        while (true) {
+            SocketChannel channel = serverChannel.accept();
+            try {
+                configureSocket(channel.socket(), sendBufferSize);
+                // The subscriber owns the channel from now on
+                streamer.addSubscriber(channel, queueCapacity, true);
+                Ln.d("Video consumer connected: " + channel.socket().getRemoteSocketAddress());
+            } catch (IOException e) {
+                Ln.d("Could not add video consumer: " + e.getMessage());
+                channel.close();
+            }
+        }
+    }
+
+    @Override
+    public void start(TerminationListener listener) {
+        thread = new Thread(() -> {
+            boolean fatalError = false;
+            try {
+                acceptLoop();
+            } catch (ClosedChannelException e) {
+                // stopped
+            } catch (IOException e) {
+                Ln.e("Video server error", e);
+                fatalError = true;
+            } finally {
+                Ln.d("Video server stopped");
+                listener.onTerminated(fatalError);
+            }
+        }, "video-server");
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        try {
+            // Unblock accept()
+            serverChannel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        if (thread != null) {
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.util.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Device-side latency of the video packets.
+ * <p>
+ * Each packet is timestamped when it is captured (its PTS), when it is dequeued from the encoder, and when it is written to the socket:
+ * <ul>
+ *     <li>encode: from capture to dequeue;</li>
+ *     <li>queue: from dequeue to the start of the socket write (only non-zero if a send queue is enabled);</li>
+ *     <li>write: duration of the socket write.</li>
+ * </ul>
+ * All values are in microseconds.
+ */
+public final class StreamStats {
+
+    private final LatencyHistogram encodeLatency = new LatencyHistogram();
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final AtomicLong droppedPackets = new AtomicLong();
+
+    public static long now() {
+        // Same time base as the PTS of the packets captured from a Surface (CLOCK_MONOTONIC)
+        return System.nanoTime() / 1000;
+    }
+
+    public void recordPacket(long pts, long dequeueTime, long writeStartTime, long writeEndTime) {
+        if (dequeueTime >= pts) {
+            // Some sources (e.g. the camera) may use another time base, ignore the encode latency in that case
+            encodeLatency.record(dequeueTime - pts);
+        }
+        queueLatency.record(writeStartTime - dequeueTime);
+        writeLatency.record(writeEndTime - writeStartTime);
+    }
+
+    public void recordDroppedPacket() {
+        droppedPackets.incrementAndGet();
+    }
+
+    public LatencyHistogram getEncodeLatency() {
+        return encodeLatency;
+    }
+
+    public LatencyHistogram getQueueLatency() {
+        return queueLatency;
+    }
+
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    public long getDroppedPackets() {
+        return droppedPackets.get();
+    }
+}
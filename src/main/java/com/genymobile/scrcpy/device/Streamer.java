@@ -7,9 +7,10 @@ import com.genymobile.scrcpy.util.IO;
 import android.media.MediaCodec;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 
 public final class Streamer {
@@ -17,15 +18,26 @@ public final class Streamer {
     private static final long PACKET_FLAG_CONFIG = 1L << 63;
     private static final long PACKET_FLAG_KEY_FRAME = 1L << 62;
 
-    private final OutputStream outputStream;
+    private final WritableByteChannel channel; // may be null if the packets are only sent to subscribers
+    private final GatheringByteChannel gatheringChannel; // null if the channel does not support gathering writes
     private final Codec codec;
     private final boolean sendCodecMeta;
     private final boolean sendFrameMeta;
 
-    private final ByteBuffer headerBuffer = ByteBuffer.allocate(12);
+    private final ByteBuffer headerBuffer = ByteBuffer.allocateDirect(12);
+    private final ByteBuffer[] packetBuffers = new ByteBuffer[2]; // {header, payload}
 
-    public Streamer(OutputStream outputStream, Codec codec, boolean sendCodecMeta, boolean sendFrameMeta) {
-        this.outputStream = outputStream;
+    // Additional subscribers of the same stream (null if disabled)
+    private PacketFanout fanout;
+    private volatile PacketSender.SyncFrameRequester syncFrameRequester;
+
+    private ReplayBuffer replayBuffer; // may be null
+    private RtpSender rtpSender; // may be null
+
+    public Streamer(WritableByteChannel channel, Codec codec, boolean sendCodecMeta, boolean sendFrameMeta) {
+        this.channel = channel;
+        this.gatheringChannel = channel instanceof GatheringByteChannel ? (GatheringByteChannel) channel : null;
+        packetBuffers[0] = headerBuffer;
         this.codec = codec;
         this.sendCodecMeta = sendCodecMeta;
         this.sendFrameMeta = sendFrameMeta;
@@ -35,12 +47,82 @@ public final class Streamer {
         return codec;
     }
 
+    /**
+     * Enable sending the video stream to additional subscribers (see {@link #addSubscriber(WritableByteChannel, int, boolean)}).
+     * <p>
+     * This must be called before the header is written.
+     *
+     * @param gopCacheSize the capacity (in bytes) of the cache of the current GOP, replayed to late subscribers (0 to disable)
+     */
+    public void enableSubscribers(int gopCacheSize) {
+        fanout = new PacketFanout(this::requestSyncFrame, gopCacheSize);
+    }
+
+    /**
+     * Also write the video packets to a replay buffer (from the writing thread, without allocation).
+     * <p>
+     * This must be called before the header is written.
+     */
+    public void setReplayBuffer(ReplayBuffer replayBuffer) {
+        this.replayBuffer = replayBuffer;
+    }
+
+    /**
+     * Also send the video packets over RTP (from the writing thread).
+     */
+    public void setRtpSender(RtpSender rtpSender) {
+        this.rtpSender = rtpSender;
+    }
+
+    /**
+     * Set the component to notify when a subscriber needs a key frame.
+     */
+    public void setSyncFrameRequester(PacketSender.SyncFrameRequester syncFrameRequester) {
+        this.syncFrameRequester = syncFrameRequester;
+    }
+
+    private void requestSyncFrame() {
+        PacketSender.SyncFrameRequester requester = syncFrameRequester;
+        if (requester != null) {
+            requester.requestSyncFrame();
+        }
+    }
+
+    /**
+     * Send the stream to an additional channel, from a separate thread.
+     * <p>
+     * If the subscriber joins late, it first receives the video header, the last config packet and the packets since the last key frame (if
+     * they fit in the GOP cache, otherwise a sync frame is requested).
+     *
+     * @param channel the subscriber channel
+     * @param queueCapacity the capacity of the subscriber packet queue
+     * @param ownChannel if {@code true}, the channel is closed when the subscriber is removed (on error or on {@link #stopSubscribers()});
+     *                   otherwise, the caller remains responsible for closing it
+     */
+    public void addSubscriber(WritableByteChannel channel, int queueCapacity, boolean ownChannel) throws IOException {
+        if (fanout == null) {
+            throw new IllegalStateException("Subscribers are not enabled");
+        }
+        Streamer streamer = new Streamer(channel, codec, sendCodecMeta, sendFrameMeta);
+        fanout.add(channel, streamer, queueCapacity, ownChannel);
+    }
+
+    public int getSubscriberCount() {
+        return fanout != null ? fanout.getSubscriberCount() : 0;
+    }
+
+    public void stopSubscribers() {
+        if (fanout != null) {
+            fanout.stop();
+        }
+    }
+
     public void writeAudioHeader() throws IOException {
         if (sendCodecMeta) {
             ByteBuffer buffer = ByteBuffer.allocate(4);
             buffer.putInt(codec.getId());
             buffer.flip();
-            IO.writeFully(outputStream, buffer);
+            IO.writeFully(channel, buffer);
         }
     }
 
@@ -51,7 +133,17 @@ public final class Streamer {
             buffer.putInt(videoSize.getWidth());
             buffer.putInt(videoSize.getHeight());
             buffer.flip();
-            IO.writeFully(outputStream, buffer);
+            if (channel != null) {
+                IO.writeFully(channel, buffer);
+            }
+        }
+
+        if (replayBuffer != null) {
+            replayBuffer.setVideoHeader(codec, videoSize);
+        }
+
+        if (fanout != null) {
+            fanout.writeVideoHeader(videoSize);
         }
     }
 
@@ -63,7 +155,9 @@ public final class Streamer {
         if (error) {
             code[3] = 1;
         }
-        IO.writeFully(outputStream, code, 0, code.length);
+        if (channel != null) {
+            IO.writeFully(channel, ByteBuffer.wrap(code));
+        }
     }
 
     public void writePacket(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) throws IOException {
@@ -75,11 +169,43 @@ public final class Streamer {
             }
         }
 
+        if (replayBuffer != null) {
+            // The buffer position is not changed
+            replayBuffer.write(buffer, pts, config, keyFrame);
+        }
+
+        if (rtpSender != null) {
+            // The buffer position is not changed, and the errors are not propagated (the RTP output is just disabled)
+            rtpSender.send(buffer, pts, config, keyFrame);
+        }
+
+        if (fanout != null) {
+            // The subscribers copy the packet, the buffer position is not changed
+            fanout.dispatch(buffer, pts, config, keyFrame);
+        }
+
+        if (channel == null) {
+            return;
+        }
+
         if (sendFrameMeta) {
-            writeFrameMeta(outputStream, buffer.remaining(), pts, config, keyFrame);
+            prepareFrameMeta(buffer.remaining(), pts, config, keyFrame);
+            if (gatheringChannel != null) {
+                // Write the header and the payload with a single syscall
+                packetBuffers[1] = buffer;
+                try {
+                    IO.writeFully(gatheringChannel, packetBuffers);
+                } finally {
+                    // Do not retain the codec buffer
+                    packetBuffers[1] = null;
+                }
+                return;
+            }
+
+            IO.writeFully(channel, headerBuffer);
         }
 
-        IO.writeFully(outputStream, buffer);
+        IO.writeFully(channel, buffer);
     }
 
     public void writePacket(ByteBuffer codecBuffer, MediaCodec.BufferInfo bufferInfo) throws IOException {
@@ -89,7 +215,7 @@ public final class Streamer {
         writePacket(codecBuffer, pts, config, keyFrame);
     }
 
-    private void writeFrameMeta(OutputStream outputStream, int packetSize, long pts, boolean config, boolean keyFrame) throws IOException {
+    private void prepareFrameMeta(int packetSize, long pts, boolean config, boolean keyFrame) {
         headerBuffer.clear();
 
         long ptsAndFlags;
@@ -105,7 +231,6 @@ public final class Streamer {
         headerBuffer.putLong(ptsAndFlags);
         headerBuffer.putInt(packetSize);
         headerBuffer.flip();
-        IO.writeFully(outputStream, headerBuffer);
     }
 
     private static void fixOpusConfigPacket(ByteBuffer buffer) throws IOException {
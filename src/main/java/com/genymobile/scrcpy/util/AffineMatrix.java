@@ -91,6 +91,16 @@ public class AffineMatrix {
         return new Point(xx, yy);
     }
 
+    /**
+     * Apply the transform to the point (x, y), without allocation.
+     *
+     * @param out an array of 2 elements receiving the converted coordinates
+     */
+    public void apply(int x, int y, int[] out) {
+        out[0] = (int) (a * x + c * y + e);
+        out[1] = (int) (b * x + d * y + f);
+    }
+
     /**
      * Compute <code>this * rhs</code>.
      *
@@ -0,0 +1,115 @@
+package com.genymobile.scrcpy.util;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Arrays;
+
+/**
+ * Channel writing to a socket file descriptor with {@link Os#write(FileDescriptor, ByteBuffer)} and
+ * {@link Os#writev(FileDescriptor, Object[], int[], int[])}, so that direct buffers (like MediaCodec output buffers) are written without
+ * copy.
+ * <p>
+ * Unlike a {@link java.nio.channels.FileChannel}, it is not closed when the writing thread is interrupted (which would close the file
+ * descriptor behind the back of its owner), and its errors keep their {@link ErrnoException} cause (see {@link IO#isBrokenPipe(IOException)}).
+ * <p>
+ * The file descriptor is owned by the caller, {@link #close()} does not close it. The channel must be written from one thread at a time.
+ */
+public final class FdChannel implements GatheringByteChannel {
+
+    private final FileDescriptor fd;
+    private boolean open = true;
+
+    // Os.writev() takes the number of iovecs from the arrays length, keep the arrays for the last count
+    private Object[] iovBuffers = new Object[0];
+    private int[] iovOffsets = new int[0];
+    private int[] iovByteCounts = new int[0];
+
+    public FdChannel(FileDescriptor fd) {
+        this.fd = fd;
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        checkOpen();
+        int remaining = src.remaining();
+        IO.writeFully(fd, src);
+        return remaining;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        checkOpen();
+        if (iovBuffers.length != length) {
+            iovBuffers = new Object[length];
+            iovOffsets = new int[length];
+            iovByteCounts = new int[length];
+        }
+
+        for (int i = 0; i < length; ++i) {
+            ByteBuffer buffer = srcs[offset + i];
+            if (buffer.hasArray()) {
+                iovBuffers[i] = buffer.array();
+                iovOffsets[i] = buffer.arrayOffset() + buffer.position();
+            } else {
+                // Os.writev() only accepts byte[] and direct buffers, and ignores the buffer position (it is passed as offset)
+                iovBuffers[i] = buffer;
+                iovOffsets[i] = buffer.position();
+            }
+            iovByteCounts[i] = buffer.remaining();
+        }
+
+        long w = writev();
+        // Do not retain the buffers until the next call
+        Arrays.fill(iovBuffers, null);
+
+        // Os.writev() does not update the buffer positions
+        long remaining = w;
+        for (int i = 0; i < length && remaining > 0; ++i) {
+            ByteBuffer buffer = srcs[offset + i];
+            int n = (int) Math.min(buffer.remaining(), remaining);
+            buffer.position(buffer.position() + n);
+            remaining -= n;
+        }
+        return w;
+    }
+
+    private int writev() throws IOException {
+        while (true) {
+            try {
+                return Os.writev(fd, iovBuffers, iovOffsets, iovByteCounts);
+            } catch (ErrnoException e) {
+                if (e.errno != OsConstants.EINTR) {
+                    throw new IOException(e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+}
@@ -9,10 +9,14 @@ import android.system.Os;
 import android.system.OsConstants;
 
 import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Scanner;
 
 public final class IO {
@@ -60,8 +64,29 @@ public final class IO {
         writeFully(fd, ByteBuffer.wrap(buffer, offset, len));
     }
 
+    public static void writeFully(WritableByteChannel channel, ByteBuffer from) throws IOException {
+        // The channel writes directly from the buffer, so a direct buffer (like a MediaCodec output buffer) is never copied to the Java heap
+        while (from.hasRemaining()) {
+            channel.write(from);
+        }
+    }
+
+    public static void writeFully(GatheringByteChannel channel, ByteBuffer[] from) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : from) {
+            remaining += buffer.remaining();
+        }
+        // All the buffers are written by a single writev() call, unless the write is partial
+        while (remaining > 0) {
+            remaining -= channel.write(from);
+        }
+    }
+
     public static void writeFully(OutputStream os, ByteBuffer from) throws IOException {
-        if (from.hasArray()) {
+        if (os instanceof FileOutputStream) {
+            // Os.write() writes a direct buffer without copy (unlike FileChannel, it is not closed if the thread is interrupted)
+            writeFully(((FileOutputStream) os).getFD(), from);
+        } else if (from.hasArray()) {
             os.write(from.array(), from.arrayOffset() + from.position(), from.remaining());
             from.position(from.limit()); // All bytes are written, advance position to limit
         } else {
@@ -88,9 +113,24 @@ public final class IO {
         return builder.toString();
     }
 
+    /**
+     * Indicate whether the exception is caused by the peer having closed the connection (which is expected on close).
+     * <p>
+     * The errors from {@link Os} keep their errno, but the NIO channels (like the {@link java.nio.channels.SocketChannel} of the TCP forward
+     * path) throw a plain {@link IOException} with the system error message.
+     */
     public static boolean isBrokenPipe(IOException e) {
         Throwable cause = e.getCause();
-        return cause instanceof ErrnoException && ((ErrnoException) cause).errno == OsConstants.EPIPE;
+        if (cause instanceof ErrnoException) {
+            int errno = ((ErrnoException) cause).errno;
+            return errno == OsConstants.EPIPE || errno == OsConstants.ECONNRESET;
+        }
+        if (e instanceof AsynchronousCloseException) {
+            // The channel has been closed (or shut down) concurrently on close
+            return true;
+        }
+        String message = e.getMessage();
+        return message != null && (message.contains("Broken pipe") || message.contains("Connection reset by peer"));
     }
 
     public static boolean isBrokenPipe(Exception e) {
@@ -0,0 +1,194 @@
+package com.genymobile.scrcpy.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations (in microseconds), with a bounded relative error (like an HdrHistogram).
+ * <p>
+ * Values lower than 32 are counted exactly. Above, each power of 2 is split into 16 buckets, so the relative error is at most 1/16. Values are
+ * capped to about 19 hours.
+ * <p>
+ * {@link #record(long)} may be called concurrently from any thread, without locking or allocation.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS; // 32
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2; // 16
+
+    private static final int MAX_VALUE_BITS = 36;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_VALUE_BITS - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT;
+
+    public static final class Snapshot {
+        private final long count;
+        private final long p50;
+        private final long p95;
+        private final long p99;
+        private final long max;
+
+        public Snapshot(long count, long p50, long p95, long p99, long max) {
+            this.count = count;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP95() {
+            return p95;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+
+    private static final class Buckets {
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong max = new AtomicLong();
+        // Number of record() calls in progress on these buckets
+        private final AtomicInteger writers = new AtomicInteger();
+
+        void record(long value) {
+            counts.incrementAndGet(getBucketIndex(value));
+
+            long currentMax = max.get();
+            while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+                currentMax = max.get();
+            }
+        }
+
+        void clear() {
+            for (int i = 0; i < BUCKET_COUNT; ++i) {
+                counts.set(i, 0);
+            }
+            max.set(0);
+        }
+    }
+
+    // The values are recorded in the active buckets. On reset, the active buckets are swapped with the spare ones (double-buffering), so that
+    // the values of a period can be read consistently once the writers in progress have finished.
+    private volatile Buckets active = new Buckets();
+    private Buckets spare = new Buckets(); // guarded by this
+
+    static int getBucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BUCKET_BITS
+        int shift = magnitude - SUB_BUCKET_BITS + 1; // >= 1
+        int subBucket = (int) (value >>> shift); // in [SUB_BUCKET_HALF_COUNT, SUB_BUCKET_COUNT)
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + subBucket - SUB_BUCKET_HALF_COUNT;
+    }
+
+    /**
+     * Return the highest value counted in the bucket.
+     */
+    static long getBucketHighestValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+
+        while (true) {
+            Buckets buckets = active;
+            buckets.writers.incrementAndGet();
+            try {
+                if (buckets == active) {
+                    // Once registered as a writer of the active buckets, the reader waits for this record to complete before reading them
+                    buckets.record(value);
+                    return;
+                }
+                // The buckets have been swapped concurrently, record to the new active buckets
+            } finally {
+                buckets.writers.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Compute the percentiles of the values recorded so far.
+     */
+    public Snapshot snapshot() {
+        return snapshot(active);
+    }
+
+    /**
+     * Compute the percentiles of the values recorded so far, and reset the histogram.
+     * <p>
+     * Each recorded value is reported exactly once, even if {@link #record(long)} is called concurrently: the buckets are swapped, then read
+     * once the {@link #record(long)} calls in progress on them have completed.
+     */
+    public synchronized Snapshot snapshotAndReset() {
+        Buckets buckets = active;
+        active = spare;
+        while (buckets.writers.get() != 0) {
+            // A record() call is in progress on the previous buckets, it is very short
+            Thread.yield();
+        }
+
+        Snapshot snapshot = snapshot(buckets);
+        buckets.clear();
+        spare = buckets;
+        return snapshot;
+    }
+
+    private static Snapshot snapshot(Buckets buckets) {
+        long[] values = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            long count = buckets.counts.get(i);
+            values[i] = count;
+            total += count;
+        }
+        long maxValue = buckets.max.get();
+
+        if (total == 0) {
+            return new Snapshot(0, 0, 0, 0, 0);
+        }
+
+        long p50 = getValueAtPercentile(values, total, 50, maxValue);
+        long p95 = getValueAtPercentile(values, total, 95, maxValue);
+        long p99 = getValueAtPercentile(values, total, 99, maxValue);
+        return new Snapshot(total, p50, p95, p99, maxValue);
+    }
+
+    private static long getValueAtPercentile(long[] values, long total, int percentile, long maxValue) {
+        // Rank of the value (1-based), rounded up
+        long rank = (total * percentile + 99) / 100;
+        long cumulated = 0;
+        for (int i = 0; i < values.length; ++i) {
+            cumulated += values[i];
+            if (cumulated >= rank) {
+                // The max is exact, never report a value above it
+                return Math.min(getBucketHighestValue(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+}
@@ -0,0 +1,84 @@
+package com.genymobile.scrcpy.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Start and end times of the server startup phases, relative to the creation of the timeline.
+ * <p>
+ * Phases may be recorded concurrently from any thread.
+ */
+public final class StartupTimeline {
+
+    public final class Phase {
+        private final String name;
+        private final String threadName;
+        private final long startNs;
+        private long endNs = -1; // -1 while running, guarded by the timeline lock
+
+        private Phase(String name, String threadName, long startNs) {
+            this.name = name;
+            this.threadName = threadName;
+            this.startNs = startNs;
+        }
+
+        public void end() {
+            long now = System.nanoTime();
+            synchronized (StartupTimeline.this) {
+                if (endNs == -1) {
+                    endNs = now;
+                }
+            }
+        }
+    }
+
+    private final long originNs = System.nanoTime();
+    private long launchDelayMs = -1;
+    private final List<Phase> phases = new ArrayList<>();
+
+    /**
+     * Set the delay between the process launch and the creation of this timeline, if known.
+     */
+    public synchronized void setLaunchDelay(long launchDelayMs) {
+        this.launchDelayMs = launchDelayMs;
+    }
+
+    public synchronized Phase begin(String name) {
+        Phase phase = new Phase(name, Thread.currentThread().getName(), System.nanoTime());
+        phases.add(phase);
+        return phase;
+    }
+
+    /**
+     * Record an instantaneous event.
+     */
+    public synchronized void mark(String name) {
+        Phase phase = begin(name);
+        phase.endNs = phase.startNs;
+    }
+
+    public synchronized int getPhaseCount() {
+        return phases.size();
+    }
+
+    private long toMs(long ns) {
+        return (ns - originNs) / 1_000_000;
+    }
+
+    public synchronized String format() {
+        StringBuilder builder = new StringBuilder("Startup timeline (ms):");
+        if (launchDelayMs != -1) {
+            builder.append("\n    process launch: -").append(launchDelayMs);
+        }
+        for (Phase phase : phases) {
+            builder.append("\n    ").append(phase.name).append(": ").append(toMs(phase.startNs));
+            if (phase.endNs == -1) {
+                builder.append(" -> (running)");
+            } else if (phase.endNs != phase.startNs) {
+                builder.append(" -> ").append(toMs(phase.endNs)).append(" (").append((phase.endNs - phase.startNs) / 1_000_000).append(')');
+            }
+            builder.append(" [").append(phase.threadName).append(']');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,143 @@
+package com.genymobile.scrcpy.util;
+
+import com.genymobile.scrcpy.device.ConfigurationException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Run the startup work which does not depend on the client connection (creating the encoder, looking up the services…) in background
+ * threads, while the main thread waits for the client.
+ * <p>
+ * Each result must be claimed by its consumer. The results which have never been claimed (typically because the startup failed) are released
+ * by {@link #releaseUnclaimed()}.
+ */
+public final class StartupWarmUp {
+
+    public interface Work<T> {
+        T run() throws IOException, ConfigurationException;
+    }
+
+    public interface Releaser<T> {
+        void release(T result);
+    }
+
+    public static final class Task<T> {
+        private final FutureTask<T> future;
+        private final Releaser<T> releaser; // may be null
+        private boolean claimed; // guarded by the StartupWarmUp lock
+
+        private Task(FutureTask<T> future, Releaser<T> releaser) {
+            this.future = future;
+            this.releaser = releaser;
+        }
+    }
+
+    private final StartupTimeline timeline;
+    private final List<Task<?>> tasks = new ArrayList<>();
+
+    public StartupWarmUp(StartupTimeline timeline) {
+        this.timeline = timeline;
+    }
+
+    /**
+     * Start the work in a new thread.
+     *
+     * @param name     the name of the thread and of the timeline phase
+     * @param work     the work to run
+     * @param releaser the function to release the result if it is never claimed, or {@code null}
+     */
+    public <T> Task<T> start(String name, Work<T> work, Releaser<T> releaser) {
+        FutureTask<T> future = new FutureTask<>(() -> {
+            StartupTimeline.Phase phase = timeline.begin(name);
+            try {
+                return work.run();
+            } finally {
+                phase.end();
+            }
+        });
+        Task<T> task = new Task<>(future, releaser);
+        synchronized (this) {
+            tasks.add(task);
+        }
+
+        Thread thread = new Thread(future, name);
+        thread.setDaemon(true);
+        thread.start();
+        return task;
+    }
+
+    /**
+     * Wait for the result of the task, and take its ownership.
+     * <p>
+     * If the work failed, its exception is rethrown.
+     */
+    public <T> T claim(Task<T> task) throws IOException, ConfigurationException {
+        T result;
+        try {
+            result = task.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the startup warm-up");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof ConfigurationException) {
+                throw (ConfigurationException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new AssertionError(cause);
+        }
+
+        synchronized (this) {
+            task.claimed = true;
+        }
+        return result;
+    }
+
+    /**
+     * Wait for all the tasks, then release the results which have not been claimed.
+     */
+    public void releaseUnclaimed() {
+        List<Task<?>> unclaimed = new ArrayList<>();
+        synchronized (this) {
+            for (Task<?> task : tasks) {
+                if (!task.claimed) {
+                    task.claimed = true;
+                    unclaimed.add(task);
+                }
+            }
+        }
+
+        for (Task<?> task : unclaimed) {
+            release(task);
+        }
+    }
+
+    private static <T> void release(Task<T> task) {
+        T result;
+        try {
+            result = task.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            // Nothing to release
+            return;
+        }
+        if (task.releaser != null && result != null) {
+            task.releaser.release(result);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.genymobile.scrcpy.video;
 import com.genymobile.scrcpy.AndroidVersions;
 import com.genymobile.scrcpy.device.Device;
 import com.genymobile.scrcpy.device.DisplayInfo;
+import com.genymobile.scrcpy.device.DisplayInfoCache;
 import com.genymobile.scrcpy.device.Size;
 import com.genymobile.scrcpy.util.Ln;
 import com.genymobile.scrcpy.wrappers.DisplayManager;
@@ -46,6 +47,9 @@ public class DisplaySizeMonitor {
         assert this.displayId == Device.DISPLAY_ID_NONE;
         this.displayId = displayId;
 
+        // The display info is cached as long as this monitor invalidates it on changes
+        DisplayInfoCache.getDefault().track(displayId);
+
         if (USE_DEFAULT_METHOD) {
             handlerThread = new HandlerThread("DisplayListener");
             handlerThread.start();
@@ -56,6 +60,7 @@ public class DisplaySizeMonitor {
                 }
 
                 if (eventDisplayId == displayId) {
+                    DisplayInfoCache.getDefault().invalidate(displayId);
                     checkDisplaySizeChanged();
                 }
             }, handler);
@@ -68,6 +73,7 @@ public class DisplaySizeMonitor {
                     }
 
                     if (eventDisplayId == displayId) {
+                        DisplayInfoCache.getDefault().invalidate(displayId);
                         checkDisplaySizeChanged();
                     }
                 }
@@ -96,6 +102,10 @@ public class DisplaySizeMonitor {
         } else if (displayWindowListener != null) {
             ServiceManager.getWindowManager().unregisterDisplayWindowListener(displayWindowListener);
         }
+
+        if (displayId != Device.DISPLAY_ID_NONE) {
+            DisplayInfoCache.getDefault().untrack(displayId);
+        }
     }
 
     private synchronized Size getSessionDisplaySize() {
@@ -107,7 +117,8 @@ public class DisplaySizeMonitor {
     }
 
     private void checkDisplaySizeChanged() {
-        DisplayInfo di = ServiceManager.getDisplayManager().getDisplayInfo(displayId);
+        // Just invalidated, so retrieved from the system (and cached for the next prepare())
+        DisplayInfo di = DisplayInfoCache.getDefault().get(displayId);
         if (di == null) {
             Ln.w("DisplayInfo for " + displayId + " cannot be retrieved");
             // We can't compare with the current size, so reset unconditionally
@@ -4,6 +4,7 @@ import com.genymobile.scrcpy.AndroidVersions;
 import com.genymobile.scrcpy.Options;
 import com.genymobile.scrcpy.control.PositionMapper;
 import com.genymobile.scrcpy.device.DisplayInfo;
+import com.genymobile.scrcpy.device.DisplayInfoCache;
 import com.genymobile.scrcpy.device.NewDisplay;
 import com.genymobile.scrcpy.device.Orientation;
 import com.genymobile.scrcpy.device.Size;
@@ -117,7 +118,7 @@ public class NewDisplayCapture extends SurfaceCapture {
             // Set the current display size to avoid an unnecessary call to invalidate()
             displaySizeMonitor.setSessionDisplaySize(displaySize);
         } else {
-            DisplayInfo displayInfo = ServiceManager.getDisplayManager().getDisplayInfo(virtualDisplay.getDisplay().getDisplayId());
+            DisplayInfo displayInfo = DisplayInfoCache.getDefault().get(virtualDisplay.getDisplay().getDisplayId());
             displaySize = displayInfo.getSize();
             dpi = displayInfo.getDpi();
             displayRotation = displayInfo.getRotation();
@@ -6,6 +6,7 @@ import com.genymobile.scrcpy.control.PositionMapper;
 import com.genymobile.scrcpy.device.ConfigurationException;
 import com.genymobile.scrcpy.device.Device;
 import com.genymobile.scrcpy.device.DisplayInfo;
+import com.genymobile.scrcpy.device.DisplayInfoCache;
 import com.genymobile.scrcpy.device.Orientation;
 import com.genymobile.scrcpy.device.Size;
 import com.genymobile.scrcpy.opengl.AffineOpenGLFilter;
@@ -66,7 +67,7 @@ public class ScreenCapture extends SurfaceCapture {
 
     @Override
     public void prepare() throws ConfigurationException {
-        displayInfo = ServiceManager.getDisplayManager().getDisplayInfo(displayId);
+        displayInfo = DisplayInfoCache.getDefault().get(displayId);
         if (displayInfo == null) {
             Ln.e("Display " + displayId + " not found\n" + LogUtils.buildDisplayListMessage());
             throw new ConfigurationException("Unknown display id: " + displayId);
@@ -4,7 +4,9 @@ import com.genymobile.scrcpy.AndroidVersions;
 import com.genymobile.scrcpy.AsyncProcessor;
 import com.genymobile.scrcpy.Options;
 import com.genymobile.scrcpy.device.ConfigurationException;
+import com.genymobile.scrcpy.device.PacketSender;
 import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.device.StreamStats;
 import com.genymobile.scrcpy.device.Streamer;
 import com.genymobile.scrcpy.util.Codec;
 import com.genymobile.scrcpy.util.CodecOption;
@@ -12,11 +14,13 @@ import com.genymobile.scrcpy.util.CodecUtils;
 import com.genymobile.scrcpy.util.IO;
 import com.genymobile.scrcpy.util.Ln;
 import com.genymobile.scrcpy.util.LogUtils;
+import com.genymobile.scrcpy.util.StartupTimeline;
 
 import android.media.MediaCodec;
 import android.media.MediaCodecInfo;
 import android.media.MediaFormat;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.Looper;
 import android.os.SystemClock;
 import android.view.Surface;
@@ -43,6 +47,16 @@ public class SurfaceEncoder implements AsyncProcessor {
     private final int videoBitRate;
     private final float maxFps;
     private final boolean downsizeOnError;
+    private final int sendQueue;
+
+    // If a send queue is enabled, packets are written to the streamer from a separate thread
+    private PacketSender packetSender;
+    private volatile MediaCodec runningMediaCodec;
+
+    private StreamStats stats; // may be null
+
+    private MediaCodec preparedMediaCodec; // may be null
+    private StartupTimeline startupTimeline; // may be null
 
     private boolean firstFrameSent;
     private int consecutiveErrors;
@@ -60,15 +74,45 @@ public class SurfaceEncoder implements AsyncProcessor {
         this.codecOptions = options.getVideoCodecOptions();
         this.encoderName = options.getVideoEncoder();
         this.downsizeOnError = options.getDownsizeOnError();
+        this.sendQueue = options.getVideoSendQueue();
+    }
+
+    public void setStreamStats(StreamStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Use a MediaCodec created in advance by {@link #createMediaCodec(Codec, String)}, instead of creating it on start.
+     * <p>
+     * The encoder takes its ownership.
+     */
+    public void setMediaCodec(MediaCodec mediaCodec) {
+        this.preparedMediaCodec = mediaCodec;
+    }
+
+    /**
+     * Record the first video packet in the startup timeline, then log the timeline.
+     */
+    public void setStartupTimeline(StartupTimeline startupTimeline) {
+        this.startupTimeline = startupTimeline;
     }
 
     private void streamCapture() throws IOException, ConfigurationException {
         Codec codec = streamer.getCodec();
-        MediaCodec mediaCodec = createMediaCodec(codec, encoderName);
+        MediaCodec mediaCodec = preparedMediaCodec != null ? preparedMediaCodec : createMediaCodec(codec, encoderName);
+        preparedMediaCodec = null;
         MediaFormat format = createFormat(codec.getMimeType(), videoBitRate, maxFps, codecOptions);
 
         capture.init(reset);
 
+        // Subscribers joining late need a key frame
+        streamer.setSyncFrameRequester(this::requestSyncFrame);
+
+        if (sendQueue > 0) {
+            packetSender = new PacketSender(streamer, sendQueue, this::requestSyncFrame, stats);
+            packetSender.start();
+        }
+
         try {
             boolean alive;
             boolean headerWritten = false;
@@ -100,6 +144,7 @@ public class SurfaceEncoder implements AsyncProcessor {
 
                     // Set the MediaCodec instance to "interrupt" (by signaling an EOS) on reset
                     reset.setRunningMediaCodec(mediaCodec);
+                    runningMediaCodec = mediaCodec;
 
                     if (stopped.get()) {
                         alive = false;
@@ -124,6 +169,7 @@ public class SurfaceEncoder implements AsyncProcessor {
                     alive = true;
                 } finally {
                     reset.setRunningMediaCodec(null);
+                    runningMediaCodec = null;
                     if (captureStarted) {
                         capture.stop();
                     }
@@ -141,11 +187,42 @@ public class SurfaceEncoder implements AsyncProcessor {
                 }
             } while (alive);
         } finally {
+            if (packetSender != null) {
+                stopPacketSender();
+            }
+            streamer.stopSubscribers();
             mediaCodec.release();
             capture.release();
         }
     }
 
+    private void stopPacketSender() {
+        packetSender.stop();
+        try {
+            packetSender.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        long dropped = packetSender.getDroppedPackets();
+        if (dropped > 0) {
+            Ln.i("Video packets dropped on congestion: " + dropped + " (max queue depth: " + packetSender.getMaxQueueDepth() + ")");
+        }
+    }
+
+    private void requestSyncFrame() {
+        MediaCodec mediaCodec = runningMediaCodec;
+        if (mediaCodec != null) {
+            Bundle params = new Bundle();
+            params.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+            try {
+                mediaCodec.setParameters(params);
+            } catch (IllegalStateException e) {
+                // The codec has been stopped concurrently, ignore
+            }
+        }
+    }
+
     private boolean prepareRetry(Size currentSize) {
         if (firstFrameSent) {
             ++consecutiveErrors;
@@ -200,6 +277,7 @@ public class SurfaceEncoder implements AsyncProcessor {
         boolean eos;
         do {
             int outputBufferId = codec.dequeueOutputBuffer(bufferInfo, -1);
+            long dequeueTime = StreamStats.now();
             try {
                 eos = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
                 // On EOS, there might be data or not, depending on bufferInfo.size
@@ -209,11 +287,25 @@ public class SurfaceEncoder implements AsyncProcessor {
                     boolean isConfig = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
                     if (!isConfig) {
                         // If this is not a config packet, then it contains a frame
+                        if (!firstFrameSent && startupTimeline != null) {
+                            startupTimeline.mark("first video packet");
+                            Ln.d(startupTimeline.format());
+                            startupTimeline = null;
+                        }
                         firstFrameSent = true;
                         consecutiveErrors = 0;
                     }
 
-                    streamer.writePacket(codecBuffer, bufferInfo);
+                    if (packetSender != null) {
+                        // Copy the packet so that the codec buffer is released without waiting for the socket
+                        packetSender.offer(codecBuffer, bufferInfo);
+                    } else {
+                        streamer.writePacket(codecBuffer, bufferInfo);
+                        if (stats != null && !isConfig) {
+                            // Written synchronously, there is no queueing
+                            stats.recordPacket(bufferInfo.presentationTimeUs, dequeueTime, dequeueTime, StreamStats.now());
+                        }
+                    }
                 }
             } finally {
                 if (outputBufferId >= 0) {
@@ -223,7 +315,7 @@ public class SurfaceEncoder implements AsyncProcessor {
         } while (!eos);
     }
 
-    private static MediaCodec createMediaCodec(Codec codec, String encoderName) throws IOException, ConfigurationException {
+    public static MediaCodec createMediaCodec(Codec codec, String encoderName) throws IOException, ConfigurationException {
         if (encoderName != null) {
             Ln.d("Creating encoder by name: '" + encoderName + "'");
             try {
@@ -0,0 +1,88 @@
+package com.genymobile.scrcpy.wrappers;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * A hidden API method, looked up once (the result of a failed lookup is also kept).
+ * <p>
+ * The lookup may be performed in advance by {@link #resolve()}, so that the first call from a hot path does not pay for it.
+ * <p>
+ * To avoid allocating a varargs array on every call, the arguments are passed in an array reused by the calling thread (see
+ * {@link #args()}).
+ */
+final class HiddenMethod {
+
+    private final Class<?> declaringClass;
+    private final String name;
+    private final Class<?>[] parameterTypes;
+
+    private final ThreadLocal<Object[]> args;
+
+    private volatile Method method;
+    private volatile NoSuchMethodException failure;
+
+    HiddenMethod(Class<?> declaringClass, String name, Class<?>... parameterTypes) {
+        this.declaringClass = declaringClass;
+        this.name = name;
+        this.parameterTypes = parameterTypes;
+        args = new ThreadLocal<Object[]>() {
+            @Override
+            protected Object[] initialValue() {
+                return new Object[parameterTypes.length];
+            }
+        };
+    }
+
+    Method get() throws NoSuchMethodException {
+        Method m = method;
+        if (m != null) {
+            return m;
+        }
+        return lookup();
+    }
+
+    private synchronized Method lookup() throws NoSuchMethodException {
+        if (method == null && failure == null) {
+            try {
+                method = declaringClass.getMethod(name, parameterTypes);
+            } catch (NoSuchMethodException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return method;
+    }
+
+    /**
+     * Look up the method now.
+     *
+     * @return {@code true} if the method exists
+     */
+    boolean resolve() {
+        try {
+            get();
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Return the arguments array of the current thread, to be filled before calling {@link #invoke(Object, Object[])}.
+     */
+    Object[] args() {
+        return args.get();
+    }
+
+    Object invoke(Object target, Object[] args) throws ReflectiveOperationException {
+        try {
+            return get().invoke(target, args);
+        } finally {
+            // Do not retain the arguments (typically input events) until the next call
+            Arrays.fill(args, null);
+        }
+    }
+}
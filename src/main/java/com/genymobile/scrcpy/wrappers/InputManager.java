@@ -6,11 +6,11 @@ import com.genymobile.scrcpy.util.Ln;
 
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
+import android.os.Build;
 import android.view.InputEvent;
 import android.view.MotionEvent;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 
 @SuppressLint("PrivateApi,DiscouragedPrivateApi")
 public final class InputManager {
@@ -22,11 +22,14 @@ public final class InputManager {
     private final android.hardware.input.InputManager manager;
     private long lastPermissionLogDate;
 
-    private static Method injectInputEventMethod;
-    private static Method setDisplayIdMethod;
-    private static Method setActionButtonMethod;
-    private static Method addUniqueIdAssociationByPortMethod;
-    private static Method removeUniqueIdAssociationByPortMethod;
+    private static final HiddenMethod INJECT_INPUT_EVENT = new HiddenMethod(android.hardware.input.InputManager.class, "injectInputEvent",
+            InputEvent.class, int.class);
+    private static final HiddenMethod SET_DISPLAY_ID = new HiddenMethod(InputEvent.class, "setDisplayId", int.class);
+    private static final HiddenMethod SET_ACTION_BUTTON = new HiddenMethod(MotionEvent.class, "setActionButton", int.class);
+    private static final HiddenMethod ADD_UNIQUE_ID_ASSOCIATION_BY_PORT = new HiddenMethod(android.hardware.input.InputManager.class,
+            "addUniqueIdAssociationByPort", String.class, String.class);
+    private static final HiddenMethod REMOVE_UNIQUE_ID_ASSOCIATION_BY_PORT = new HiddenMethod(android.hardware.input.InputManager.class,
+            "removeUniqueIdAssociationByPort", String.class);
 
     static InputManager create() {
         android.hardware.input.InputManager manager = (android.hardware.input.InputManager) FakeContext.get()
@@ -38,17 +41,25 @@ public final class InputManager {
         this.manager = manager;
     }
 
-    private static Method getInjectInputEventMethod() throws NoSuchMethodException {
-        if (injectInputEventMethod == null) {
-            injectInputEventMethod = android.hardware.input.InputManager.class.getMethod("injectInputEvent", InputEvent.class, int.class);
+    /**
+     * Look up the hidden methods used to inject input events, so that the first injected event does not pay for it.
+     */
+    public static void resolveMethods() {
+        INJECT_INPUT_EVENT.resolve();
+        SET_DISPLAY_ID.resolve();
+        SET_ACTION_BUTTON.resolve();
+        if (Build.VERSION.SDK_INT >= AndroidVersions.API_35_ANDROID_15) {
+            ADD_UNIQUE_ID_ASSOCIATION_BY_PORT.resolve();
+            REMOVE_UNIQUE_ID_ASSOCIATION_BY_PORT.resolve();
         }
-        return injectInputEventMethod;
     }
 
     public boolean injectInputEvent(InputEvent inputEvent, int mode) {
         try {
-            Method method = getInjectInputEventMethod();
-            return (boolean) method.invoke(manager, inputEvent, mode);
+            Object[] args = INJECT_INPUT_EVENT.args();
+            args[0] = inputEvent;
+            args[1] = mode;
+            return (boolean) INJECT_INPUT_EVENT.invoke(manager, args);
         } catch (ReflectiveOperationException e) {
             if (e instanceof InvocationTargetException) {
                 Throwable cause = e.getCause();
@@ -72,17 +83,11 @@ public final class InputManager {
         }
     }
 
-    private static Method getSetDisplayIdMethod() throws NoSuchMethodException {
-        if (setDisplayIdMethod == null) {
-            setDisplayIdMethod = InputEvent.class.getMethod("setDisplayId", int.class);
-        }
-        return setDisplayIdMethod;
-    }
-
     public static boolean setDisplayId(InputEvent inputEvent, int displayId) {
         try {
-            Method method = getSetDisplayIdMethod();
-            method.invoke(inputEvent, displayId);
+            Object[] args = SET_DISPLAY_ID.args();
+            args[0] = displayId;
+            SET_DISPLAY_ID.invoke(inputEvent, args);
             return true;
         } catch (ReflectiveOperationException e) {
             Ln.e("Cannot associate a display id to the input event", e);
@@ -90,17 +95,11 @@ public final class InputManager {
         }
     }
 
-    private static Method getSetActionButtonMethod() throws NoSuchMethodException {
-        if (setActionButtonMethod == null) {
-            setActionButtonMethod = MotionEvent.class.getMethod("setActionButton", int.class);
-        }
-        return setActionButtonMethod;
-    }
-
     public static boolean setActionButton(MotionEvent motionEvent, int actionButton) {
         try {
-            Method method = getSetActionButtonMethod();
-            method.invoke(motionEvent, actionButton);
+            Object[] args = SET_ACTION_BUTTON.args();
+            args[0] = actionButton;
+            SET_ACTION_BUTTON.invoke(motionEvent, args);
             return true;
         } catch (ReflectiveOperationException e) {
             Ln.e("Cannot set action button on MotionEvent", e);
@@ -108,37 +107,24 @@ public final class InputManager {
         }
     }
 
-    private static Method getAddUniqueIdAssociationByPortMethod() throws NoSuchMethodException {
-        if (addUniqueIdAssociationByPortMethod == null) {
-            addUniqueIdAssociationByPortMethod = android.hardware.input.InputManager.class.getMethod(
-                    "addUniqueIdAssociationByPort", String.class, String.class);
-        }
-        return addUniqueIdAssociationByPortMethod;
-    }
-
     @TargetApi(AndroidVersions.API_35_ANDROID_15)
     public void addUniqueIdAssociationByPort(String inputPort, String uniqueId) {
         try {
-            Method method = getAddUniqueIdAssociationByPortMethod();
-            method.invoke(manager, inputPort, uniqueId);
+            Object[] args = ADD_UNIQUE_ID_ASSOCIATION_BY_PORT.args();
+            args[0] = inputPort;
+            args[1] = uniqueId;
+            ADD_UNIQUE_ID_ASSOCIATION_BY_PORT.invoke(manager, args);
         } catch (ReflectiveOperationException e) {
             Ln.e("Cannot add unique id association by port", e);
         }
     }
 
-    private static Method getRemoveUniqueIdAssociationByPortMethod() throws NoSuchMethodException {
-        if (removeUniqueIdAssociationByPortMethod == null) {
-            removeUniqueIdAssociationByPortMethod = android.hardware.input.InputManager.class.getMethod(
-                    "removeUniqueIdAssociationByPort", String.class);
-        }
-        return removeUniqueIdAssociationByPortMethod;
-    }
-
     @TargetApi(AndroidVersions.API_35_ANDROID_15)
     public void removeUniqueIdAssociationByPort(String inputPort) {
         try {
-            Method method = getRemoveUniqueIdAssociationByPortMethod();
-            method.invoke(manager, inputPort);
+            Object[] args = REMOVE_UNIQUE_ID_ASSOCIATION_BY_PORT.args();
+            args[0] = inputPort;
+            REMOVE_UNIQUE_ID_ASSOCIATION_BY_PORT.invoke(manager, args);
         } catch (ReflectiveOperationException e) {
             Ln.e("Cannot remove unique id association by port", e);
         }
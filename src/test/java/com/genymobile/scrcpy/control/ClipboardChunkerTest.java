@@ -0,0 +1,105 @@
+package com.genymobile.scrcpy.control;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class ClipboardChunkerTest {
+
+    // Contains 2-byte, 3-byte and 4-byte (surrogate pair) UTF-8 sequences
+    private static final String TEXT = "aé€\uD83D\uDE00b";
+
+    @Test
+    public void testChunksDoNotSplitSequences() {
+        ClipboardChunker chunker = new ClipboardChunker(TEXT, 4);
+        StringBuilder builder = new StringBuilder();
+        int count = 0;
+        while (chunker.hasNext()) {
+            DeviceMessage msg = chunker.next();
+            Assert.assertEquals(DeviceMessage.TYPE_CLIPBOARD_CHUNK, msg.getType());
+            Assert.assertTrue(msg.getData().length <= 4);
+            Assert.assertEquals(count == 0, (msg.getFlags() & DeviceMessage.CLIPBOARD_CHUNK_FLAG_FIRST) != 0);
+            // Each chunk is valid UTF-8 on its own
+            builder.append(new String(msg.getData(), StandardCharsets.UTF_8));
+            ++count;
+        }
+        Assert.assertEquals(TEXT, builder.toString());
+        Assert.assertTrue(count > 1);
+    }
+
+    @Test
+    public void testEmptyText() {
+        ClipboardChunker chunker = new ClipboardChunker("", 16);
+        DeviceMessage msg = chunker.next();
+        Assert.assertEquals(DeviceMessage.CLIPBOARD_CHUNK_FLAG_FIRST | DeviceMessage.CLIPBOARD_CHUNK_FLAG_LAST, msg.getFlags());
+        Assert.assertEquals(0, msg.getData().length);
+        Assert.assertFalse(chunker.hasNext());
+    }
+
+    @Test
+    public void testAssembleSplitSequences() {
+        byte[] raw = TEXT.getBytes(StandardCharsets.UTF_8);
+        ClipboardAssembler assembler = new ClipboardAssembler(1024);
+
+        // Chunks of 1 byte: every multibyte sequence is split
+        String result = null;
+        for (int i = 0; i < raw.length; ++i) {
+            int flags = 0;
+            if (i == 0) {
+                flags |= ControlMessage.CLIPBOARD_CHUNK_FLAG_FIRST;
+            }
+            if (i == raw.length - 1) {
+                flags |= ControlMessage.CLIPBOARD_CHUNK_FLAG_LAST;
+            }
+            String text = assembler.append(flags, new byte[] {raw[i]});
+            if (i < raw.length - 1) {
+                Assert.assertNull(text);
+            } else {
+                result = text;
+            }
+        }
+        Assert.assertEquals(TEXT, result);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            builder.append(TEXT);
+        }
+        String text = builder.toString();
+
+        ClipboardChunker chunker = new ClipboardChunker(text, 100);
+        ClipboardAssembler assembler = new ClipboardAssembler(1 << 20);
+        String result = null;
+        while (chunker.hasNext()) {
+            DeviceMessage msg = chunker.next();
+            // The FIRST and LAST flags have the same values in both directions
+            result = assembler.append(msg.getFlags(), msg.getData());
+        }
+        Assert.assertEquals(text, result);
+    }
+
+    @Test
+    public void testAssembleOverflow() {
+        ClipboardAssembler assembler = new ClipboardAssembler(8);
+        Assert.assertNull(assembler.append(ControlMessage.CLIPBOARD_CHUNK_FLAG_FIRST, new byte[] {'a', 'b', 'c', 'd', 'e'}));
+        Assert.assertNull(assembler.append(0, new byte[] {'f', 'g', 'h', 'i'}));
+        Assert.assertTrue(assembler.hasOverflowed());
+        Assert.assertNull(assembler.append(ControlMessage.CLIPBOARD_CHUNK_FLAG_LAST, new byte[] {'j'}));
+        Assert.assertTrue(assembler.hasOverflowed());
+
+        // A new transfer is accepted
+        String text = assembler.append(ControlMessage.CLIPBOARD_CHUNK_FLAG_FIRST | ControlMessage.CLIPBOARD_CHUNK_FLAG_LAST, new byte[] {'o', 'k'});
+        Assert.assertEquals("ok", text);
+        Assert.assertFalse(assembler.hasOverflowed());
+    }
+
+    @Test
+    public void testIgnoreChunkWithoutFirst() {
+        ClipboardAssembler assembler = new ClipboardAssembler(8);
+        Assert.assertNull(assembler.append(ControlMessage.CLIPBOARD_CHUNK_FLAG_LAST, new byte[] {'a'}));
+        Assert.assertFalse(assembler.hasOverflowed());
+    }
+}
@@ -0,0 +1,207 @@
+package com.genymobile.scrcpy.control;
+
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ControlMessageQueueTest {
+
+    private static final long POINTER_ID = 42;
+
+    /**
+     * Copy of the relevant fields of a handled message (the slot is reused after release).
+     */
+    private static final class Injected {
+        private final int type;
+        private final int action;
+        private final int x;
+        private final float vScroll;
+
+        Injected(ControlMessage msg) {
+            type = msg.getType();
+            action = msg.getAction();
+            x = msg.getX();
+            vScroll = msg.getVScroll();
+        }
+    }
+
+    /**
+     * Fake injector, handling the messages from the queue with a configurable latency.
+     */
+    private static final class FakeInjector extends Thread {
+        private final ControlMessageQueue queue;
+        private final long latencyMs;
+        private final List<Injected> injected = new ArrayList<>();
+
+        FakeInjector(ControlMessageQueue queue, long latencyMs) {
+            this.queue = queue;
+            this.latencyMs = latencyMs;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ControlMessage msg;
+                while ((msg = queue.take()) != null) {
+                    Thread.sleep(latencyMs);
+                    injected.add(new Injected(msg));
+                    queue.release();
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }
+    }
+
+    private static void pushKey(ControlMessageQueue queue, int action) throws InterruptedException {
+        ControlMessage msg = queue.claim();
+        msg.setInjectKeycode(action, KeyEvent.KEYCODE_A, 0, 0);
+        queue.publish();
+    }
+
+    private static void pushTouch(ControlMessageQueue queue, int action, int x) throws InterruptedException {
+        ControlMessage msg = queue.claim();
+        msg.setInjectTouchEvent(action, POINTER_ID, x, 0, 1080, 1920, 1f, 0, 0);
+        queue.publish();
+    }
+
+    private static void pushScroll(ControlMessageQueue queue, float vScroll) throws InterruptedException {
+        ControlMessage msg = queue.claim();
+        msg.setInjectScrollEvent(0, 0, 1080, 1920, 0, vScroll, 0);
+        queue.publish();
+    }
+
+    private static void pushGesture(ControlMessageQueue queue, int moves, int scrolls) throws InterruptedException {
+        pushKey(queue, KeyEvent.ACTION_DOWN);
+        pushTouch(queue, MotionEvent.ACTION_DOWN, 0);
+        for (int i = 1; i <= moves; ++i) {
+            pushTouch(queue, MotionEvent.ACTION_MOVE, i);
+        }
+        pushTouch(queue, MotionEvent.ACTION_UP, moves);
+        for (int i = 0; i < scrolls; ++i) {
+            pushScroll(queue, 1);
+        }
+        pushKey(queue, KeyEvent.ACTION_UP);
+    }
+
+    @Test
+    public void testCoalesceQueuedMessages() throws InterruptedException {
+        ControlMessageQueue queue = new ControlMessageQueue(64);
+        pushGesture(queue, 20, 10);
+        queue.close();
+
+        Assert.assertEquals(34, queue.getQueueDepth());
+        Assert.assertEquals(34, queue.getMaxQueueDepth());
+
+        int[] expectedTypes = {
+                ControlMessage.TYPE_INJECT_KEYCODE,
+                ControlMessage.TYPE_INJECT_TOUCH_EVENT,
+                ControlMessage.TYPE_INJECT_TOUCH_EVENT,
+                ControlMessage.TYPE_INJECT_TOUCH_EVENT,
+                ControlMessage.TYPE_INJECT_SCROLL_EVENT,
+                ControlMessage.TYPE_INJECT_KEYCODE,
+        };
+        int[] expectedActions = {
+                KeyEvent.ACTION_DOWN,
+                MotionEvent.ACTION_DOWN,
+                MotionEvent.ACTION_MOVE,
+                MotionEvent.ACTION_UP,
+                0,
+                KeyEvent.ACTION_UP,
+        };
+
+        for (int i = 0; i < expectedTypes.length; ++i) {
+            ControlMessage msg = queue.take();
+            Assert.assertNotNull(msg);
+            Assert.assertEquals(expectedTypes[i], msg.getType());
+            if (msg.getType() == ControlMessage.TYPE_INJECT_SCROLL_EVENT) {
+                // All the deltas are summed
+                Assert.assertEquals(10f, msg.getVScroll(), 0f);
+            } else {
+                Assert.assertEquals(expectedActions[i], msg.getAction());
+            }
+            if (msg.getType() == ControlMessage.TYPE_INJECT_TOUCH_EVENT && msg.getAction() == MotionEvent.ACTION_MOVE) {
+                // Only the last move is kept
+                Assert.assertEquals(20, msg.getX());
+            }
+            queue.release();
+        }
+
+        Assert.assertNull(queue.take());
+        Assert.assertEquals(19 + 9, queue.getCoalescedCount());
+        Assert.assertEquals(0, queue.getQueueDepth());
+    }
+
+    @Test
+    public void testDoNotCoalesceOtherPointers() throws InterruptedException {
+        ControlMessageQueue queue = new ControlMessageQueue(8);
+        pushTouch(queue, MotionEvent.ACTION_MOVE, 1);
+        ControlMessage msg = queue.claim();
+        msg.setInjectTouchEvent(MotionEvent.ACTION_MOVE, POINTER_ID + 1, 2, 0, 1080, 1920, 1f, 0, 0);
+        queue.publish();
+        pushTouch(queue, MotionEvent.ACTION_MOVE, 3);
+        queue.close();
+
+        for (int x = 1; x <= 3; ++x) {
+            msg = queue.take();
+            Assert.assertEquals(x, msg.getX());
+            queue.release();
+        }
+        Assert.assertNull(queue.take());
+        Assert.assertEquals(0, queue.getCoalescedCount());
+    }
+
+    @Test
+    public void testSlowInjector() throws InterruptedException {
+        // Small capacity: the producer must wait for the injector
+        ControlMessageQueue queue = new ControlMessageQueue(4);
+        FakeInjector injector = new FakeInjector(queue, 2);
+        injector.start();
+
+        int moves = 100;
+        int scrolls = 50;
+        pushGesture(queue, moves, scrolls);
+        queue.close();
+        injector.join();
+
+        List<Injected> injected = injector.injected;
+        Assert.assertTrue(injected.size() < moves + scrolls + 4);
+        Assert.assertEquals(moves + scrolls + 4 - injected.size(), queue.getCoalescedCount());
+        Assert.assertTrue(queue.getMaxQueueDepth() <= 4);
+
+        // Strict ordering of keys, downs and ups
+        Assert.assertEquals(ControlMessage.TYPE_INJECT_KEYCODE, injected.get(0).type);
+        Assert.assertEquals(KeyEvent.ACTION_DOWN, injected.get(0).action);
+        Assert.assertEquals(MotionEvent.ACTION_DOWN, injected.get(1).action);
+        Injected last = injected.get(injected.size() - 1);
+        Assert.assertEquals(ControlMessage.TYPE_INJECT_KEYCODE, last.type);
+        Assert.assertEquals(KeyEvent.ACTION_UP, last.action);
+
+        int lastX = 0;
+        float totalScroll = 0;
+        boolean up = false;
+        for (int i = 2; i < injected.size() - 1; ++i) {
+            Injected event = injected.get(i);
+            if (event.type == ControlMessage.TYPE_INJECT_TOUCH_EVENT) {
+                Assert.assertFalse(up);
+                Assert.assertTrue(event.x >= lastX);
+                lastX = event.x;
+                up = event.action == MotionEvent.ACTION_UP;
+            } else {
+                Assert.assertEquals(ControlMessage.TYPE_INJECT_SCROLL_EVENT, event.type);
+                // scroll events are received after the touch up
+                Assert.assertTrue(up);
+                totalScroll += event.vScroll;
+            }
+        }
+        Assert.assertTrue(up);
+        Assert.assertEquals(moves, lastX);
+        // No scroll delta is lost
+        Assert.assertEquals(scrolls, totalScroll, 0f);
+    }
+}
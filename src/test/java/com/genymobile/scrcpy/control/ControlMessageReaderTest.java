@@ -12,6 +12,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.zip.Deflater;
 
 public class ControlMessageReaderTest {
 
@@ -115,6 +116,73 @@ public class ControlMessageReaderTest {
         Assert.assertEquals(-1, bis.read()); // EOS
     }
 
+    @Test
+    public void testParseTouchBatch() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_INJECT_TOUCH_BATCH);
+        dos.writeByte(MotionEvent.ACTION_DOWN);
+        dos.writeByte(1); // action index
+        dos.writeShort(1080);
+        dos.writeShort(1920);
+        dos.writeByte(2); // pointer count
+        dos.writeLong(-42); // pointerId
+        dos.writeInt(100);
+        dos.writeInt(200);
+        dos.writeShort(0xffff); // pressure
+        dos.writeLong(7); // pointerId
+        dos.writeInt(300);
+        dos.writeInt(400);
+        dos.writeShort(0x8000); // pressure
+
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage event = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_INJECT_TOUCH_BATCH, event.getType());
+        Assert.assertEquals(MotionEvent.ACTION_DOWN, event.getAction());
+        Assert.assertEquals(1, event.getActionIndex());
+        Assert.assertEquals(1080, event.getScreenWidth());
+        Assert.assertEquals(1920, event.getScreenHeight());
+        Assert.assertEquals(2, event.getBatchPointerCount());
+        Assert.assertEquals(-42, event.getBatchPointerId(0));
+        Assert.assertEquals(100, event.getBatchX(0));
+        Assert.assertEquals(200, event.getBatchY(0));
+        Assert.assertEquals(1f, event.getBatchPressure(0), 0f);
+        Assert.assertEquals(7, event.getBatchPointerId(1));
+        Assert.assertEquals(300, event.getBatchX(1));
+        Assert.assertEquals(400, event.getBatchY(1));
+        Assert.assertEquals(0.5f, event.getBatchPressure(1), 0f);
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
+    @Test
+    public void testParseInvalidTouchBatch() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_INJECT_TOUCH_BATCH);
+        dos.writeByte(MotionEvent.ACTION_MOVE);
+        dos.writeByte(0); // action index
+        dos.writeShort(1080);
+        dos.writeShort(1920);
+        dos.writeByte(PointersState.MAX_SUPPORTED_POINTERS + 1); // pointer count
+
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        try {
+            reader.read();
+            Assert.fail("Too many pointers must be rejected");
+        } catch (ControlProtocolException e) {
+            // expected
+        }
+    }
+
     @Test
     public void testParseScrollEvent() throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -282,6 +350,110 @@ public class ControlMessageReaderTest {
         Assert.assertEquals(-1, bis.read()); // EOS
     }
 
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] buffer = new byte[raw.length + 64];
+        int len = deflater.deflate(buffer);
+        Assert.assertTrue(deflater.finished());
+        return Arrays.copyOf(buffer, len);
+    }
+
+    @Test
+    public void testParseCompressedSetClipboardEvent() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            builder.append("testé ");
+        }
+        String text = builder.toString();
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = deflate(raw);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        for (int i = 0; i < 2; ++i) {
+            // twice, to check that the inflater is correctly reused
+            dos.writeByte(ControlMessage.TYPE_SET_CLIPBOARD);
+            dos.writeLong(i); // sequence
+            dos.writeByte(0); // paste
+            dos.writeInt(ControlMessageReader.CLIPBOARD_COMPRESSED_FLAG | (4 + compressed.length));
+            dos.writeInt(raw.length);
+            dos.write(compressed);
+        }
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        for (int i = 0; i < 2; ++i) {
+            ControlMessage event = reader.read();
+            Assert.assertEquals(ControlMessage.TYPE_SET_CLIPBOARD, event.getType());
+            Assert.assertEquals(i, event.getSequence());
+            Assert.assertEquals(text, event.getText());
+            Assert.assertFalse(event.getPaste());
+        }
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
+    @Test(expected = ControlProtocolException.class)
+    public void testParseInvalidCompressedSetClipboardEvent() throws IOException {
+        byte[] raw = "testé testé testé".getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = deflate(raw);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_SET_CLIPBOARD);
+        dos.writeLong(0); // sequence
+        dos.writeByte(0); // paste
+        dos.writeInt(ControlMessageReader.CLIPBOARD_COMPRESSED_FLAG | (4 + compressed.length));
+        dos.writeInt(raw.length + 1); // wrong uncompressed length
+        dos.write(compressed);
+        byte[] packet = bos.toByteArray();
+
+        ControlMessageReader reader = new ControlMessageReader(new ByteArrayInputStream(packet));
+        reader.read();
+    }
+
+    @Test
+    public void testParseSetClipboardChunk() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_SET_CLIPBOARD_CHUNK);
+        dos.writeLong(0x0102030405060708L); // sequence
+        dos.writeByte(ControlMessage.CLIPBOARD_CHUNK_FLAG_LAST | ControlMessage.CLIPBOARD_CHUNK_FLAG_PASTE);
+        byte[] data = {(byte) 0xA9, 't'}; // may start in the middle of a UTF-8 sequence
+        dos.writeInt(data.length);
+        dos.write(data);
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage event = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_SET_CLIPBOARD_CHUNK, event.getType());
+        Assert.assertEquals(0x0102030405060708L, event.getSequence());
+        Assert.assertEquals(ControlMessage.CLIPBOARD_CHUNK_FLAG_LAST | ControlMessage.CLIPBOARD_CHUNK_FLAG_PASTE, event.getChunkFlags());
+        Assert.assertArrayEquals(data, event.getData());
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
+    @Test(expected = ControlProtocolException.class)
+    public void testParseTooBigClipboardChunk() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_SET_CLIPBOARD_CHUNK);
+        dos.writeLong(0); // sequence
+        dos.writeByte(ControlMessage.CLIPBOARD_CHUNK_FLAG_FIRST);
+        dos.writeInt(ControlMessageReader.CLIPBOARD_CHUNK_MAX_SIZE + 1);
+        byte[] packet = bos.toByteArray();
+
+        ControlMessageReader reader = new ControlMessageReader(new ByteArrayInputStream(packet));
+        reader.read();
+    }
+
     @Test
     public void testParseSetDisplayPower() throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -300,6 +472,22 @@ public class ControlMessageReaderTest {
         Assert.assertEquals(-1, bis.read()); // EOS
     }
 
+    @Test
+    public void testParseGetInputStats() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_GET_INPUT_STATS);
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage event = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_GET_INPUT_STATS, event.getType());
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
     @Test
     public void testParseRotateDevice() throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -367,6 +555,36 @@ public class ControlMessageReaderTest {
         Assert.assertEquals(-1, bis.read()); // EOS
     }
 
+    @Test
+    public void testParseUhidInputBatch() throws IOException {
+        byte[][] reports = {{1, 2, 3}, {}, {4, 5, 6, 7, 8}};
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_UHID_INPUT_BATCH);
+        dos.writeShort(42); // id
+        dos.writeByte(reports.length);
+        for (byte[] report : reports) {
+            dos.writeShort(report.length); // size
+            dos.write(report);
+        }
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage event = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_UHID_INPUT_BATCH, event.getType());
+        Assert.assertEquals(42, event.getId());
+        Assert.assertEquals(reports.length, event.getUhidReportCount());
+        for (int i = 0; i < reports.length; ++i) {
+            int offset = event.getUhidReportOffsets()[i];
+            int size = event.getUhidReportSizes()[i];
+            Assert.assertArrayEquals(reports[i], Arrays.copyOfRange(event.getUhidReports(), offset, offset + size));
+        }
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
     @Test
     public void testParseUhidDestroy() throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -422,6 +640,27 @@ public class ControlMessageReaderTest {
         Assert.assertEquals(-1, bis.read()); // EOS
     }
 
+    @Test
+    public void testParseDumpReplay() throws IOException {
+        byte[] path = "/data/local/tmp/bug.bin".getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_DUMP_REPLAY);
+        dos.writeShort(path.length);
+        dos.write(path);
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage event = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_DUMP_REPLAY, event.getType());
+        Assert.assertEquals("/data/local/tmp/bug.bin", event.getText());
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
     @Test
     public void testMultiEvents() throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -461,6 +700,65 @@ public class ControlMessageReaderTest {
         Assert.assertEquals(-1, bis.read()); // EOS
     }
 
+    @Test
+    public void testReuseMessage() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+
+        dos.writeByte(ControlMessage.TYPE_INJECT_TOUCH_EVENT);
+        dos.writeByte(MotionEvent.ACTION_DOWN);
+        dos.writeLong(-42); // pointerId
+        dos.writeInt(100);
+        dos.writeInt(200);
+        dos.writeShort(1080);
+        dos.writeShort(1920);
+        dos.writeShort(0xffff); // pressure
+        dos.writeInt(MotionEvent.BUTTON_PRIMARY);
+        dos.writeInt(MotionEvent.BUTTON_PRIMARY);
+
+        dos.writeByte(ControlMessage.TYPE_INJECT_SCROLL_EVENT);
+        dos.writeInt(260);
+        dos.writeInt(1026);
+        dos.writeShort(1080);
+        dos.writeShort(1920);
+        dos.writeShort(0); // 0.0f encoded as i16
+        dos.writeShort(0x8000); // -16.0f encoded as i16 (the range is [-16, 16])
+        dos.writeInt(1);
+
+        dos.writeByte(ControlMessage.TYPE_EXPAND_NOTIFICATION_PANEL);
+
+        byte[] packet = bos.toByteArray();
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage msg = new ControlMessage();
+
+        Assert.assertSame(msg, reader.read(msg));
+        Assert.assertEquals(ControlMessage.TYPE_INJECT_TOUCH_EVENT, msg.getType());
+        Assert.assertEquals(MotionEvent.ACTION_DOWN, msg.getAction());
+        Assert.assertEquals(-42, msg.getPointerId());
+        Assert.assertEquals(100, msg.getX());
+        Assert.assertEquals(200, msg.getY());
+        Assert.assertEquals(1080, msg.getScreenWidth());
+        Assert.assertEquals(1920, msg.getScreenHeight());
+        Assert.assertEquals(1f, msg.getPressure(), 0f);
+
+        Assert.assertSame(msg, reader.read(msg));
+        Assert.assertEquals(ControlMessage.TYPE_INJECT_SCROLL_EVENT, msg.getType());
+        Assert.assertEquals(260, msg.getPosition().getPoint().getX());
+        Assert.assertEquals(1026, msg.getPosition().getPoint().getY());
+        Assert.assertEquals(1080, msg.getPosition().getScreenSize().getWidth());
+        Assert.assertEquals(1920, msg.getPosition().getScreenSize().getHeight());
+        Assert.assertEquals(0f, msg.getHScroll(), 0f);
+        Assert.assertEquals(-16f, msg.getVScroll(), 0f);
+        Assert.assertEquals(1, msg.getButtons());
+
+        Assert.assertSame(msg, reader.read(msg));
+        Assert.assertEquals(ControlMessage.TYPE_EXPAND_NOTIFICATION_PANEL, msg.getType());
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
     @Test
     public void testPartialEvents() throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -0,0 +1,152 @@
+package com.genymobile.scrcpy.control;
+
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+public class ControlStreamReplayerTest {
+
+    /**
+     * Input stream returning at most {@code maxRead} bytes per read, so that the messages are split across reads.
+     */
+    private static final class FragmentedInputStream extends ByteArrayInputStream {
+        private final int maxRead;
+
+        FragmentedInputStream(byte[] data, int maxRead) {
+            super(data);
+            this.maxRead = maxRead;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, maxRead));
+        }
+    }
+
+    private static byte[] createControlStream(String clipboardText) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+
+        dos.writeByte(ControlMessage.TYPE_INJECT_KEYCODE);
+        dos.writeByte(KeyEvent.ACTION_DOWN);
+        dos.writeInt(KeyEvent.KEYCODE_ENTER);
+        dos.writeInt(0); // repeat
+        dos.writeInt(0); // meta state
+
+        for (int i = 0; i < 10; ++i) {
+            dos.writeByte(ControlMessage.TYPE_INJECT_TOUCH_EVENT);
+            dos.writeByte(MotionEvent.ACTION_MOVE);
+            dos.writeLong(-1); // pointer id
+            dos.writeInt(i); // x
+            dos.writeInt(0); // y
+            dos.writeShort(1080);
+            dos.writeShort(1920);
+            dos.writeShort(0xffff); // pressure
+            dos.writeInt(0); // action button
+            dos.writeInt(0); // buttons
+        }
+
+        byte[] text = clipboardText.getBytes(StandardCharsets.UTF_8);
+        dos.writeByte(ControlMessage.TYPE_SET_CLIPBOARD);
+        dos.writeLong(42); // sequence
+        dos.writeByte(0); // paste
+        dos.writeInt(text.length);
+        dos.write(text);
+
+        dos.writeByte(ControlMessage.TYPE_INJECT_KEYCODE);
+        dos.writeByte(KeyEvent.ACTION_UP);
+        dos.writeInt(KeyEvent.KEYCODE_ENTER);
+        dos.writeInt(0); // repeat
+        dos.writeInt(0); // meta state
+
+        return bos.toByteArray();
+    }
+
+    private static void assertMessages(ControlMessageReader reader, String clipboardText) throws IOException {
+        ControlMessage msg = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_INJECT_KEYCODE, msg.getType());
+        Assert.assertEquals(KeyEvent.ACTION_DOWN, msg.getAction());
+        for (int i = 0; i < 10; ++i) {
+            msg = reader.read();
+            Assert.assertEquals(ControlMessage.TYPE_INJECT_TOUCH_EVENT, msg.getType());
+            Assert.assertEquals(i, msg.getX());
+        }
+        msg = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_SET_CLIPBOARD, msg.getType());
+        Assert.assertEquals(clipboardText, msg.getText());
+        msg = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_INJECT_KEYCODE, msg.getType());
+        Assert.assertEquals(KeyEvent.ACTION_UP, msg.getAction());
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int r;
+        while ((r = input.read(buffer)) != -1) {
+            bos.write(buffer, 0, r);
+        }
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void testRecordAndReplay() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            builder.append("clipboard é ");
+        }
+        String clipboardText = builder.toString();
+        byte[] stream = createControlStream(clipboardText);
+
+        // Record, with messages split across reads (the reader buffer is compacted in the middle of messages)
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        ControlStreamRecorder recorder = new ControlStreamRecorder(log);
+        ControlMessageReader reader = new ControlMessageReader(new FragmentedInputStream(stream, 7));
+        reader.setRecorder(recorder);
+        assertMessages(reader, clipboardText);
+        recorder.close();
+        Assert.assertEquals(13, recorder.getRecordCount());
+
+        // The replayed stream is the original stream
+        ControlStreamReplayer replayer = new ControlStreamReplayer(new ByteArrayInputStream(log.toByteArray()), 0);
+        Assert.assertArrayEquals(stream, readAll(replayer));
+        Assert.assertEquals(13, replayer.getRecordCount());
+
+        // And it can be parsed again
+        replayer = new ControlStreamReplayer(new ByteArrayInputStream(log.toByteArray()), 0);
+        assertMessages(new ControlMessageReader(replayer), clipboardText);
+    }
+
+    @Test
+    public void testReplaySpeed() throws IOException {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        ControlStreamRecorder recorder = new ControlStreamRecorder(log);
+        byte[] msg = {ControlMessage.TYPE_RESET_VIDEO};
+        recorder.record(1_000_000, msg, 0, 1);
+        recorder.record(1_040_000, msg, 0, 1); // +40ms
+        recorder.record(1_100_000, msg, 0, 1); // +60ms
+        recorder.close();
+
+        long start = System.nanoTime();
+        ControlStreamReplayer replayer = new ControlStreamReplayer(new ByteArrayInputStream(log.toByteArray()), 2);
+        Assert.assertEquals(3, readAll(replayer).length);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // 100ms recorded, replayed at 2x
+        Assert.assertTrue("Replayed too fast: " + elapsedMs + "ms", elapsedMs >= 50);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidLog() throws IOException {
+        new ControlStreamReplayer(new ByteArrayInputStream(new byte[] {'a', 'b', 'c', 'd', 1}), 1);
+    }
+}
@@ -0,0 +1,146 @@
+package com.genymobile.scrcpy.control;
+
+import com.genymobile.scrcpy.util.Ln;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class DeviceMessageSenderTest {
+
+    /**
+     * In-memory output stream counting the flushes.
+     */
+    private static final class CountingOutputStream extends ByteArrayOutputStream {
+        private int flushCount;
+
+        @Override
+        public synchronized void flush() {
+            ++flushCount;
+            notifyAll();
+        }
+
+        synchronized void awaitFlushes(int count) throws InterruptedException {
+            while (flushCount < count) {
+                wait();
+            }
+        }
+
+        synchronized int getFlushCount() {
+            return flushCount;
+        }
+    }
+
+    private static ControlChannel createChannel(CountingOutputStream os) {
+        return new ControlChannel(new ByteArrayInputStream(new byte[0]), os);
+    }
+
+    private static byte[] serialize(DeviceMessage... messages) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos);
+        for (DeviceMessage msg : messages) {
+            writer.write(msg);
+        }
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void testPriorityAndCoalescing() throws Exception {
+        CountingOutputStream os = new CountingOutputStream();
+        DeviceMessageSender sender = new DeviceMessageSender(createChannel(os));
+
+        DeviceMessage clipboard1 = DeviceMessage.createClipboard("old");
+        DeviceMessage uhid1 = DeviceMessage.createUhidOutput(1, new byte[] {1});
+        DeviceMessage replayDumped = DeviceMessage.createReplayDumped("/data/local/tmp/replay");
+        DeviceMessage ack1 = DeviceMessage.createAckClipboard(0x42);
+        DeviceMessage clipboard2 = DeviceMessage.createClipboard("new");
+        DeviceMessage uhid2 = DeviceMessage.createUhidOutput(2, new byte[] {2, 3});
+        DeviceMessage ack2 = DeviceMessage.createAckClipboard(0x43);
+
+        // Queue all the messages before the sender thread starts, so that they are all ready at once
+        sender.send(clipboard1);
+        sender.send(uhid1);
+        sender.send(replayDumped);
+        sender.send(ack1);
+        sender.send(clipboard2);
+        sender.send(uhid2);
+        sender.send(ack2);
+
+        sender.start();
+        os.awaitFlushes(1);
+        sender.stop();
+        sender.join();
+
+        // Only one flush for all the messages
+        Assert.assertEquals(1, os.getFlushCount());
+
+        byte[] expected = serialize(ack1, ack2, uhid1, uhid2, clipboard2, replayDumped);
+        Assert.assertArrayEquals(expected, os.toByteArray());
+
+        Assert.assertEquals(1, sender.getDroppedCount(DeviceMessage.TYPE_CLIPBOARD));
+        Assert.assertEquals(0, sender.getDroppedCount(DeviceMessage.TYPE_ACK_CLIPBOARD));
+        Assert.assertEquals(0, sender.getDroppedCount(DeviceMessage.TYPE_UHID_OUTPUT));
+    }
+
+    @Test
+    public void testClipboardChunks() throws Exception {
+        CountingOutputStream os = new CountingOutputStream();
+        DeviceMessageSender sender = new DeviceMessageSender(createChannel(os), 4);
+
+        DeviceMessage ack = DeviceMessage.createAckClipboard(0x42);
+        sender.send(DeviceMessage.createClipboard("abcdéf"));
+        sender.send(ack);
+
+        sender.start();
+        // 7 bytes in chunks of 4 bytes: 2 chunks, one per flush
+        os.awaitFlushes(2);
+        sender.stop();
+        sender.join();
+
+        int first = DeviceMessage.CLIPBOARD_CHUNK_FLAG_FIRST;
+        int last = DeviceMessage.CLIPBOARD_CHUNK_FLAG_LAST;
+        // The ack is not delayed by the clipboard transfer
+        byte[] expected = serialize(ack, DeviceMessage.createClipboardChunk(first, new byte[] {'a', 'b', 'c', 'd'}),
+                DeviceMessage.createClipboardChunk(last, new byte[] {(byte) 0xC3, (byte) 0xA9, 'f'}));
+        Assert.assertArrayEquals(expected, os.toByteArray());
+    }
+
+    @Test
+    public void testDropOnOverflow() throws Exception {
+        CountingOutputStream os = new CountingOutputStream();
+        DeviceMessageSender sender = new DeviceMessageSender(createChannel(os));
+
+        DeviceMessage[] acks = new DeviceMessage[16];
+        for (int i = 0; i < acks.length; ++i) {
+            acks[i] = DeviceMessage.createAckClipboard(i + 1);
+            sender.send(acks[i]);
+        }
+
+        // The overflow is logged as a warning, which requires the Android logger
+        Ln.initLogLevel(Ln.Level.ERROR);
+        try {
+            sender.send(DeviceMessage.createAckClipboard(17));
+        } finally {
+            Ln.initLogLevel(Ln.Level.INFO);
+        }
+        Assert.assertEquals(1, sender.getDroppedCount(DeviceMessage.TYPE_ACK_CLIPBOARD));
+
+        // Other lanes are not impacted
+        DeviceMessage uhid = DeviceMessage.createUhidOutput(1, new byte[] {1});
+        sender.send(uhid);
+        Assert.assertEquals(0, sender.getDroppedCount(DeviceMessage.TYPE_UHID_OUTPUT));
+
+        sender.start();
+        os.awaitFlushes(1);
+        sender.stop();
+        sender.join();
+
+        DeviceMessage[] all = new DeviceMessage[acks.length + 1];
+        System.arraycopy(acks, 0, all, 0, acks.length);
+        all[acks.length] = uhid;
+        Assert.assertArrayEquals(serialize(all), os.toByteArray());
+    }
+}
@@ -1,12 +1,16 @@
 package com.genymobile.scrcpy.control;
 
+import com.genymobile.scrcpy.util.LatencyHistogram;
+
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.Inflater;
 
 public class DeviceMessageWriterTest {
 
@@ -32,6 +36,84 @@ public class DeviceMessageWriterTest {
         Assert.assertArrayEquals(expected, actual);
     }
 
+    @Test
+    public void testSerializeCompressedClipboard() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            builder.append("aéûoç ");
+        }
+        String text = builder.toString();
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos, 64);
+        writer.write(DeviceMessage.createClipboard(text));
+        // Below the threshold, not compressed
+        writer.write(DeviceMessage.createClipboard("short"));
+
+        ByteBuffer actual = ByteBuffer.wrap(bos.toByteArray());
+        Assert.assertEquals(DeviceMessage.TYPE_CLIPBOARD, actual.get());
+        int len = actual.getInt();
+        Assert.assertNotEquals(0, len & DeviceMessageWriter.CLIPBOARD_COMPRESSED_FLAG);
+        len &= ~DeviceMessageWriter.CLIPBOARD_COMPRESSED_FLAG;
+        Assert.assertTrue(len < raw.length);
+        Assert.assertEquals(raw.length, actual.getInt());
+
+        Inflater inflater = new Inflater();
+        inflater.setInput(actual.array(), actual.position(), len - 4);
+        byte[] inflated = new byte[raw.length];
+        Assert.assertEquals(raw.length, inflater.inflate(inflated));
+        Assert.assertTrue(inflater.finished());
+        Assert.assertArrayEquals(raw, inflated);
+        actual.position(actual.position() + len - 4);
+
+        Assert.assertEquals(DeviceMessage.TYPE_CLIPBOARD, actual.get());
+        Assert.assertEquals(5, actual.getInt());
+        actual.position(actual.position() + 5);
+        Assert.assertFalse(actual.hasRemaining());
+    }
+
+    @Test
+    public void testSerializeIncompressibleClipboard() throws IOException {
+        // Too short to be reduced by compression
+        String text = "abcdefghij";
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(DeviceMessage.TYPE_CLIPBOARD);
+        dos.writeInt(data.length);
+        dos.write(data);
+        byte[] expected = bos.toByteArray();
+
+        bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos, 1);
+        writer.write(DeviceMessage.createClipboard(text));
+
+        Assert.assertArrayEquals(expected, bos.toByteArray());
+    }
+
+    @Test
+    public void testSerializeClipboardChunk() throws IOException {
+        byte[] data = {'a', (byte) 0xC3};
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(DeviceMessage.TYPE_CLIPBOARD_CHUNK);
+        dos.writeByte(DeviceMessage.CLIPBOARD_CHUNK_FLAG_FIRST);
+        dos.writeInt(data.length);
+        dos.write(data);
+        byte[] expected = bos.toByteArray();
+
+        bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos);
+
+        DeviceMessage msg = DeviceMessage.createClipboardChunk(DeviceMessage.CLIPBOARD_CHUNK_FLAG_FIRST, data);
+        writer.write(msg);
+
+        byte[] actual = bos.toByteArray();
+
+        Assert.assertArrayEquals(expected, actual);
+    }
+
     @Test
     public void testSerializeAckSetClipboard() throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -72,4 +154,109 @@ public class DeviceMessageWriterTest {
 
         Assert.assertArrayEquals(expected, actual);
     }
+
+    @Test
+    public void testSerializeVideoStats() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(DeviceMessage.TYPE_VIDEO_STATS);
+        dos.writeLong(7); // dropped packets
+        dos.writeByte(3); // histograms count
+        // encode
+        dos.writeInt(60);
+        dos.writeInt(8000);
+        dos.writeInt(12000);
+        dos.writeInt(15000);
+        dos.writeInt(20000);
+        // queue
+        dos.writeInt(0);
+        dos.writeInt(0);
+        dos.writeInt(0);
+        dos.writeInt(0);
+        dos.writeInt(0);
+        // write (saturated)
+        dos.writeInt(1);
+        dos.writeInt(0xFFFFFFFF);
+        dos.writeInt(0xFFFFFFFF);
+        dos.writeInt(0xFFFFFFFF);
+        dos.writeInt(0xFFFFFFFF);
+        byte[] expected = bos.toByteArray();
+
+        bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos);
+
+        LatencyHistogram.Snapshot encode = new LatencyHistogram.Snapshot(60, 8000, 12000, 15000, 20000);
+        LatencyHistogram.Snapshot queue = new LatencyHistogram.Snapshot(0, 0, 0, 0, 0);
+        LatencyHistogram.Snapshot write = new LatencyHistogram.Snapshot(1, 1L << 33, 1L << 33, 1L << 33, 1L << 33);
+        DeviceMessage msg = DeviceMessage.createVideoStats(7, encode, queue, write);
+        writer.write(msg);
+
+        byte[] actual = bos.toByteArray();
+
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testSerializeInputStats() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(DeviceMessage.TYPE_INPUT_STATS);
+        dos.writeByte(2); // message types count
+        dos.writeByte(ControlMessage.TYPE_INJECT_KEYCODE);
+        dos.writeInt(4);
+        dos.writeInt(100);
+        dos.writeInt(200);
+        dos.writeInt(300);
+        dos.writeInt(400);
+        dos.writeByte(ControlMessage.TYPE_INJECT_TOUCH_EVENT);
+        dos.writeInt(1000);
+        dos.writeInt(500);
+        dos.writeInt(900);
+        dos.writeInt(1500);
+        dos.writeInt(3000);
+        // round-trip
+        dos.writeInt(10);
+        dos.writeInt(2000);
+        dos.writeInt(4000);
+        dos.writeInt(6000);
+        dos.writeInt(8000);
+        byte[] expected = bos.toByteArray();
+
+        bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos);
+
+        int[] types = {ControlMessage.TYPE_INJECT_KEYCODE, ControlMessage.TYPE_INJECT_TOUCH_EVENT};
+        LatencyHistogram.Snapshot[] latencies = {
+                new LatencyHistogram.Snapshot(4, 100, 200, 300, 400),
+                new LatencyHistogram.Snapshot(1000, 500, 900, 1500, 3000),
+        };
+        LatencyHistogram.Snapshot roundTrip = new LatencyHistogram.Snapshot(10, 2000, 4000, 6000, 8000);
+        DeviceMessage msg = DeviceMessage.createInputStats(types, latencies, roundTrip);
+        writer.write(msg);
+
+        byte[] actual = bos.toByteArray();
+
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testSerializeReplayDumped() throws IOException {
+        byte[] path = "/data/local/tmp/bug.bin".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(DeviceMessage.TYPE_REPLAY_DUMPED);
+        dos.writeShort(path.length);
+        dos.write(path);
+        byte[] expected = bos.toByteArray();
+
+        bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos);
+
+        DeviceMessage msg = DeviceMessage.createReplayDumped("/data/local/tmp/bug.bin");
+        writer.write(msg);
+
+        byte[] actual = bos.toByteArray();
+
+        Assert.assertArrayEquals(expected, actual);
+    }
 }
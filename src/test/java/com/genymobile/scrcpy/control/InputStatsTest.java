@@ -0,0 +1,66 @@
+package com.genymobile.scrcpy.control;
+
+import com.genymobile.scrcpy.util.LatencyHistogram;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InputStatsTest {
+
+    @Test
+    public void testSampleRoundTrip() {
+        InputStats stats = new InputStats(3);
+
+        // Only positional and key events are sampled
+        Assert.assertFalse(stats.sampleRoundTrip(ControlMessage.TYPE_INJECT_TEXT));
+        Assert.assertFalse(stats.sampleRoundTrip(ControlMessage.TYPE_SET_CLIPBOARD));
+
+        Assert.assertFalse(stats.sampleRoundTrip(ControlMessage.TYPE_INJECT_TOUCH_EVENT));
+        Assert.assertFalse(stats.sampleRoundTrip(ControlMessage.TYPE_INJECT_KEYCODE));
+        Assert.assertTrue(stats.sampleRoundTrip(ControlMessage.TYPE_INJECT_TOUCH_EVENT));
+        Assert.assertFalse(stats.sampleRoundTrip(ControlMessage.TYPE_INJECT_SCROLL_EVENT));
+        Assert.assertFalse(stats.sampleRoundTrip(ControlMessage.TYPE_INJECT_TOUCH_BATCH));
+        Assert.assertTrue(stats.sampleRoundTrip(ControlMessage.TYPE_INJECT_TOUCH_EVENT));
+    }
+
+    @Test
+    public void testSamplingDisabled() {
+        InputStats stats = new InputStats(0);
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertFalse(stats.sampleRoundTrip(ControlMessage.TYPE_INJECT_TOUCH_EVENT));
+        }
+    }
+
+    @Test
+    public void testCreateMessageAndReset() {
+        InputStats stats = new InputStats(0);
+        stats.recordInjection(ControlMessage.TYPE_INJECT_TOUCH_EVENT, 500);
+        stats.recordInjection(ControlMessage.TYPE_INJECT_TOUCH_EVENT, 700);
+        stats.recordInjection(ControlMessage.TYPE_INJECT_KEYCODE, 20);
+        // Not an injection, ignored
+        stats.recordInjection(ControlMessage.TYPE_SET_CLIPBOARD, 20);
+        stats.recordRoundTrip(3000);
+
+        Assert.assertNull(stats.getInjectLatency(ControlMessage.TYPE_SET_CLIPBOARD));
+        Assert.assertEquals(2, stats.getInjectLatency(ControlMessage.TYPE_INJECT_TOUCH_EVENT).snapshot().getCount());
+
+        DeviceMessage msg = stats.createMessageAndReset();
+        Assert.assertEquals(DeviceMessage.TYPE_INPUT_STATS, msg.getType());
+
+        // Only the injected message types are reported
+        int[] types = msg.getMessageTypes();
+        Assert.assertArrayEquals(new int[] {ControlMessage.TYPE_INJECT_KEYCODE, ControlMessage.TYPE_INJECT_TOUCH_EVENT}, types);
+        LatencyHistogram.Snapshot[] latencies = msg.getLatencies();
+        Assert.assertEquals(1, latencies[0].getCount());
+        Assert.assertEquals(20, latencies[0].getMax());
+        Assert.assertEquals(2, latencies[1].getCount());
+        Assert.assertEquals(700, latencies[1].getMax());
+        Assert.assertEquals(1, msg.getRoundTripLatency().getCount());
+        Assert.assertEquals(3000, msg.getRoundTripLatency().getMax());
+
+        // Reset
+        msg = stats.createMessageAndReset();
+        Assert.assertEquals(0, msg.getMessageTypes().length);
+        Assert.assertEquals(0, msg.getRoundTripLatency().getCount());
+    }
+}
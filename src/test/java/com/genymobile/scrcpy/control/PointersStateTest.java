@@ -0,0 +1,138 @@
+package com.genymobile.scrcpy.control;
+
+import android.view.MotionEvent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PointersStateTest {
+
+    private static MotionEvent.PointerProperties[] createProps(int count) {
+        MotionEvent.PointerProperties[] props = new MotionEvent.PointerProperties[count];
+        for (int i = 0; i < count; ++i) {
+            props[i] = new MotionEvent.PointerProperties();
+        }
+        return props;
+    }
+
+    private static MotionEvent.PointerCoords[] createCoords(int count) {
+        MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[count];
+        for (int i = 0; i < count; ++i) {
+            coords[i] = new MotionEvent.PointerCoords();
+        }
+        return coords;
+    }
+
+    @Test
+    public void testAddAndRemovePointers() {
+        PointersState state = new PointersState();
+        MotionEvent.PointerProperties[] props = createProps(PointersState.MAX_POINTERS);
+        MotionEvent.PointerCoords[] coords = createCoords(PointersState.MAX_POINTERS);
+
+        Assert.assertEquals(0, state.getPointerIndex(-1));
+        Assert.assertEquals(1, state.getPointerIndex(42));
+        Assert.assertEquals(2, state.getPointerIndex(7));
+        Assert.assertEquals(1, state.getPointerIndex(42));
+
+        state.setPoint(1, 100, 200);
+        state.setPressure(1, 0.5f);
+        state.setPoint(2, 300, 400);
+        state.setPressure(2, 1f);
+        state.setUp(0, true);
+
+        Assert.assertEquals(3, state.update(props, coords));
+        Assert.assertEquals(0, props[0].id);
+        Assert.assertEquals(1, props[1].id);
+        Assert.assertEquals(100, coords[1].x, 0f);
+        Assert.assertEquals(200, coords[1].y, 0f);
+        Assert.assertEquals(0.5f, coords[1].pressure, 0f);
+        Assert.assertEquals(2, props[2].id);
+        Assert.assertEquals(300, coords[2].x, 0f);
+        Assert.assertEquals(400, coords[2].y, 0f);
+
+        // The pointer which is up is removed, the order of the others is preserved
+        Assert.assertEquals(2, state.getCount());
+        Assert.assertEquals(42, state.getId(0));
+        Assert.assertEquals(1, state.getLocalId(0));
+        Assert.assertEquals(100, state.getX(0));
+        Assert.assertEquals(7, state.getId(1));
+        Assert.assertEquals(2, state.getLocalId(1));
+        Assert.assertEquals(300, state.getX(1));
+
+        // The lowest local id is reused
+        Assert.assertEquals(2, state.getPointerIndex(8));
+        Assert.assertEquals(0, state.getLocalId(2));
+        Assert.assertFalse(state.isUp(2));
+    }
+
+    @Test
+    public void testMaxPointers() {
+        PointersState state = new PointersState(3);
+        Assert.assertEquals(0, state.getPointerIndex(10));
+        Assert.assertEquals(1, state.getPointerIndex(11));
+        Assert.assertEquals(2, state.getPointerIndex(12));
+        Assert.assertEquals(-1, state.getPointerIndex(13));
+        // existing pointers are still found
+        Assert.assertEquals(2, state.getPointerIndex(12));
+    }
+
+    @Test
+    public void testContains() {
+        PointersState state = new PointersState(2);
+        Assert.assertFalse(state.contains(10));
+        Assert.assertEquals(0, state.getPointerIndex(10));
+        Assert.assertTrue(state.contains(10));
+
+        // contains() never adds the pointer
+        Assert.assertFalse(state.contains(11));
+        Assert.assertEquals(1, state.getCount());
+    }
+
+    @Test
+    public void testMoreThanDefaultMaxPointers() {
+        int max = PointersState.MAX_SUPPORTED_POINTERS;
+        PointersState state = new PointersState(max);
+        MotionEvent.PointerProperties[] props = createProps(max);
+        MotionEvent.PointerCoords[] coords = createCoords(max);
+
+        for (int i = 0; i < max; ++i) {
+            Assert.assertEquals(i, state.getPointerIndex(1000 + i));
+            // The InputDispatcher rejects pointer ids above 31
+            Assert.assertTrue(state.getLocalId(i) <= 31);
+            state.setPoint(i, i, i);
+        }
+        Assert.assertEquals(-1, state.getPointerIndex(2000));
+
+        // Release every other pointer
+        for (int i = 0; i < max; i += 2) {
+            state.setUp(i, true);
+        }
+        Assert.assertEquals(max, state.update(props, coords));
+        for (int i = 0; i < max; ++i) {
+            Assert.assertEquals(i, props[i].id);
+        }
+
+        Assert.assertEquals(max / 2, state.getCount());
+        for (int i = 0; i < max / 2; ++i) {
+            Assert.assertEquals(1001 + 2 * i, state.getId(i));
+            Assert.assertEquals(2 * i + 1, state.getX(i));
+        }
+
+        // The released local ids are reused, lowest first
+        Assert.assertEquals(max / 2, state.getPointerIndex(3000));
+        Assert.assertEquals(0, state.getLocalId(max / 2));
+        Assert.assertEquals(max / 2 + 1, state.getPointerIndex(3001));
+        Assert.assertEquals(2, state.getLocalId(max / 2 + 1));
+    }
+
+    @Test
+    public void testMaxSupportedPointers() {
+        // The InputDispatcher rejects motion events with more than 16 pointers
+        Assert.assertEquals(16, PointersState.MAX_SUPPORTED_POINTERS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyPointers() {
+        new PointersState(PointersState.MAX_SUPPORTED_POINTERS + 1);
+    }
+}
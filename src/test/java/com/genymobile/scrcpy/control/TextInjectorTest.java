@@ -0,0 +1,118 @@
+package com.genymobile.scrcpy.control;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TextInjectorTest {
+
+    /**
+     * Stub key map generating a "down" and an "up" event per character, for ASCII characters only.
+     */
+    private static final class StubKeyMap implements TextInjector.KeyMap<String> {
+        private int calls;
+
+        @Override
+        public String[] getEvents(char[] chars) {
+            ++calls;
+            List<String> events = new ArrayList<>();
+            for (char c : chars) {
+                if (c >= 128) {
+                    return null;
+                }
+                events.add("down:" + c);
+                events.add("up:" + c);
+            }
+            return events.toArray(new String[0]);
+        }
+    }
+
+    @Test
+    public void testInjectText() {
+        StubKeyMap keyMap = new StubKeyMap();
+        TextInjector<String> textInjector = new TextInjector<>(keyMap, 16);
+
+        List<String> injected = new ArrayList<>();
+        int count = textInjector.inject("abca", event -> injected.add(event));
+
+        Assert.assertEquals(4, count);
+        Assert.assertEquals(0, textInjector.getUnmappedChars().length());
+        String[] expected = {"down:a", "up:a", "down:b", "up:b", "down:c", "up:c", "down:a", "up:a"};
+        Assert.assertArrayEquals(expected, injected.toArray());
+
+        // 'a' is cached
+        Assert.assertEquals(3, keyMap.calls);
+        Assert.assertEquals(3, textInjector.getCacheSize());
+    }
+
+    @Test
+    public void testDecomposeAccentedChars() {
+        StubKeyMap keyMap = new StubKeyMap();
+        TextInjector<String> textInjector = new TextInjector<>(keyMap, 16);
+
+        List<String> injected = new ArrayList<>();
+        // 'é' is injected as a dead acute accent followed by 'e', which the stub key map cannot generate
+        int count = textInjector.inject("é€x", event -> injected.add(event));
+
+        Assert.assertEquals(1, count);
+        Assert.assertEquals("é€", textInjector.getUnmappedChars().toString());
+        Assert.assertArrayEquals(new String[] {"down:x", "up:x"}, injected.toArray());
+
+        // Unmapped characters are cached too
+        textInjector.inject("é€", event -> injected.add(event));
+        Assert.assertEquals(3, keyMap.calls);
+        Assert.assertEquals("é€", textInjector.getUnmappedChars().toString());
+    }
+
+    @Test
+    public void testLruEviction() {
+        StubKeyMap keyMap = new StubKeyMap();
+        TextInjector<String> textInjector = new TextInjector<>(keyMap, 2);
+
+        textInjector.inject("ab", event -> true);
+        textInjector.inject("a", event -> true); // 'a' is now the most recently used
+        textInjector.inject("c", event -> true); // evicts 'b'
+        Assert.assertEquals(3, keyMap.calls);
+        Assert.assertEquals(2, textInjector.getCacheSize());
+
+        textInjector.inject("a", event -> true);
+        Assert.assertEquals(3, keyMap.calls);
+        textInjector.inject("b", event -> true);
+        Assert.assertEquals(4, keyMap.calls);
+    }
+
+    @Test
+    public void testPacingAdaptsToInjectionResults() {
+        TextInjector<String> textInjector = new TextInjector<>(new StubKeyMap(), 16);
+
+        // Every other injection attempt fails
+        List<String> injected = new ArrayList<>();
+        boolean[] fail = {false};
+        int count = textInjector.inject("abc", event -> {
+            fail[0] = !fail[0];
+            if (fail[0]) {
+                return false;
+            }
+            injected.add(event);
+            return true;
+        });
+
+        // All the events are eventually injected, in order
+        Assert.assertEquals(3, count);
+        String[] expected = {"down:a", "up:a", "down:b", "up:b", "down:c", "up:c"};
+        Assert.assertArrayEquals(expected, injected.toArray());
+        Assert.assertEquals(6, textInjector.getRetries());
+
+        // Persistent failures: the character is not injected, and the pacing delay grows
+        count = textInjector.inject("d", event -> false);
+        Assert.assertEquals(0, count);
+        Assert.assertTrue(textInjector.getPacingDelayMs() > 1);
+
+        // Successful injections reduce the delay
+        count = textInjector.inject("efghijkl", event -> true);
+        Assert.assertEquals(8, count);
+        Assert.assertEquals(0, textInjector.getPacingDelayMs());
+    }
+}
@@ -0,0 +1,135 @@
+package com.genymobile.scrcpy.control;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+
+public class UhidInputBufferTest {
+
+    /**
+     * Write the requests to a pipe, with a single gathering write, and record the iovecs.
+     */
+    private static final class PipeOutput implements UhidInputBuffer.Output {
+        private final Pipe.SinkChannel sink;
+        private final List<Integer> writevCounts = new ArrayList<>();
+        private final List<Integer> iovSizes = new ArrayList<>();
+
+        PipeOutput(Pipe.SinkChannel sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void writev(ByteBuffer buffer, int[] offsets, int[] byteCounts, int count) throws IOException {
+            ByteBuffer[] iovs = new ByteBuffer[count];
+            for (int i = 0; i < count; ++i) {
+                ByteBuffer iov = buffer.duplicate();
+                iov.limit(offsets[i] + byteCounts[i]).position(offsets[i]);
+                iovs[i] = iov;
+                iovSizes.add(byteCounts[i]);
+            }
+            while (iovs[count - 1].hasRemaining()) {
+                sink.write(iovs);
+            }
+            writevCounts.add(count);
+        }
+    }
+
+    private static void assertRequest(ByteBuffer data, byte[] expectedReport) {
+        Assert.assertEquals(UhidInputBuffer.UHID_INPUT2, data.getInt());
+        Assert.assertEquals(expectedReport.length, data.getShort() & 0xFFFF);
+        byte[] report = new byte[expectedReport.length];
+        data.get(report);
+        Assert.assertArrayEquals(expectedReport, report);
+    }
+
+    private static ByteBuffer readAll(Pipe.SourceChannel source, int size) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+        while (data.hasRemaining()) {
+            if (source.read(data) == -1) {
+                break;
+            }
+        }
+        data.flip();
+        return data;
+    }
+
+    @Test
+    public void testBatchInSingleWrite() throws IOException {
+        Pipe pipe = Pipe.open();
+        PipeOutput output = new PipeOutput(pipe.sink());
+        UhidInputBuffer inputBuffer = new UhidInputBuffer(output);
+
+        byte[][] reports = {{1, 2, 3}, {4}, {5, 6, 7, 8}};
+        byte[] batch = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        inputBuffer.add(batch, 1, 3);
+        inputBuffer.add(batch, 4, 1);
+        inputBuffer.add(batch, 5, 4);
+        Assert.assertEquals(3, inputBuffer.getPendingCount());
+        inputBuffer.flush();
+        Assert.assertEquals(0, inputBuffer.getPendingCount());
+
+        // One vectored write, one iovec (one UHID event) per report
+        Assert.assertEquals(1, output.writevCounts.size());
+        Assert.assertEquals(3, (int) output.writevCounts.get(0));
+        Assert.assertEquals(6 + 3, (int) output.iovSizes.get(0));
+        Assert.assertEquals(6 + 1, (int) output.iovSizes.get(1));
+        Assert.assertEquals(6 + 4, (int) output.iovSizes.get(2));
+
+        ByteBuffer data = readAll(pipe.source(), 6 * 3 + 8);
+        for (byte[] report : reports) {
+            assertRequest(data, report);
+        }
+        Assert.assertFalse(data.hasRemaining());
+    }
+
+    @Test
+    public void testFlushWhenFull() throws Exception {
+        Pipe pipe = Pipe.open();
+        PipeOutput output = new PipeOutput(pipe.sink());
+        UhidInputBuffer inputBuffer = new UhidInputBuffer(output);
+
+        byte[] report = new byte[UhidInputBuffer.UHID_DATA_MAX];
+        int reportsPerWrite = UhidInputBuffer.CAPACITY / (6 + report.length);
+
+        // Read concurrently, the pipe capacity may be smaller than the data
+        int total = reportsPerWrite + 1;
+        ByteBuffer[] result = new ByteBuffer[1];
+        Thread reader = new Thread(() -> {
+            try {
+                result[0] = readAll(pipe.source(), total * (6 + report.length));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        reader.start();
+
+        for (int i = 0; i < total; ++i) {
+            report[0] = (byte) i;
+            inputBuffer.add(report, 0, report.length);
+        }
+        inputBuffer.flush();
+
+        Assert.assertEquals(2, output.writevCounts.size());
+        Assert.assertEquals(reportsPerWrite, (int) output.writevCounts.get(0));
+        Assert.assertEquals(1, (int) output.writevCounts.get(1));
+
+        reader.join();
+        ByteBuffer data = result[0];
+        for (int i = 0; i < total; ++i) {
+            report[0] = (byte) i;
+            assertRequest(data, report);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReportTooBig() throws IOException {
+        UhidInputBuffer inputBuffer = new UhidInputBuffer((buffer, offsets, byteCounts, count) -> Assert.fail());
+        inputBuffer.add(new byte[UhidInputBuffer.UHID_DATA_MAX + 1], 0, UhidInputBuffer.UHID_DATA_MAX + 1);
+    }
+}
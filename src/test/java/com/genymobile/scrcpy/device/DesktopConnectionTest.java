@@ -0,0 +1,88 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.util.Ln;
+import com.genymobile.scrcpy.video.VideoCodec;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+public class DesktopConnectionTest {
+
+    private SocketChannel consumer;
+    private SocketChannel videoChannel;
+
+    @Before
+    public void setUp() throws IOException {
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            consumer = SocketChannel.open(serverChannel.getLocalAddress());
+            videoChannel = serverChannel.accept();
+        }
+        // Removing a subscriber is logged, which requires the Android logger
+        Ln.initLogLevel(Ln.Level.ERROR);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Ln.initLogLevel(Ln.Level.INFO);
+        consumer.close();
+        videoChannel.close();
+    }
+
+    private static Streamer createDupStreamer(DesktopConnection connection) throws IOException {
+        // Same setup as the forward (dup) mode, without a scrcpy client
+        Streamer streamer = new Streamer(null, VideoCodec.H264, true, true);
+        streamer.enableSubscribers(0);
+        streamer.addSubscriber(connection.getVideoChannel(), 8, false);
+        streamer.writeVideoHeader(new Size(1920, 1080));
+        return streamer;
+    }
+
+    @Test(timeout = 10000)
+    public void testDupModeTeardownAfterConsumerDropped() throws Exception {
+        DesktopConnection connection = new DesktopConnection(null, videoChannel, null, null, 0);
+        Streamer streamer = createDupStreamer(connection);
+
+        consumer.close();
+
+        // Write until the subscriber is removed on error
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        for (int pts = 0; streamer.getSubscriberCount() != 0; ++pts) {
+            buffer.clear();
+            streamer.writePacket(buffer, pts, false, true);
+            Thread.sleep(1);
+        }
+        streamer.stopSubscribers();
+
+        // The connection owns the channel, the fanout must not close it
+        Assert.assertTrue(videoChannel.isOpen());
+
+        // Must not throw, otherwise the Server teardown would be aborted
+        connection.shutdown();
+        connection.close();
+        Assert.assertFalse(videoChannel.isOpen());
+    }
+
+    @Test
+    public void testDupModeTeardownOnStop() throws Exception {
+        DesktopConnection connection = new DesktopConnection(null, videoChannel, null, null, 0);
+        Streamer streamer = createDupStreamer(connection);
+
+        // Same order as the Server teardown: the processors are stopped before the connection is shut down
+        streamer.stopSubscribers();
+        Assert.assertTrue(videoChannel.isOpen());
+
+        connection.shutdown();
+        connection.close();
+        Assert.assertFalse(videoChannel.isOpen());
+    }
+}
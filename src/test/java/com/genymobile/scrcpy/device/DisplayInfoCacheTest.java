@@ -0,0 +1,101 @@
+package com.genymobile.scrcpy.device;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DisplayInfoCacheTest {
+
+    /**
+     * Fake display manager, returning a new display info (with a different rotation) on every call.
+     */
+    private static final class FakeLoader implements DisplayInfoCache.Loader {
+        private final AtomicInteger loadCount = new AtomicInteger();
+
+        @Override
+        public DisplayInfo load(int displayId) {
+            if (displayId == 42) {
+                // unknown display
+                return null;
+            }
+            int rotation = loadCount.getAndIncrement();
+            return new DisplayInfo(displayId, new Size(1920, 1080), rotation, 0, 0, 160, null);
+        }
+    }
+
+    @Test
+    public void testCacheTrackedDisplay() {
+        FakeLoader loader = new FakeLoader();
+        DisplayInfoCache cache = new DisplayInfoCache(loader);
+        cache.track(1);
+
+        DisplayInfo first = cache.get(1);
+        Assert.assertEquals(1, first.getDisplayId());
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertSame(first, cache.get(1));
+        }
+        Assert.assertEquals(1, loader.loadCount.get());
+        Assert.assertEquals(10, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+
+        cache.invalidate(1);
+        DisplayInfo second = cache.get(1);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(1, second.getRotation());
+        Assert.assertSame(second, cache.get(1));
+        Assert.assertEquals(2, loader.loadCount.get());
+    }
+
+    @Test
+    public void testDoNotCacheUntrackedDisplay() {
+        FakeLoader loader = new FakeLoader();
+        DisplayInfoCache cache = new DisplayInfoCache(loader);
+
+        cache.get(0);
+        cache.get(0);
+        Assert.assertEquals(2, loader.loadCount.get());
+        Assert.assertEquals(0, cache.getHitCount());
+
+        // Tracked twice, untracked once: still cached
+        cache.track(0);
+        cache.track(0);
+        cache.get(0);
+        cache.untrack(0);
+        cache.get(0);
+        Assert.assertEquals(3, loader.loadCount.get());
+
+        cache.untrack(0);
+        cache.get(0);
+        Assert.assertEquals(4, loader.loadCount.get());
+    }
+
+    @Test
+    public void testDoNotCacheUnknownDisplay() {
+        FakeLoader loader = new FakeLoader();
+        DisplayInfoCache cache = new DisplayInfoCache(loader);
+        cache.track(42);
+
+        Assert.assertNull(cache.get(42));
+        Assert.assertNull(cache.get(42));
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testInvalidateWhileLoading() {
+        DisplayInfoCache[] cacheRef = new DisplayInfoCache[1];
+        DisplayInfoCache cache = new DisplayInfoCache(displayId -> {
+            // The display changes while its (now stale) info is being retrieved
+            cacheRef[0].invalidate(displayId);
+            return new DisplayInfo(displayId, new Size(1920, 1080), 0, 0, 0, 160, null);
+        });
+        cacheRef[0] = cache;
+        cache.track(1);
+
+        cache.get(1);
+        cache.get(1);
+        // The stale value must not have been cached
+        Assert.assertEquals(0, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+}
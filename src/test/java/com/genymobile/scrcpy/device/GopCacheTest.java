@@ -0,0 +1,86 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.video.VideoCodec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+public class GopCacheTest {
+
+    private static void add(GopCache cache, int value, int size, boolean config, boolean keyFrame) {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) value);
+        }
+        buffer.flip();
+        cache.add(buffer, value, config, keyFrame);
+        // The source buffer must not be consumed
+        Assert.assertEquals(size, buffer.remaining());
+    }
+
+    @Test
+    public void testKeepCurrentGop() throws Exception {
+        GopCache cache = new GopCache(100);
+        add(cache, 0, 10, false, false); // ignored, no key frame yet
+        Assert.assertEquals(0, cache.getPacketCount());
+
+        add(cache, 1, 5, true, false);
+        add(cache, 2, 30, false, true);
+        add(cache, 3, 10, false, false);
+        Assert.assertEquals(2, cache.getPacketCount());
+        Assert.assertEquals(40, cache.getSize());
+
+        // A new key frame starts a new GOP
+        add(cache, 4, 20, false, true);
+        add(cache, 5, 10, false, false);
+        Assert.assertEquals(2, cache.getPacketCount());
+        Assert.assertEquals(30, cache.getSize());
+
+        GopCache.Snapshot snapshot = cache.snapshot();
+        Assert.assertTrue(snapshot.hasKeyFrame());
+        Assert.assertEquals(1, cache.getReplays());
+
+        // The snapshot is not impacted by the following packets
+        add(cache, 6, 10, false, false);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        snapshot.writeTo(new Streamer(Channels.newChannel(bos), VideoCodec.H264, false, true));
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        Assert.assertEquals(1L << 63, dis.readLong()); // config
+        Assert.assertEquals(5, dis.readInt());
+        dis.skipBytes(5);
+        Assert.assertEquals((1L << 62) | 4, dis.readLong()); // key frame
+        Assert.assertEquals(20, dis.readInt());
+        dis.skipBytes(20);
+        Assert.assertEquals(5, dis.readLong());
+        Assert.assertEquals(10, dis.readInt());
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertEquals(5, dis.read());
+        }
+        Assert.assertEquals(-1, dis.read()); // EOS
+    }
+
+    @Test
+    public void testOverflow() {
+        GopCache cache = new GopCache(50);
+        add(cache, 1, 30, false, true);
+        add(cache, 2, 30, false, false);
+        Assert.assertEquals(1, cache.getOverflows());
+        Assert.assertEquals(0, cache.getPacketCount());
+
+        // Not available until the next key frame
+        add(cache, 3, 10, false, false);
+        Assert.assertFalse(cache.snapshot().hasKeyFrame());
+
+        add(cache, 4, 10, false, true);
+        Assert.assertEquals(1, cache.getPacketCount());
+        Assert.assertTrue(cache.snapshot().hasKeyFrame());
+    }
+}
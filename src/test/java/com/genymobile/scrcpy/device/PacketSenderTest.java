@@ -0,0 +1,224 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.video.VideoCodec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.concurrent.CountDownLatch;
+
+public class PacketSenderTest {
+
+    private static final long PACKET_FLAG_CONFIG = 1L << 63;
+    private static final long PACKET_FLAG_KEY_FRAME = 1L << 62;
+
+    /**
+     * Output stream blocking all writes until it is unblocked.
+     */
+    private static class SlowOutputStream extends OutputStream {
+        private final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        private final CountDownLatch unblocked = new CountDownLatch(1);
+
+        void unblock() {
+            unblocked.countDown();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                unblocked.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            synchronized (bos) {
+                bos.write(b, off, len);
+            }
+        }
+
+        byte[] toByteArray() {
+            synchronized (bos) {
+                return bos.toByteArray();
+            }
+        }
+    }
+
+    private static ByteBuffer createPacket(int value, int size) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) value);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static boolean offer(PacketSender sender, int value, boolean config, boolean keyFrame) throws IOException {
+        ByteBuffer packet = createPacket(value, 100 + value);
+        boolean queued = sender.offer(packet, value, config, keyFrame);
+        // The packet must be consumed (copied or dropped) immediately, so that the codec buffer can be released
+        Assert.assertFalse(queued && packet.hasRemaining());
+        return queued;
+    }
+
+    @Test
+    public void testDropUntilKeyFrame() throws Exception {
+        SlowOutputStream os = new SlowOutputStream();
+        Streamer streamer = new Streamer(Channels.newChannel(os), VideoCodec.H264, false, true);
+
+        int[] syncFrameRequests = new int[1];
+        StreamStats stats = new StreamStats();
+        // capacity 8: the high-water mark is 6
+        PacketSender sender = new PacketSender(streamer, 8, () -> ++syncFrameRequests[0], stats);
+        sender.start();
+
+        Assert.assertTrue(offer(sender, 1, true, false));
+        Assert.assertTrue(offer(sender, 2, false, true));
+        Assert.assertTrue(offer(sender, 3, false, false));
+        Assert.assertTrue(offer(sender, 4, false, false));
+        Assert.assertTrue(offer(sender, 5, false, false));
+        Assert.assertTrue(offer(sender, 6, false, false));
+
+        // The high-water mark is reached, drop until the next key frame
+        Assert.assertFalse(offer(sender, 7, false, false));
+        Assert.assertFalse(offer(sender, 8, false, false));
+        Assert.assertEquals(1, syncFrameRequests[0]);
+
+        // Config packets are never dropped
+        Assert.assertTrue(offer(sender, 9, true, false));
+
+        // The key frame stops the drop
+        Assert.assertTrue(offer(sender, 10, false, true));
+
+        // The queue is full, even a key frame must be dropped
+        Assert.assertFalse(offer(sender, 11, false, true));
+        Assert.assertEquals(2, syncFrameRequests[0]);
+
+        Assert.assertEquals(8, sender.getQueueDepth());
+        Assert.assertEquals(8, sender.getMaxQueueDepth());
+        Assert.assertEquals(3, sender.getDroppedPackets());
+        Assert.assertEquals(3, stats.getDroppedPackets());
+
+        os.unblock();
+
+        // Wait for the queue to be flushed
+        while (sender.getQueueDepth() > 0) {
+            Thread.sleep(1);
+        }
+
+        // The next key frame is accepted
+        Assert.assertTrue(offer(sender, 12, false, true));
+        Assert.assertTrue(offer(sender, 13, false, false));
+
+        while (sender.getQueueDepth() > 0) {
+            Thread.sleep(1);
+        }
+
+        sender.stop();
+        sender.join();
+
+        // All the packets which are not config packets are measured
+        Assert.assertEquals(8, stats.getWriteLatency().snapshot().getCount());
+
+        int[] expected = {1, 2, 3, 4, 5, 6, 9, 10, 12, 13};
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(os.toByteArray()));
+        for (int value : expected) {
+            long ptsAndFlags = dis.readLong();
+            int size = dis.readInt();
+            Assert.assertEquals(100 + value, size);
+            boolean config = (ptsAndFlags & PACKET_FLAG_CONFIG) != 0;
+            if (!config) {
+                Assert.assertEquals(value, ptsAndFlags & ~PACKET_FLAG_KEY_FRAME);
+            }
+            byte[] data = new byte[size];
+            dis.readFully(data);
+            for (byte b : data) {
+                Assert.assertEquals(value, b);
+            }
+        }
+        Assert.assertEquals(-1, dis.read()); // EOS
+    }
+
+    @Test
+    public void testWriteErrorReported() throws Exception {
+        OutputStream os = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Closed");
+            }
+        };
+        Streamer streamer = new Streamer(Channels.newChannel(os), VideoCodec.H264, false, true);
+        PacketSender sender = new PacketSender(streamer, 4, null, null);
+        sender.start();
+
+        Assert.assertTrue(offer(sender, 1, false, true));
+        sender.join(); // the thread terminates on error
+
+        try {
+            offer(sender, 2, false, false);
+            Assert.fail("The write error must be reported to the producer");
+        } catch (IOException e) {
+            Assert.assertEquals("Closed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testConfigPacketKeptOnFullQueue() throws Exception {
+        SlowOutputStream os = new SlowOutputStream();
+        Streamer streamer = new Streamer(Channels.newChannel(os), VideoCodec.H264, false, true);
+
+        int[] syncFrameRequests = new int[1];
+        PacketSender sender = new PacketSender(streamer, 4, () -> ++syncFrameRequests[0], null);
+        sender.start();
+
+        Assert.assertTrue(offer(sender, 1, true, false));
+        Assert.assertTrue(offer(sender, 2, false, true));
+        Assert.assertTrue(offer(sender, 3, false, true));
+        Assert.assertTrue(offer(sender, 4, false, true));
+
+        // The queue is full, the config packets are kept aside without blocking (only the last one)
+        Assert.assertTrue(offer(sender, 5, true, false));
+        Assert.assertTrue(offer(sender, 6, true, false));
+        Assert.assertEquals(1, syncFrameRequests[0]);
+
+        // No room for both the config packet and the key frame
+        Assert.assertFalse(offer(sender, 7, false, true));
+        Assert.assertEquals(2, syncFrameRequests[0]);
+
+        os.unblock();
+        while (sender.getQueueDepth() > 0) {
+            Thread.sleep(1);
+        }
+
+        // The kept config packet is written just before the next key frame
+        Assert.assertTrue(offer(sender, 8, false, true));
+        while (sender.getQueueDepth() > 0) {
+            Thread.sleep(1);
+        }
+
+        sender.stop();
+        sender.join();
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(os.toByteArray()));
+        for (int value : new int[] {1, 2, 3, 4, 6, 8}) {
+            dis.readLong();
+            int size = dis.readInt();
+            Assert.assertEquals(100 + value, size);
+            byte[] data = new byte[size];
+            dis.readFully(data);
+            Assert.assertEquals(value, data[0]);
+        }
+        Assert.assertEquals(-1, dis.read()); // EOS
+    }
+}
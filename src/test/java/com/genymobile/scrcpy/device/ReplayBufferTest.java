@@ -0,0 +1,115 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.video.VideoCodec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+public class ReplayBufferTest {
+
+    private static final long PACKET_FLAG_CONFIG = 1L << 63;
+    private static final long PACKET_FLAG_KEY_FRAME = 1L << 62;
+
+    private static void write(ReplayBuffer replayBuffer, int value, int size, boolean config, boolean keyFrame) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) value);
+        }
+        buffer.flip();
+        replayBuffer.write(buffer, value, config, keyFrame);
+        // The source buffer must not be consumed
+        Assert.assertEquals(size, buffer.remaining());
+    }
+
+    private static DataInputStream dump(ReplayBuffer replayBuffer, int expectedPackets) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Assert.assertEquals(expectedPackets, replayBuffer.dump(Channels.newChannel(bos)));
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        Assert.assertEquals(VideoCodec.H264.getId(), dis.readInt());
+        Assert.assertEquals(1920, dis.readInt());
+        Assert.assertEquals(1080, dis.readInt());
+        return dis;
+    }
+
+    private static void readPacket(DataInputStream dis, int value, int size, boolean config, boolean keyFrame) throws IOException {
+        long ptsAndFlags = dis.readLong();
+        Assert.assertEquals(config, (ptsAndFlags & PACKET_FLAG_CONFIG) != 0);
+        Assert.assertEquals(keyFrame, (ptsAndFlags & PACKET_FLAG_KEY_FRAME) != 0);
+        if (!config) {
+            Assert.assertEquals(value, ptsAndFlags & ~PACKET_FLAG_KEY_FRAME);
+        }
+        Assert.assertEquals(size, dis.readInt());
+        for (int i = 0; i < size; ++i) {
+            Assert.assertEquals(value, dis.read());
+        }
+    }
+
+    @Test
+    public void testWrapAround() throws IOException {
+        File file = File.createTempFile("replay", ".buf");
+        // Each packet record takes 12 + 38 = 50 bytes, so the buffer holds 4 of them (with 30 unused bytes at the end)
+        try (ReplayBuffer replayBuffer = ReplayBuffer.create(file, 230)) {
+            replayBuffer.setVideoHeader(VideoCodec.H264, new Size(1920, 1080));
+
+            write(replayBuffer, 1, 5, true, false);
+            write(replayBuffer, 2, 38, false, true);
+            write(replayBuffer, 3, 38, false, false);
+            write(replayBuffer, 4, 38, false, false);
+            write(replayBuffer, 5, 38, false, true);
+
+            // Nothing overwritten yet, the dump starts on the first key frame
+            DataInputStream dis = dump(replayBuffer, 4);
+            readPacket(dis, 1, 5, true, false);
+            readPacket(dis, 2, 38, false, true);
+            readPacket(dis, 3, 38, false, false);
+            readPacket(dis, 4, 38, false, false);
+            readPacket(dis, 5, 38, false, true);
+            Assert.assertEquals(-1, dis.read()); // EOS
+
+            // Wrap around: packet 6 overwrites packet 2, so the dump starts on the key frame 5
+            write(replayBuffer, 6, 38, false, false);
+            write(replayBuffer, 7, 38, false, false);
+
+            dis = dump(replayBuffer, 3);
+            readPacket(dis, 1, 5, true, false);
+            readPacket(dis, 5, 38, false, true);
+            readPacket(dis, 6, 38, false, false);
+            readPacket(dis, 7, 38, false, false);
+            Assert.assertEquals(-1, dis.read()); // EOS
+
+            // Key frame 5 is overwritten, and there is no other key frame
+            write(replayBuffer, 8, 38, false, false);
+            write(replayBuffer, 9, 38, false, false);
+
+            dis = dump(replayBuffer, 0);
+            readPacket(dis, 1, 5, true, false);
+            Assert.assertEquals(-1, dis.read()); // EOS
+        }
+
+        Assert.assertFalse(file.exists());
+    }
+
+    @Test
+    public void testDumpToFile() throws IOException {
+        File file = File.createTempFile("replay", ".buf");
+        File target = File.createTempFile("replay", ".bin");
+        try (ReplayBuffer replayBuffer = ReplayBuffer.create(file, 1024)) {
+            replayBuffer.setVideoHeader(VideoCodec.H264, new Size(1920, 1080));
+            write(replayBuffer, 1, 10, false, true);
+            write(replayBuffer, 2, 20, false, false);
+
+            Assert.assertEquals(2, replayBuffer.dump(target));
+            Assert.assertEquals(12 + 12 + 10 + 12 + 20, target.length());
+        } finally {
+            target.delete();
+        }
+    }
+}
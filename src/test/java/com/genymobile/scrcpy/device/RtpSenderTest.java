@@ -0,0 +1,209 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.util.Ln;
+import com.genymobile.scrcpy.video.VideoCodec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.WritableByteChannel;
+
+public class RtpSenderTest {
+
+    private static final int MAX_PACKET_SIZE = 100;
+
+    /**
+     * Reassemble the Annex-B bitstream from RTP packets (with 4-byte start codes).
+     */
+    private static final class Depacketizer {
+        private final boolean hevc;
+        private final ByteArrayOutputStream bitstream = new ByteArrayOutputStream();
+        private int expectedSequence = -1;
+        private int markers;
+
+        Depacketizer(boolean hevc) {
+            this.hevc = hevc;
+        }
+
+        void push(ByteBuffer packet) {
+            Assert.assertTrue(packet.remaining() <= MAX_PACKET_SIZE);
+            Assert.assertEquals(0x80, packet.get() & 0xFF); // version 2
+            int markerAndType = packet.get() & 0xFF;
+            Assert.assertEquals(96, markerAndType & 0x7F);
+            if ((markerAndType & 0x80) != 0) {
+                ++markers;
+            }
+            int sequence = packet.getShort() & 0xFFFF;
+            if (expectedSequence != -1) {
+                Assert.assertEquals(expectedSequence, sequence);
+            }
+            expectedSequence = (sequence + 1) & 0xFFFF;
+            packet.getInt(); // timestamp
+            packet.getInt(); // ssrc
+
+            int b0 = packet.get(packet.position()) & 0xFF;
+            int type = hevc ? (b0 >> 1) & 0x3F : b0 & 0x1F;
+            int fuType = hevc ? 49 : 28;
+            if (type != fuType) {
+                writeStartCode();
+                writeRemaining(packet);
+                return;
+            }
+
+            if (hevc) {
+                int b1 = packet.get(packet.position() + 1) & 0xFF;
+                packet.position(packet.position() + 2);
+                int fuHeader = packet.get() & 0xFF;
+                if ((fuHeader & 0x80) != 0) {
+                    writeStartCode();
+                    bitstream.write((b0 & 0x81) | ((fuHeader & 0x3F) << 1));
+                    bitstream.write(b1);
+                }
+            } else {
+                packet.get();
+                int fuHeader = packet.get() & 0xFF;
+                if ((fuHeader & 0x80) != 0) {
+                    writeStartCode();
+                    bitstream.write((b0 & 0xE0) | (fuHeader & 0x1F));
+                }
+            }
+            writeRemaining(packet);
+        }
+
+        private void writeStartCode() {
+            bitstream.write(0);
+            bitstream.write(0);
+            bitstream.write(0);
+            bitstream.write(1);
+        }
+
+        private void writeRemaining(ByteBuffer packet) {
+            while (packet.hasRemaining()) {
+                bitstream.write(packet.get());
+            }
+        }
+    }
+
+    private static byte[] createNalUnit(int header0, int header1, int size) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write(0);
+        bos.write(0);
+        bos.write(0);
+        bos.write(1);
+        bos.write(header0);
+        if (header1 >= 0) {
+            bos.write(header1);
+        }
+        for (int i = 0; i < size; ++i) {
+            // Never 0, so that there is no start code in the payload
+            bos.write(i % 255 + 1);
+        }
+        return bos.toByteArray();
+    }
+
+    private static ByteBuffer concat(byte[]... nalUnits) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (byte[] nalUnit : nalUnits) {
+            bos.write(nalUnit, 0, nalUnit.length);
+        }
+        return ByteBuffer.wrap(bos.toByteArray());
+    }
+
+    private static void testLoopback(VideoCodec codec) throws IOException {
+        boolean hevc = codec == VideoCodec.H265;
+        try (DatagramChannel receiver = DatagramChannel.open(); DatagramChannel sender = DatagramChannel.open()) {
+            receiver.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            sender.connect(receiver.getLocalAddress());
+
+            RtpSender rtpSender = new RtpSender(sender, codec, MAX_PACKET_SIZE);
+
+            byte[] sps = hevc ? createNalUnit(33 << 1, 1, 20) : createNalUnit(0x67, -1, 20);
+            byte[] pps = hevc ? createNalUnit(34 << 1, 1, 5) : createNalUnit(0x68, -1, 5);
+            byte[] idr = hevc ? createNalUnit(19 << 1, 1, 500) : createNalUnit(0x65, -1, 500);
+            byte[] slice = hevc ? createNalUnit(1 << 1, 1, 50) : createNalUnit(0x41, -1, 50);
+
+            ByteBuffer config = concat(sps, pps);
+            rtpSender.send(config, 0, true, false);
+            Assert.assertEquals(0, config.position());
+
+            ByteBuffer keyFrame = concat(idr);
+            rtpSender.send(keyFrame, 0, false, true);
+            // The buffer position must not be changed
+            Assert.assertEquals(0, keyFrame.position());
+
+            rtpSender.send(concat(slice), 16_667, false, false);
+
+            Depacketizer depacketizer = new Depacketizer(hevc);
+            ByteBuffer packet = ByteBuffer.allocate(2048);
+            // The parameter sets are sent before the key frame
+            ByteBuffer expected = concat(sps, pps, idr, slice);
+            receiver.configureBlocking(true);
+            while (depacketizer.bitstream.size() < expected.remaining()) {
+                packet.clear();
+                receiver.receive(packet);
+                packet.flip();
+                depacketizer.push(packet);
+            }
+
+            Assert.assertArrayEquals(expected.array(), depacketizer.bitstream.toByteArray());
+            // One marker per access unit
+            Assert.assertEquals(2, depacketizer.markers);
+        }
+    }
+
+    @Test
+    public void testH264() throws IOException {
+        testLoopback(VideoCodec.H264);
+    }
+
+    @Test
+    public void testH265() throws IOException {
+        testLoopback(VideoCodec.H265);
+    }
+
+    @Test
+    public void testSendErrorDisablesRtp() {
+        int[] writes = new int[1];
+        WritableByteChannel channel = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                ++writes[0];
+                throw new IOException("Network is unreachable");
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+                // do nothing
+            }
+        };
+
+        RtpSender rtpSender = new RtpSender(channel, VideoCodec.H264, MAX_PACKET_SIZE);
+        byte[] idr = createNalUnit(0x65, -1, 500);
+
+        // Do not log the warning to android.util.Log
+        Ln.initLogLevel(Ln.Level.ERROR);
+        try {
+            // The error is not propagated to the main stream
+            rtpSender.send(concat(idr), 0, false, true);
+        } finally {
+            Ln.initLogLevel(Ln.Level.INFO);
+        }
+        Assert.assertTrue(rtpSender.isDisabled());
+        Assert.assertEquals(1, writes[0]);
+
+        // Nothing is sent anymore
+        rtpSender.send(concat(idr), 16_667, false, true);
+        Assert.assertEquals(1, writes[0]);
+    }
+}
@@ -0,0 +1,102 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.video.VideoCodec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+public class StreamServerTest {
+
+    private static final long PACKET_FLAG_CONFIG = 1L << 63;
+    private static final long PACKET_FLAG_KEY_FRAME = 1L << 62;
+
+    private static void writePacket(Streamer streamer, int value, boolean config, boolean keyFrame) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(10);
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) value);
+        }
+        buffer.flip();
+        streamer.writePacket(buffer, value, config, keyFrame);
+    }
+
+    private static void readPacket(DataInputStream dis, int expectedValue, boolean config, boolean keyFrame) throws IOException {
+        long ptsAndFlags = dis.readLong();
+        Assert.assertEquals(config, (ptsAndFlags & PACKET_FLAG_CONFIG) != 0);
+        Assert.assertEquals(keyFrame, (ptsAndFlags & PACKET_FLAG_KEY_FRAME) != 0);
+        Assert.assertEquals(10, dis.readInt());
+        byte[] data = new byte[10];
+        dis.readFully(data);
+        Assert.assertEquals(expectedValue, data[0]);
+    }
+
+    private static void waitForSubscribers(Streamer streamer, int count) throws InterruptedException {
+        while (streamer.getSubscriberCount() != count) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testAcceptConsumers() throws Exception {
+        Streamer streamer = new Streamer(null, VideoCodec.H264, true, true);
+        streamer.enableSubscribers(1024);
+
+        int[] syncFrameRequests = new int[1];
+        streamer.setSyncFrameRequester(() -> ++syncFrameRequests[0]);
+
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        StreamServer server = new StreamServer(streamer, address, 64 * 1024, 8);
+        int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+        boolean[] fatalError = new boolean[1];
+        server.start(error -> fatalError[0] = error);
+
+        streamer.writeVideoHeader(new Size(1920, 1080));
+        writePacket(streamer, 1, true, false);
+        writePacket(streamer, 2, false, true);
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            waitForSubscribers(streamer, 1);
+            writePacket(streamer, 3, false, false);
+
+            DataInputStream dis = new DataInputStream(socket.getInputStream());
+            Assert.assertEquals(VideoCodec.H264.getId(), dis.readInt());
+            Assert.assertEquals(1920, dis.readInt());
+            Assert.assertEquals(1080, dis.readInt());
+            // The GOP is replayed before the live packets
+            readPacket(dis, 1, true, false);
+            readPacket(dis, 2, false, true);
+            readPacket(dis, 3, false, false);
+        }
+
+        // The consumer is removed on the next write failure, but the stream continues
+        while (streamer.getSubscriberCount() > 0) {
+            writePacket(streamer, 4, false, false);
+            Thread.sleep(1);
+        }
+
+        // Another consumer may connect later
+        writePacket(streamer, 5, false, true);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            waitForSubscribers(streamer, 1);
+
+            DataInputStream dis = new DataInputStream(socket.getInputStream());
+            dis.skipBytes(12); // header
+            readPacket(dis, 1, true, false);
+            readPacket(dis, 5, false, true);
+        }
+
+        server.stop();
+        server.join();
+        streamer.stopSubscribers();
+
+        Assert.assertFalse(fatalError[0]);
+        // The GOP cache was always available
+        Assert.assertEquals(0, syncFrameRequests[0]);
+    }
+}
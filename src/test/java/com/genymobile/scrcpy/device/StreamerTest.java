@@ -0,0 +1,211 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.video.VideoCodec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CountDownLatch;
+
+public class StreamerTest {
+
+    private static final long PACKET_FLAG_CONFIG = 1L << 63;
+    private static final long PACKET_FLAG_KEY_FRAME = 1L << 62;
+
+    private static void writePacket(Streamer streamer, int value, boolean config, boolean keyFrame) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(10 + value);
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) value);
+        }
+        buffer.flip();
+        streamer.writePacket(buffer, value, config, keyFrame);
+    }
+
+    private static void assertPackets(byte[] data, int headerWidth, int... expected) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        Assert.assertEquals(VideoCodec.H264.getId(), dis.readInt());
+        Assert.assertEquals(headerWidth, dis.readInt());
+        Assert.assertEquals(1080, dis.readInt());
+        for (int value : expected) {
+            long ptsAndFlags = dis.readLong();
+            int size = dis.readInt();
+            Assert.assertEquals(10 + value, size);
+            if ((ptsAndFlags & PACKET_FLAG_CONFIG) == 0) {
+                Assert.assertEquals(value, ptsAndFlags & ~PACKET_FLAG_KEY_FRAME);
+            }
+            byte[] payload = new byte[size];
+            dis.readFully(payload);
+            for (byte b : payload) {
+                Assert.assertEquals(value, b);
+            }
+        }
+        Assert.assertEquals(-1, dis.read()); // EOS
+    }
+
+    private static void waitForPackets(ByteArrayOutputStream os, int... values) throws InterruptedException {
+        int size = 12; // header
+        for (int value : values) {
+            size += 12 + 10 + value;
+        }
+        // ByteArrayOutputStream is synchronized, it may be read while it is written from the sender thread
+        while (os.size() < size) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static Streamer createStreamer(ByteArrayOutputStream primary, int gopCacheSize, int[] syncFrameRequests) throws IOException {
+        Streamer streamer = new Streamer(Channels.newChannel(primary), VideoCodec.H264, true, true);
+        streamer.enableSubscribers(gopCacheSize);
+        streamer.setSyncFrameRequester(() -> ++syncFrameRequests[0]);
+        return streamer;
+    }
+
+    @Test
+    public void testSubscribers() throws Exception {
+        ByteArrayOutputStream primary = new ByteArrayOutputStream();
+        int[] syncFrameRequests = new int[1];
+        Streamer streamer = createStreamer(primary, 1024, syncFrameRequests);
+
+        ByteArrayOutputStream early = new ByteArrayOutputStream();
+        streamer.addSubscriber(Channels.newChannel(early), 8, true);
+
+        streamer.writeVideoHeader(new Size(1920, 1080));
+        writePacket(streamer, 1, true, false);
+        writePacket(streamer, 2, false, true);
+        writePacket(streamer, 3, false, false);
+
+        // A late subscriber receives the header, the config packet and the whole current GOP
+        ByteArrayOutputStream late = new ByteArrayOutputStream();
+        streamer.addSubscriber(Channels.newChannel(late), 8, true);
+        Assert.assertEquals(2, streamer.getSubscriberCount());
+
+        writePacket(streamer, 4, false, false);
+        writePacket(streamer, 5, false, true);
+        writePacket(streamer, 6, false, false);
+
+        waitForPackets(early, 1, 2, 3, 4, 5, 6);
+        waitForPackets(late, 1, 2, 3, 4, 5, 6);
+
+        streamer.stopSubscribers();
+        Assert.assertEquals(0, streamer.getSubscriberCount());
+
+        // No key frame is needed
+        Assert.assertEquals(0, syncFrameRequests[0]);
+
+        assertPackets(primary.toByteArray(), 1920, 1, 2, 3, 4, 5, 6);
+        assertPackets(early.toByteArray(), 1920, 1, 2, 3, 4, 5, 6);
+        assertPackets(late.toByteArray(), 1920, 1, 2, 3, 4, 5, 6);
+    }
+
+    @Test
+    public void testSubscriberWithoutGop() throws Exception {
+        ByteArrayOutputStream primary = new ByteArrayOutputStream();
+        int[] syncFrameRequests = new int[1];
+        // The GOP (12 + 13 bytes) does not fit
+        Streamer streamer = createStreamer(primary, 20, syncFrameRequests);
+
+        streamer.writeVideoHeader(new Size(1920, 1080));
+        writePacket(streamer, 1, true, false);
+        writePacket(streamer, 2, false, true);
+        writePacket(streamer, 3, false, false);
+
+        ByteArrayOutputStream late = new ByteArrayOutputStream();
+        streamer.addSubscriber(Channels.newChannel(late), 8, true);
+        Assert.assertEquals(1, syncFrameRequests[0]);
+
+        // The late subscriber drops the frames until the next key frame
+        writePacket(streamer, 4, false, false);
+        writePacket(streamer, 5, false, true);
+        writePacket(streamer, 6, false, false);
+
+        waitForPackets(late, 1, 5, 6);
+        streamer.stopSubscribers();
+
+        assertPackets(late.toByteArray(), 1920, 1, 5, 6);
+    }
+
+    @Test
+    public void testSubscribersOnly() throws Exception {
+        Streamer streamer = new Streamer(null, VideoCodec.H264, true, true);
+        streamer.enableSubscribers(1024);
+        streamer.writeVideoHeader(new Size(1280, 1080));
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        streamer.addSubscriber(Channels.newChannel(os), 4, true);
+        writePacket(streamer, 1, true, false);
+        writePacket(streamer, 2, false, true);
+
+        waitForPackets(os, 1, 2);
+        streamer.stopSubscribers();
+
+        assertPackets(os.toByteArray(), 1280, 1, 2);
+    }
+
+    @Test(timeout = 10000)
+    public void testSubscriberNeverDraining() throws Exception {
+        ByteArrayOutputStream primary = new ByteArrayOutputStream();
+        int[] syncFrameRequests = new int[1];
+        Streamer streamer = createStreamer(primary, 1024, syncFrameRequests);
+        streamer.writeVideoHeader(new Size(1920, 1080));
+
+        // A channel blocking all writes until the end of the test
+        CountDownLatch unblocked = new CountDownLatch(1);
+        WritableByteChannel stuck = new WritableByteChannel() {
+            private boolean open = true;
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                try {
+                    unblocked.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                int n = src.remaining();
+                src.position(src.limit());
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return open;
+            }
+
+            @Override
+            public void close() {
+                open = false;
+            }
+        };
+        streamer.addSubscriber(stuck, 4, true);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        streamer.addSubscriber(Channels.newChannel(os), 64, true);
+
+        // The queue of the stuck subscriber is full, this must block neither the encoder nor the other subscriber, even for config packets
+        for (int i = 1; i <= 30; i += 10) {
+            writePacket(streamer, i, true, false);
+            writePacket(streamer, i + 1, false, true);
+            for (int j = i + 2; j < i + 10; ++j) {
+                writePacket(streamer, j, false, false);
+            }
+        }
+
+        int[] expected = new int[30];
+        for (int i = 0; i < expected.length; ++i) {
+            expected[i] = i + 1;
+        }
+        waitForPackets(os, expected);
+
+        unblocked.countDown();
+        streamer.stopSubscribers();
+
+        assertPackets(primary.toByteArray(), 1920, expected);
+        assertPackets(os.toByteArray(), 1920, expected);
+    }
+}
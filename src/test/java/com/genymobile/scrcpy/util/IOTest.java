@@ -0,0 +1,59 @@
+package com.genymobile.scrcpy.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+
+public class IOTest {
+
+    private static IOException writeUntilError(WritableByteChannel channel) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        // The first writes may succeed (the peer is not notified synchronously), so write until it fails
+        for (int i = 0; i < 1000; ++i) {
+            buffer.clear();
+            try {
+                IO.writeFully(channel, buffer);
+            } catch (IOException e) {
+                return e;
+            }
+        }
+        Assert.fail("Write did not fail");
+        return null;
+    }
+
+    @Test
+    public void testBrokenPipeOnClosedPipe() throws IOException {
+        Pipe pipe = Pipe.open();
+        pipe.source().close();
+        try (Pipe.SinkChannel sink = pipe.sink()) {
+            IOException e = writeUntilError(sink);
+            Assert.assertTrue(e.toString(), IO.isBrokenPipe(e));
+        }
+    }
+
+    @Test
+    public void testBrokenPipeOnClosedSocket() throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            try (SocketChannel client = SocketChannel.open(server.getLocalAddress())) {
+                server.accept().close();
+                IOException e = writeUntilError(client);
+                Assert.assertTrue(e.toString(), IO.isBrokenPipe(e));
+            }
+        }
+    }
+
+    @Test
+    public void testNotBrokenPipe() {
+        Assert.assertFalse(IO.isBrokenPipe(new IOException("No space left on device")));
+        Assert.assertFalse(IO.isBrokenPipe(new IllegalStateException()));
+    }
+}
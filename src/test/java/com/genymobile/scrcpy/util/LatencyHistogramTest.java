@@ -0,0 +1,98 @@
+package com.genymobile.scrcpy.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketIndex() {
+        int previousIndex = -1;
+        for (long value = 0; value < 1 << 16; ++value) {
+            int index = LatencyHistogram.getBucketIndex(value);
+            // Buckets are contiguous
+            Assert.assertTrue(index == previousIndex || index == previousIndex + 1);
+            Assert.assertTrue(value <= LatencyHistogram.getBucketHighestValue(index));
+            if (index != previousIndex && index > 0) {
+                Assert.assertEquals(value - 1, LatencyHistogram.getBucketHighestValue(index - 1));
+            }
+            previousIndex = index;
+        }
+    }
+
+    @Test
+    public void testRelativeError() {
+        for (long value = 32; value < 1L << 30; value = value * 3 / 2 + 1) {
+            long highest = LatencyHistogram.getBucketHighestValue(LatencyHistogram.getBucketIndex(value));
+            Assert.assertTrue(highest - value <= value / 16);
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; ++i) {
+            histogram.record(i);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(100, snapshot.getCount());
+        Assert.assertEquals(50, snapshot.getP50(), 2);
+        Assert.assertEquals(95, snapshot.getP95(), 4);
+        Assert.assertEquals(99, snapshot.getP99(), 4);
+        Assert.assertEquals(100, snapshot.getMax());
+    }
+
+    @Test
+    public void testSnapshotAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(-5); // clamped to 0
+        histogram.record(Long.MAX_VALUE); // clamped to the max value
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+        Assert.assertEquals(3, snapshot.getCount());
+        Assert.assertEquals(10, snapshot.getP50());
+
+        snapshot = histogram.snapshot();
+        Assert.assertEquals(0, snapshot.getCount());
+        Assert.assertEquals(0, snapshot.getMax());
+    }
+
+    @Test
+    public void testConcurrentSnapshotAndReset() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threadCount = 4;
+        int valuesPerThread = 200_000;
+
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; ++i) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < valuesPerThread; ++j) {
+                    histogram.record(j & 1023);
+                }
+            });
+            threads[i].start();
+        }
+
+        long total = 0;
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread thread : threads) {
+                running |= thread.isAlive();
+            }
+            LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+            total += snapshot.getCount();
+            Assert.assertTrue(snapshot.getMax() <= 1023);
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        total += histogram.snapshotAndReset().getCount();
+
+        // Each value is reported exactly once
+        Assert.assertEquals((long) threadCount * valuesPerThread, total);
+    }
+}
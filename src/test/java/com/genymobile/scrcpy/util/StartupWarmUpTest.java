@@ -0,0 +1,73 @@
+package com.genymobile.scrcpy.util;
+
+import com.genymobile.scrcpy.device.ConfigurationException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StartupWarmUpTest {
+
+    @Test
+    public void testClaim() throws Exception {
+        StartupTimeline timeline = new StartupTimeline();
+        StartupWarmUp warmUp = new StartupWarmUp(timeline);
+        StartupWarmUp.Task<String> task = warmUp.start("warm-up-test", () -> "result", null);
+
+        Assert.assertEquals("result", warmUp.claim(task));
+        Assert.assertEquals(1, timeline.getPhaseCount());
+        Assert.assertTrue(timeline.format().contains("warm-up-test: "));
+    }
+
+    @Test
+    public void testClaimRethrows() {
+        StartupWarmUp warmUp = new StartupWarmUp(new StartupTimeline());
+        StartupWarmUp.Task<String> configTask = warmUp.start("config", () -> {
+            throw new ConfigurationException("test");
+        }, null);
+        StartupWarmUp.Task<String> ioTask = warmUp.start("io", () -> {
+            throw new IOException("test");
+        }, null);
+
+        try {
+            warmUp.claim(configTask);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            Assert.assertEquals("test", e.getMessage());
+        } catch (IOException e) {
+            Assert.fail();
+        }
+
+        try {
+            warmUp.claim(ioTask);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("test", e.getMessage());
+        } catch (ConfigurationException e) {
+            Assert.fail();
+        }
+    }
+
+    @Test
+    public void testReleaseUnclaimed() throws Exception {
+        List<String> released = new ArrayList<>();
+        StartupWarmUp warmUp = new StartupWarmUp(new StartupTimeline());
+        StartupWarmUp.Task<String> claimed = warmUp.start("a", () -> "a", released::add);
+        warmUp.start("b", () -> "b", released::add);
+        warmUp.<String>start("c", () -> {
+            throw new IOException("test");
+        }, released::add);
+
+        warmUp.claim(claimed);
+        warmUp.releaseUnclaimed();
+        Assert.assertEquals(1, released.size());
+        Assert.assertEquals("b", released.get(0));
+
+        // Already released
+        warmUp.releaseUnclaimed();
+        Assert.assertEquals(1, released.size());
+    }
+}
@@ -0,0 +1,36 @@
+package com.genymobile.scrcpy.wrappers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HiddenMethodTest {
+
+    @Test
+    public void testInvokeWithReusedArgs() throws ReflectiveOperationException {
+        HiddenMethod method = new HiddenMethod(StringBuilder.class, "append", String.class);
+        Assert.assertTrue(method.resolve());
+
+        StringBuilder builder = new StringBuilder();
+        Object[] args = method.args();
+        args[0] = "abc";
+        method.invoke(builder, args);
+        Assert.assertNull(args[0]);
+
+        Assert.assertSame(args, method.args());
+        args[0] = "def";
+        method.invoke(builder, args);
+        Assert.assertEquals("abcdef", builder.toString());
+    }
+
+    @Test
+    public void testMissingMethod() {
+        HiddenMethod method = new HiddenMethod(StringBuilder.class, "doesNotExist", int.class);
+        Assert.assertFalse(method.resolve());
+        try {
+            method.get();
+            Assert.fail();
+        } catch (NoSuchMethodException e) {
+            // expected
+        }
+    }
+}